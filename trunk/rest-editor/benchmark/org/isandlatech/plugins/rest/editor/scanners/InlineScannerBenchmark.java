@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.scanners;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.rules.IToken;
+import org.eclipse.jface.text.rules.Token;
+import org.isandlatech.plugins.rest.editor.providers.RuleProvider;
+import org.isandlatech.plugins.rest.editor.providers.TokenProvider;
+
+/**
+ * Compares the throughput of {@link RestScanner} with its rules dispatched on
+ * the current character and with all its rules evaluated at every character.
+ * 
+ * Usage : InlineScannerBenchmark file.rst [file2.rst ...]. The document is
+ * built as by {@link PartitionScannerBenchmark}.
+ * 
+ * @author Thomas Calmant
+ */
+public final class InlineScannerBenchmark {
+
+	/**
+	 * Token provider without colors, usable outside of the workbench
+	 * 
+	 * @author Thomas Calmant
+	 */
+	private static class BenchmarkTokenProvider extends TokenProvider {
+
+		/** Tokens, by element */
+		private Map<String, IToken> pTokens;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.isandlatech.plugins.rest.editor.providers.TokenProvider#
+		 * getTokenForElement(java.lang.String)
+		 */
+		@Override
+		public IToken getTokenForElement(final String aElement) {
+
+			IToken token = pTokens.get(aElement);
+			if (token == null) {
+				token = new Token(aElement);
+				pTokens.put(aElement, token);
+			}
+
+			return token;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.isandlatech.plugins.rest.editor.providers.TokenProvider#
+		 * initializeProvider()
+		 */
+		@Override
+		public void initializeProvider() {
+			// Called by the parent constructor
+			pTokens = new HashMap<String, IToken>();
+		}
+	}
+
+	/** Number of measured runs, after as many warm-up runs */
+	public static final int NB_RUNS = 10;
+
+	/**
+	 * Runs the benchmark
+	 * 
+	 * @param aArgs
+	 *            ReST files to scan
+	 * @throws IOException
+	 *             Error reading a file
+	 */
+	public static void main(final String[] aArgs) throws IOException {
+
+		if (aArgs.length == 0) {
+			System.err.println("Usage: InlineScannerBenchmark file.rst "
+					+ "[file2.rst ...]");
+			return;
+		}
+
+		final IDocument document = new Document(
+				PartitionScannerBenchmark.buildDocument(aArgs,
+						PartitionScannerBenchmark.DOCUMENT_LENGTH));
+		System.out.println("Document length: " + document.getLength()
+				+ " characters");
+
+		final RuleProvider ruleProvider = new RuleProvider(
+				new BenchmarkTokenProvider());
+
+		final RestScanner dispatchScanner = new RestScanner(ruleProvider);
+		final RestScanner sequentialScanner = new RestScanner(ruleProvider);
+		sequentialScanner.disableRulesDispatch();
+
+		// Warm-up
+		for (int i = 0; i < NB_RUNS; i++) {
+			scan(document, sequentialScanner);
+			scan(document, dispatchScanner);
+		}
+
+		long sequentialTime = 0;
+		long dispatchTime = 0;
+		int nbSequentialTokens = 0;
+		int nbDispatchTokens = 0;
+
+		for (int i = 0; i < NB_RUNS; i++) {
+
+			long start = System.nanoTime();
+			nbSequentialTokens = scan(document, sequentialScanner);
+			sequentialTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			nbDispatchTokens = scan(document, dispatchScanner);
+			dispatchTime += System.nanoTime() - start;
+		}
+
+		printResult("All rules at every character", document.getLength(),
+				sequentialTime, nbSequentialTokens);
+		printResult("Rules dispatched on the character", document.getLength(),
+				dispatchTime, nbDispatchTokens);
+	}
+
+	/**
+	 * Prints the throughput of a scanner
+	 * 
+	 * @param aName
+	 *            Benchmarked strategy
+	 * @param aLength
+	 *            Length of the scanned document
+	 * @param aTime
+	 *            Total time of the measured runs, in nanoseconds
+	 * @param aNbTokens
+	 *            Number of tokens returned by a run
+	 */
+	private static void printResult(final String aName, final int aLength,
+			final long aTime, final int aNbTokens) {
+
+		final double runSeconds = aTime / 1e9 / NB_RUNS;
+
+		System.out.println(aName + ": " + Math.round(runSeconds * 1000)
+				+ " ms, " + Math.round(aLength / runSeconds)
+				+ " characters/s (" + aNbTokens + " tokens)");
+	}
+
+	/**
+	 * Scans the whole given document
+	 * 
+	 * @param aDocument
+	 *            Scanned document
+	 * @param aScanner
+	 *            Scanner to use
+	 * @return The number of returned tokens
+	 */
+	private static int scan(final IDocument aDocument,
+			final RestScanner aScanner) {
+
+		aScanner.setRange(aDocument, 0, aDocument.getLength());
+
+		int nbTokens = 0;
+		while (!aScanner.nextToken().isEOF()) {
+			nbTokens++;
+		}
+
+		return nbTokens;
+	}
+
+	/**
+	 * Hidden constructor
+	 */
+	private InlineScannerBenchmark() {
+		// Hidden constructor
+	}
+}
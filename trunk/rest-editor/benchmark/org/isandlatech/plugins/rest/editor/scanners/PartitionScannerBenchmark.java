@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.scanners;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.rules.FastPartitioner;
+import org.eclipse.jface.text.rules.IPartitionTokenScanner;
+
+/**
+ * Compares the full partitioning time of the rule-based
+ * {@link RestPartitionScanner} and of the line-classifying
+ * {@link RestLinePartitionScanner}, both run by a {@link FastPartitioner}.
+ * 
+ * Usage : PartitionScannerBenchmark file.rst [file2.rst ...]. The given files
+ * are concatenated and repeated until the document reaches
+ * {@link #DOCUMENT_LENGTH} characters, for example with the files of the
+ * document/RestEditor-Plugin/source folder.
+ * 
+ * @author Thomas Calmant
+ */
+public final class PartitionScannerBenchmark {
+
+	/** Minimum length of the benchmarked document */
+	public static final int DOCUMENT_LENGTH = 750 * 1024;
+
+	/** Number of measured runs, after as many warm-up runs */
+	public static final int NB_RUNS = 10;
+
+	/**
+	 * Reads the given files and repeats them until the document is long
+	 * enough
+	 * 
+	 * @param aFiles
+	 *            ReST files
+	 * @param aLength
+	 *            Minimum length of the result
+	 * @return The benchmarked document content
+	 * @throws IOException
+	 *             Error reading a file
+	 */
+	public static String buildDocument(final String[] aFiles,
+			final int aLength) throws IOException {
+
+		final StringBuilder files = new StringBuilder();
+		final char[] buffer = new char[8192];
+
+		for (String fileName : aFiles) {
+			final Reader reader = new InputStreamReader(new FileInputStream(
+					new File(fileName)), "UTF-8");
+
+			try {
+				int read;
+				while ((read = reader.read(buffer)) != -1) {
+					files.append(buffer, 0, read);
+				}
+
+			} finally {
+				reader.close();
+			}
+
+			files.append("\n\n");
+		}
+
+		if (files.length() == 0) {
+			throw new IOException("Nothing to benchmark");
+		}
+
+		final StringBuilder document = new StringBuilder(aLength
+				+ files.length());
+		while (document.length() < aLength) {
+			document.append(files);
+		}
+
+		return document.toString();
+	}
+
+	/**
+	 * Runs the benchmark
+	 * 
+	 * @param aArgs
+	 *            ReST files to partition
+	 * @throws IOException
+	 *             Error reading a file
+	 */
+	public static void main(final String[] aArgs) throws IOException {
+
+		if (aArgs.length == 0) {
+			System.err.println("Usage: PartitionScannerBenchmark file.rst "
+					+ "[file2.rst ...]");
+			return;
+		}
+
+		final String content = buildDocument(aArgs, DOCUMENT_LENGTH);
+		System.out.println("Document length: " + content.length()
+				+ " characters");
+
+		// Warm-up
+		for (int i = 0; i < NB_RUNS; i++) {
+			partition(content, new RestPartitionScanner());
+			partition(content, new RestLinePartitionScanner());
+		}
+
+		long ruleTime = 0;
+		long lineTime = 0;
+		int nbRuleParts = 0;
+		int nbLineParts = 0;
+
+		for (int i = 0; i < NB_RUNS; i++) {
+
+			long start = System.nanoTime();
+			nbRuleParts = partition(content, new RestPartitionScanner());
+			ruleTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			nbLineParts = partition(content, new RestLinePartitionScanner());
+			lineTime += System.nanoTime() - start;
+		}
+
+		System.out.println("Rule-based scanner: " + ruleTime / NB_RUNS
+				/ 1000000 + " ms (" + nbRuleParts + " partitions)");
+		System.out.println("Line-based scanner: " + lineTime / NB_RUNS
+				/ 1000000 + " ms (" + nbLineParts + " partitions)");
+	}
+
+	/**
+	 * Partitions the whole given content
+	 * 
+	 * @param aContent
+	 *            Document content
+	 * @param aScanner
+	 *            Partition scanner to use
+	 * @return The number of partitions
+	 */
+	private static int partition(final String aContent,
+			final IPartitionTokenScanner aScanner) {
+
+		final Document document = new Document(aContent);
+		final FastPartitioner partitioner = new FastPartitioner(aScanner,
+				RestPartitionScanner.PARTITION_TYPES);
+
+		document.setDocumentPartitioner(partitioner);
+		partitioner.connect(document);
+
+		final int nbPartitions = partitioner.computePartitioning(0,
+				document.getLength()).length;
+
+		partitioner.disconnect();
+		return nbPartitions;
+	}
+
+	/**
+	 * Hidden constructor
+	 */
+	private PartitionScannerBenchmark() {
+		// Hidden constructor
+	}
+}
@@ -15,6 +15,12 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IStatus;
@@ -22,12 +28,19 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.content.IContentType;
+import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
-import org.isandlatech.plugins.rest.editor.scanners.RestPartitionScanner;
+import org.isandlatech.plugins.rest.editor.RestDocumentSetupParticipant;
+import org.isandlatech.plugins.rest.editor.rules.ScanBudget;
 import org.isandlatech.plugins.rest.i18n.Messages;
+import org.isandlatech.plugins.rest.prefs.IEditorPreferenceConstants;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -57,6 +70,9 @@ public class RestPlugin extends AbstractUIPlugin {
 	public static final IContentType REST_CONTENT_TYPE = Platform
 			.getContentTypeManager().getContentType(REST_CONTENT_ID);
 
+	/** Delay before stopping an idle worker thread, in seconds */
+	private static final int IDLE_THREAD_TIMEOUT = 30;
+
 	/** The shared instance */
 	private static RestPlugin sPlugin;
 
@@ -168,8 +184,11 @@ public class RestPlugin extends AbstractUIPlugin {
 		return ImageDescriptor.createFromImageData(destData);
 	}
 
-	/** The partition scanner */
-	private RestPartitionScanner pPartitionScanner;
+	/** Threads working on large documents, created on first use */
+	private ExecutorService pExecutor;
+
+	/** Applies the preferences modifications */
+	private IPropertyChangeListener pPreferencesListener;
 
 	/**
 	 * The constructor
@@ -177,6 +196,22 @@ public class RestPlugin extends AbstractUIPlugin {
 	public RestPlugin() {
 	}
 
+	/**
+	 * Creates a stand-alone document, partitioned with its own partitioner.
+	 * Background jobs must work on such a copy of the edited document, to
+	 * avoid sharing the editor document partitioner.
+	 * 
+	 * @param aContent
+	 *            Document content
+	 * @return A new partitioned document
+	 */
+	public IDocument createPartitionedDocument(final String aContent) {
+
+		final IDocument document = new Document(aContent);
+		new RestDocumentSetupParticipant().setup(document);
+		return document;
+	}
+
 	/**
 	 * Reads the given file in the bundle
 	 * 
@@ -228,17 +263,34 @@ public class RestPlugin extends AbstractUIPlugin {
 	}
 
 	/**
-	 * Retrieves the plugin-instance unique partition scanner
+	 * Retrieves the executor shared by the plug-in to work on large documents
+	 * in parallel, creating it if needed. Its threads stop when they are idle.
 	 * 
-	 * @return The partition scanner
+	 * @return The shared executor, null if the plug-in is stopped
 	 */
-	public RestPartitionScanner getPartitionScanner() {
-
-		if (pPartitionScanner == null) {
-			pPartitionScanner = new RestPartitionScanner();
+	public synchronized ExecutorService getExecutor() {
+
+		if (pExecutor == null && sPlugin == this) {
+			final int nbThreads = Runtime.getRuntime().availableProcessors();
+
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+					nbThreads, nbThreads, IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+						@Override
+						public Thread newThread(final Runnable aRunnable) {
+							final Thread thread = new Thread(aRunnable,
+									"ReST editor worker");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+
+			executor.allowCoreThreadTimeOut(true);
+			pExecutor = executor;
 		}
 
-		return pPartitionScanner;
+		return pExecutor;
 	}
 
 	/*
@@ -252,6 +304,19 @@ public class RestPlugin extends AbstractUIPlugin {
 	public void start(final BundleContext context) throws Exception {
 		super.start(context);
 		sPlugin = this;
+
+		// Apply the scan budgets preferences
+		updateScanBudgets();
+
+		pPreferencesListener = new IPropertyChangeListener() {
+
+			@Override
+			public void propertyChange(final PropertyChangeEvent aEvent) {
+				updateScanBudgets();
+			}
+		};
+
+		getPreferenceStore().addPropertyChangeListener(pPreferencesListener);
 	}
 
 	/*
@@ -263,7 +328,44 @@ public class RestPlugin extends AbstractUIPlugin {
 	 */
 	@Override
 	public void stop(final BundleContext context) throws Exception {
-		sPlugin = null;
+
+		if (pPreferencesListener != null) {
+			getPreferenceStore().removePropertyChangeListener(
+					pPreferencesListener);
+			pPreferencesListener = null;
+		}
+
+		synchronized (this) {
+			if (pExecutor != null) {
+				// Release the callers waiting for the tasks never started
+				for (Runnable task : pExecutor.shutdownNow()) {
+					if (task instanceof Future<?>) {
+						((Future<?>) task).cancel(false);
+					}
+				}
+
+				pExecutor = null;
+			}
+
+			sPlugin = null;
+		}
+
 		super.stop(context);
 	}
+
+	/**
+	 * Sets the block rules scan budgets according to the preferences. The
+	 * new budgets are used by the next partitioning of the documents.
+	 */
+	private void updateScanBudgets() {
+
+		final IPreferenceStore store = getPreferenceStore();
+
+		ScanBudget.PREFIXED_BLOCK.setMaxLines(store.getInt(
+				IEditorPreferenceConstants.EDITOR_SCAN_BUDGET_PREFIXED_BLOCK));
+		ScanBudget.GRID_TABLE.setMaxLines(store.getInt(
+				IEditorPreferenceConstants.EDITOR_SCAN_BUDGET_GRID_TABLE));
+		ScanBudget.SIMPLE_TABLE.setMaxLines(store.getInt(
+				IEditorPreferenceConstants.EDITOR_SCAN_BUDGET_SIMPLE_TABLE));
+	}
 }
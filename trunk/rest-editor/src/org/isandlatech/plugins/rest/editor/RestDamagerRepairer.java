@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor;
+
+import org.eclipse.jface.text.TextAttribute;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.rules.DefaultDamagerRepairer;
+import org.eclipse.jface.text.rules.IToken;
+import org.eclipse.jface.text.rules.ITokenScanner;
+
+/**
+ * Damager-repairer giving access to its scanner, to let the
+ * {@link RestPresentationReconciler} highlight the damaged lines itself.
+ * 
+ * @author Thomas Calmant
+ */
+public class RestDamagerRepairer extends DefaultDamagerRepairer {
+
+	/**
+	 * Sets up the damager-repairer
+	 * 
+	 * @param aScanner
+	 *            The partition token scanner
+	 */
+	public RestDamagerRepairer(final ITokenScanner aScanner) {
+		super(aScanner);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.rules.DefaultDamagerRepairer#addRange(org.eclipse
+	 * .jface.text.TextPresentation, int, int,
+	 * org.eclipse.jface.text.TextAttribute)
+	 */
+	@Override
+	public void addRange(final TextPresentation aPresentation,
+			final int aOffset, final int aLength, final TextAttribute aAttribute) {
+		super.addRange(aPresentation, aOffset, aLength, aAttribute);
+	}
+
+	/**
+	 * Retrieves the scanner of the partition
+	 * 
+	 * @return The token scanner
+	 */
+	public ITokenScanner getScanner() {
+		return fScanner;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.rules.DefaultDamagerRepairer#getTokenTextAttribute
+	 * (org.eclipse.jface.text.rules.IToken)
+	 */
+	@Override
+	public TextAttribute getTokenTextAttribute(final IToken aToken) {
+		return super.getTokenTextAttribute(aToken);
+	}
+}
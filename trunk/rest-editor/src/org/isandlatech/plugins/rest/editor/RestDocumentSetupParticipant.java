@@ -12,20 +12,24 @@
 package org.isandlatech.plugins.rest.editor;
 
 import org.eclipse.core.filebuffers.IDocumentSetupParticipant;
+import org.eclipse.core.filebuffers.IDocumentSetupParticipantExtension;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension3;
-import org.eclipse.jface.text.IDocumentPartitioner;
-import org.eclipse.jface.text.rules.FastPartitioner;
-import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.cache.StructureCache;
+import org.isandlatech.plugins.rest.editor.scanners.RestDocumentPartitioner;
 import org.isandlatech.plugins.rest.editor.scanners.RestPartitionScanner;
 
 /**
  * Sets up the document partitionner. Only works with IDocumentExtension3
- * documents.
+ * documents. The partitions of a file buffer document can be restored from
+ * the structure cache of the file.
  * 
  * @author Thomas Calmant
  */
-public class RestDocumentSetupParticipant implements IDocumentSetupParticipant {
+public class RestDocumentSetupParticipant implements IDocumentSetupParticipant,
+		IDocumentSetupParticipantExtension {
 
 	/*
 	 * (non-Javadoc)
@@ -36,18 +40,45 @@ public class RestDocumentSetupParticipant implements IDocumentSetupParticipant {
 	 */
 	@Override
 	public void setup(final IDocument aDocument) {
+		setup(aDocument, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.core.filebuffers.IDocumentSetupParticipantExtension#setup
+	 * (org.eclipse.jface.text.IDocument, org.eclipse.core.runtime.IPath,
+	 * org.eclipse.core.filebuffers.LocationKind)
+	 */
+	@Override
+	public void setup(final IDocument aDocument, final IPath aLocation,
+			final LocationKind aLocationKind) {
+		setup(aDocument, StructureCache.load(aLocation));
+	}
+
+	/**
+	 * Sets up the partitioner of the given document
+	 * 
+	 * @param aDocument
+	 *            The document to set up
+	 * @param aCache
+	 *            Structure read from the cache of the document file, can be
+	 *            null
+	 */
+	private void setup(final IDocument aDocument, final StructureCache aCache) {
 
 		if (aDocument instanceof IDocumentExtension3) {
 
-			IDocumentPartitioner partitioner = new FastPartitioner(RestPlugin
-					.getDefault().getPartitionScanner(),
-					RestPartitionScanner.PARTITION_TYPES);
+			RestDocumentPartitioner partitioner = new RestDocumentPartitioner();
 
 			IDocumentExtension3 docExt3 = (IDocumentExtension3) aDocument;
 			docExt3.setDocumentPartitioner(RestPartitionScanner.PARTITIONING,
 					partitioner);
 
-			partitioner.connect(aDocument);
+			// The file content is loaded after the setup
+			partitioner.setStructureCache(aCache);
+			partitioner.connect(aDocument, aCache != null);
 		}
 	}
 }
@@ -18,6 +18,10 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.source.ISourceViewer;
 import org.eclipse.jface.text.source.ISourceViewerExtension2;
+import org.eclipse.jface.text.source.IVerticalRuler;
+import org.eclipse.jface.text.source.projection.ProjectionAnnotationModel;
+import org.eclipse.jface.text.source.projection.ProjectionSupport;
+import org.eclipse.jface.text.source.projection.ProjectionViewer;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.swt.widgets.Composite;
@@ -29,8 +33,12 @@ import org.eclipse.ui.texteditor.ITextEditorActionConstants;
 import org.eclipse.ui.texteditor.ITextEditorActionDefinitionIds;
 import org.eclipse.ui.views.contentoutline.IContentOutlinePage;
 import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.cache.StructureCache;
+import org.isandlatech.plugins.rest.editor.outline.OutlineUtil;
 import org.isandlatech.plugins.rest.editor.outline.RestContentOutlinePage;
+import org.isandlatech.plugins.rest.editor.outline.TreeData;
 import org.isandlatech.plugins.rest.i18n.Messages;
+import org.isandlatech.plugins.rest.prefs.IEditorPreferenceConstants;
 
 /**
  * reStructuredText editor main class
@@ -54,9 +62,18 @@ public class RestEditor extends TextEditor {
 	/** Dummy display to access timers */
 	private Display pDummyDisplay;
 
+	/** Large file mode flag : the document is too big for a full support */
+	private boolean pLargeFileMode;
+
 	/** Outline page */
 	private RestContentOutlinePage pOutlinePage;
 
+	/** Folding support of the source viewer */
+	private ProjectionSupport pProjectionSupport;
+
+	/** Path of the section containing the caret, shown in the status line */
+	private String pSectionPath;
+
 	/**
 	 * ReST editor entry point
 	 */
@@ -98,7 +115,30 @@ public class RestEditor extends TextEditor {
 	@Override
 	public void createPartControl(final Composite parent) {
 		super.createPartControl(parent);
+
+		// Set up the folding support
+		ProjectionViewer viewer = (ProjectionViewer) getSourceViewer();
+		pProjectionSupport = new ProjectionSupport(viewer,
+				getAnnotationAccess(), getSharedColors());
+		pProjectionSupport.install();
+		updateProjection();
+
 		updateConfigurationDocument();
+		updateFoldingDocument();
+		pConfiguration.updateSoftWrap(getSourceViewer());
+		showLargeFileModeStatus();
+	}
+
+	@Override
+	protected ISourceViewer createSourceViewer(final Composite aParent,
+			final IVerticalRuler aRuler, final int aStyles) {
+
+		ISourceViewer viewer = new ProjectionViewer(aParent, aRuler,
+				getOverviewRuler(), isOverviewRulerVisible(), aStyles);
+
+		// Ensure the decoration support is created
+		getSourceViewerDecorationSupport(viewer);
+		return viewer;
 	}
 
 	@Override
@@ -107,30 +147,52 @@ public class RestEditor extends TextEditor {
 			pOutlinePage.dispose();
 		}
 
+		// Keep the structure of the saved file for the next opening
+		if (getDocumentProvider() != null && !isDirty()) {
+			StructureCache.scheduleStore(getDocumentProvider().getDocument(
+					getEditorInput()));
+		}
+
+		pConfiguration.dispose();
+
+		if (pProjectionSupport != null) {
+			pProjectionSupport.dispose();
+		}
+
 		super.dispose();
 	}
 
 	@Override
 	protected void doSetInput(final IEditorInput input) throws CoreException {
 		super.doSetInput(input);
+
+		if (updateLargeFileMode()) {
+			// Viewer features depend on the mode
+			resetViewerConfiguration();
+			updateProjection();
+		}
+
 		updateConfigurationDocument();
+		updateFoldingDocument();
+		pConfiguration.updateSoftWrap(getSourceViewer());
+		showLargeFileModeStatus();
 	}
 
 	@Override
 	protected void editorSaved() {
 
-		if (pOutlinePage != null) {
+		if (pOutlinePage != null && !pLargeFileMode) {
 			pOutlinePage.update();
 		}
 
 		// Save actions...
 		super.editorSaved();
 
-		// Perform treatments after saving the document...
-		pConfiguration.postEditorPerformSave(getSourceViewer());
+		// The document now matches the file content
+		StructureCache.scheduleStore(getSourceViewer().getDocument());
 	}
 
-	@SuppressWarnings("rawtypes")
+	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public Object getAdapter(final Class adapter) {
 
@@ -139,6 +201,15 @@ public class RestEditor extends TextEditor {
 			return getOutlinePage();
 		}
 
+		// Request for the projection annotation model
+		if (pProjectionSupport != null) {
+			Object projectionAdapter = pProjectionSupport.getAdapter(
+					getSourceViewer(), adapter);
+			if (projectionAdapter != null) {
+				return projectionAdapter;
+			}
+		}
+
 		return super.getAdapter(adapter);
 	}
 
@@ -157,6 +228,56 @@ public class RestEditor extends TextEditor {
 		return pOutlinePage;
 	}
 
+	/**
+	 * Indicates the large file mode in the editor tab tool tip
+	 * 
+	 * @see org.eclipse.ui.part.WorkbenchPart#getTitleToolTip()
+	 */
+	@Override
+	public String getTitleToolTip() {
+
+		final String toolTip = super.getTitleToolTip();
+		if (!pLargeFileMode) {
+			return toolTip;
+		}
+
+		final String message = Messages.getString("editor.largefile.active");
+		if (toolTip == null || toolTip.isEmpty()) {
+			return message;
+		}
+
+		return toolTip + "\n" + message;
+	}
+
+	/**
+	 * Selects the section containing the caret in the outline, and shows its
+	 * path in the status line
+	 * 
+	 * @see org.eclipse.ui.texteditor.AbstractTextEditor#
+	 *      handleCursorPositionChanged()
+	 */
+	@Override
+	protected void handleCursorPositionChanged() {
+		super.handleCursorPositionChanged();
+
+		// The outline is only updated on request for large files
+		ISourceViewer viewer = getSourceViewer();
+		if (pOutlinePage == null || pLargeFileMode || viewer == null) {
+			return;
+		}
+
+		TreeData section = pOutlinePage.linkWithEditor(viewer
+				.getSelectedRange().x);
+
+		String sectionPath = section == null ? "" : OutlineUtil
+				.getSectionPath(section);
+
+		if (!sectionPath.equals(pSectionPath)) {
+			pSectionPath = sectionPath;
+			setStatusLineMessage(sectionPath);
+		}
+	}
+
 	@Override
 	protected void initializeEditor() {
 		super.initializeEditor();
@@ -166,6 +287,16 @@ public class RestEditor extends TextEditor {
 		setSourceViewerConfiguration(pConfiguration);
 	}
 
+	/**
+	 * Tests if the edited document is handled in large file mode, i.e. if it
+	 * is too big to enable every editor feature
+	 * 
+	 * @return True if the large file mode is active
+	 */
+	public boolean isLargeFileMode() {
+		return pLargeFileMode;
+	}
+
 	/**
 	 * Do on-save operations
 	 * 
@@ -224,9 +355,23 @@ public class RestEditor extends TextEditor {
 	 */
 	private void runnableUpdateContentDependentActions() {
 
-		// Update outline page on content change
-		if (pOutlinePage != null) {
-			pOutlinePage.update();
+		// Update outline page on content change (only on request for large
+		// files). Sections are parsed outside the UI thread.
+		if (pOutlinePage != null && !pLargeFileMode) {
+			pOutlinePage.scheduleUpdate();
+		}
+
+		// Folding regions are updated incrementally
+		pConfiguration.updateFolding();
+	}
+
+	/**
+	 * Shows the large file mode message in the status line, if needed
+	 */
+	private void showLargeFileModeStatus() {
+
+		if (pLargeFileMode && getSourceViewer() != null) {
+			setStatusLineMessage(Messages.getString("editor.largefile.active"));
 		}
 	}
 
@@ -238,7 +383,12 @@ public class RestEditor extends TextEditor {
 			@Override
 			public void run() {
 				// Reset the viewer configuration
+				updateLargeFileMode();
 				resetViewerConfiguration();
+				updateProjection();
+				updateFoldingDocument();
+				pConfiguration.updateSoftWrap(getSourceViewer());
+				showLargeFileModeStatus();
 			}
 		};
 
@@ -282,6 +432,68 @@ public class RestEditor extends TextEditor {
 		}
 	}
 
+	/**
+	 * Updates the document and the annotation model used by the folding
+	 * support, according to the large file mode.
+	 */
+	private void updateFoldingDocument() {
+
+		ISourceViewer viewer = getSourceViewer();
+		if (viewer instanceof ProjectionViewer) {
+			ProjectionAnnotationModel model = ((ProjectionViewer) viewer)
+					.getProjectionAnnotationModel();
+
+			pConfiguration.setFoldingDocument(viewer.getDocument(), model);
+		}
+	}
+
+	/**
+	 * Updates the large file mode flag, according to the edited document
+	 * length and to the preferences.
+	 * 
+	 * @return True if the mode changed
+	 */
+	private boolean updateLargeFileMode() {
+
+		final int threshold = RestPlugin.getDefault().getPreferenceStore()
+				.getInt(IEditorPreferenceConstants.EDITOR_LARGE_FILE_THRESHOLD);
+
+		boolean largeFileMode = false;
+		if (threshold > 0 && getDocumentProvider() != null) {
+			final IDocument document = getDocumentProvider().getDocument(
+					getEditorInput());
+
+			largeFileMode = document != null
+					&& document.getLength() >= threshold;
+		}
+
+		if (largeFileMode == pLargeFileMode) {
+			return false;
+		}
+
+		pLargeFileMode = largeFileMode;
+
+		// Update the tool tip
+		firePropertyChange(PROP_TITLE);
+		return true;
+	}
+
+	/**
+	 * Enables the projection (folding) of the viewer, unless the large file
+	 * mode is active
+	 */
+	private void updateProjection() {
+
+		ISourceViewer viewer = getSourceViewer();
+		if (viewer instanceof ProjectionViewer) {
+			ProjectionViewer projectionViewer = (ProjectionViewer) viewer;
+
+			if (projectionViewer.isProjectionMode() == pLargeFileMode) {
+				projectionViewer.doOperation(ProjectionViewer.TOGGLE);
+			}
+		}
+	}
+
 	/**
 	 * Updates the content dependent actions and the outline page
 	 * 
@@ -0,0 +1,528 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentPartitioningChangedEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IDocumentPartitioningListener;
+import org.eclipse.jface.text.IDocumentPartitioningListenerExtension2;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.projection.ProjectionAnnotation;
+import org.eclipse.jface.text.source.projection.ProjectionAnnotationModel;
+import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.outline.SectionIndex;
+import org.isandlatech.plugins.rest.editor.scanners.RestPartitionScanner;
+
+/**
+ * Computes the folding regions of the document : sections, literal blocks,
+ * directives and tables. The regions are only computed again around the
+ * modified text and where the document partitioner reported a partitioning
+ * change.
+ * 
+ * @author Thomas Calmant
+ */
+public class RestFoldingStructureProvider implements IDocumentListener,
+		IDocumentPartitioningListener, IDocumentPartitioningListenerExtension2 {
+
+	/**
+	 * Folding region of a section, from its title to the next section title
+	 * 
+	 * @author Thomas Calmant
+	 */
+	private static class SectionAnnotation extends ProjectionAnnotation {
+		// Distinguishes sections from blocks
+	}
+
+	/** Types of the partitions with a folding region */
+	public static final String[] FOLDED_PARTITION_TYPES = {
+			RestPartitionScanner.LITERAL_BLOCK,
+			RestPartitionScanner.SOURCE_BLOCK,
+			RestPartitionScanner.GRID_TABLE_BLOCK,
+			RestPartitionScanner.SIMPLE_TABLE_BLOCK };
+
+	/** Folding annotations model */
+	private ProjectionAnnotationModel pAnnotationModel;
+
+	/** End of the region to compute again, -1 if the folding is up to date */
+	private int pDirtyEnd = -1;
+
+	/** Start of the region to compute again, -1 if the folding is up to date */
+	private int pDirtyStart = -1;
+
+	/** Folded document */
+	private IDocument pDocument;
+
+	/** A document modification is being applied */
+	private boolean pInDocumentChange;
+
+	/** Partitioning change received during a document modification */
+	private IRegion pPendingPartitionChange;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org
+	 * .eclipse.jface.text.DocumentEvent)
+	 */
+	@Override
+	public void documentAboutToBeChanged(final DocumentEvent aEvent) {
+		pInDocumentChange = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.
+	 * jface.text.DocumentEvent)
+	 */
+	@Override
+	public void documentChanged(final DocumentEvent aEvent) {
+
+		pInDocumentChange = false;
+
+		final int offset = aEvent.getOffset();
+		final int oldEnd = offset + aEvent.getLength();
+		final String text = aEvent.getText();
+		final int newEnd = offset + (text == null ? 0 : text.length());
+
+		// The folding regions have been moved by the document, move the dirty
+		// region the same way
+		if (pDirtyStart >= 0) {
+			pDirtyStart = SectionIndex.shiftOffset(pDirtyStart, true, offset,
+					oldEnd, newEnd);
+			pDirtyEnd = SectionIndex.shiftOffset(pDirtyEnd, false, offset,
+					oldEnd, newEnd);
+		}
+
+		// The partitioning event has been sent before this one
+		if (pPendingPartitionChange != null) {
+			markDirty(pPendingPartitionChange.getOffset(),
+					pPendingPartitionChange.getOffset()
+							+ pPendingPartitionChange.getLength());
+			pPendingPartitionChange = null;
+		}
+
+		// A folding region may not start on a line start anymore
+		markDirty(offset, newEnd);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitioningListenerExtension2#
+	 * documentPartitioningChanged
+	 * (org.eclipse.jface.text.DocumentPartitioningChangedEvent)
+	 */
+	@Override
+	public void documentPartitioningChanged(
+			final DocumentPartitioningChangedEvent aEvent) {
+
+		final IRegion changedRegion = aEvent
+				.getChangedRegion(RestPartitionScanner.PARTITIONING);
+		if (changedRegion == null) {
+			return;
+		}
+
+		if (!pInDocumentChange) {
+			markDirty(changedRegion.getOffset(), changedRegion.getOffset()
+					+ changedRegion.getLength());
+			return;
+		}
+
+		// Offsets are valid once the document modification is applied
+		if (pPendingPartitionChange == null) {
+			pPendingPartitionChange = changedRegion;
+
+		} else {
+			final int start = Math.min(pPendingPartitionChange.getOffset(),
+					changedRegion.getOffset());
+			final int end = Math.max(pPendingPartitionChange.getOffset()
+					+ pPendingPartitionChange.getLength(),
+					changedRegion.getOffset() + changedRegion.getLength());
+
+			pPendingPartitionChange = new Region(start, end - start);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitioningListener#
+	 * documentPartitioningChanged(org.eclipse.jface.text.IDocument)
+	 */
+	@Override
+	public void documentPartitioningChanged(final IDocument aDocument) {
+		// Not called for extension 2 listeners, compute everything again
+		markDirty(0, aDocument.getLength());
+	}
+
+	/**
+	 * Computes the folding region covering the complete lines of the given
+	 * region
+	 * 
+	 * @param aStart
+	 *            Region start offset
+	 * @param aEnd
+	 *            Region end offset
+	 * @return The folding region, null if the region has only one line
+	 * @throws BadLocationException
+	 *             Invalid region
+	 */
+	private Position getFoldingPosition(final int aStart, final int aEnd)
+			throws BadLocationException {
+
+		final int firstLine = pDocument.getLineOfOffset(aStart);
+		final int lastLine = pDocument.getLineOfOffset(Math.max(aStart,
+				aEnd - 1));
+
+		if (lastLine <= firstLine) {
+			return null;
+		}
+
+		final int offset = pDocument.getLineOffset(firstLine);
+		final int end = pDocument.getLineOffset(lastLine)
+				+ pDocument.getLineLength(lastLine);
+
+		return new Position(offset, end - offset);
+	}
+
+	/**
+	 * Retrieves the start of the first section block partition starting after
+	 * the given offset
+	 * 
+	 * @param aOffset
+	 *            A partition start offset
+	 * @return The start of the next section, the document length if none
+	 * @throws BadLocationException
+	 *             Invalid offset
+	 */
+	private int getNextSection(final int aOffset) throws BadLocationException {
+
+		final int documentLength = pDocument.getLength();
+
+		int offset = aOffset;
+		while (offset < documentLength) {
+
+			final ITypedRegion partition = TextUtilities.getPartition(
+					pDocument, RestPartitionScanner.PARTITIONING, offset,
+					false);
+
+			if (RestPartitionScanner.SECTION_BLOCK.equals(partition.getType())
+					&& partition.getOffset() >= aOffset) {
+				return partition.getOffset();
+			}
+
+			offset = Math.max(offset + 1,
+					partition.getOffset() + partition.getLength());
+		}
+
+		return documentLength;
+	}
+
+	/**
+	 * Tests if the given partition type has a folding region
+	 * 
+	 * @param aType
+	 *            A partition type
+	 * @return True if the partitions of this type can be folded
+	 */
+	private boolean isFoldedPartition(final String aType) {
+
+		for (String type : FOLDED_PARTITION_TYPES) {
+			if (type.equals(aType)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Adds the given region to the region to compute again
+	 * 
+	 * @param aStart
+	 *            Region start offset
+	 * @param aEnd
+	 *            Region end offset
+	 */
+	private void markDirty(final int aStart, final int aEnd) {
+
+		if (pDirtyStart < 0) {
+			pDirtyStart = aStart;
+			pDirtyEnd = aEnd;
+
+		} else {
+			pDirtyStart = Math.min(pDirtyStart, aStart);
+			pDirtyEnd = Math.max(pDirtyEnd, aEnd);
+		}
+	}
+
+	/**
+	 * Sets the document to fold and computes all of its folding regions.
+	 * 
+	 * @param aDocument
+	 *            The document to fold, can be null
+	 * @param aAnnotationModel
+	 *            The folding annotations model of the viewer, null to disable
+	 *            folding
+	 */
+	public void setDocument(final IDocument aDocument,
+			final ProjectionAnnotationModel aAnnotationModel) {
+
+		if (pDocument == aDocument && pAnnotationModel == aAnnotationModel) {
+			return;
+		}
+
+		if (pDocument != null && pAnnotationModel != null) {
+			pDocument.removeDocumentListener(this);
+			pDocument.removeDocumentPartitioningListener(this);
+			pAnnotationModel.removeAllAnnotations();
+		}
+
+		pDocument = aDocument;
+		pAnnotationModel = aAnnotationModel;
+		pPendingPartitionChange = null;
+		pInDocumentChange = false;
+		pDirtyStart = -1;
+		pDirtyEnd = -1;
+
+		if (aDocument == null || aAnnotationModel == null) {
+			return;
+		}
+
+		aDocument.addDocumentListener(this);
+		aDocument.addDocumentPartitioningListener(this);
+		markDirty(0, aDocument.getLength());
+		update();
+	}
+
+	/**
+	 * Computes again the folding regions of the partitions which changed
+	 * since the last update. The unchanged regions keep their annotation, and
+	 * so their folding state.
+	 */
+	public void update() {
+
+		final IDocument document = pDocument;
+		final ProjectionAnnotationModel model = pAnnotationModel;
+		if (document == null || model == null || pDirtyStart < 0) {
+			return;
+		}
+
+		final int documentLength = document.getLength();
+		int start = Math.min(pDirtyStart, documentLength);
+		int end = Math.min(pDirtyEnd, documentLength);
+
+		pDirtyStart = -1;
+		pDirtyEnd = -1;
+
+		// Annotations touching the region
+		final Map<Annotation, Position> oldFolds = new HashMap<Annotation, Position>();
+
+		final List<Annotation> deletedFolds = new ArrayList<Annotation>();
+		final Map<Position, Annotation> deletedBlocks = new HashMap<Position, Annotation>();
+		final Map<Integer, Annotation> deletedSections = new HashMap<Integer, Annotation>();
+		final List<Integer> sectionStarts = new ArrayList<Integer>();
+
+		final Map<Annotation, Position> addedFolds = new HashMap<Annotation, Position>();
+
+		try {
+			boolean grown;
+			do {
+				grown = false;
+
+				// Work on complete partitions
+				ITypedRegion partition = TextUtilities.getPartition(document,
+						RestPartitionScanner.PARTITIONING, start, false);
+				start = Math.min(start, partition.getOffset());
+
+				if (end > start) {
+					partition = TextUtilities.getPartition(document,
+							RestPartitionScanner.PARTITIONING, end - 1, false);
+					end = Math.max(end,
+							partition.getOffset() + partition.getLength());
+				}
+
+				// Blocks touching the region are computed again
+				final Iterator<?> iterator = model.getAnnotationIterator(
+						Math.max(start - 1, 0), end - start + 2, true, true);
+
+				while (iterator.hasNext()) {
+					final Annotation annotation = (Annotation) iterator.next();
+					final Position position = model.getPosition(annotation);
+					if (position == null || position.isDeleted()) {
+						continue;
+					}
+
+					oldFolds.put(annotation, position);
+
+					if (!(annotation instanceof SectionAnnotation)) {
+						final int blockEnd = position.getOffset()
+								+ position.getLength();
+
+						if (position.getOffset() < start) {
+							start = position.getOffset();
+							grown = true;
+						}
+
+						if (blockEnd > end) {
+							end = Math.min(blockEnd, documentLength);
+							grown = true;
+						}
+					}
+				}
+
+			} while (grown);
+
+			// Sort the old annotations : sections starting before the region
+			// only have to be extended to the next section
+			for (Map.Entry<Annotation, Position> entry : oldFolds.entrySet()) {
+
+				final Annotation annotation = entry.getKey();
+				final Position position = entry.getValue();
+				final int offset = position.getOffset();
+
+				if (position.getLength() == 0) {
+					// Folding region emptied by a replacement
+					deletedFolds.add(annotation);
+					continue;
+				}
+
+				if (offset >= end) {
+					// Not modified
+					continue;
+				}
+
+				if (annotation instanceof SectionAnnotation) {
+					if (deletedSections.containsKey(offset)) {
+						// Same section, after a deletion
+						deletedFolds.add(annotation);
+						continue;
+					}
+
+					if (offset < start) {
+						sectionStarts.add(offset);
+					}
+
+					deletedSections.put(offset, annotation);
+
+				} else if (deletedBlocks.containsKey(position)) {
+					// Same block, after a deletion
+					deletedFolds.add(annotation);
+
+				} else {
+					deletedBlocks.put(position, annotation);
+				}
+			}
+
+			Collections.sort(sectionStarts);
+
+			// Compute the folding regions of the partitions of the region
+			for (ITypedRegion partition : TextUtilities.computePartitioning(
+					document, RestPartitionScanner.PARTITIONING, start, end
+							- start, false)) {
+
+				if (RestPartitionScanner.SECTION_BLOCK.equals(partition
+						.getType())) {
+					sectionStarts.add(partition.getOffset());
+
+				} else if (isFoldedPartition(partition.getType())) {
+
+					final Position position = getFoldingPosition(
+							partition.getOffset(), partition.getOffset()
+									+ partition.getLength());
+
+					if (position == null) {
+						continue;
+					}
+
+					// Keep the unchanged blocks
+					if (deletedBlocks.remove(position) == null) {
+						addedFolds.put(new ProjectionAnnotation(), position);
+					}
+				}
+			}
+
+			// A section is folded until the next one
+			for (int i = 0; i < sectionStarts.size(); i++) {
+
+				final int sectionStart = sectionStarts.get(i);
+				final int sectionEnd;
+				if (i + 1 < sectionStarts.size()) {
+					sectionEnd = sectionStarts.get(i + 1);
+				} else {
+					sectionEnd = getNextSection(end);
+				}
+
+				final Position position = getFoldingPosition(sectionStart,
+						sectionEnd);
+				if (position == null) {
+					continue;
+				}
+
+				final Annotation annotation = deletedSections.get(position
+						.getOffset());
+
+				if (annotation != null
+						&& oldFolds.get(annotation).equals(position)) {
+					// Unchanged section
+					deletedSections.remove(position.getOffset());
+					continue;
+				}
+
+				// Positions can't be resized in place : the document sorts
+				// them by end offset. Keep the folding state of the section.
+				final ProjectionAnnotation sectionAnnotation = new SectionAnnotation();
+				if (annotation instanceof ProjectionAnnotation
+						&& ((ProjectionAnnotation) annotation).isCollapsed()) {
+					sectionAnnotation.markCollapsed();
+				}
+
+				addedFolds.put(sectionAnnotation, position);
+			}
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error computing the folding regions", e);
+			return;
+		}
+
+		deletedFolds.addAll(deletedBlocks.values());
+		deletedFolds.addAll(deletedSections.values());
+
+		if (deletedFolds.isEmpty() && addedFolds.isEmpty()) {
+			return;
+		}
+
+		model.modifyAnnotations(
+				deletedFolds.toArray(new Annotation[deletedFolds.size()]),
+				addedFolds, null);
+	}
+}
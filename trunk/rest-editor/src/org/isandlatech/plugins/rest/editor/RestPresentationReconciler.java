@@ -0,0 +1,738 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITextListener;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextAttribute;
+import org.eclipse.jface.text.TextEvent;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.jface.text.presentation.IPresentationRepairer;
+import org.eclipse.jface.text.presentation.PresentationReconciler;
+import org.eclipse.jface.text.rules.IToken;
+import org.eclipse.jface.text.rules.ITokenScanner;
+import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.scanners.AbstractRuleBasedScanner;
+
+/**
+ * Presentation reconciler only highlighting again the lines whose tokens may
+ * have changed after a document modification.
+ * 
+ * The scanner state at the start of each highlighted line is kept : the
+ * partition type of the line, if a token begins at the line start and the
+ * last line read by the scanner until then. After a modification, the damaged
+ * lines are scanned again from the last line start where the state is valid,
+ * until a line start where both the old and the new states begin a token : the
+ * damage computed by the damagers, which covers whole partitions when the
+ * partitioning changes, is reduced to the lines whose tokens actually changed.
+ * 
+ * @author Thomas Calmant
+ */
+public class RestPresentationReconciler extends PresentationReconciler {
+
+	/** Line state flag : a token begins at the line start */
+	private static final byte FLAG_BOUNDARY = 1;
+
+	/** Line state flag : a partition begins at the line start */
+	private static final byte FLAG_PARTITION_START = 2;
+
+	/** The document of the viewer */
+	private IDocument pDocument;
+
+	/** Updates the line states on document modifications */
+	private final IDocumentListener pDocumentListener = new IDocumentListener() {
+
+		@Override
+		public void documentAboutToBeChanged(final DocumentEvent aEvent) {
+			storePendingEvent(aEvent);
+		}
+
+		@Override
+		public void documentChanged(final DocumentEvent aEvent) {
+			applyPendingEvent();
+		}
+	};
+
+	/** True if the next damage comes from a document modification */
+	private boolean pDocumentDamage;
+
+	/** First line modified by the pending event */
+	private int pEventFirstLine;
+
+	/** Last line modified by the pending event, before the modification */
+	private int pEventLastLine;
+
+	/** Number of lines in the states table */
+	private int pLineCount;
+
+	/** Line state flags */
+	private byte[] pLineFlags = new byte[0];
+
+	/**
+	 * Last line read by the scanner for the tokens beginning before the end of
+	 * each line, since the partition start
+	 */
+	private int[] pLineReadEnds = new int[0];
+
+	/** Partition type of each line when it was highlighted, null if unknown */
+	private String[] pLineTypes = new String[0];
+
+	/** Partition of the last line, to avoid a look up per line */
+	private ITypedRegion pPartition;
+
+	/** Document event not yet applied to the line states */
+	private DocumentEvent pPendingEvent;
+
+	/**
+	 * Notes the kind of damage the reconciler will compute. Registered before
+	 * the reconciler internal listener, to be notified first.
+	 */
+	private final ITextListener pTextListener = new ITextListener() {
+
+		@Override
+		public void textChanged(final TextEvent aEvent) {
+			applyPendingEvent();
+			pDocumentDamage = aEvent.getDocumentEvent() != null;
+		}
+	};
+
+	/** The text viewer */
+	private ITextViewer pViewer;
+
+	/**
+	 * Moves the line states according to the pending document event, if any
+	 */
+	private void applyPendingEvent() {
+
+		if (pPendingEvent == null) {
+			return;
+		}
+
+		final DocumentEvent event = pPendingEvent;
+		pPendingEvent = null;
+
+		final String text = event.getText();
+		final int textLength = text == null ? 0 : text.length();
+
+		try {
+			final int newLastLine = pDocument.getLineOfOffset(event.getOffset()
+					+ textLength);
+
+			replaceLines(pEventFirstLine, pEventLastLine - pEventFirstLine + 1,
+					newLastLine - pEventFirstLine + 1);
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error updating the highlighted lines", ex);
+			resetLineStates();
+		}
+	}
+
+	/**
+	 * Only computes the presentation of the lines whose tokens changed, if the
+	 * damage comes from a document modification.
+	 * 
+	 * @see org.eclipse.jface.text.presentation.PresentationReconciler#createPresentation(org.eclipse.jface.text.IRegion,
+	 *      org.eclipse.jface.text.IDocument)
+	 */
+	@Override
+	protected TextPresentation createPresentation(final IRegion aDamage,
+			final IDocument aDocument) {
+
+		final boolean documentDamage = pDocumentDamage;
+		pDocumentDamage = false;
+
+		if (aDocument != pDocument || pViewer == null) {
+			return super.createPresentation(aDamage, aDocument);
+		}
+
+		if (pLineCount != aDocument.getNumberOfLines()) {
+			// Missed a modification
+			resetLineStates();
+		}
+
+		final int damageStart = aDamage.getOffset();
+		final int damageEnd = damageStart + aDamage.getLength();
+		final List<TextPresentation> presentations = new ArrayList<TextPresentation>();
+		pPartition = null;
+
+		try {
+			final int lastLine = aDocument.getLineOfOffset(damageEnd);
+			final int endLine = aDocument.getLineOfOffset(Math.max(
+					damageStart, damageEnd - 1)) + 1;
+			int line = aDocument.getLineOfOffset(damageStart);
+			int rescannedLine = -1;
+
+			if (documentDamage) {
+				// Previous lines whose scan read the modified ones
+				while (line > 0 && pLineTypes[line - 1] == null) {
+					line--;
+				}
+			}
+
+			while (line <= lastLine) {
+
+				final int lineStart = aDocument.getLineOffset(line);
+				if (lineStart >= damageEnd && lineStart > damageStart) {
+					break;
+				}
+
+				ITypedRegion partition = getLinePartition(line);
+				if (partition == null) {
+					// Line shared by partitions : the last one is scanned from
+					// its start, which is in the line
+					partition = TextUtilities.getPartition(aDocument,
+							getDocumentPartitioning(), lineStart
+									+ aDocument.getLineLength(line) - 1, false);
+
+					presentations.add(super.createPresentation(new Region(
+							lineStart, partition.getOffset() - lineStart),
+							aDocument));
+
+					pPartition = partition;
+					line = presentLines(line, partition, line + 1,
+							documentDamage, presentations);
+					continue;
+				}
+
+				if (documentDamage && isClean(line, partition)) {
+					line++;
+					continue;
+				}
+
+				if (documentDamage) {
+					final int readLine = getFirstReadingLine(line, partition);
+					if (readLine < line && line > rescannedLine) {
+						// The previous lines were scanned up to the old
+						// partition boundary
+						rescannedLine = line;
+						forgetLines(readLine, line - 1);
+						line = readLine;
+						continue;
+					}
+
+					line = presentLines(line, partition, line + 1, true,
+							presentations);
+
+				} else {
+					line = presentLines(line, partition, endLine, false,
+							presentations);
+				}
+			}
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error computing the damaged lines", ex);
+			resetLineStates();
+			return super.createPresentation(aDamage, aDocument);
+		}
+
+		if (presentations.isEmpty()) {
+			return null;
+		}
+
+		// The reconciler applies one presentation per damage
+		final int last = presentations.size() - 1;
+		for (int i = 0; i < last; i++) {
+			pViewer.changeTextPresentation(presentations.get(i), false);
+		}
+
+		return presentations.get(last);
+	}
+
+	/**
+	 * Forgets the states of the given lines
+	 * 
+	 * @param aFirstLine
+	 *            First line
+	 * @param aLastLine
+	 *            Last line (included)
+	 */
+	private void forgetLines(final int aFirstLine, final int aLastLine) {
+		Arrays.fill(pLineTypes, aFirstLine,
+				Math.min(aLastLine + 1, pLineCount), null);
+	}
+
+	/**
+	 * Retrieves the first of the lines whose scan read the given one, if a
+	 * partition now begins or doesn't begin anymore at the start of the line
+	 * 
+	 * @param aLine
+	 *            A line index
+	 * @param aPartition
+	 *            The partition containing the line
+	 * @return The first line to scan again, the given line if the partition
+	 *         boundary didn't move
+	 * @throws BadLocationException
+	 *             Invalid line
+	 */
+	private int getFirstReadingLine(final int aLine,
+			final ITypedRegion aPartition) throws BadLocationException {
+
+		final boolean partitionStart = aPartition.getOffset() == pDocument
+				.getLineOffset(aLine);
+
+		if (partitionStart == ((pLineFlags[aLine] & FLAG_PARTITION_START) != 0)) {
+			return aLine;
+		}
+
+		int line = aLine;
+		while (line > 0 && pLineReadEnds[line - 1] >= aLine) {
+			line--;
+		}
+
+		return line;
+	}
+
+	/**
+	 * Retrieves the partition containing the given line
+	 * 
+	 * @param aLine
+	 *            A line index
+	 * @return The partition of the line, null if the line is covered by more
+	 *         than one partition
+	 * @throws BadLocationException
+	 *             Invalid line
+	 */
+	private ITypedRegion getLinePartition(final int aLine)
+			throws BadLocationException {
+
+		final int lineStart = pDocument.getLineOffset(aLine);
+		final int lineEnd = lineStart + pDocument.getLineLength(aLine);
+
+		if (pPartition == null
+				|| lineStart < pPartition.getOffset()
+				|| lineStart >= pPartition.getOffset()
+						+ pPartition.getLength()) {
+
+			pPartition = TextUtilities.getPartition(pDocument,
+					getDocumentPartitioning(), lineStart, false);
+		}
+
+		if (pPartition.getOffset() > lineStart
+				|| pPartition.getOffset() + pPartition.getLength() < lineEnd) {
+			return null;
+		}
+
+		return pPartition;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.presentation.PresentationReconciler#install(org
+	 * .eclipse.jface.text.ITextViewer)
+	 */
+	@Override
+	public void install(final ITextViewer aViewer) {
+
+		// Must be notified before the reconciler internal listener
+		pViewer = aViewer;
+		pViewer.addTextListener(pTextListener);
+
+		super.install(aViewer);
+	}
+
+	/**
+	 * Tests if the given line is highlighted as a line of the given partition
+	 * 
+	 * @param aLine
+	 *            A line index
+	 * @param aPartition
+	 *            The partition containing the line
+	 * @return True if the line was highlighted with the given partition scanner
+	 * @throws BadLocationException
+	 *             Invalid line
+	 */
+	private boolean isClean(final int aLine, final ITypedRegion aPartition)
+			throws BadLocationException {
+
+		if (!aPartition.getType().equals(pLineTypes[aLine])) {
+			return false;
+		}
+
+		final boolean partitionStart = aPartition.getOffset() == pDocument
+				.getLineOffset(aLine);
+
+		return partitionStart == ((pLineFlags[aLine] & FLAG_PARTITION_START) != 0);
+	}
+
+	/**
+	 * Highlights the lines of a partition, from the last valid line state
+	 * before the given line, and stores their new states
+	 * 
+	 * @param aLine
+	 *            First damaged line
+	 * @param aPartition
+	 *            The partition containing the line
+	 * @param aMinEndLine
+	 *            Line where the highlighting can stop at the earliest
+	 * @param aIncremental
+	 *            If true, the highlighting begins at the last valid line state
+	 *            and stops when the old states are valid again, else it begins
+	 *            at the given line and stops at the first token boundary after
+	 *            the minimum end line
+	 * @param aPresentations
+	 *            The presentations to apply
+	 * @return The line following the highlighted ones
+	 * @throws BadLocationException
+	 *             Invalid line
+	 */
+	private int presentLines(final int aLine, final ITypedRegion aPartition,
+			final int aMinEndLine, final boolean aIncremental,
+			final List<TextPresentation> aPresentations)
+			throws BadLocationException {
+
+		final int partitionStart = aPartition.getOffset();
+		final int partitionEnd = partitionStart + aPartition.getLength();
+		final int partitionFirstLine = pDocument
+				.getLineOfOffset(partitionStart);
+		final int partitionEndLine = pDocument.getLineOfOffset(partitionEnd);
+		final String type = aPartition.getType();
+
+		final IPresentationRepairer repairer = getRepairer(type);
+		if (!(repairer instanceof RestDamagerRepairer)) {
+			// Highlight the end of the partition, which depends on its end
+			final int start = pDocument.getLineOffset(aLine);
+			aPresentations.add(super.createPresentation(new Region(start,
+					partitionEnd - start), pDocument));
+
+			final int endLine = partitionEnd == pDocument.getLength() ? pLineCount
+					: partitionEndLine;
+
+			for (int i = aLine; i < endLine; i++) {
+				storeLineState(i, type, i == aLine, i == partitionFirstLine
+						&& start == partitionStart);
+				pLineReadEnds[i] = partitionEndLine;
+			}
+
+			return Math.max(endLine, aLine + 1);
+		}
+
+		// Find the last line start where the scan can begin
+		int line = aLine;
+		if (aIncremental) {
+			while (line > partitionFirstLine
+					&& ((pLineFlags[line] & FLAG_BOUNDARY) == 0
+							|| !isClean(line - 1, aPartition) || pLineReadEnds[line - 1] >= aLine)) {
+				line--;
+			}
+		}
+
+		final RestDamagerRepairer damagerRepairer = (RestDamagerRepairer) repairer;
+		final ITokenScanner scanner = damagerRepairer.getScanner();
+
+		final int scanStart = Math.max(partitionStart,
+				pDocument.getLineOffset(line));
+		scanner.setRange(pDocument, scanStart, partitionEnd - scanStart);
+
+		// Last line read since the partition start
+		int readEndLine = line > partitionFirstLine ? pLineReadEnds[line - 1]
+				: -1;
+		int readEnd = scanStart;
+
+		storeLineState(line, type, true, scanStart == partitionStart);
+		int nextLineStart = line + 1 < pLineCount ? pDocument
+				.getLineOffset(line + 1) : Integer.MAX_VALUE;
+
+		final TextPresentation presentation = new TextPresentation();
+		TextAttribute lastAttribute = null;
+		int lastStart = scanStart;
+		int lastLength = 0;
+
+		IToken token;
+		while (!(token = scanner.nextToken()).isEOF()) {
+
+			final int tokenOffset = scanner.getTokenOffset();
+
+			// Store the states of the lines ended before the token
+			while (nextLineStart <= tokenOffset) {
+
+				if (readEnd > scanStart) {
+					readEndLine = Math.max(readEndLine,
+							pDocument.getLineOfOffset(readEnd - 1));
+				}
+				pLineReadEnds[line] = readEndLine;
+
+				line++;
+				nextLineStart = line + 1 < pLineCount ? pDocument
+						.getLineOffset(line + 1) : Integer.MAX_VALUE;
+
+				final boolean boundary = pDocument.getLineOffset(line) == tokenOffset;
+
+				if (boundary
+						&& line >= aMinEndLine
+						&& (!aIncremental || (pLineFlags[line] & FLAG_BOUNDARY) != 0
+								&& isClean(line, aPartition))) {
+
+					// The following lines are valid
+					if (lastLength != 0) {
+						damagerRepairer.addRange(presentation, lastStart,
+								lastLength, lastAttribute);
+					}
+
+					if (!presentation.isEmpty()) {
+						aPresentations.add(presentation);
+					}
+
+					for (int i = line; i < partitionEndLine
+							&& pLineReadEnds[i] < readEndLine; i++) {
+						pLineReadEnds[i] = readEndLine;
+					}
+
+					return line;
+				}
+
+				storeLineState(line, type, boundary, false);
+			}
+
+			if (scanner instanceof AbstractRuleBasedScanner) {
+				readEnd = ((AbstractRuleBasedScanner) scanner).getReadEnd();
+			} else {
+				readEnd = tokenOffset + scanner.getTokenLength();
+			}
+
+			// Merge the tokens with the same attribute
+			final TextAttribute attribute = damagerRepairer
+					.getTokenTextAttribute(token);
+
+			if (lastAttribute != null && lastAttribute.equals(attribute)) {
+				lastLength += scanner.getTokenLength();
+
+			} else {
+				if (lastLength != 0) {
+					damagerRepairer.addRange(presentation, lastStart,
+							lastLength, lastAttribute);
+				}
+
+				lastAttribute = attribute;
+				lastStart = tokenOffset;
+				lastLength = scanner.getTokenLength();
+			}
+		}
+
+		if (lastLength != 0) {
+			damagerRepairer.addRange(presentation, lastStart, lastLength,
+					lastAttribute);
+		}
+
+		if (!presentation.isEmpty()) {
+			aPresentations.add(presentation);
+		}
+
+		// End of the partition reached : its lines depend on its end
+		readEndLine = Math.max(readEndLine, partitionEndLine);
+
+		while (nextLineStart < partitionEnd) {
+			pLineReadEnds[line] = readEndLine;
+
+			line++;
+			nextLineStart = line + 1 < pLineCount ? pDocument
+					.getLineOffset(line + 1) : Integer.MAX_VALUE;
+
+			storeLineState(line, type, false, false);
+		}
+
+		pLineReadEnds[line] = readEndLine;
+
+		final int lineEnd = nextLineStart != Integer.MAX_VALUE ? nextLineStart
+				: pDocument.getLength();
+
+		if (partitionEnd < lineEnd) {
+			// The line is shared with the next partition
+			pLineTypes[line] = null;
+			return line;
+		}
+
+		return line + 1;
+	}
+
+	/**
+	 * Replaces the states of the modified lines by unknown ones
+	 * 
+	 * @param aFirstLine
+	 *            First modified line
+	 * @param aNbOldLines
+	 *            Number of lines replaced
+	 * @param aNbNewLines
+	 *            Number of new lines
+	 */
+	private void replaceLines(final int aFirstLine, final int aNbOldLines,
+			final int aNbNewLines) {
+
+		final int oldEnd = aFirstLine + aNbOldLines;
+		final int newEnd = aFirstLine + aNbNewLines;
+		final int nbMovedLines = pLineCount - oldEnd;
+		final int delta = newEnd - oldEnd;
+
+		if (delta != 0) {
+			final int newCount = newEnd + nbMovedLines;
+			if (newCount > pLineTypes.length) {
+				final int capacity = Math.max(newCount,
+						pLineTypes.length * 3 / 2);
+
+				pLineTypes = Arrays.copyOf(pLineTypes, capacity);
+				pLineFlags = Arrays.copyOf(pLineFlags, capacity);
+				pLineReadEnds = Arrays.copyOf(pLineReadEnds, capacity);
+			}
+
+			System.arraycopy(pLineTypes, oldEnd, pLineTypes, newEnd,
+					nbMovedLines);
+			System.arraycopy(pLineFlags, oldEnd, pLineFlags, newEnd,
+					nbMovedLines);
+			System.arraycopy(pLineReadEnds, oldEnd, pLineReadEnds, newEnd,
+					nbMovedLines);
+
+			if (newCount < pLineCount) {
+				Arrays.fill(pLineTypes, newCount, pLineCount, null);
+			}
+
+			pLineCount = newCount;
+
+			for (int i = newEnd; i < pLineCount; i++) {
+				pLineReadEnds[i] += delta;
+			}
+		}
+
+		// The start of the first modified line is kept
+		Arrays.fill(pLineTypes, aFirstLine, newEnd, null);
+		Arrays.fill(pLineFlags, aFirstLine + 1, newEnd, (byte) 0);
+
+		// Lines whose scan read the modified ones
+		for (int i = aFirstLine - 1; i >= 0 && pLineReadEnds[i] >= aFirstLine; i--) {
+			pLineTypes[i] = null;
+		}
+	}
+
+	/**
+	 * Forgets the state of all lines of the document
+	 */
+	private void resetLineStates() {
+
+		pPendingEvent = null;
+		pLineCount = pDocument == null ? 0 : pDocument.getNumberOfLines();
+		pLineTypes = new String[pLineCount];
+		pLineFlags = new byte[pLineCount];
+		pLineReadEnds = new int[pLineCount];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.presentation.PresentationReconciler#setDocumentToDamagers
+	 * (org.eclipse.jface.text.IDocument)
+	 */
+	@Override
+	protected void setDocumentToDamagers(final IDocument aDocument) {
+		super.setDocumentToDamagers(aDocument);
+
+		if (pDocument != aDocument) {
+			if (pDocument != null) {
+				pDocument.removeDocumentListener(pDocumentListener);
+			}
+
+			pDocument = aDocument;
+
+			if (pDocument != null) {
+				pDocument.addDocumentListener(pDocumentListener);
+			}
+		}
+
+		pDocumentDamage = false;
+		resetLineStates();
+	}
+
+	/**
+	 * Stores the state of a line reached by a scan
+	 * 
+	 * @param aLine
+	 *            A line index
+	 * @param aType
+	 *            Partition type of the line
+	 * @param aBoundary
+	 *            True if a token begins at the line start
+	 * @param aPartitionStart
+	 *            True if the partition begins at the line start
+	 */
+	private void storeLineState(final int aLine, final String aType,
+			final boolean aBoundary, final boolean aPartitionStart) {
+
+		byte flags = 0;
+		if (aBoundary) {
+			flags |= FLAG_BOUNDARY;
+		}
+		if (aPartitionStart) {
+			flags |= FLAG_PARTITION_START;
+		}
+
+		pLineTypes[aLine] = aType;
+		pLineFlags[aLine] = flags;
+	}
+
+	/**
+	 * Stores the lines modified by the given event, before the modification
+	 * 
+	 * @param aEvent
+	 *            A document event
+	 */
+	private void storePendingEvent(final DocumentEvent aEvent) {
+
+		// The previous event must have been applied
+		applyPendingEvent();
+
+		try {
+			pEventFirstLine = pDocument.getLineOfOffset(aEvent.getOffset());
+			pEventLastLine = pDocument.getLineOfOffset(aEvent.getOffset()
+					+ aEvent.getLength());
+			pPendingEvent = aEvent;
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error updating the highlighted lines", ex);
+			resetLineStates();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.presentation.PresentationReconciler#uninstall()
+	 */
+	@Override
+	public void uninstall() {
+
+		if (pViewer != null) {
+			pViewer.removeTextListener(pTextListener);
+			pViewer = null;
+		}
+
+		if (pDocument != null) {
+			pDocument.removeDocumentListener(pDocumentListener);
+			pDocument = null;
+		}
+
+		resetLineStates();
+		super.uninstall();
+	}
+}
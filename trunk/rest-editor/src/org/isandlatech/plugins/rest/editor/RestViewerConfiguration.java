@@ -36,9 +36,9 @@ import org.eclipse.jface.text.presentation.PresentationReconciler;
 import org.eclipse.jface.text.reconciler.IReconciler;
 import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
 import org.eclipse.jface.text.reconciler.MonoReconciler;
-import org.eclipse.jface.text.rules.DefaultDamagerRepairer;
 import org.eclipse.jface.text.rules.ITokenScanner;
 import org.eclipse.jface.text.source.ISourceViewer;
+import org.eclipse.jface.text.source.projection.ProjectionAnnotationModel;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.ui.editors.text.TextSourceViewerConfiguration;
 import org.eclipse.ui.texteditor.spelling.ISpellingEngine;
@@ -51,8 +51,10 @@ import org.isandlatech.plugins.rest.editor.formatters.SectionFormattingStrategy;
 import org.isandlatech.plugins.rest.editor.linewrap.HardLineWrapAutoEdit;
 import org.isandlatech.plugins.rest.editor.linewrap.LineWrapUtil;
 import org.isandlatech.plugins.rest.editor.linewrap.LineWrapUtil.LineWrapMode;
+import org.isandlatech.plugins.rest.editor.linewrap.SoftLineWrap;
 import org.isandlatech.plugins.rest.editor.outline.OutlineUtil;
 import org.isandlatech.plugins.rest.editor.outline.RestContentOutlinePage;
+import org.isandlatech.plugins.rest.editor.outline.SectionModel;
 import org.isandlatech.plugins.rest.editor.providers.RuleProvider;
 import org.isandlatech.plugins.rest.editor.providers.TokenProvider;
 import org.isandlatech.plugins.rest.editor.scanners.RestLiteralBlockScanner;
@@ -96,12 +98,19 @@ public class RestViewerConfiguration extends TextSourceViewerConfiguration {
 	/** Parent editor */
 	private final RestEditor pEditor;
 
+	/** Folding regions provider */
+	private final RestFoldingStructureProvider pFoldingProvider = new RestFoldingStructureProvider();
+
 	/** Preference store */
 	private IPreferenceStore pPreferenceStore = null;
 
 	/** Scanner rule provider */
 	private RuleProvider pRuleProvider = null;
 
+	/** Soft line wrapper, not modifying the document */
+	private final SoftLineWrap pSoftLineWrap = new SoftLineWrap(
+			RestPartitionScanner.PARTITIONING);
+
 	/** Spell check text hover */
 	private RestTextHover pSpellCheckHover = null;
 
@@ -120,6 +129,14 @@ public class RestViewerConfiguration extends TextSourceViewerConfiguration {
 		pPreferenceStore = RestPlugin.getDefault().getPreferenceStore();
 	}
 
+	/**
+	 * Releases the document listeners of the configuration
+	 */
+	public void dispose() {
+		pFoldingProvider.setDocument(null, null);
+		pSoftLineWrap.uninstall();
+	}
+
 	@Override
 	public IAutoEditStrategy[] getAutoEditStrategies(
 			final ISourceViewer aSourceViewer, final String aContentType) {
@@ -137,8 +154,8 @@ public class RestViewerConfiguration extends TextSourceViewerConfiguration {
 		List<IAutoEditStrategy> strategies = new ArrayList<IAutoEditStrategy>();
 		strategies.add(pAutoEditIndent);
 
-		// Only enable line wrapping in "default text"
-		if (LineWrapUtil.get().isWrappingEnabled()
+		// Only enable hard line wrapping in "default text"
+		if (LineWrapUtil.get().isActiveMode(LineWrapMode.HARD)
 				&& IDocument.DEFAULT_CONTENT_TYPE.equals(aContentType)) {
 			strategies.add(pAutoEditLineWrap);
 		}
@@ -326,34 +343,40 @@ public class RestViewerConfiguration extends TextSourceViewerConfiguration {
 				pRuleProvider);
 
 		// Reconciler
-		PresentationReconciler reconciler = new PresentationReconciler();
+		PresentationReconciler reconciler;
+		if (isLargeFileMode()) {
+			// Only highlight the visible lines
+			reconciler = new ViewportPresentationReconciler();
+		} else {
+			reconciler = new RestPresentationReconciler();
+		}
+
 		reconciler
 				.setDocumentPartitioning(getConfiguredDocumentPartitioning(aSourceViewer));
 
 		// Text data
-		DefaultDamagerRepairer dr = new DefaultDamagerRepairer(
-				getDocumentScanner());
+		RestDamagerRepairer dr = new RestDamagerRepairer(getDocumentScanner());
 
 		reconciler.setDamager(dr, IDocument.DEFAULT_CONTENT_TYPE);
 		reconciler.setRepairer(dr, IDocument.DEFAULT_CONTENT_TYPE);
 
 		// Literal blocks
-		dr = new DefaultDamagerRepairer(literalBlockScanner);
+		dr = new RestDamagerRepairer(literalBlockScanner);
 		reconciler.setDamager(dr, RestPartitionScanner.LITERAL_BLOCK);
 		reconciler.setRepairer(dr, RestPartitionScanner.LITERAL_BLOCK);
 
 		// Section blocks
-		dr = new DefaultDamagerRepairer(sectionBlockScanner);
+		dr = new RestDamagerRepairer(sectionBlockScanner);
 		reconciler.setDamager(dr, RestPartitionScanner.SECTION_BLOCK);
 		reconciler.setRepairer(dr, RestPartitionScanner.SECTION_BLOCK);
 
 		// Source blocks
-		dr = new DefaultDamagerRepairer(sourceBlockScanner);
+		dr = new RestDamagerRepairer(sourceBlockScanner);
 		reconciler.setDamager(dr, RestPartitionScanner.SOURCE_BLOCK);
 		reconciler.setRepairer(dr, RestPartitionScanner.SOURCE_BLOCK);
 
 		// Table blocks
-		dr = new DefaultDamagerRepairer(tableBlockScanner);
+		dr = new RestDamagerRepairer(tableBlockScanner);
 		reconciler.setDamager(dr, RestPartitionScanner.GRID_TABLE_BLOCK);
 		reconciler.setRepairer(dr, RestPartitionScanner.GRID_TABLE_BLOCK);
 
@@ -363,6 +386,11 @@ public class RestViewerConfiguration extends TextSourceViewerConfiguration {
 	@Override
 	public IReconciler getReconciler(final ISourceViewer aSourceViewer) {
 
+		if (isLargeFileMode()) {
+			// No spell checking for large files
+			return null;
+		}
+
 		// Uses the preferences to select the spell engine
 		SpellingService selectedService = new SpellingService(pPreferenceStore);
 
@@ -383,6 +411,11 @@ public class RestViewerConfiguration extends TextSourceViewerConfiguration {
 	public ITextHover getTextHover(final ISourceViewer aSourceViewer,
 			final String aContentType) {
 
+		if (isLargeFileMode()) {
+			// The hover is only used for spell checking
+			return null;
+		}
+
 		boolean engineEnabled = pPreferenceStore
 				.getBoolean(SpellingService.PREFERENCE_SPELLING_ENABLED);
 
@@ -434,9 +467,16 @@ public class RestViewerConfiguration extends TextSourceViewerConfiguration {
 	}
 
 	/**
-	 * On-save operations :
+	 * Tests if the parent editor is in large file mode
 	 * 
-	 * * Un-wrapping if needed
+	 * @return True if the edited document is too large for a full support
+	 */
+	private boolean isLargeFileMode() {
+		return pEditor != null && pEditor.isLargeFileMode();
+	}
+
+	/**
+	 * On-save operations :
 	 * 
 	 * * Auto section markers normalization
 	 * 
@@ -461,11 +501,15 @@ public class RestViewerConfiguration extends TextSourceViewerConfiguration {
 
 			if (outlinePage != null) {
 
-				// Don't forget to refresh the tree !
-				outlinePage.update();
+				// Section offsets follow the document modifications : only
+				// parse the modified sections instead of rebuilding the tree
+				SectionModel model = outlinePage.getContentProvider()
+						.getModel();
 
-				OutlineUtil.normalizeSectionsMarker(pEditor.getOutlinePage()
-						.getContentProvider().getRoot());
+				if (model.getDocument() == document) {
+					model.reconcile();
+					OutlineUtil.normalizeSectionsMarker(model.getRoot());
+				}
 			}
 		}
 
@@ -489,44 +533,74 @@ public class RestViewerConfiguration extends TextSourceViewerConfiguration {
 			aSourceViewer
 					.setSelectedRange(currentLocation.x, currentLocation.y);
 		}
-
-		if (LineWrapUtil.get().isActiveMode(LineWrapMode.SOFT)) {
-			// Soft wrap mode : remove all added end-of-line
-
-			pAutoEditLineWrap.unregisterListener();
-			pAutoEditLineWrap.removeWrapping();
-		}
 	}
 
 	/**
-	 * Post-save operations : re-wrapping if needed
+	 * Sets the document associated to the viewer configuration.
 	 * 
-	 * @param aSourceViewer
-	 *            The editor source viewer
+	 * Updates the hard line wrapper, if needed. The whole document is not
+	 * wrapped in large file mode.
+	 * 
+	 * @param aDocument
+	 *            Document associated to the source viewer
 	 */
-	public void postEditorPerformSave(final ISourceViewer aSourceViewer) {
+	public void setDocument(final IDocument aDocument) {
 
-		final IDocument document = aSourceViewer.getDocument();
+		if (pAutoEditLineWrap != null
+				&& LineWrapUtil.get().isActiveMode(LineWrapMode.HARD)) {
+			pAutoEditLineWrap.registerListener(aDocument);
 
-		if (LineWrapUtil.get().isActiveMode(LineWrapMode.SOFT)) {
-			pAutoEditLineWrap.registerListener(document);
-			pAutoEditLineWrap.wrapWholeDocument();
+			if (!isLargeFileMode()) {
+				// Wrapping a large document would freeze the editor
+				pAutoEditLineWrap.wrapWholeDocument();
+			}
 		}
 	}
 
 	/**
-	 * Sets the document associated to the viewer configuration.
-	 * 
-	 * Updates the line wrapper, if needed.
+	 * Sets the document and the annotation model used to compute the folding
+	 * regions. Folding is disabled in large file mode.
 	 * 
 	 * @param aDocument
 	 *            Document associated to the source viewer
+	 * @param aProjectionModel
+	 *            Folding annotations model of the source viewer, can be null
 	 */
-	public void setDocument(final IDocument aDocument) {
+	public void setFoldingDocument(final IDocument aDocument,
+			final ProjectionAnnotationModel aProjectionModel) {
 
-		if (pAutoEditLineWrap != null && LineWrapUtil.get().isWrappingEnabled()) {
-			pAutoEditLineWrap.registerListener(aDocument);
-			pAutoEditLineWrap.wrapWholeDocument();
+		if (isLargeFileMode()) {
+			pFoldingProvider.setDocument(null, null);
+		} else {
+			pFoldingProvider.setDocument(aDocument, aProjectionModel);
+		}
+	}
+
+	/**
+	 * Installs the soft line wrapper on the given viewer if the soft wrap mode
+	 * is active, uninstalls it otherwise. Lines are not wrapped in large file
+	 * mode.
+	 * 
+	 * @param aSourceViewer
+	 *            The editor source viewer, can be null
+	 */
+	public void updateSoftWrap(final ISourceViewer aSourceViewer) {
+
+		if (aSourceViewer != null && !isLargeFileMode()
+				&& LineWrapUtil.get().isActiveMode(LineWrapMode.SOFT)) {
+			pSoftLineWrap.install(aSourceViewer, LineWrapUtil.get()
+					.getMaxLineLength());
+
+		} else {
+			pSoftLineWrap.uninstall();
 		}
 	}
+
+	/**
+	 * Computes again the folding regions of the document parts modified since
+	 * the last update
+	 */
+	public void updateFolding() {
+		pFoldingProvider.update();
+	}
 }
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITextListener;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.ITextViewerExtension2;
+import org.eclipse.jface.text.IViewportListener;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextEvent;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.presentation.PresentationReconciler;
+import org.isandlatech.plugins.rest.RestPlugin;
+
+/**
+ * Presentation reconciler used in large file mode : only the lines around the
+ * viewport are highlighted. Lines are highlighted when they become visible.
+ * 
+ * @author Thomas Calmant
+ */
+public class ViewportPresentationReconciler extends PresentationReconciler {
+
+	/** Number of lines highlighted before and after the visible ones */
+	public static final int VIEWPORT_MARGIN_LINES = 100;
+
+	/** First highlighted line, -1 if unknown */
+	private int pPresentedFirstLine = -1;
+
+	/** Last highlighted line, -1 if unknown */
+	private int pPresentedLastLine = -1;
+
+	/** Forgets the highlighted lines when the document changes */
+	private final ITextListener pTextListener = new ITextListener() {
+
+		@Override
+		public void textChanged(final TextEvent aEvent) {
+
+			if (aEvent.getDocumentEvent() != null) {
+				// Lines moved
+				pPresentedFirstLine = -1;
+				pPresentedLastLine = -1;
+			}
+		}
+	};
+
+	/** The text viewer */
+	private ITextViewer pViewer;
+
+	/** Highlights the lines becoming visible */
+	private final IViewportListener pViewportListener = new IViewportListener() {
+
+		@Override
+		public void viewportChanged(final int aVerticalOffset) {
+			presentVisibleLines();
+		}
+	};
+
+	/**
+	 * Only computes the presentation of the damaged lines around the viewport
+	 * 
+	 * @see org.eclipse.jface.text.presentation.PresentationReconciler#createPresentation(org.eclipse.jface.text.IRegion,
+	 *      org.eclipse.jface.text.IDocument)
+	 */
+	@Override
+	protected TextPresentation createPresentation(final IRegion aDamage,
+			final IDocument aDocument) {
+
+		final IRegion visibleRegion = getVisibleRegion(aDocument);
+		if (visibleRegion == null) {
+			return super.createPresentation(aDamage, aDocument);
+		}
+
+		final int visibleEnd = visibleRegion.getOffset()
+				+ visibleRegion.getLength();
+		final int damageEnd = aDamage.getOffset() + aDamage.getLength();
+
+		final int start = Math.max(aDamage.getOffset(),
+				visibleRegion.getOffset());
+		final int end = Math.min(damageEnd, visibleEnd);
+
+		if (end <= start) {
+			// Not visible
+			return null;
+		}
+
+		if (start == visibleRegion.getOffset() && end == visibleEnd) {
+			// All visible lines will be highlighted
+			storePresentedLines();
+		}
+
+		return super.createPresentation(new Region(start, end - start),
+				aDocument);
+	}
+
+	/**
+	 * Computes the region covering the visible lines and their margin
+	 * 
+	 * @param aDocument
+	 *            The viewer document
+	 * @return The visible region, null if it can't be computed
+	 */
+	private IRegion getVisibleRegion(final IDocument aDocument) {
+
+		if (pViewer == null || aDocument == null) {
+			return null;
+		}
+
+		final int topLine = pViewer.getTopIndex();
+		final int bottomLine = pViewer.getBottomIndex();
+		if (topLine < 0 || bottomLine < 0) {
+			return null;
+		}
+
+		try {
+			final int firstLine = Math.max(0, topLine - VIEWPORT_MARGIN_LINES);
+			final int lastLine = Math.min(aDocument.getNumberOfLines() - 1,
+					bottomLine + VIEWPORT_MARGIN_LINES);
+
+			final int offset = aDocument.getLineOffset(firstLine);
+			final int end = aDocument.getLineOffset(lastLine)
+					+ aDocument.getLineLength(lastLine);
+
+			return new Region(offset, end - offset);
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error computing the visible lines", ex);
+			return null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.presentation.PresentationReconciler#install(org
+	 * .eclipse.jface.text.ITextViewer)
+	 */
+	@Override
+	public void install(final ITextViewer aViewer) {
+		super.install(aViewer);
+
+		pViewer = aViewer;
+		pViewer.addViewportListener(pViewportListener);
+		pViewer.addTextListener(pTextListener);
+	}
+
+	/**
+	 * Highlights the visible lines, if they weren't already
+	 */
+	private void presentVisibleLines() {
+
+		if (pViewer == null || !(pViewer instanceof ITextViewerExtension2)) {
+			return;
+		}
+
+		if (pPresentedFirstLine >= 0
+				&& pViewer.getTopIndex() >= pPresentedFirstLine
+				&& pViewer.getBottomIndex() <= pPresentedLastLine) {
+			// Already highlighted
+			return;
+		}
+
+		final IRegion visibleRegion = getVisibleRegion(pViewer.getDocument());
+		if (visibleRegion != null) {
+			// Damages the visible lines : calls createPresentation()
+			((ITextViewerExtension2) pViewer).invalidateTextPresentation(
+					visibleRegion.getOffset(), visibleRegion.getLength());
+		}
+	}
+
+	/**
+	 * Stores the lines currently highlighted
+	 */
+	private void storePresentedLines() {
+
+		pPresentedFirstLine = Math.max(0, pViewer.getTopIndex()
+				- VIEWPORT_MARGIN_LINES);
+		pPresentedLastLine = pViewer.getBottomIndex() + VIEWPORT_MARGIN_LINES;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.presentation.PresentationReconciler#uninstall()
+	 */
+	@Override
+	public void uninstall() {
+
+		if (pViewer != null) {
+			pViewer.removeViewportListener(pViewportListener);
+			pViewer.removeTextListener(pTextListener);
+			pViewer = null;
+		}
+
+		pPresentedFirstLine = -1;
+		pPresentedLastLine = -1;
+
+		super.uninstall();
+	}
+}
@@ -0,0 +1,914 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.ITypedRegion;
+import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.outline.SectionIndex;
+import org.isandlatech.plugins.rest.editor.outline.SectionSnapshot;
+import org.isandlatech.plugins.rest.editor.scanners.RestDocumentPartitioner;
+import org.isandlatech.plugins.rest.editor.scanners.RestPartitionScanner;
+
+/**
+ * Structure of a ReST file content : its partition blocks and its sections.
+ * It is stored in the plug-in state location, one file per edited file, and
+ * is only used if the hash of the content it describes matches the one of
+ * the opened document.
+ * 
+ * The partitions and the outline of an unchanged file are then restored on
+ * open, without scanning the document, while a {@link StructureCacheJob}
+ * verifies them in the background.
+ * 
+ * @author Thomas Calmant
+ */
+public class StructureCache {
+
+	/** Extension of the cache files */
+	private static final String CACHE_FILE_EXTENSION = ".cache";
+
+	/** Cache files folder, in the plug-in state location */
+	private static final String CACHE_FOLDER = "structure";
+
+	/** First bytes of a cache file */
+	private static final int FORMAT_MAGIC = 0x52535443;
+
+	/** Version of the cache files format */
+	private static final int FORMAT_VERSION = 2;
+
+	/** Content hash algorithm */
+	private static final String HASH_ALGORITHM = "SHA-1";
+
+	/** Number of characters hashed at once */
+	private static final int HASH_CHUNK_LENGTH = 8192;
+
+	/** Maximum number of cache files kept */
+	private static final int MAX_CACHE_FILES = 100;
+
+	/** Maximum total size of the cache files kept, in bytes */
+	private static final long MAX_CACHE_SIZE = 16 * 1024 * 1024;
+
+	/** Extension of a cache file being written */
+	private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+	/** Structures known for the opened documents */
+	private static final Map<IDocument, StructureCache> sDocumentStructures = new WeakHashMap<IDocument, StructureCache>();
+
+	/** Modification stamps of the documents whose structure is being stored */
+	private static final Map<IDocument, Long> sPendingStores = new WeakHashMap<IDocument, Long>();
+
+	/**
+	 * Computes the structure of the given content
+	 * 
+	 * @param aContent
+	 *            A document content
+	 * @param aPartitioner
+	 *            Partitioner of a document containing the content
+	 * @param aMonitor
+	 *            Progress monitor, can be null
+	 * @return The structure of the content, null if the computation was
+	 *         canceled
+	 * @throws BadLocationException
+	 *             The partitions don't match the content
+	 */
+	public static StructureCache compute(final String aContent,
+			final RestDocumentPartitioner aPartitioner,
+			final IProgressMonitor aMonitor) throws BadLocationException {
+
+		final List<ITypedRegion> blocks = new ArrayList<ITypedRegion>();
+		final List<ITypedRegion> sectionBlocks = new ArrayList<ITypedRegion>();
+
+		final ITypedRegion[] partitions = aPartitioner.computePartitioning(0,
+				aContent.length(), false);
+
+		for (ITypedRegion partition : partitions) {
+
+			if (IDocument.DEFAULT_CONTENT_TYPE.equals(partition.getType())) {
+				continue;
+			}
+
+			blocks.add(partition);
+			if (RestPartitionScanner.SECTION_BLOCK.equals(partition
+					.getType())) {
+				sectionBlocks.add(partition);
+			}
+		}
+
+		// Lines are computed on a copy of the content
+		final SectionIndex sections = new SectionSnapshot(new Document(
+				aContent), sectionBlocks.toArray(new ITypedRegion[sectionBlocks
+				.size()]), 0, 0).parse(aMonitor);
+		if (sections == null) {
+			return null;
+		}
+
+		final int[] blockStarts = new int[blocks.size()];
+		final int[] blockEnds = new int[blocks.size()];
+		final int[] blockScanEnds = new int[blocks.size()];
+		final String[] blockTypes = new String[blocks.size()];
+
+		for (int i = 0; i < blockStarts.length; i++) {
+			final ITypedRegion block = blocks.get(i);
+			blockStarts[i] = block.getOffset();
+			blockEnds[i] = block.getOffset() + block.getLength();
+			blockScanEnds[i] = Math.max(blockEnds[i],
+					aPartitioner.getScanEnd(blockStarts[i]));
+			blockTypes[i] = block.getType();
+		}
+
+		return new StructureCache(computeHash(aContent), blockStarts,
+				blockEnds, blockScanEnds, blockTypes, sections);
+	}
+
+	/**
+	 * Computes the hash of the given content
+	 * 
+	 * @param aContent
+	 *            A document content
+	 * @return The content hash, null if the hash algorithm is not available
+	 */
+	public static byte[] computeHash(final String aContent) {
+
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+
+		} catch (NoSuchAlgorithmException e) {
+			RestPlugin.logError("Structure cache hash algorithm not found", e);
+			return null;
+		}
+
+		// Hash the UTF-16 characters, without copying the whole content
+		final char[] chars = new char[HASH_CHUNK_LENGTH];
+		final byte[] bytes = new byte[HASH_CHUNK_LENGTH * 2];
+		final int contentLength = aContent.length();
+
+		for (int offset = 0; offset < contentLength; offset += chars.length) {
+
+			final int length = Math.min(chars.length, contentLength - offset);
+			aContent.getChars(offset, offset + length, chars, 0);
+
+			for (int i = 0; i < length; i++) {
+				bytes[2 * i] = (byte) (chars[i] >> 8);
+				bytes[2 * i + 1] = (byte) chars[i];
+			}
+
+			digest.update(bytes, 0, length * 2);
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * Closes the given stream, ignoring errors
+	 * 
+	 * @param aStream
+	 *            A stream, can be null
+	 */
+	private static void closeQuietly(final Closeable aStream) {
+
+		if (aStream == null) {
+			return;
+		}
+
+		try {
+			aStream.close();
+
+		} catch (IOException e) {
+			// Nothing more to do with this stream
+		}
+	}
+
+	/**
+	 * Deletes the least recently used cache files, keeping at most
+	 * {@link #MAX_CACHE_FILES} files and {@link #MAX_CACHE_SIZE} bytes. The
+	 * most recent file is always kept.
+	 * 
+	 * @param aFolder
+	 *            Cache files folder
+	 */
+	private static void evict(final File aFolder) {
+
+		final File[] files = aFolder.listFiles();
+		if (files == null) {
+			return;
+		}
+
+		// Dates are read once, as they can be modified while sorting
+		final Map<File, Long> dates = new HashMap<File, Long>();
+		final List<File> cacheFiles = new ArrayList<File>(files.length);
+		for (File file : files) {
+			if (file.getName().endsWith(CACHE_FILE_EXTENSION)) {
+				dates.put(file, file.lastModified());
+				cacheFiles.add(file);
+			}
+		}
+
+		// Most recently used first
+		Collections.sort(cacheFiles, new Comparator<File>() {
+
+			@Override
+			public int compare(final File aFile1, final File aFile2) {
+				return dates.get(aFile2).compareTo(dates.get(aFile1));
+			}
+		});
+
+		long totalSize = 0;
+		for (int i = 0; i < cacheFiles.size(); i++) {
+
+			final File file = cacheFiles.get(i);
+			totalSize += file.length();
+
+			if (i > 0 && (i >= MAX_CACHE_FILES || totalSize > MAX_CACHE_SIZE)) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the cache file associated to the given file buffer location
+	 * 
+	 * @param aLocation
+	 *            Location of an edited file
+	 * @return The cache file, null if the plug-in is not running
+	 */
+	private static File getCacheFile(final IPath aLocation) {
+
+		final RestPlugin plugin = RestPlugin.getDefault();
+		if (plugin == null || aLocation == null) {
+			return null;
+		}
+
+		final byte[] key = computeHash(aLocation.toPortableString());
+		if (key == null) {
+			return null;
+		}
+
+		return plugin.getStateLocation().append(CACHE_FOLDER)
+				.append(toHexString(key) + CACHE_FILE_EXTENSION).toFile();
+	}
+
+	/**
+	 * Retrieves the structure of the given document, if it has not been
+	 * modified since it was restored or stored
+	 * 
+	 * @param aDocument
+	 *            An opened document
+	 * @return The document structure, null if unknown
+	 */
+	public static StructureCache getDocumentStructure(
+			final IDocument aDocument) {
+
+		final long stamp = getModificationStamp(aDocument);
+		if (stamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP) {
+			return null;
+		}
+
+		synchronized (sDocumentStructures) {
+			final StructureCache cache = sDocumentStructures.get(aDocument);
+			if (cache != null && cache.pStamp == stamp) {
+				return cache;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Retrieves the modification stamp of the given document
+	 * 
+	 * @param aDocument
+	 *            A document
+	 * @return The document modification stamp, or
+	 *         {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP}
+	 */
+	private static long getModificationStamp(final IDocument aDocument) {
+
+		if (aDocument instanceof IDocumentExtension4) {
+			return ((IDocumentExtension4) aDocument).getModificationStamp();
+		}
+
+		return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+
+	/**
+	 * Reads the cache file associated to the given file buffer location. The
+	 * cache must then be matched against the document content. A file written
+	 * in another format is deleted.
+	 * 
+	 * @param aLocation
+	 *            Location of an edited file
+	 * @return The cached structure, null if not found or invalid
+	 */
+	public static StructureCache load(final IPath aLocation) {
+
+		final File file = getCacheFile(aLocation);
+		if (file == null || !file.isFile()) {
+			return null;
+		}
+
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+
+			final StructureCache cache = read(input);
+			if (cache == null) {
+				// Written by another version of the editor
+				closeQuietly(input);
+				input = null;
+				file.delete();
+				return null;
+			}
+
+			// Keep the most recently used files on eviction
+			file.setLastModified(System.currentTimeMillis());
+			cache.pLocation = aLocation;
+			return cache;
+
+		} catch (IOException e) {
+			RestPlugin.logError("Error reading the structure cache", e);
+			closeQuietly(input);
+			input = null;
+			file.delete();
+			return null;
+
+		} finally {
+			closeQuietly(input);
+		}
+	}
+
+	/**
+	 * Reads a structure written by {@link #write(DataOutput)}
+	 * 
+	 * @param aInput
+	 *            Cache file input
+	 * @return The read structure, null if it was written in another format
+	 * @throws IOException
+	 *             Error reading the file or invalid content
+	 */
+	private static StructureCache read(final DataInput aInput)
+			throws IOException {
+
+		if (aInput.readInt() != FORMAT_MAGIC
+				|| aInput.readInt() != FORMAT_VERSION) {
+			// Written by another version of the editor
+			return null;
+		}
+
+		final byte[] hash = new byte[aInput.readUnsignedShort()];
+		aInput.readFully(hash);
+
+		final String[] types = new String[readVarInt(aInput)];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = aInput.readUTF();
+		}
+
+		// Partition blocks, stored relatively to the previous one
+		final int nbBlocks = readVarInt(aInput);
+		final int[] blockStarts = new int[nbBlocks];
+		final int[] blockEnds = new int[nbBlocks];
+		final int[] blockScanEnds = new int[nbBlocks];
+		final String[] blockTypes = new String[nbBlocks];
+
+		int previousEnd = 0;
+		for (int i = 0; i < nbBlocks; i++) {
+
+			final int typeIndex = readVarInt(aInput);
+			if (typeIndex >= types.length) {
+				throw new IOException("Invalid partition type index");
+			}
+
+			blockTypes[i] = types[typeIndex];
+			blockStarts[i] = previousEnd + readVarInt(aInput);
+			blockEnds[i] = blockStarts[i] + readVarInt(aInput);
+			blockScanEnds[i] = blockEnds[i] + readVarInt(aInput);
+			previousEnd = blockEnds[i];
+		}
+
+		// Sections, stored relatively to their block
+		final SectionIndex sections = new SectionIndex(null);
+		final int nbSections = readVarInt(aInput);
+
+		int previousBlockEnd = 0;
+		int previousLine = 0;
+		for (int row = 0; row < nbSections; row++) {
+
+			final int blockStart = previousBlockEnd + readVarInt(aInput);
+			final int blockEnd = blockStart + readVarInt(aInput);
+			final int offset = blockStart + readVarInt(aInput);
+			final int lineOffset = offset + readVarInt(aInput);
+			final int line = previousLine + readVarInt(aInput);
+
+			sections.add(blockStart, blockEnd, offset, line, lineOffset,
+					aInput.readUTF(), aInput.readChar(),
+					aInput.readBoolean());
+
+			previousBlockEnd = blockEnd;
+			previousLine = line;
+		}
+
+		return new StructureCache(hash, blockStarts, blockEnds, blockScanEnds,
+				blockTypes, sections);
+	}
+
+	/**
+	 * Reads a positive integer written by {@link #writeVarInt(DataOutput, int)}
+	 * 
+	 * @param aInput
+	 *            Cache file input
+	 * @return The read integer
+	 * @throws IOException
+	 *             Error reading the file or invalid integer
+	 */
+	private static int readVarInt(final DataInput aInput) throws IOException {
+
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+
+			final byte read = aInput.readByte();
+			value |= (read & 0x7F) << shift;
+
+			if ((read & 0x80) == 0) {
+				if (value < 0) {
+					throw new IOException("Invalid structure cache value");
+				}
+
+				return value;
+			}
+		}
+
+		throw new IOException("Invalid structure cache value");
+	}
+
+	/**
+	 * Associates a structure to a document, until the document is modified
+	 * 
+	 * @param aDocument
+	 *            An opened document
+	 * @param aCache
+	 *            Structure of the document content
+	 * @param aStamp
+	 *            Modification stamp of the document described by the structure
+	 */
+	static void register(final IDocument aDocument,
+			final StructureCache aCache, final long aStamp) {
+
+		synchronized (sDocumentStructures) {
+			aCache.pStamp = aStamp;
+			sDocumentStructures.put(aDocument, aCache);
+		}
+	}
+
+	/**
+	 * Stores the structure of the given document in its cache file, in a
+	 * background job. Does nothing if the document structure is already
+	 * known or being stored. Must be called in the UI thread.
+	 * 
+	 * @param aDocument
+	 *            A document opened in a file buffer
+	 */
+	public static void scheduleStore(final IDocument aDocument) {
+
+		if (aDocument == null || getDocumentStructure(aDocument) != null) {
+			return;
+		}
+
+		final ITextFileBuffer buffer = FileBuffers.getTextFileBufferManager()
+				.getTextFileBuffer(aDocument);
+		if (buffer == null || buffer.getLocation() == null) {
+			return;
+		}
+
+		final long stamp = getModificationStamp(aDocument);
+		synchronized (sPendingStores) {
+			final Long pendingStamp = sPendingStores.get(aDocument);
+			if (pendingStamp != null && pendingStamp.longValue() == stamp
+					&& stamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP) {
+				// Already being stored, e.g. saved then closed
+				return;
+			}
+
+			sPendingStores.put(aDocument, stamp);
+		}
+
+		// The content is partitioned again in the job
+		new StructureCacheJob(aDocument, stamp, aDocument.get(),
+				buffer.getLocation(), null).schedule();
+	}
+
+	/**
+	 * Forgets the pending store of the given document structure, if it has
+	 * not been scheduled again since
+	 * 
+	 * @param aDocument
+	 *            A document
+	 * @param aStamp
+	 *            Modification stamp of the stored document
+	 */
+	static void storeDone(final IDocument aDocument, final long aStamp) {
+
+		synchronized (sPendingStores) {
+			final Long pendingStamp = sPendingStores.get(aDocument);
+			if (pendingStamp != null && pendingStamp.longValue() == aStamp) {
+				sPendingStores.remove(aDocument);
+			}
+		}
+	}
+
+	/**
+	 * Converts the given bytes to an hexadecimal string
+	 * 
+	 * @param aBytes
+	 *            Some bytes
+	 * @return The hexadecimal representation of the bytes
+	 */
+	private static String toHexString(final byte[] aBytes) {
+
+		final StringBuilder builder = new StringBuilder(aBytes.length * 2);
+		for (byte value : aBytes) {
+			builder.append(Character.forDigit((value >> 4) & 0xF, 16));
+			builder.append(Character.forDigit(value & 0xF, 16));
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Forgets the structure associated to a document, if it is the given one
+	 * 
+	 * @param aDocument
+	 *            An opened document
+	 * @param aCache
+	 *            The structure to forget
+	 */
+	static void unregister(final IDocument aDocument,
+			final StructureCache aCache) {
+
+		synchronized (sDocumentStructures) {
+			if (sDocumentStructures.get(aDocument) == aCache) {
+				sDocumentStructures.remove(aDocument);
+			}
+		}
+	}
+
+	/**
+	 * Writes a positive integer on as few bytes as possible
+	 * 
+	 * @param aOutput
+	 *            Cache file output
+	 * @param aValue
+	 *            A positive integer
+	 * @throws IOException
+	 *             Error writing the file
+	 */
+	private static void writeVarInt(final DataOutput aOutput, final int aValue)
+			throws IOException {
+
+		int value = aValue;
+		while ((value & ~0x7F) != 0) {
+			aOutput.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		aOutput.writeByte(value);
+	}
+
+	/** Ends of the partition blocks */
+	private final int[] pBlockEnds;
+
+	/**
+	 * End of the text read to find the partition blocks, after their end if
+	 * they have been ended by their scan budget
+	 */
+	private final int[] pBlockScanEnds;
+
+	/** Offsets of the partition blocks */
+	private final int[] pBlockStarts;
+
+	/** Types of the partition blocks */
+	private final String[] pBlockTypes;
+
+	/** Hash of the described content */
+	private final byte[] pHash;
+
+	/** Location of the file described by the cache, null if unknown */
+	private IPath pLocation;
+
+	/** Sections of the content, not associated to a document */
+	private final SectionIndex pSections;
+
+	/** Modification stamp of the document described by the cache */
+	private long pStamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+
+	/**
+	 * Sets up the structure
+	 * 
+	 * @param aHash
+	 *            Hash of the described content
+	 * @param aBlockStarts
+	 *            Offsets of the partition blocks
+	 * @param aBlockEnds
+	 *            Ends of the partition blocks
+	 * @param aBlockScanEnds
+	 *            End of the text read to find the partition blocks
+	 * @param aBlockTypes
+	 *            Types of the partition blocks
+	 * @param aSections
+	 *            Sections of the content
+	 */
+	private StructureCache(final byte[] aHash, final int[] aBlockStarts,
+			final int[] aBlockEnds, final int[] aBlockScanEnds,
+			final String[] aBlockTypes, final SectionIndex aSections) {
+
+		pHash = aHash;
+		pBlockStarts = aBlockStarts;
+		pBlockEnds = aBlockEnds;
+		pBlockScanEnds = aBlockScanEnds;
+		pBlockTypes = aBlockTypes;
+		pSections = aSections;
+	}
+
+	/**
+	 * Creates a copy of the cached sections, which can be given to a section
+	 * model. The hierarchy columns are not computed.
+	 * 
+	 * @return A new section index
+	 */
+	public SectionIndex createSections() {
+
+		final SectionIndex sections = new SectionIndex(null);
+		for (int row = 0; row < pSections.size(); row++) {
+			sections.add(pSections.getBlockStart(row),
+					pSections.getBlockEnd(row), pSections.getOffset(row),
+					pSections.getLine(row), pSections.getLineOffset(row),
+					pSections.getTitle(row), pSections.getMarker(row),
+					pSections.isUpperlined(row));
+		}
+
+		return sections;
+	}
+
+	/**
+	 * Retrieves the number of partition blocks
+	 * 
+	 * @return The number of blocks
+	 */
+	public int getBlockCount() {
+		return pBlockStarts.length;
+	}
+
+	/**
+	 * Retrieves the end of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block end offset
+	 */
+	public int getBlockEnd(final int aIndex) {
+		return pBlockEnds[aIndex];
+	}
+
+	/**
+	 * Retrieves the end of the text read to find the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block end, or the end of the text read after it if it has
+	 *         been ended by its scan budget
+	 */
+	public int getBlockScanEnd(final int aIndex) {
+		return pBlockScanEnds[aIndex];
+	}
+
+	/**
+	 * Retrieves the offset of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block offset
+	 */
+	public int getBlockStart(final int aIndex) {
+		return pBlockStarts[aIndex];
+	}
+
+	/**
+	 * Retrieves the partition type of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block partition type
+	 */
+	public String getBlockType(final int aIndex) {
+		return pBlockTypes[aIndex];
+	}
+
+	/**
+	 * Tests if the given structure has the same partitions and sections as
+	 * this one
+	 * 
+	 * @param aOther
+	 *            Another structure
+	 * @return True if both structures are equal
+	 */
+	public boolean hasSameStructure(final StructureCache aOther) {
+
+		if (!Arrays.equals(pBlockStarts, aOther.pBlockStarts)
+				|| !Arrays.equals(pBlockEnds, aOther.pBlockEnds)
+				|| !Arrays.equals(pBlockScanEnds, aOther.pBlockScanEnds)
+				|| !Arrays.equals(pBlockTypes, aOther.pBlockTypes)
+				|| pSections.size() != aOther.pSections.size()) {
+			return false;
+		}
+
+		final SectionIndex other = aOther.pSections;
+		for (int row = 0; row < pSections.size(); row++) {
+
+			if (pSections.getBlockStart(row) != other.getBlockStart(row)
+					|| pSections.getBlockEnd(row) != other.getBlockEnd(row)
+					|| pSections.getOffset(row) != other.getOffset(row)
+					|| pSections.getLine(row) != other.getLine(row)
+					|| pSections.getLineOffset(row) != other
+							.getLineOffset(row)
+					|| pSections.getMarker(row) != other.getMarker(row)
+					|| pSections.isUpperlined(row) != other.isUpperlined(row)
+					|| !pSections.getTitle(row).equals(other.getTitle(row))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Tests if the cache describes the given content
+	 * 
+	 * @param aContent
+	 *            A document content
+	 * @return True if the content hash matches the cached one
+	 */
+	public boolean matches(final String aContent) {
+		return pHash != null && Arrays.equals(pHash, computeHash(aContent));
+	}
+
+	/**
+	 * Associates the cache to the document whose partitions have been
+	 * restored from it, and schedules its verification in the background
+	 * 
+	 * @param aDocument
+	 *            The restored document
+	 * @param aContent
+	 *            The document content
+	 */
+	public void restored(final IDocument aDocument, final String aContent) {
+
+		final long stamp = getModificationStamp(aDocument);
+		register(aDocument, this, stamp);
+
+		new StructureCacheJob(aDocument, stamp, aContent, pLocation, this)
+				.schedule();
+	}
+
+	/**
+	 * Writes the structure in the cache file of the given file buffer
+	 * location. The file is replaced at once, once completely written, then
+	 * the least recently used cache files are deleted.
+	 * 
+	 * @param aLocation
+	 *            Location of the file described by the cache
+	 * @throws IOException
+	 *             Error writing the cache file
+	 */
+	public void store(final IPath aLocation) throws IOException {
+
+		final File file = getCacheFile(aLocation);
+		if (file == null || pHash == null) {
+			return;
+		}
+
+		pLocation = aLocation;
+		file.getParentFile().mkdirs();
+
+		final File tempFile = new File(file.getPath() + TEMP_FILE_EXTENSION);
+		final DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+		try {
+			write(output);
+
+		} finally {
+			output.close();
+		}
+
+		// Replace the previous cache file
+		if ((file.exists() && !file.delete()) || !tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new IOException("Can't replace the structure cache file "
+					+ file);
+		}
+
+		evict(file.getParentFile());
+	}
+
+	/**
+	 * Writes the structure in the given cache file output
+	 * 
+	 * @param aOutput
+	 *            Cache file output
+	 * @throws IOException
+	 *             Error writing the file
+	 */
+	private void write(final DataOutput aOutput) throws IOException {
+
+		aOutput.writeInt(FORMAT_MAGIC);
+		aOutput.writeInt(FORMAT_VERSION);
+		aOutput.writeShort(pHash.length);
+		aOutput.write(pHash);
+
+		// Partition types table
+		final List<String> types = new ArrayList<String>();
+		for (String type : pBlockTypes) {
+			if (!types.contains(type)) {
+				types.add(type);
+			}
+		}
+
+		writeVarInt(aOutput, types.size());
+		for (String type : types) {
+			aOutput.writeUTF(type);
+		}
+
+		// Partition blocks, relatively to the previous one
+		writeVarInt(aOutput, pBlockStarts.length);
+
+		int previousEnd = 0;
+		for (int i = 0; i < pBlockStarts.length; i++) {
+			writeVarInt(aOutput, types.indexOf(pBlockTypes[i]));
+			writeVarInt(aOutput, pBlockStarts[i] - previousEnd);
+			writeVarInt(aOutput, pBlockEnds[i] - pBlockStarts[i]);
+			writeVarInt(aOutput, pBlockScanEnds[i] - pBlockEnds[i]);
+			previousEnd = pBlockEnds[i];
+		}
+
+		// Sections, relatively to their block
+		writeVarInt(aOutput, pSections.size());
+
+		int previousBlockEnd = 0;
+		int previousLine = 0;
+		for (int row = 0; row < pSections.size(); row++) {
+
+			final int blockStart = pSections.getBlockStart(row);
+			final int offset = pSections.getOffset(row);
+
+			writeVarInt(aOutput, blockStart - previousBlockEnd);
+			writeVarInt(aOutput, pSections.getBlockEnd(row) - blockStart);
+			writeVarInt(aOutput, offset - blockStart);
+			writeVarInt(aOutput, pSections.getLineOffset(row) - offset);
+			writeVarInt(aOutput, pSections.getLine(row) - previousLine);
+			aOutput.writeUTF(pSections.getTitle(row));
+			aOutput.writeChar(pSections.getMarker(row));
+			aOutput.writeBoolean(pSections.isUpperlined(row));
+
+			previousBlockEnd = pSections.getBlockEnd(row);
+			previousLine = pSections.getLine(row);
+		}
+	}
+}
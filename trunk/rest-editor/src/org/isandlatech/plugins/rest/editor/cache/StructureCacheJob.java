@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.cache;
+
+import java.io.IOException;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.PlatformUI;
+import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.RestDocumentSetupParticipant;
+import org.isandlatech.plugins.rest.editor.scanners.RestDocumentPartitioner;
+import org.isandlatech.plugins.rest.editor.scanners.RestPartitionScanner;
+import org.isandlatech.plugins.rest.i18n.Messages;
+
+/**
+ * Computes the structure of a document content outside the UI thread, to
+ * store it in its cache file or to verify a structure restored from the
+ * cache. A document whose restored structure is outdated is partitioned
+ * again, in the UI thread.
+ * 
+ * @author Thomas Calmant
+ */
+public class StructureCacheJob extends Job {
+
+	/** Cache jobs are run one at a time, not to write the same file twice */
+	private static final ISchedulingRule CACHE_RULE = new ISchedulingRule() {
+
+		@Override
+		public boolean contains(final ISchedulingRule aRule) {
+			return aRule == this;
+		}
+
+		@Override
+		public boolean isConflicting(final ISchedulingRule aRule) {
+			return aRule == this;
+		}
+	};
+
+	/** Copy of the document content */
+	private final String pContent;
+
+	/** Document described by the structure */
+	private final IDocument pDocument;
+
+	/** Location of the document file */
+	private final IPath pLocation;
+
+	/** Structure restored from the cache, null if none */
+	private final StructureCache pRestoredCache;
+
+	/** Modification stamp of the document when its content was copied */
+	private final long pStamp;
+
+	/**
+	 * Sets up the job
+	 * 
+	 * @param aDocument
+	 *            Document described by the structure
+	 * @param aStamp
+	 *            Modification stamp of the document
+	 * @param aContent
+	 *            Copy of the document content
+	 * @param aLocation
+	 *            Location of the document file
+	 * @param aRestoredCache
+	 *            Structure restored from the cache to verify, null to store
+	 *            the structure of the content
+	 */
+	public StructureCacheJob(final IDocument aDocument, final long aStamp,
+			final String aContent, final IPath aLocation,
+			final StructureCache aRestoredCache) {
+
+		super(Messages.getString("editor.cache.job.name"));
+		pDocument = aDocument;
+		pStamp = aStamp;
+		pContent = aContent;
+		pLocation = aLocation;
+		pRestoredCache = aRestoredCache;
+
+		setSystem(true);
+		setPriority(DECORATE);
+		setRule(CACHE_RULE);
+	}
+
+	/**
+	 * Replaces the partitioner of the document, which was initialized with an
+	 * outdated structure. Must be called in the UI thread.
+	 */
+	private void resetPartitioner() {
+
+		StructureCache.unregister(pDocument, pRestoredCache);
+
+		if (!(pDocument instanceof IDocumentExtension3)) {
+			return;
+		}
+
+		final IDocumentPartitioner oldPartitioner = ((IDocumentExtension3) pDocument)
+				.getDocumentPartitioner(RestPartitionScanner.PARTITIONING);
+		if (oldPartitioner == null) {
+			// Not partitioned by the editor
+			return;
+		}
+
+		// Listeners are notified of the new partitioning
+		new RestDocumentSetupParticipant().setup(pDocument);
+		oldPartitioner.disconnect();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.
+	 * IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(final IProgressMonitor aMonitor) {
+
+		try {
+			return runCache(aMonitor);
+
+		} finally {
+			if (pRestoredCache == null) {
+				StructureCache.storeDone(pDocument, pStamp);
+			}
+		}
+	}
+
+	/**
+	 * Computes the structure of the content, then stores or verifies it
+	 * 
+	 * @param aMonitor
+	 *            Progress monitor
+	 * @return The job result status
+	 */
+	private IStatus runCache(final IProgressMonitor aMonitor) {
+
+		final RestPlugin plugin = RestPlugin.getDefault();
+		if (plugin == null) {
+			// The plug-in is stopping
+			return Status.CANCEL_STATUS;
+		}
+
+		final StructureCache cache;
+		try {
+			// Partition a copy of the content from scratch
+			final IDocument copy = plugin.createPartitionedDocument(pContent);
+
+			final IDocumentPartitioner partitioner = ((IDocumentExtension3) copy)
+					.getDocumentPartitioner(RestPartitionScanner.PARTITIONING);
+			if (!(partitioner instanceof RestDocumentPartitioner)) {
+				return Status.CANCEL_STATUS;
+			}
+
+			cache = StructureCache.compute(pContent,
+					(RestDocumentPartitioner) partitioner, aMonitor);
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error computing the document structure", e);
+			return Status.CANCEL_STATUS;
+		}
+
+		if (cache == null || aMonitor.isCanceled()) {
+			return Status.CANCEL_STATUS;
+		}
+
+		if (pRestoredCache != null && pRestoredCache.hasSameStructure(cache)) {
+			// The restored structure is valid
+			return Status.OK_STATUS;
+		}
+
+		try {
+			cache.store(pLocation);
+
+		} catch (IOException e) {
+			RestPlugin.logError("Error writing the structure cache", e);
+		}
+
+		if (pRestoredCache == null) {
+			StructureCache.register(pDocument, cache, pStamp);
+			return Status.OK_STATUS;
+		}
+
+		if (!PlatformUI.isWorkbenchRunning()) {
+			return Status.OK_STATUS;
+		}
+
+		final Display display = PlatformUI.getWorkbench().getDisplay();
+		if (!display.isDisposed()) {
+			display.asyncExec(new Runnable() {
+
+				@Override
+				public void run() {
+					resetPartitioner();
+				}
+			});
+		}
+
+		return Status.OK_STATUS;
+	}
+}
@@ -11,6 +11,8 @@
 
 package org.isandlatech.plugins.rest.editor.formatters;
 
+import org.isandlatech.plugins.rest.editor.linewrap.LineUtil;
+
 /**
  * Default text formatter : deletes trailing white spaces
  * 
@@ -29,6 +31,8 @@ public class DefaultTextFormattingStrategy extends AbstractFormattingStrategy {
 	public String format(final String aContent, final boolean aIsLineStart,
 			final String aIndentation, final int[] aPositions) {
 
+		final LineUtil lineUtil = LineUtil.get();
+
 		String normalizedContent = normalizeEndOfLines(aContent);
 		StringBuilder newContent = new StringBuilder(aContent.length());
 
@@ -37,7 +41,8 @@ public class DefaultTextFormattingStrategy extends AbstractFormattingStrategy {
 		for (String line : lines) {
 
 			// Trim right
-			newContent.append(line.replaceAll("[\\s]+$", ""));
+			newContent.append(line, 0,
+					lineUtil.rtrimOffset(line, 0, line.length()));
 
 			// Reset line break
 			if (line.isEmpty()) {
@@ -18,9 +18,6 @@ import org.eclipse.jface.text.IDocument;
  */
 public abstract class AbstractBlockDetector implements IBlockDetector {
 
-	/** Line utility singleton */
-	private final LineUtil pLineUtil = LineUtil.get();
-
 	/**
 	 * Find the last line with the same indentation, content type, ... starting
 	 * from the base line number and incrementing by direction.
@@ -47,9 +44,8 @@ public abstract class AbstractBlockDetector implements IBlockDetector {
 	public BlockInformation getBlock(final IDocument aDocument,
 			final int aBaseFirstLine, final int aBaseLastLine) {
 
-		final String baseLineContent = pLineUtil.getLine(aDocument,
-				aBaseFirstLine, false);
-		if (baseLineContent == null) {
+		if (aBaseFirstLine < 0
+				|| aBaseFirstLine >= aDocument.getNumberOfLines()) {
 			return null;
 		}
 
@@ -57,6 +57,9 @@ public abstract class AbstractBlockWrappingHandler implements
 	/** Markers of ignored areas */
 	private Set<String> pMarkersSet = new HashSet<String>();
 
+	/** Markers compiled from the markers set */
+	private MarkerTrie pMarkersTrie;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -141,28 +144,29 @@ public abstract class AbstractBlockWrappingHandler implements
 		String currentLine;
 
 		// Insert indentation first (and update currentOffsetInResult)
-		String indent = pLineUtil.getIndentation(aText);
-		resultLine.append(indent);
-		currentOffsetInResult += indent.length();
+		final int indentLen = pLineUtil.getIndentationLength(aText);
+		resultLine.append(aText, 0, indentLen);
+		currentOffsetInResult += indentLen;
 
 		boolean deleteLastSpace = false;
 
 		try {
 			while ((currentLine = reader.readLine()) != null) {
 
-				String trimmedLine = pLineUtil.ltrim(currentLine);
-				if (trimmedLine.isEmpty()) {
+				final int lineLength = currentLine.length();
+				final int trimmedStart = pLineUtil.ltrimOffset(currentLine, 0,
+						lineLength);
+				if (trimmedStart == lineLength) {
 					// Ignore blank lines
 					// TODO see if we shouldn't return null here...
 					continue;
 				}
 
-				resultLine.append(trimmedLine);
-				currentOffsetInResult += trimmedLine.length();
+				resultLine.append(currentLine, trimmedStart, lineLength);
+				currentOffsetInResult += lineLength - trimmedStart;
 
 				// If the line doesn't end with a space, add it
-				if (!pLineUtil
-						.isSpace(trimmedLine.charAt(trimmedLine.length() - 1))) {
+				if (!pLineUtil.isSpace(currentLine.charAt(lineLength - 1))) {
 
 					// Add trailing space, if needed
 					resultLine.append(' ');
@@ -280,7 +284,7 @@ public abstract class AbstractBlockWrappingHandler implements
 		boolean marker = false;
 
 		// Take care of ReST markers
-		final String[] testedMarkers = pMarkersSet.toArray(new String[0]);
+		final MarkerTrie markersTrie = getMarkersTrie();
 
 		while (offset < aLine.length()) {
 
@@ -289,14 +293,13 @@ public abstract class AbstractBlockWrappingHandler implements
 				break;
 			}
 
-			// Look for an in-line marker
-			int markerIndex = TextUtilities.startsWith(testedMarkers,
-					aLine.substring(offset));
-			if (markerIndex != -1) {
+			// Look for an in-line marker, in place
+			final int markerLength = markersTrie.match(aLine, offset);
+			if (markerLength != 0) {
 				marker = !marker;
 
 				// Jump it (avoid confusion between '**' and '*')
-				offset += testedMarkers[markerIndex].length();
+				offset += markerLength;
 				continue;
 			}
 
@@ -322,6 +325,21 @@ public abstract class AbstractBlockWrappingHandler implements
 		return pMarkersSet;
 	}
 
+	/**
+	 * Retrieves the markers trie, compiling it again if the markers set has
+	 * been modified since the last call
+	 * 
+	 * @return The markers trie
+	 */
+	private MarkerTrie getMarkersTrie() {
+
+		if (pMarkersTrie == null || !pMarkersTrie.isCompiledFrom(pMarkersSet)) {
+			pMarkersTrie = new MarkerTrie(pMarkersSet);
+		}
+
+		return pMarkersTrie;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -334,6 +352,18 @@ public abstract class AbstractBlockWrappingHandler implements
 		return pReferenceOffset;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.isandlatech.plugins.rest.editor.linewrap.IBlockWrappingHandler#
+	 * getWrapIndentLength(java.lang.CharSequence)
+	 */
+	@Override
+	public int getWrapIndentLength(final CharSequence aFirstLine) {
+		return pLineUtil.getIndentationLength(aFirstLine);
+	}
+
 	/**
 	 * Debug print of the current block content with a pipe indicating the
 	 * current reference offset position
@@ -514,11 +544,11 @@ public abstract class AbstractBlockWrappingHandler implements
 		while ((breakPos = getLineBreakPosition(aLine, breakPos, aMaxLen
 				- indentLen)) != -1) {
 
-			String subLine = aLine.substring(oldBreakPos, breakPos);
-			String trimmedSubline = pLineUtil.ltrim(subLine);
+			final int trimmedStart = pLineUtil.ltrimOffset(aLine, oldBreakPos,
+					breakPos);
 
 			wrappedLine.append(indent);
-			wrappedLine.append(trimmedSubline);
+			wrappedLine.append(aLine, trimmedStart, breakPos);
 			wrappedLine.append(pLineDelimiter);
 
 			// If the offset is in the currently modified block...
@@ -534,7 +564,7 @@ public abstract class AbstractBlockWrappingHandler implements
 
 				// Correct getLineBreakPosition indentation forgiveness
 				if (oldBreakPos > 0) {
-					newOffset -= (subLine.length() - trimmedSubline.length());
+					newOffset -= (trimmedStart - oldBreakPos);
 
 					// If we're not moving inside the indentation, move
 					if (newOffset >= 0) {
@@ -546,7 +576,7 @@ public abstract class AbstractBlockWrappingHandler implements
 				newOffset += currentOffsetInResult;
 			}
 
-			currentOffsetInResult += indentLen + trimmedSubline.length()
+			currentOffsetInResult += indentLen + breakPos - trimmedStart
 					+ delimLen;
 
 			oldBreakPos = breakPos;
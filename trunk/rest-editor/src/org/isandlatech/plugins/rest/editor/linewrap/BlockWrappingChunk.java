@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.linewrap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.eclipse.jface.text.IDocument;
+import org.isandlatech.plugins.rest.RestPlugin;
+
+/**
+ * Wraps a range of independent blocks with its own handlers : the chunks of a
+ * large document can be wrapped in parallel.
+ * 
+ * @author Thomas Calmant
+ */
+class BlockWrappingChunk implements Callable<String[]> {
+
+	/** Blocks of the document */
+	private final List<BlockInformation> pBlocks;
+
+	/** Detectors of the blocks */
+	private final List<IBlockDetector> pDetectors;
+
+	/** The wrapped document */
+	private final IDocument pDocument;
+
+	/** Index following the last block of the chunk */
+	private final int pEndIndex;
+
+	/** Index of the first block of the chunk */
+	private final int pFirstIndex;
+
+	/** Handlers of the chunk, by type */
+	private final Map<String, IBlockWrappingHandler> pHandlers = new HashMap<String, IBlockWrappingHandler>();
+
+	/** Maximum line length */
+	private final int pMaxLen;
+
+	/**
+	 * Prepares the chunk
+	 * 
+	 * @param aDocument
+	 *            The wrapped document, not modified until the end of the task
+	 * @param aBlocks
+	 *            Blocks of the document
+	 * @param aDetectors
+	 *            Detectors of the blocks
+	 * @param aFirstIndex
+	 *            Index of the first block of the chunk
+	 * @param aEndIndex
+	 *            Index following the last block of the chunk
+	 * @param aMaxLen
+	 *            Maximum line length
+	 */
+	BlockWrappingChunk(final IDocument aDocument,
+			final List<BlockInformation> aBlocks,
+			final List<IBlockDetector> aDetectors, final int aFirstIndex,
+			final int aEndIndex, final int aMaxLen) {
+
+		pDocument = aDocument;
+		pBlocks = aBlocks;
+		pDetectors = aDetectors;
+		pFirstIndex = aFirstIndex;
+		pEndIndex = aEndIndex;
+		pMaxLen = aMaxLen;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public String[] call() {
+
+		final String[] results = new String[pEndIndex - pFirstIndex];
+
+		// Only the first failure of the chunk is logged
+		boolean failureLogged = false;
+
+		for (int i = pFirstIndex; i < pEndIndex; i++) {
+
+			if (Thread.currentThread().isInterrupted()) {
+				// Wrapping cancelled
+				return results;
+			}
+
+			final IBlockWrappingHandler handler = getHandler(pDetectors.get(i)
+					.getHandlerType());
+			if (handler == null) {
+				continue;
+			}
+
+			final BlockInformation block = pBlocks.get(i);
+			try {
+				if (handler.setUp(pDocument, block)) {
+					handler.setReferenceOffset(block.getOffset());
+					results[i - pFirstIndex] = handler.wrap(pMaxLen);
+				}
+
+			} catch (RuntimeException ex) {
+				// Keep the block as is, and wrap the next ones
+				if (!failureLogged) {
+					RestPlugin.logError("Error wrapping the block at line "
+							+ block.getFirstLine(), ex);
+					failureLogged = true;
+				}
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Retrieves the chunk handler of the given type, creating it if needed
+	 * 
+	 * @param aType
+	 *            The handler type
+	 * @return The handler of the chunk, null if none found
+	 */
+	private IBlockWrappingHandler getHandler(final String aType) {
+
+		IBlockWrappingHandler handler = pHandlers.get(aType);
+		if (handler == null) {
+			handler = BlockWrappingHandlerStore.get().createHandler(aType);
+			pHandlers.put(aType, handler);
+		}
+
+		return handler;
+	}
+}
@@ -11,9 +11,12 @@
 
 package org.isandlatech.plugins.rest.editor.linewrap;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.isandlatech.plugins.rest.RestPlugin;
+
 /**
  * Stores block wrapping handles
  * 
@@ -48,6 +51,43 @@ public final class BlockWrappingHandlerStore {
 		pHandlers.add(pDefaultHandler);
 	}
 
+	/**
+	 * Creates a new instance of the handler associated to the given handler
+	 * type, with its public constructor without argument. Handlers keep the
+	 * state of the block they wrap : a thread must not share its handlers.
+	 * 
+	 * @param aType
+	 *            The handler type
+	 * @return A new handler instance, null if none found
+	 */
+	public IBlockWrappingHandler createHandler(final String aType) {
+
+		final IBlockWrappingHandler handler = getHandler(aType);
+		if (handler == null) {
+			return null;
+		}
+
+		try {
+			return handler.getClass().getConstructor().newInstance();
+
+		} catch (NoSuchMethodException e) {
+			RestPlugin.logError("The handler " + handler
+					+ " has no public constructor without argument", e);
+
+		} catch (InvocationTargetException e) {
+			RestPlugin.logError("Error creating the handler " + handler,
+					e.getCause());
+
+		} catch (InstantiationException e) {
+			RestPlugin.logError("Can't instantiate the handler " + handler, e);
+
+		} catch (IllegalAccessException e) {
+			RestPlugin.logError("Can't instantiate the handler " + handler, e);
+		}
+
+		return null;
+	}
+
 	/**
 	 * Retrieves an instance of the default block wrapping handler
 	 * 
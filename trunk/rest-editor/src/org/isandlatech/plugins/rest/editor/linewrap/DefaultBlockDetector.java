@@ -59,31 +59,27 @@ public class DefaultBlockDetector extends AbstractBlockDetector {
 	public int findLastSimilarLine(final IDocument aDocument,
 			final int aBaseLine, final int aDirection) {
 
-		final String baseLineContent = pLineUtil.getLine(aDocument, aBaseLine,
-				false);
-
-		if (baseLineContent == null) {
+		// Lines are read in place
+		final LineView line = new LineView();
+		if (!line.setLine(aDocument, aBaseLine)) {
 			return -1;
 		}
 
 		final String baseLineContentType = pLineUtil.getContentType(aDocument,
 				aBaseLine, pPartitioning);
 
-		final String baseLineIndent = pLineUtil.getIndentation(baseLineContent);
-		final int baseLineIndentLen = baseLineIndent.length();
+		final int baseLineIndentLen = pLineUtil.getIndentationLength(line);
 
 		// Search for first line
 		final int nbLines = aDocument.getNumberOfLines();
 		int searchLine = aBaseLine;
 		for (int i = aBaseLine; i >= 0 && i < nbLines; i += aDirection) {
 
-			String line = pLineUtil.getLine(aDocument, i, false);
-			if (line.trim().isEmpty()) {
+			if (!line.setLine(aDocument, i) || pLineUtil.isBlank(line)) {
 				break;
 			}
 
-			String lineIndent = pLineUtil.getIndentation(line);
-			if (lineIndent.length() != baseLineIndentLen) {
+			if (pLineUtil.getIndentationLength(line) != baseLineIndentLen) {
 				break;
 			}
 
@@ -12,12 +12,22 @@
 package org.isandlatech.plugins.rest.editor.linewrap;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.DocumentCommand;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.jface.text.TypedRegion;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
 import org.isandlatech.plugins.rest.RestPlugin;
 import org.isandlatech.plugins.rest.editor.scanners.RestPartitionScanner;
 
@@ -29,6 +39,34 @@ import org.isandlatech.plugins.rest.editor.scanners.RestPartitionScanner;
  */
 public class HardLineWrap {
 
+	/**
+	 * A detected block and its detector
+	 * 
+	 * @author Thomas Calmant
+	 */
+	static class DetectedBlock {
+
+		/** The block */
+		final BlockInformation pBlock;
+
+		/** The detector that found the block */
+		final IBlockDetector pDetector;
+
+		/**
+		 * Stores the detection result
+		 * 
+		 * @param aDetector
+		 *            The detector that found the block
+		 * @param aBlock
+		 *            The block
+		 */
+		DetectedBlock(final IBlockDetector aDetector,
+				final BlockInformation aBlock) {
+			pDetector = aDetector;
+			pBlock = aBlock;
+		}
+	}
+
 	/**
 	 * Stores wrapping result
 	 * 
@@ -121,6 +159,12 @@ public class HardLineWrap {
 		}
 	}
 
+	/** Minimal length of a chunk wrapped in parallel, in characters */
+	private static final int MIN_CHUNK_LENGTH = 256 * 1024;
+
+	/** Number of chunks per processor, to balance the threads load */
+	private static final int NB_CHUNKS_PER_PROCESSOR = 4;
+
 	/**
 	 * Debug function : prints out the given document command attributes
 	 * 
@@ -183,6 +227,261 @@ public class HardLineWrap {
 		return count;
 	}
 
+	/**
+	 * Looks for the block containing the given lines, using the detector with
+	 * the best priority
+	 * 
+	 * @param aDocument
+	 *            Document to read
+	 * @param aFirstLine
+	 *            First line of the block
+	 * @param aLastLine
+	 *            Last line of the block
+	 * @return The detected block, null if none found
+	 */
+	DetectedBlock detectBlock(final IDocument aDocument,
+			final int aFirstLine, final int aLastLine) {
+
+		int bestDetectorPriority = Integer.MAX_VALUE;
+		IBlockDetector bestDetector = null;
+		BlockInformation bestBlock = null;
+
+		// Look for the "best" detector available
+		for (IBlockDetector detector : pDetectors) {
+
+			BlockInformation blockInfo = detector.getBlock(aDocument,
+					aFirstLine, aLastLine);
+
+			// Invalid values
+			if (blockInfo == null) {
+				continue;
+			}
+
+			if (detector.getPriority() < bestDetectorPriority) {
+				bestDetector = detector;
+				bestBlock = blockInfo;
+				bestDetectorPriority = detector.getPriority();
+			}
+		}
+
+		if (bestBlock == null || bestDetector == null) {
+			return null;
+		}
+
+		return new DetectedBlock(bestDetector, bestBlock);
+	}
+
+	/**
+	 * Wraps the given blocks, in parallel on large documents
+	 * 
+	 * @param aDocument
+	 *            Document to read
+	 * @param aBlocks
+	 *            Blocks to wrap
+	 * @param aDetectors
+	 *            Detectors of the blocks
+	 * @param aMaxLen
+	 *            Maximum line length
+	 * @return The wrapped blocks, null entries for the failed ones
+	 */
+	private String[] wrapBlocks(final IDocument aDocument,
+			final List<BlockInformation> aBlocks,
+			final List<IBlockDetector> aDetectors, final int aMaxLen) {
+
+		final int nbBlocks = aBlocks.size();
+		final int nbProcessors = Runtime.getRuntime().availableProcessors();
+
+		int nbChunks = 0;
+		if (nbProcessors > 1) {
+			nbChunks = Math.min(nbProcessors * NB_CHUNKS_PER_PROCESSOR,
+					aDocument.getLength() / MIN_CHUNK_LENGTH);
+			nbChunks = Math.min(nbChunks, nbBlocks);
+		}
+
+		final RestPlugin plugin = RestPlugin.getDefault();
+		final ExecutorService executor = plugin != null ? plugin.getExecutor()
+				: null;
+
+		if (nbChunks >= 2 && executor != null) {
+			final List<Future<String[]>> futures = new ArrayList<Future<String[]>>(
+					nbChunks);
+
+			final String[] results = new String[nbBlocks];
+			try {
+				for (int i = 0; i < nbChunks; i++) {
+					final int firstIndex = (int) ((long) nbBlocks * i
+							/ nbChunks);
+					final int endIndex = (int) ((long) nbBlocks * (i + 1)
+							/ nbChunks);
+
+					futures.add(executor.submit(new BlockWrappingChunk(
+							aDocument, aBlocks, aDetectors, firstIndex,
+							endIndex, aMaxLen)));
+				}
+
+				int index = 0;
+				for (Future<String[]> future : futures) {
+					final String[] chunkResults = future.get();
+					System.arraycopy(chunkResults, 0, results, index,
+							chunkResults.length);
+					index += chunkResults.length;
+				}
+
+				return results;
+
+			} catch (InterruptedException ex) {
+				// Wrap in the current thread, keeping the interruption state
+				Thread.currentThread().interrupt();
+
+			} catch (ExecutionException ex) {
+				// Wrap in the current thread
+				RestPlugin.logError("Error wrapping the document in parallel",
+						ex.getCause());
+
+			} catch (RejectedExecutionException ex) {
+				// The plug-in is stopping : wrap in the current thread
+
+			} catch (CancellationException ex) {
+				// The plug-in has stopped : wrap in the current thread
+
+			} finally {
+				// Don't let the tasks work after a failure
+				for (Future<String[]> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+
+		return new BlockWrappingChunk(aDocument, aBlocks, aDetectors, 0,
+				nbBlocks, aMaxLen).call();
+	}
+
+	/**
+	 * Wraps all the default content type blocks of the given document. The
+	 * blocks are detected in the current document state and wrapped
+	 * independently, in parallel on large documents. The document is not
+	 * modified : the result is a single edit, containing one replacement per
+	 * modified block.
+	 * 
+	 * @param aDocument
+	 *            Document to wrap, must not be modified before the edit is
+	 *            applied
+	 * @param aPartitioning
+	 *            Partitioning used by the document
+	 * @param aMaxLen
+	 *            Maximum line length
+	 * @param aResults
+	 *            Receives the wrapping result of each block, in the document
+	 *            order and with the line numbers of the unmodified document
+	 * @return The edit wrapping the document, without children if no block
+	 *         is modified
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	public MultiTextEdit wrapDocument(final IDocument aDocument,
+			final String aPartitioning, final int aMaxLen,
+			final List<WrapResult> aResults) throws BadLocationException {
+
+		final List<BlockInformation> blocks = new ArrayList<BlockInformation>();
+		final List<IBlockDetector> detectors = new ArrayList<IBlockDetector>();
+
+		// Only work in default content type
+		final int documentLength = aDocument.getLength();
+		final List<ITypedRegion> regions = new ArrayList<ITypedRegion>(
+				Arrays.asList(TextUtilities.computePartitioning(aDocument,
+						aPartitioning, 0, documentLength, false)));
+
+		// An empty last line begins after the last region
+		final int nbLines = aDocument.getNumberOfLines();
+		if (aDocument.getLineOffset(nbLines - 1) == documentLength) {
+			regions.add(new TypedRegion(documentLength, 0, TextUtilities
+					.getContentType(aDocument, aPartitioning, documentLength,
+							false)));
+		}
+
+		// Detect all the blocks before any modification
+		int lastBlockLine = -1;
+		int line = 0;
+
+		for (ITypedRegion region : regions) {
+
+			if (!IDocument.DEFAULT_CONTENT_TYPE.equals(region.getType())) {
+				continue;
+			}
+
+			// Lines beginning in the region
+			final int regionOffset = region.getOffset();
+			final int regionEnd = regionOffset + region.getLength();
+
+			int firstLine = aDocument.getLineOfOffset(regionOffset);
+			if (aDocument.getLineOffset(firstLine) < regionOffset) {
+				firstLine++;
+			}
+
+			int endLine = aDocument.getLineOfOffset(regionEnd);
+			if (aDocument.getLineOffset(endLine) < regionEnd
+					|| regionOffset == documentLength) {
+				endLine++;
+			}
+
+			line = Math.max(line, firstLine);
+			while (line < endLine) {
+
+				final DetectedBlock detectedBlock = detectBlock(aDocument,
+						line, line);
+				if (detectedBlock == null) {
+					line++;
+					continue;
+				}
+
+				// Overlapping blocks can't be replaced by the same edit
+				final BlockInformation block = detectedBlock.pBlock;
+				if (block.getFirstLine() > lastBlockLine
+						&& block.computeOffsets(aDocument)) {
+
+					blocks.add(block);
+					detectors.add(detectedBlock.pDetector);
+					lastBlockLine = block.getLastLine();
+				}
+
+				line = Math.max(line + 1, block.getLastLine() + 1);
+			}
+		}
+
+		final String[] wrappedBlocks = wrapBlocks(aDocument, blocks,
+				detectors, aMaxLen);
+
+		// Replace the modified blocks
+		final String lineDelimiter = TextUtilities
+				.getDefaultLineDelimiter(aDocument);
+		final MultiTextEdit edit = new MultiTextEdit();
+
+		for (int i = 0; i < wrappedBlocks.length; i++) {
+
+			final String wrappedBlock = wrappedBlocks[i];
+			if (wrappedBlock == null) {
+				continue;
+			}
+
+			final BlockInformation block = blocks.get(i);
+			if (!wrappedBlock.equals(aDocument.get(block.getOffset(),
+					block.getLength()))) {
+
+				edit.addChild(new ReplaceEdit(block.getOffset(), block
+						.getLength(), wrappedBlock));
+			}
+
+			final IBlockDetector detector = detectors.get(i);
+			final int firstLine = block.getFirstLine();
+
+			aResults.add(new WrapResult(detector, detector.getHandlerType(),
+					firstLine, block.getLastLine(), firstLine
+							+ countOccurrences(wrappedBlock, lineDelimiter)));
+		}
+
+		return edit;
+	}
+
 	/**
 	 * Wraps a paragraph in the document
 	 * 
@@ -217,33 +516,17 @@ public class HardLineWrap {
 				.getDefaultLineDelimiter(aDocument);
 
 		IBlockWrappingHandler blockHandler = null;
-		int bestDetectorPriority = Integer.MAX_VALUE;
-		IBlockDetector bestDetector = null;
-		BlockInformation baseDocBlock = null;
-
-		// Look for the "best" detector available
-		for (IBlockDetector detector : pDetectors) {
-
-			BlockInformation blockInfo = detector.getBlock(aDocument,
-					baseDocLineNr, endDocLineNr);
-
-			// Invalid values
-			if (blockInfo == null) {
-				continue;
-			}
 
-			if (detector.getPriority() < bestDetectorPriority) {
-				bestDetector = detector;
-				baseDocBlock = blockInfo;
-				bestDetectorPriority = detector.getPriority();
-			}
-		}
-
-		if (baseDocBlock == null || bestDetector == null) {
+		final DetectedBlock detectedBlock = detectBlock(aDocument,
+				baseDocLineNr, endDocLineNr);
+		if (detectedBlock == null) {
 			System.err.println("No block detected...");
 			return null;
 		}
 
+		final IBlockDetector bestDetector = detectedBlock.pDetector;
+		final BlockInformation baseDocBlock = detectedBlock.pBlock;
+
 		blockHandler = BlockWrappingHandlerStore.get().getHandler(
 				bestDetector.getHandlerType());
 
@@ -11,6 +11,8 @@
 
 package org.isandlatech.plugins.rest.editor.linewrap;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -22,6 +24,9 @@ import org.eclipse.jface.text.DocumentRewriteSessionType;
 import org.eclipse.jface.text.IAutoEditStrategy;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEdit;
 import org.isandlatech.plugins.rest.RestPlugin;
 import org.isandlatech.plugins.rest.editor.linewrap.HardLineWrap.WrapResult;
 
@@ -136,6 +141,12 @@ public class HardLineWrapAutoEdit implements IAutoEditStrategy {
 		if (!pRegistered) {
 			pLineUpdater.clear();
 			aDocument.addDocumentListener(pLineUpdater);
+
+			if (aDocument instanceof IDocumentExtension4) {
+				((IDocumentExtension4) aDocument)
+						.addDocumentRewriteSessionListener(pLineUpdater);
+			}
+
 			pRegistered = true;
 		}
 	}
@@ -251,6 +262,12 @@ public class HardLineWrapAutoEdit implements IAutoEditStrategy {
 		// Set the line updater, if needed
 		if (pRegistered) {
 			pDocument.removeDocumentListener(pLineUpdater);
+
+			if (pDocument instanceof IDocumentExtension4) {
+				((IDocumentExtension4) pDocument)
+						.removeDocumentRewriteSessionListener(pLineUpdater);
+			}
+
 			pRegistered = false;
 		}
 	}
@@ -310,64 +327,64 @@ public class HardLineWrapAutoEdit implements IAutoEditStrategy {
 			return false;
 		}
 
-		startRewriteSession();
+		// Wrap all blocks at once, without modifying the document
+		final List<WrapResult> results = new ArrayList<WrapResult>();
+		final MultiTextEdit edit;
 
-		// Save the doc content
-		final String docSave = pDocument.get();
+		try {
+			edit = pWrapper.wrapDocument(pDocument, pPartitioning,
+					pMaxLineLength, results);
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error during document wrapping", e);
+			return false;
+		}
 
-		// Start the infernal loop
-		int line = 0;
-		final DocumentCommand command = new InternalDocumentCommand();
+		// The watched lines are updated once the edit is applied
+		pLineUpdater.setSuspended(true);
 
 		try {
-			while (line < pDocument.getNumberOfLines()) {
-
-				command.offset = pDocument.getLineOffset(line);
-				command.length = 0;
-				command.text = "";
-				command.caretOffset = -1;
-				command.doit = true;
+			if (edit.hasChildren()) {
+				startRewriteSession();
 
-				final String lineContentType = LineUtil.get().getContentType(
-						pDocument, line, pPartitioning);
+				// Save the doc content
+				final String docSave = pDocument.get();
 
-				if (IDocument.DEFAULT_CONTENT_TYPE.equals(lineContentType)) {
-					// Only work in default content type
-					WrapResult result = wrapLine(command);
+				try {
+					edit.apply(pDocument, TextEdit.NONE);
 
-					if (result != null && command.doit) {
+				} catch (MalformedTreeException e) {
+					RestPlugin.logError("Error during document wrapping", e);
+					pDocument.set(docSave);
+					return false;
 
-						int newLine = pDocument.getLineOfOffset(command.offset
-								+ command.text.length());
+				} catch (BadLocationException e) {
+					RestPlugin.logError("Error during document wrapping", e);
+					pDocument.set(docSave);
+					return false;
 
-						newLine = Math
-								.max(newLine, result.getNewLastLine() + 1);
+				} finally {
+					stopRewriteSession();
+				}
+			}
 
-						if (newLine <= line) {
-							line++;
-						} else {
-							line = newLine;
-						}
+			// Bottom to top, to keep the lines of the upper blocks valid
+			for (int i = results.size() - 1; i >= 0; i--) {
 
-						pDocument.replace(command.offset, command.length,
-								command.text);
+				final WrapResult result = results.get(i);
+				final int firstLine = result.getFirstLine();
 
-					} else {
-						line++;
-					}
+				pLineUpdater.updateBlockSize(firstLine, result.getDetector(),
+						result.getOldLastLine(), result.getNewLastLine());
 
-				} else {
-					line++;
+				if (result.getNewLastLine() <= firstLine) {
+					// Only watch the blocks of more than 1 line
+					pLineUpdater.removeLine(firstLine);
 				}
 			}
 
-		} catch (BadLocationException e) {
-			RestPlugin.logError("Error during document wrapping", e);
-			pDocument.set(docSave);
-			return false;
-
 		} finally {
-			stopRewriteSession();
+			pLineUpdater.setSuspended(false);
 		}
 
 		return true;
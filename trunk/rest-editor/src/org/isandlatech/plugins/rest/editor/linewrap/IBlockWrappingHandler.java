@@ -64,6 +64,16 @@ public interface IBlockWrappingHandler {
 	 */
 	String getType();
 
+	/**
+	 * Retrieves the indentation length of the lines following the first one,
+	 * once the block beginning with the given line is wrapped
+	 * 
+	 * @param aFirstLine
+	 *            Content of the first line of the block
+	 * @return The indentation length of the wrapped lines
+	 */
+	int getWrapIndentLength(CharSequence aFirstLine);
+
 	/**
 	 * Set an offset reference, that will be updated during block modification
 	 * handling. The updated value is available through
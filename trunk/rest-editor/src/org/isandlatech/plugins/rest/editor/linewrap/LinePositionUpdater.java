@@ -13,39 +13,68 @@ package org.isandlatech.plugins.rest.editor.linewrap;
 
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
 
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentRewriteSessionEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IDocumentRewriteSessionListener;
 import org.isandlatech.plugins.rest.RestPlugin;
 
 /**
  * Updates all document positions of the given category to store the offset of
- * there associated line
+ * there associated line. During a document rewrite session, the line
+ * modifications are only queued and applied when the session stops.
  * 
  * @author Thomas Calmant
  */
-public class LinePositionUpdater implements IDocumentListener {
+public class LinePositionUpdater implements IDocumentListener,
+		IDocumentRewriteSessionListener {
 
 	/** Lines to update */
-	private Map<Integer, IBlockDetector> pWatchedLines;
+	private final WatchedLines pWatchedLines;
 
 	/** Update needed flag */
 	private boolean pAlreadyUpdated;
 
+	/** Queued modifications : (line, added lines) pairs */
+	private int[] pPendingUpdates;
+
+	/** Number of integers used in the queue */
+	private int pPendingUpdatesSize;
+
 	/** Number of lines in the document before the update */
 	private int pPreviousLinesCount;
 
+	/** A document rewrite session is running */
+	private boolean pRewriting;
+
+	/** Document modifications are ignored */
+	private boolean pSuspended;
+
 	/**
 	 * Stores the category of positions to update
 	 */
 	public LinePositionUpdater() {
-		pWatchedLines = new TreeMap<Integer, IBlockDetector>();
+		pWatchedLines = new WatchedLines();
+		pPendingUpdates = new int[16];
 		pAlreadyUpdated = false;
 	}
 
+	/**
+	 * Applies the queued modifications
+	 */
+	private void applyPendingUpdates() {
+
+		for (int i = 0; i < pPendingUpdatesSize; i += 2) {
+			pWatchedLines.shift(pPendingUpdates[i], pPendingUpdates[i],
+					pPendingUpdates[i + 1]);
+		}
+
+		pPendingUpdatesSize = 0;
+	}
+
 	/**
 	 * Resets the updater state
 	 */
@@ -53,6 +82,7 @@ public class LinePositionUpdater implements IDocumentListener {
 
 		pAlreadyUpdated = false;
 		pPreviousLinesCount = 0;
+		pPendingUpdatesSize = 0;
 		pWatchedLines.clear();
 	}
 
@@ -66,7 +96,7 @@ public class LinePositionUpdater implements IDocumentListener {
 	@Override
 	public void documentAboutToBeChanged(final DocumentEvent aEvent) {
 
-		if (pAlreadyUpdated) {
+		if (pAlreadyUpdated || pSuspended) {
 			return;
 		}
 
@@ -83,6 +113,10 @@ public class LinePositionUpdater implements IDocumentListener {
 	@Override
 	public void documentChanged(final DocumentEvent aEvent) {
 
+		if (pSuspended) {
+			return;
+		}
+
 		if (pAlreadyUpdated) {
 			pAlreadyUpdated = false;
 			return;
@@ -99,16 +133,61 @@ public class LinePositionUpdater implements IDocumentListener {
 			return;
 		}
 
-		updateLine(modificationLine, currentLinesCount - pPreviousLinesCount);
+		final int addedLines = currentLinesCount - pPreviousLinesCount;
+		if (addedLines == 0) {
+			// Nothing moved
+			return;
+		}
+
+		if (!pRewriting) {
+			updateLine(modificationLine, addedLines);
+			return;
+		}
+
+		// Queue the modification until the end of the session
+		if (pPendingUpdatesSize == pPendingUpdates.length) {
+			final int[] newQueue = new int[pPendingUpdatesSize * 2];
+			System.arraycopy(pPendingUpdates, 0, newQueue, 0,
+					pPendingUpdatesSize);
+			pPendingUpdates = newQueue;
+		}
+
+		pPendingUpdates[pPendingUpdatesSize++] = modificationLine;
+		pPendingUpdates[pPendingUpdatesSize++] = addedLines;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentRewriteSessionListener#
+	 * documentRewriteSessionChanged
+	 * (org.eclipse.jface.text.DocumentRewriteSessionEvent)
+	 */
+	@Override
+	public void documentRewriteSessionChanged(
+			final DocumentRewriteSessionEvent aEvent) {
+
+		if (DocumentRewriteSessionEvent.SESSION_START.equals(aEvent
+				.getChangeType())) {
+			pRewriting = true;
+
+		} else if (DocumentRewriteSessionEvent.SESSION_STOP.equals(aEvent
+				.getChangeType())) {
+			pRewriting = false;
+			applyPendingUpdates();
+		}
 	}
 
 	/**
-	 * Retrieves the current state of watched lines
+	 * Retrieves a copy of the current state of watched lines
 	 * 
 	 * @return the current state of watched lines
 	 */
 	public Map<Integer, IBlockDetector> getWatchedLines() {
-		return pWatchedLines;
+
+		applyPendingUpdates();
+		return pWatchedLines.toMap();
 	}
 
 	/*
@@ -123,9 +202,24 @@ public class LinePositionUpdater implements IDocumentListener {
 	 *            Line to be removed
 	 */
 	public void removeLine(final int aLine) {
+
+		applyPendingUpdates();
 		pWatchedLines.remove(aLine);
 	}
 
+	/**
+	 * Suspends or resumes the tracking of document modifications. The caller
+	 * updates the watched lines itself while the tracking is suspended.
+	 * 
+	 * @param aSuspended
+	 *            True to ignore the document modifications
+	 */
+	public void setSuspended(final boolean aSuspended) {
+
+		pSuspended = aSuspended;
+		pAlreadyUpdated = false;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -137,7 +231,8 @@ public class LinePositionUpdater implements IDocumentListener {
 		StringBuilder builder = new StringBuilder();
 		builder.append("LinePosition[");
 
-		for (Entry<Integer, IBlockDetector> entry : pWatchedLines.entrySet()) {
+		for (Entry<Integer, IBlockDetector> entry : getWatchedLines()
+				.entrySet()) {
 			builder.append('(');
 			builder.append(entry.getKey());
 			builder.append(',');
@@ -167,26 +262,13 @@ public class LinePositionUpdater implements IDocumentListener {
 			final IBlockDetector aDetector, final int aOldLastLine,
 			final int aNewLastLine) {
 
+		applyPendingUpdates();
+
 		// Add the line to the updated ones
 		pWatchedLines.put(aLine, aDetector);
 
-		// Update lines
-		final int delta = aNewLastLine - aOldLastLine;
-		Map<Integer, IBlockDetector> newMap = new TreeMap<Integer, IBlockDetector>();
-
-		for (Entry<Integer, IBlockDetector> entry : pWatchedLines.entrySet()) {
-
-			int line = entry.getKey();
-			if (line <= aLine) {
-				// Simple conservation
-				newMap.put(line, entry.getValue());
-
-			} else if (line > aOldLastLine) {
-				newMap.put(line + delta, entry.getValue());
-			}
-		}
-
-		pWatchedLines = newMap;
+		// Forget the lines of the old block, move the following ones
+		pWatchedLines.shift(aLine, aOldLastLine, aNewLastLine - aOldLastLine);
 		pAlreadyUpdated = true;
 	}
 
@@ -201,24 +283,9 @@ public class LinePositionUpdater implements IDocumentListener {
 	 */
 	public void updateLine(final int aLine, final int aAddedLines) {
 
-		// Update lines
-		Map<Integer, IBlockDetector> newMap = new TreeMap<Integer, IBlockDetector>();
-
-		for (Entry<Integer, IBlockDetector> entry : pWatchedLines.entrySet()) {
-
-			int line = entry.getKey();
-			if (line <= aLine) {
-				// Simple conservation
-				newMap.put(line, entry.getValue());
-
-			} else if (line + aAddedLines > aLine) {
-				// Forget line that are moving upper than the base line (deleted
-				// ones)
-
-				newMap.put(line + aAddedLines, entry.getValue());
-			}
-		}
+		applyPendingUpdates();
 
-		pWatchedLines = newMap;
+		// Lines moving upper than the base line (deleted ones) are forgotten
+		pWatchedLines.shift(aLine, aLine, aAddedLines);
 	}
 }
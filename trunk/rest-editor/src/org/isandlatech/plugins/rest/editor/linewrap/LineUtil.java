@@ -25,6 +25,9 @@ import org.isandlatech.plugins.rest.RestPlugin;
  */
 public final class LineUtil {
 
+	/** White spaces removed by the trim methods (the \s regex class) */
+	private static final String TRIMMED_SPACES = " \t\n\u000B\f\r";
+
 	/** The singleton */
 	private static LineUtil sSingleton;
 
@@ -94,20 +97,28 @@ public final class LineUtil {
 	 * @return The indentation of the line
 	 */
 	public String getIndentation(final String aText) {
+		return aText.substring(0, getIndentationLength(aText));
+	}
 
-		int i = 0;
-
-		// Loop until we found the first non white space character
-		for (char character : aText.toCharArray()) {
+	/**
+	 * Returns the length of the indentation of the given text, without
+	 * copying it
+	 * 
+	 * @param aText
+	 *            Text to be treated
+	 * @return The length of the indentation of the line
+	 */
+	public int getIndentationLength(final CharSequence aText) {
 
-			if (!isSpace(character)) {
-				break;
-			}
+		final int textLength = aText.length();
 
+		// Loop until we found the first non white space character
+		int i = 0;
+		while (i < textLength && isSpace(aText.charAt(i))) {
 			i++;
 		}
 
-		return aText.substring(0, i);
+		return i;
 	}
 
 	/**
@@ -151,6 +162,17 @@ public final class LineUtil {
 		return line;
 	}
 
+	/**
+	 * Tests if the given text only contains white spaces
+	 * 
+	 * @param aText
+	 *            Text to be tested
+	 * @return True if the text is empty or blank
+	 */
+	public boolean isBlank(final CharSequence aText) {
+		return ltrimOffset(aText, 0, aText.length()) == aText.length();
+	}
+
 	/**
 	 * Tests if the given parameter is an horizontal space, therefore excluding
 	 * line feed, etc
@@ -171,7 +193,29 @@ public final class LineUtil {
 	 * @return trimmed version of the string
 	 */
 	public String ltrim(final String aString) {
-		return aString.replaceAll("^\\s+", "");
+		return aString.substring(ltrimOffset(aString, 0, aString.length()));
+	}
+
+	/**
+	 * Finds the first character of the given range that is not a white space
+	 * 
+	 * @param aText
+	 *            Text to be treated
+	 * @param aStart
+	 *            Beginning of the range
+	 * @param aEnd
+	 *            End of the range (excluded)
+	 * @return The offset of the left-trimmed range, aEnd if it is blank
+	 */
+	public int ltrimOffset(final CharSequence aText, final int aStart,
+			final int aEnd) {
+
+		int i = aStart;
+		while (i < aEnd && TRIMMED_SPACES.indexOf(aText.charAt(i)) != -1) {
+			i++;
+		}
+
+		return i;
 	}
 
 	/**
@@ -182,6 +226,72 @@ public final class LineUtil {
 	 * @return trimmed version of the string
 	 */
 	public String rtrim(final String aString) {
-		return aString.replaceAll("\\s+$", "");
+		return aString.substring(0, rtrimOffset(aString, 0, aString.length()));
+	}
+
+	/**
+	 * Finds the end of the given range without its trailing white spaces
+	 * 
+	 * @param aText
+	 *            Text to be treated
+	 * @param aStart
+	 *            Beginning of the range
+	 * @param aEnd
+	 *            End of the range (excluded)
+	 * @return The end of the right-trimmed range, aStart if it is blank
+	 */
+	public int rtrimOffset(final CharSequence aText, final int aStart,
+			final int aEnd) {
+
+		int i = aEnd;
+		while (i > aStart && TRIMMED_SPACES.indexOf(aText.charAt(i - 1)) != -1) {
+			i--;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Finds the longest of the given prefixes starting the given range, like
+	 * {@link org.eclipse.jface.text.TextUtilities#startsWith(String[], String)}
+	 * without copying the text
+	 * 
+	 * @param aPrefixes
+	 *            Searched prefixes
+	 * @param aText
+	 *            Text to be treated
+	 * @param aStart
+	 *            Beginning of the range
+	 * @param aEnd
+	 *            End of the range (excluded)
+	 * @return The index of the longest matching prefix, -1 if none
+	 */
+	public int startsWith(final String[] aPrefixes, final CharSequence aText,
+			final int aStart, final int aEnd) {
+
+		int index = -1;
+		int indexLength = -1;
+
+		for (int i = 0; i < aPrefixes.length; i++) {
+
+			final String prefix = aPrefixes[i];
+			final int prefixLength = prefix.length();
+			if (prefixLength <= indexLength || prefixLength > aEnd - aStart) {
+				continue;
+			}
+
+			int j = 0;
+			while (j < prefixLength
+					&& prefix.charAt(j) == aText.charAt(aStart + j)) {
+				j++;
+			}
+
+			if (j == prefixLength) {
+				index = i;
+				indexLength = prefixLength;
+			}
+		}
+
+		return index;
 	}
 }
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.linewrap;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.isandlatech.plugins.rest.RestPlugin;
+
+/**
+ * Read-only view of a document line, without its end delimiter. Characters
+ * are read in the document, without copying the line : a single view can be
+ * moved from line to line with {@link #setLine(IDocument, int)}.
+ * 
+ * The view is only valid until the document is modified.
+ * 
+ * @author Thomas Calmant
+ */
+public class LineView implements CharSequence {
+
+	/** The viewed document */
+	private IDocument pDocument;
+
+	/** Line length, without its delimiter */
+	private int pLength;
+
+	/** The viewed line number */
+	private int pLineNumber = -1;
+
+	/** Offset of the line in the document */
+	private int pOffset;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.CharSequence#charAt(int)
+	 */
+	@Override
+	public char charAt(final int aIndex) {
+
+		if (aIndex < 0 || aIndex >= pLength) {
+			throw new IndexOutOfBoundsException("Index " + aIndex
+					+ " out of line " + pLineNumber);
+		}
+
+		try {
+			return pDocument.getChar(pOffset + aIndex);
+
+		} catch (BadLocationException e) {
+			// The document has been modified
+			throw new IndexOutOfBoundsException("Line " + pLineNumber
+					+ " has been modified");
+		}
+	}
+
+	/**
+	 * Retrieves the viewed line number
+	 * 
+	 * @return The line number, -1 if no line is viewed
+	 */
+	public int getLineNumber() {
+		return pLineNumber;
+	}
+
+	/**
+	 * Retrieves the offset of the viewed line in the document
+	 * 
+	 * @return The offset of the line
+	 */
+	public int getOffset() {
+		return pOffset;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.CharSequence#length()
+	 */
+	@Override
+	public int length() {
+		return pLength;
+	}
+
+	/**
+	 * Moves the view on the given line. Returns false if the line is out of
+	 * the document : the view is then empty.
+	 * 
+	 * @param aDocument
+	 *            Document to read
+	 * @param aLineNumber
+	 *            Number of the viewed line
+	 * @return True if the line is in the document
+	 */
+	public boolean setLine(final IDocument aDocument, final int aLineNumber) {
+
+		pDocument = aDocument;
+		pLineNumber = -1;
+		pOffset = 0;
+		pLength = 0;
+
+		if (aLineNumber < 0 || aLineNumber >= aDocument.getNumberOfLines()) {
+			return false;
+		}
+
+		try {
+			final int offset = aDocument.getLineOffset(aLineNumber);
+			int length = aDocument.getLineLength(aLineNumber);
+
+			// Remove trailing delimiter
+			final String delim = aDocument.getLineDelimiter(aLineNumber);
+			if (delim != null) {
+				length -= delim.length();
+			}
+
+			pLineNumber = aLineNumber;
+			pOffset = offset;
+			pLength = length;
+			return true;
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error while retrieving line content", e);
+			return false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.CharSequence#subSequence(int, int)
+	 */
+	@Override
+	public CharSequence subSequence(final int aStart, final int aEnd) {
+
+		if (aStart < 0 || aEnd > pLength || aStart > aEnd) {
+			throw new IndexOutOfBoundsException("Range " + aStart + "-" + aEnd
+					+ " out of line " + pLineNumber);
+		}
+
+		try {
+			return pDocument.get(pOffset + aStart, aEnd - aStart);
+
+		} catch (BadLocationException e) {
+			// The document has been modified
+			throw new IndexOutOfBoundsException("Line " + pLineNumber
+					+ " has been modified");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.CharSequence#toString()
+	 */
+	@Override
+	public String toString() {
+
+		if (pLength == 0) {
+			return "";
+		}
+
+		return subSequence(0, pLength).toString();
+	}
+}
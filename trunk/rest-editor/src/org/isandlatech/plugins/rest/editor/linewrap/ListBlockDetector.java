@@ -12,7 +12,6 @@
 package org.isandlatech.plugins.rest.editor.linewrap;
 
 import org.eclipse.jface.text.IDocument;
-import org.eclipse.jface.text.TextUtilities;
 import org.isandlatech.plugins.rest.parser.RestLanguage;
 
 /**
@@ -39,15 +38,13 @@ public class ListBlockDetector extends AbstractBlockDetector {
 	public int findLastSimilarLine(final IDocument aDocument,
 			final int aBaseLine, final int aDirection) {
 
-		final String baseLineContent = pLineUtil.getLine(aDocument, aBaseLine,
-				false);
-
-		if (baseLineContent == null) {
+		// Lines are read in place
+		final LineView line = new LineView();
+		if (!line.setLine(aDocument, aBaseLine)) {
 			return -1;
 		}
 
-		final String baseLineIndent = pLineUtil.getIndentation(baseLineContent);
-		final int baseLineIndentLen = baseLineIndent.length();
+		final int baseLineIndentLen = pLineUtil.getIndentationLength(line);
 
 		// Search for first line
 		final int nbLines = aDocument.getNumberOfLines();
@@ -63,25 +60,31 @@ public class ListBlockDetector extends AbstractBlockDetector {
 
 		for (int i = searchStartLine; i >= 0 && i < nbLines; i += aDirection) {
 
-			String line = pLineUtil.getLine(aDocument, i, false);
-			String trimmedLine = line.trim();
-			if (trimmedLine.isEmpty()) {
+			if (!line.setLine(aDocument, i)) {
+				break;
+			}
+
+			final int lineLength = line.length();
+			final int trimmedStart = pLineUtil.ltrimOffset(line, 0, lineLength);
+			if (trimmedStart == lineLength) {
 				break;
 			}
 
-			String lineIndent = pLineUtil.getIndentation(line);
-			if (lineIndent.length() > baseLineIndentLen && aDirection < 0) {
+			final int lineIndentLen = pLineUtil.getIndentationLength(line);
+			if (lineIndentLen > baseLineIndentLen && aDirection < 0) {
 				// Indented block found while moving up
 				break;
 			}
 
-			if (lineIndent.length() < baseLineIndentLen && aDirection > 0) {
+			if (lineIndentLen < baseLineIndentLen && aDirection > 0) {
 				// Un-indented block found while moving down
 				break;
 			}
 
-			if (TextUtilities
-					.startsWith(RestLanguage.LIST_MARKERS, trimmedLine) != -1) {
+			final int trimmedEnd = pLineUtil.rtrimOffset(line, trimmedStart,
+					lineLength);
+			if (pLineUtil.startsWith(RestLanguage.LIST_MARKERS, line,
+					trimmedStart, trimmedEnd) != -1) {
 				// We found the beginning of a list item
 
 				if (aDirection < 0) {
@@ -17,7 +17,6 @@ import java.io.StringReader;
 import java.util.Arrays;
 import java.util.Set;
 
-import org.eclipse.jface.text.TextUtilities;
 import org.isandlatech.plugins.rest.RestPlugin;
 import org.isandlatech.plugins.rest.parser.RestLanguage;
 
@@ -141,12 +140,16 @@ public class ListBlockWrappingHandler extends AbstractBlockWrappingHandler {
 	 *            Line containing a bullet
 	 * @return The marker used on the line, null if unknown
 	 */
-	protected String getBulletMarker(final String aListLine) {
+	protected String getBulletMarker(final CharSequence aListLine) {
 
-		String trimmedLine = aListLine.trim();
+		final int lineLength = aListLine.length();
+		final int trimmedStart = pLineUtil.ltrimOffset(aListLine, 0,
+				lineLength);
+		final int trimmedEnd = pLineUtil.rtrimOffset(aListLine, trimmedStart,
+				lineLength);
 
-		int marker = TextUtilities.startsWith(RestLanguage.LIST_MARKERS,
-				trimmedLine);
+		int marker = pLineUtil.startsWith(RestLanguage.LIST_MARKERS,
+				aListLine, trimmedStart, trimmedEnd);
 		if (marker == -1) {
 			return null;
 		}
@@ -166,6 +169,24 @@ public class ListBlockWrappingHandler extends AbstractBlockWrappingHandler {
 		return HANDLER_TYPE;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.isandlatech.plugins.rest.editor.linewrap.
+	 * AbstractBlockWrappingHandler#getWrapIndentLength(java.lang.CharSequence)
+	 */
+	@Override
+	public int getWrapIndentLength(final CharSequence aFirstLine) {
+
+		final String bullet = getBulletMarker(aFirstLine);
+		if (bullet == null) {
+			return super.getWrapIndentLength(aFirstLine);
+		}
+
+		// Wrapped lines are aligned on the item text
+		return pLineUtil.getIndentationLength(aFirstLine) + bullet.length();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.linewrap;
+
+import java.util.Set;
+
+/**
+ * Prefix tree of in-line markers : finds the longest marker beginning at a
+ * given offset of a text, without copying it.
+ * 
+ * @author Thomas Calmant
+ */
+class MarkerTrie {
+
+	/**
+	 * Trie node
+	 * 
+	 * @author Thomas Calmant
+	 */
+	private static class Node {
+
+		/** Child nodes, in the same order as the keys */
+		private Node[] pChildren = new Node[0];
+
+		/** Characters leading to the child nodes */
+		private char[] pKeys = new char[0];
+
+		/** A marker ends on this node */
+		private boolean pTerminal;
+
+		/**
+		 * Retrieves the child node for the given character
+		 * 
+		 * @param aCharacter
+		 *            A character
+		 * @return The child node, null if none
+		 */
+		Node getChild(final char aCharacter) {
+
+			for (int i = 0; i < pKeys.length; i++) {
+				if (pKeys[i] == aCharacter) {
+					return pChildren[i];
+				}
+			}
+
+			return null;
+		}
+
+		/**
+		 * Retrieves the child node for the given character, creating it if
+		 * needed
+		 * 
+		 * @param aCharacter
+		 *            A character
+		 * @return The child node
+		 */
+		Node getOrAddChild(final char aCharacter) {
+
+			Node child = getChild(aCharacter);
+			if (child == null) {
+				final int nbChildren = pKeys.length;
+
+				final char[] keys = new char[nbChildren + 1];
+				System.arraycopy(pKeys, 0, keys, 0, nbChildren);
+				keys[nbChildren] = aCharacter;
+
+				final Node[] children = new Node[nbChildren + 1];
+				System.arraycopy(pChildren, 0, children, 0, nbChildren);
+				child = new Node();
+				children[nbChildren] = child;
+
+				pKeys = keys;
+				pChildren = children;
+			}
+
+			return child;
+		}
+	}
+
+	/** Number of markers in the trie */
+	private int pNbMarkers;
+
+	/** Root of the trie */
+	private final Node pRoot = new Node();
+
+	/**
+	 * Compiles the given markers. Empty markers are ignored.
+	 * 
+	 * @param aMarkers
+	 *            In-line markers
+	 */
+	MarkerTrie(final Set<String> aMarkers) {
+
+		for (String marker : aMarkers) {
+
+			if (marker == null || marker.isEmpty()) {
+				continue;
+			}
+
+			Node node = pRoot;
+			for (int i = 0; i < marker.length(); i++) {
+				node = node.getOrAddChild(marker.charAt(i));
+			}
+
+			node.pTerminal = true;
+			pNbMarkers++;
+		}
+	}
+
+	/**
+	 * Tests if the trie has been compiled from the given markers
+	 * 
+	 * @param aMarkers
+	 *            In-line markers
+	 * @return True if the trie contains exactly the given non-empty markers
+	 */
+	boolean isCompiledFrom(final Set<String> aMarkers) {
+
+		int nbMarkers = 0;
+		for (String marker : aMarkers) {
+
+			if (marker == null || marker.isEmpty()) {
+				continue;
+			}
+
+			if (match(marker, 0) != marker.length()) {
+				return false;
+			}
+
+			nbMarkers++;
+		}
+
+		return nbMarkers == pNbMarkers;
+	}
+
+	/**
+	 * Finds the longest marker beginning at the given offset
+	 * 
+	 * @param aText
+	 *            Text to read
+	 * @param aOffset
+	 *            Offset of the marker in the text
+	 * @return The length of the longest marker found, 0 if none
+	 */
+	int match(final CharSequence aText, final int aOffset) {
+
+		final int textLength = aText.length();
+		int markerLength = 0;
+
+		Node node = pRoot;
+		for (int i = aOffset; i < textLength; i++) {
+
+			node = node.getChild(aText.charAt(i));
+			if (node == null) {
+				break;
+			}
+
+			if (node.pTerminal) {
+				markerLength = i - aOffset + 1;
+			}
+		}
+
+		return markerLength;
+	}
+}
@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.linewrap;
+
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITextListener;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.IViewportListener;
+import org.eclipse.jface.text.JFaceTextUtil;
+import org.eclipse.jface.text.TextEvent;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.events.ControlEvent;
+import org.eclipse.swt.events.ControlListener;
+import org.isandlatech.plugins.rest.editor.linewrap.HardLineWrap.DetectedBlock;
+
+/**
+ * Wraps the lines of a text viewer without modifying its document : the
+ * widget wraps the lines at the maximum line length, and the wrapped lines of
+ * the visible blocks are indented like the block wrapping handlers would do.
+ * 
+ * @author Thomas Calmant
+ */
+public class SoftLineWrap implements ControlListener, ITextListener,
+		IViewportListener {
+
+	/** Average character width of the widget font, in pixels */
+	private int pCharWidth;
+
+	/** Line utility singleton */
+	private final LineUtil pLineUtil = LineUtil.get();
+
+	/** View of the line being indented */
+	private final LineView pLineView = new LineView();
+
+	/** Maximum line length */
+	private int pMaxLineLength;
+
+	/** Partitioning used by the document */
+	private final String pPartitioning;
+
+	/** Right margin of the widget before the installation */
+	private int pRightMargin;
+
+	/** The wrapped viewer */
+	private ITextViewer pViewer;
+
+	/** The widget of the wrapped viewer */
+	private StyledText pWidget;
+
+	/** Block detection */
+	private final HardLineWrap pWrapper = new HardLineWrap();
+
+	/**
+	 * Prepares the soft wrapper
+	 * 
+	 * @param aPartitioning
+	 *            Partitioning used by the documents
+	 */
+	public SoftLineWrap(final String aPartitioning) {
+		pPartitioning = aPartitioning;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.swt.events.ControlListener#controlMoved(org.eclipse.swt.
+	 * events.ControlEvent)
+	 */
+	@Override
+	public void controlMoved(final ControlEvent aEvent) {
+		// Nothing to do
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.swt.events.ControlListener#controlResized(org.eclipse.swt
+	 * .events.ControlEvent)
+	 */
+	@Override
+	public void controlResized(final ControlEvent aEvent) {
+
+		updateMargin();
+		updateVisibleLines();
+	}
+
+	/**
+	 * Wraps the lines of the given viewer. Uninstalls the wrapper from its
+	 * previous viewer, if needed.
+	 * 
+	 * @param aViewer
+	 *            A text viewer
+	 * @param aMaxLineLength
+	 *            Maximum line length
+	 */
+	public void install(final ITextViewer aViewer, final int aMaxLineLength) {
+
+		uninstall();
+
+		final StyledText widget = aViewer.getTextWidget();
+		if (widget == null || widget.isDisposed()) {
+			return;
+		}
+
+		pViewer = aViewer;
+		pWidget = widget;
+		pMaxLineLength = aMaxLineLength;
+		pRightMargin = widget.getRightMargin();
+
+		widget.setWordWrap(true);
+		widget.addControlListener(this);
+		aViewer.addTextListener(this);
+		aViewer.addViewportListener(this);
+
+		updateMargin();
+		updateVisibleLines();
+	}
+
+	/**
+	 * Sets the wrap indentation of the given model lines, if they are shown
+	 * 
+	 * @param aFirstLine
+	 *            First model line
+	 * @param aLastLine
+	 *            Last model line
+	 * @param aIndentLength
+	 *            Indentation of the wrapped lines, in characters
+	 */
+	private void setWrapIndent(final int aFirstLine, final int aLastLine,
+			final int aIndentLength) {
+
+		final int wrapIndent = aIndentLength * pCharWidth;
+
+		for (int line = aFirstLine; line <= aLastLine; line++) {
+
+			final int widgetLine = JFaceTextUtil.modelLineToWidgetLine(
+					pViewer, line);
+
+			// Folded lines are not shown
+			if (widgetLine >= 0
+					&& pWidget.getLineWrapIndent(widgetLine) != wrapIndent) {
+				pWidget.setLineWrapIndent(widgetLine, 1, wrapIndent);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.ITextListener#textChanged(org.eclipse.jface.text
+	 * .TextEvent)
+	 */
+	@Override
+	public void textChanged(final TextEvent aEvent) {
+
+		if (aEvent.getViewerRedrawState()) {
+			updateVisibleLines();
+		}
+	}
+
+	/**
+	 * Stops wrapping the lines of the current viewer
+	 */
+	public void uninstall() {
+
+		if (pViewer == null) {
+			return;
+		}
+
+		pViewer.removeTextListener(this);
+		pViewer.removeViewportListener(this);
+
+		if (!pWidget.isDisposed()) {
+			pWidget.removeControlListener(this);
+			pWidget.setWordWrap(false);
+			pWidget.setRightMargin(pRightMargin);
+			pWidget.setLineWrapIndent(0, pWidget.getLineCount(), 0);
+		}
+
+		pViewer = null;
+		pWidget = null;
+	}
+
+	/**
+	 * Sets the right margin of the widget, so that lines are wrapped at the
+	 * maximum line length, or at the widget width if it is narrower
+	 */
+	private void updateMargin() {
+
+		pCharWidth = JFaceTextUtil.getAverageCharWidth(pWidget);
+
+		final int textWidth = pWidget.getClientArea().width
+				- pWidget.getLeftMargin();
+		final int margin = textWidth - pMaxLineLength * pCharWidth;
+
+		pWidget.setRightMargin(Math.max(pRightMargin, margin));
+	}
+
+	/**
+	 * Computes the wrap indentation of the visible lines, using the blocks
+	 * detectors and wrapping handlers
+	 */
+	private void updateVisibleLines() {
+
+		final IDocument document = pViewer.getDocument();
+		if (document == null) {
+			return;
+		}
+
+		final int bottomLine = Math.min(
+				JFaceTextUtil.getPartialBottomIndex(pViewer),
+				document.getNumberOfLines() - 1);
+
+		int line = Math.max(JFaceTextUtil.getPartialTopIndex(pViewer), 0);
+		while (line <= bottomLine) {
+
+			if (!pLineView.setLine(document, line)) {
+				return;
+			}
+
+			final String lineContentType = pLineUtil.getContentType(document,
+					line, pPartitioning);
+
+			DetectedBlock detectedBlock = null;
+			if (IDocument.DEFAULT_CONTENT_TYPE.equals(lineContentType)) {
+				// Only blocks of default content type are wrapped
+				detectedBlock = pWrapper.detectBlock(document, line, line);
+			}
+
+			final IBlockWrappingHandler handler;
+			if (detectedBlock != null) {
+				handler = BlockWrappingHandlerStore.get().getHandler(
+						detectedBlock.pDetector.getHandlerType());
+			} else {
+				handler = null;
+			}
+
+			if (handler == null) {
+				// Keep the line indentation
+				setWrapIndent(line, line,
+						pLineUtil.getIndentationLength(pLineView));
+				line++;
+				continue;
+			}
+
+			final BlockInformation block = detectedBlock.pBlock;
+			final int lastLine = Math.min(
+					Math.max(block.getLastLine(), line), bottomLine);
+
+			if (!pLineView.setLine(document, block.getFirstLine())) {
+				return;
+			}
+
+			setWrapIndent(line, lastLine,
+					handler.getWrapIndentLength(pLineView));
+			line = lastLine + 1;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.IViewportListener#viewportChanged(int)
+	 */
+	@Override
+	public void viewportChanged(final int aVerticalOffset) {
+		updateVisibleLines();
+	}
+}
@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.linewrap;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Sorted map of the watched lines to the detector of their block. Lines are
+ * stored in a treap, each node holding a pending shift of its sub-trees :
+ * moving all the lines following a given one costs O(log n), whatever the
+ * number of watched lines.
+ * 
+ * @author Thomas Calmant
+ */
+public class WatchedLines {
+
+	/**
+	 * Treap node
+	 * 
+	 * @author Thomas Calmant
+	 */
+	private static class Node {
+
+		/** Detector of the block beginning on the line */
+		private IBlockDetector pDetector;
+
+		/** Left sub-tree (lower lines) */
+		private Node pLeft;
+
+		/** The watched line, pending shift applied */
+		private int pLine;
+
+		/** Shift to apply to the lines of the sub-trees */
+		private int pPendingShift;
+
+		/** Heap priority */
+		private final int pPriority;
+
+		/** Right sub-tree (upper lines) */
+		private Node pRight;
+
+		/**
+		 * Sets up the node
+		 * 
+		 * @param aLine
+		 *            The watched line
+		 * @param aDetector
+		 *            Detector of the block
+		 * @param aPriority
+		 *            Heap priority
+		 */
+		Node(final int aLine, final IBlockDetector aDetector,
+				final int aPriority) {
+			pLine = aLine;
+			pDetector = aDetector;
+			pPriority = aPriority;
+		}
+	}
+
+	/**
+	 * Shifts the lines of the given sub-tree
+	 * 
+	 * @param aNode
+	 *            Root of a sub-tree, can be null
+	 * @param aShift
+	 *            Number of lines to add
+	 */
+	private static void addShift(final Node aNode, final int aShift) {
+
+		if (aNode != null && aShift != 0) {
+			aNode.pLine += aShift;
+			aNode.pPendingShift += aShift;
+		}
+	}
+
+	/**
+	 * Merges two sub-trees
+	 * 
+	 * @param aLower
+	 *            Sub-tree of the lower lines, can be null
+	 * @param aUpper
+	 *            Sub-tree of the upper lines, can be null
+	 * @return The root of the merged tree
+	 */
+	private static Node merge(final Node aLower, final Node aUpper) {
+
+		if (aLower == null) {
+			return aUpper;
+		}
+
+		if (aUpper == null) {
+			return aLower;
+		}
+
+		if (aLower.pPriority > aUpper.pPriority) {
+			pushShift(aLower);
+			aLower.pRight = merge(aLower.pRight, aUpper);
+			return aLower;
+		}
+
+		pushShift(aUpper);
+		aUpper.pLeft = merge(aLower, aUpper.pLeft);
+		return aUpper;
+	}
+
+	/**
+	 * Applies the pending shift of a node to its children
+	 * 
+	 * @param aNode
+	 *            A node
+	 */
+	private static void pushShift(final Node aNode) {
+
+		if (aNode.pPendingShift != 0) {
+			addShift(aNode.pLeft, aNode.pPendingShift);
+			addShift(aNode.pRight, aNode.pPendingShift);
+			aNode.pPendingShift = 0;
+		}
+	}
+
+	/**
+	 * Copies the given sub-tree in a map
+	 * 
+	 * @param aNode
+	 *            Root of the sub-tree, can be null
+	 * @param aMap
+	 *            Map receiving the lines
+	 */
+	private static void toMap(final Node aNode,
+			final Map<Integer, IBlockDetector> aMap) {
+
+		if (aNode != null) {
+			pushShift(aNode);
+			toMap(aNode.pLeft, aMap);
+			aMap.put(aNode.pLine, aNode.pDetector);
+			toMap(aNode.pRight, aMap);
+		}
+	}
+
+	/** Priorities generator */
+	private final Random pRandom = new Random();
+
+	/** Root of the treap */
+	private Node pRoot;
+
+	/** Lower part of the last split */
+	private Node pSplitLower;
+
+	/** Upper part of the last split */
+	private Node pSplitUpper;
+
+	/**
+	 * Forgets all the lines
+	 */
+	public void clear() {
+		pRoot = null;
+	}
+
+	/**
+	 * Retrieves the detector of the block beginning on the given line
+	 * 
+	 * @param aLine
+	 *            A line
+	 * @return The detector of the block, null if the line is not watched
+	 */
+	public IBlockDetector get(final int aLine) {
+
+		Node node = pRoot;
+		while (node != null) {
+
+			pushShift(node);
+			if (aLine < node.pLine) {
+				node = node.pLeft;
+
+			} else if (aLine > node.pLine) {
+				node = node.pRight;
+
+			} else {
+				return node.pDetector;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Tests if no line is watched
+	 * 
+	 * @return True if no line is watched
+	 */
+	public boolean isEmpty() {
+		return pRoot == null;
+	}
+
+	/**
+	 * Watches the given line
+	 * 
+	 * @param aLine
+	 *            First line of a block
+	 * @param aDetector
+	 *            Detector of the block
+	 */
+	public void put(final int aLine, final IBlockDetector aDetector) {
+
+		split(pRoot, aLine - 1);
+		final Node lower = pSplitLower;
+
+		split(pSplitUpper, aLine);
+		final Node upper = pSplitUpper;
+
+		final Node node = new Node(aLine, aDetector, pRandom.nextInt());
+		pRoot = merge(merge(lower, node), upper);
+	}
+
+	/**
+	 * Stops watching the given line
+	 * 
+	 * @param aLine
+	 *            A watched line
+	 */
+	public void remove(final int aLine) {
+
+		split(pRoot, aLine - 1);
+		final Node lower = pSplitLower;
+
+		split(pSplitUpper, aLine);
+		pRoot = merge(lower, pSplitUpper);
+	}
+
+	/**
+	 * Moves the lines following a modification. Lines up to aLine are kept,
+	 * lines up to aLastRemovedLine are forgotten and the following ones are
+	 * shifted. Lines shifted up to aLine or before are forgotten too.
+	 * 
+	 * @param aLine
+	 *            Last kept line
+	 * @param aLastRemovedLine
+	 *            Last forgotten line, aLine if none
+	 * @param aShift
+	 *            Number of lines added after aLastRemovedLine (negative on
+	 *            removal)
+	 */
+	public void shift(final int aLine, final int aLastRemovedLine,
+			final int aShift) {
+
+		split(pRoot, aLine);
+		final Node lower = pSplitLower;
+
+		split(pSplitUpper, aLastRemovedLine);
+		Node upper = pSplitUpper;
+		addShift(upper, aShift);
+
+		if (aShift < 0) {
+			// Forget the lines moved into the kept ones
+			split(upper, aLine);
+			upper = pSplitUpper;
+		}
+
+		pRoot = merge(lower, upper);
+	}
+
+	/**
+	 * Splits the given sub-tree. The result is stored in
+	 * {@link #pSplitLower} and {@link #pSplitUpper}.
+	 * 
+	 * @param aNode
+	 *            Root of the sub-tree, can be null
+	 * @param aLine
+	 *            Last line of the lower part
+	 */
+	private void split(final Node aNode, final int aLine) {
+
+		if (aNode == null) {
+			pSplitLower = null;
+			pSplitUpper = null;
+			return;
+		}
+
+		pushShift(aNode);
+		if (aNode.pLine <= aLine) {
+			split(aNode.pRight, aLine);
+			aNode.pRight = pSplitLower;
+			pSplitLower = aNode;
+
+		} else {
+			split(aNode.pLeft, aLine);
+			aNode.pLeft = pSplitUpper;
+			pSplitUpper = aNode;
+		}
+	}
+
+	/**
+	 * Copies the watched lines in a sorted map
+	 * 
+	 * @return A new map of the watched lines to their block detector
+	 */
+	public Map<Integer, IBlockDetector> toMap() {
+
+		final Map<Integer, IBlockDetector> map = new TreeMap<Integer, IBlockDetector>();
+		toMap(pRoot, map);
+		return map;
+	}
+}
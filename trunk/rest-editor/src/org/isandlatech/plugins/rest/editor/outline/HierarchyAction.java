@@ -11,7 +11,9 @@
 
 package org.isandlatech.plugins.rest.editor.outline;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.resource.ImageDescriptor;
@@ -20,6 +22,16 @@ import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.TextUtilities;
 import org.eclipse.jface.viewers.TreeSelection;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.MoveSourceEdit;
+import org.eclipse.text.edits.MoveTargetEdit;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.UndoEdit;
+import org.eclipse.text.undo.DocumentUndoManagerRegistry;
+import org.eclipse.text.undo.IDocumentUndoManager;
 import org.eclipse.ui.ISharedImages;
 import org.eclipse.ui.PlatformUI;
 import org.isandlatech.plugins.rest.RestPlugin;
@@ -90,9 +102,11 @@ public class HierarchyAction extends Action {
 	 *            Section to be modified
 	 * @param aIncrement
 	 *            Direction of level modification (+1, -1)
+	 * @param aEdit
+	 *            Edit receiving the decoration lines replacements
 	 */
 	private void changeSectionLevel(final TreeData aSectionNode,
-			final int aIncrement) {
+			final int aIncrement, final MultiTextEdit aEdit) {
 
 		if (aIncrement == 0) {
 			return;
@@ -111,10 +125,60 @@ public class HierarchyAction extends Action {
 		}
 
 		// Let's go
-		replaceDecorators(aSectionNode, increment);
+		replaceDecorators(aSectionNode, increment, aEdit);
 
 		for (TreeData node : aSectionNode.getChildrenArray()) {
-			changeSectionLevel(node, increment);
+			changeSectionLevel(node, increment, aEdit);
+		}
+	}
+
+	/**
+	 * Prepares the addition of an end of section sequence (2 ends of line
+	 * sequence) at the end of the document, if needed.
+	 * 
+	 * @param aDocument
+	 *            Document to be modified
+	 * @return The insertion at the end of the document, null if not needed
+	 */
+	private InsertEdit createEndOfDocumentEdit(final IDocument aDocument) {
+
+		final String endOfLine = TextUtilities
+				.getDefaultLineDelimiter(aDocument);
+		final String endOfSection = endOfLine + endOfLine;
+
+		if (endsWith(aDocument, aDocument.getLength(), endOfSection)) {
+			return null;
+		}
+
+		return new InsertEdit(aDocument.getLength(), endOfSection);
+	}
+
+	/**
+	 * Tests if the document text before the given offset ends with the given
+	 * string, without copying the document
+	 * 
+	 * @param aDocument
+	 *            Document to test
+	 * @param aOffset
+	 *            End offset of the tested text
+	 * @param aSuffix
+	 *            Expected end of the text
+	 * @return True if the text ends with the suffix
+	 */
+	private boolean endsWith(final IDocument aDocument, final int aOffset,
+			final String aSuffix) {
+
+		final int start = aOffset - aSuffix.length();
+		if (start < 0) {
+			return false;
+		}
+
+		try {
+			return aSuffix.equals(aDocument.get(start, aSuffix.length()));
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error reading the end of a section", e);
+			return false;
 		}
 	}
 
@@ -187,19 +251,31 @@ public class HierarchyAction extends Action {
 	}
 
 	/**
-	 * Handles hierarchy modification buttons
+	 * Handles hierarchy modification buttons. The document is modified by a
+	 * single text edit.
 	 * 
 	 * @param aSectionNode
 	 *            Modified section
 	 * @param aDirection
 	 *            Direction of hierarchy modification
-	 * @return True on success, else false
+	 * @return The edit reverting the modification, null if nothing was done
+	 * @throws BadLocationException
+	 *             The section is out of the document
+	 * @throws MalformedTreeException
+	 *             Invalid modification
 	 */
-	protected boolean handleHierarchyMovement(final TreeData aSectionNode,
-			final Direction aDirection) {
+	protected UndoEdit handleHierarchyMovement(final TreeData aSectionNode,
+			final Direction aDirection) throws BadLocationException,
+			MalformedTreeException {
 
 		TreeData targetNode = null;
 		IDocument document = aSectionNode.getDocument();
+
+		// The section may have been removed by a previous movement
+		if (document == null) {
+			return null;
+		}
+
 		IRegion sourceSection = OutlineUtil.getCompleteSection(aSectionNode);
 		int targetOffset = 0;
 
@@ -207,7 +283,7 @@ public class HierarchyAction extends Action {
 		case A_UP:
 			targetNode = aSectionNode.getPrevious();
 
-			// No need to handle first replacement nor the target section length
+			// No need to handle the target section length
 			break;
 
 		case B_DOWN:
@@ -215,91 +291,81 @@ public class HierarchyAction extends Action {
 
 			// Move *after* the complete section, not only its title
 			targetOffset = OutlineUtil.getCompleteSectionLength(targetNode);
-
-			// Handle the first replacement : text moves up
-			targetOffset -= sourceSection.getLength();
 			break;
 
 		case C_LEFT:
-			changeSectionLevel(aSectionNode, -1);
-			return true;
-
 		case D_RIGHT:
-			changeSectionLevel(aSectionNode, +1);
-			return true;
+			MultiTextEdit levelEdit = new MultiTextEdit();
+			changeSectionLevel(aSectionNode,
+					aDirection == Direction.C_LEFT ? -1 : +1, levelEdit);
+
+			if (!levelEdit.hasChildren()) {
+				return null;
+			}
+
+			return levelEdit.apply(document, TextEdit.CREATE_UNDO);
 		}
 
 		if (targetNode == null
 				|| targetNode.getLevel() != aSectionNode.getLevel()) {
-			return false;
+			return null;
 		}
 
 		// Target offset rebase
 		targetOffset += OutlineUtil.getCompleteSectionOffset(targetNode);
 
+		MultiTextEdit moveEdit = new MultiTextEdit();
+
 		// Handle movement after last section : we may need to add some
-		// blank lines
+		// blank lines before the moved section
 		if (aDirection == Direction.B_DOWN && targetNode.getNext() == null) {
 
-			targetOffset += setEndOfDocument(document);
+			InsertEdit endOfDocument = createEndOfDocumentEdit(document);
+			if (endOfDocument != null) {
+				moveEdit.addChild(endOfDocument);
+			}
 		}
 
 		// Move !
-		moveRegion(document, sourceSection, targetOffset);
-		return true;
+		moveRegion(document, sourceSection, targetOffset, moveEdit);
+		return moveEdit.apply(document, TextEdit.CREATE_UNDO);
 	}
 
 	/**
-	 * Moves the given region content to the given target offset. Uses
-	 * {@link IDocument#replace(int, int, String)} method.
-	 * 
-	 * Reverts document content on error.
+	 * Prepares the movement of the given region content to the given target
+	 * offset. The moved text is not copied.
 	 * 
 	 * @param aDocument
 	 *            Document to modify
 	 * @param aMovedRegion
 	 *            Region to be moved
 	 * @param aTargetOffset
-	 *            Target offset for region movement
-	 * @return True on success, False on error
+	 *            Target offset for region movement, in the current document
+	 * @param aEdit
+	 *            Edit receiving the movement
+	 * @throws MalformedTreeException
+	 *             The target offset is in the moved region
 	 */
-	private boolean moveRegion(final IDocument aDocument,
-			final IRegion aMovedRegion, final int aTargetOffset) {
+	private void moveRegion(final IDocument aDocument,
+			final IRegion aMovedRegion, final int aTargetOffset,
+			final MultiTextEdit aEdit) throws MalformedTreeException {
 
 		// Document EOL
 		String endOfLine = TextUtilities.getDefaultLineDelimiter(aDocument);
 
-		// Save text content (in case of error)
-		String documentText = aDocument.get();
-
-		// Movement by 2 replacements...
-		String sectionText;
-		try {
-			sectionText = aDocument.get(aMovedRegion.getOffset(),
-					aMovedRegion.getLength());
-
-			// Just to be sure we have a correct section separation
-			String endOfSection = endOfLine + endOfLine;
-			if (!sectionText.endsWith(endOfSection)) {
-				sectionText += endOfSection;
-			}
-
-			// Remove current section text
-			aDocument.replace(aMovedRegion.getOffset(),
-					aMovedRegion.getLength(), "");
-
-			// Insert text at its new position
-			aDocument.replace(aTargetOffset, 0, sectionText);
+		MoveSourceEdit source = new MoveSourceEdit(aMovedRegion.getOffset(),
+				aMovedRegion.getLength());
 
-		} catch (BadLocationException e) {
-			// Revert text
-			aDocument.set(documentText);
-
-			RestPlugin.logError("Error moving region", e);
-			return false;
+		// Just to be sure we have a correct section separation
+		final int regionEnd = aMovedRegion.getOffset()
+				+ aMovedRegion.getLength();
+		String endOfSection = endOfLine + endOfLine;
+		if (!endsWith(aDocument, regionEnd, endOfSection)) {
+			source.addChild(new InsertEdit(regionEnd, endOfSection));
 		}
 
-		return true;
+		aEdit.addChild(source);
+		aEdit.addChild(new MoveTargetEdit(aTargetOffset, source));
 	}
 
 	/**
@@ -309,16 +375,53 @@ public class HierarchyAction extends Action {
 	 *            The section to be modified
 	 * @param aIncrement
 	 *            The level modification indicator (+1, -1)
+	 * @param aEdit
+	 *            Edit receiving the replacement
 	 */
 	protected void replaceDecorators(final TreeData aSectionNode,
-			final int aIncrement) {
+			final int aIncrement, final MultiTextEdit aEdit) {
 
 		// Get the decoration character
 		int newLevel = aSectionNode.getLevel() + aIncrement;
 		SectionDecoration newDecorator = pOutline.getContentProvider()
 				.getDecorationForLevel(newLevel);
 
-		OutlineUtil.replaceSectionMarker(aSectionNode, newDecorator);
+		ReplaceEdit blockEdit = OutlineUtil.createSectionMarkerEdit(
+				aSectionNode, newDecorator);
+		if (blockEdit == null) {
+			return;
+		}
+
+		try {
+			aEdit.addChild(blockEdit);
+
+		} catch (MalformedTreeException e) {
+			// Already replaced, as a sub-section of another selected section
+		}
+	}
+
+	/**
+	 * Reverts the given modifications, from the last one
+	 * 
+	 * @param aDocument
+	 *            Modified document
+	 * @param aUndoEdits
+	 *            Edits reverting the modifications, in application order
+	 */
+	private void rollback(final IDocument aDocument,
+			final List<UndoEdit> aUndoEdits) {
+
+		try {
+			for (int i = aUndoEdits.size() - 1; i >= 0; i--) {
+				aUndoEdits.get(i).apply(aDocument);
+			}
+
+		} catch (MalformedTreeException e) {
+			RestPlugin.logError("Error reverting sections movements", e);
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error reverting sections movements", e);
+		}
 	}
 
 	/*
@@ -329,64 +432,69 @@ public class HierarchyAction extends Action {
 	@Override
 	public void run() {
 
+		SectionModel model = pOutline.getContentProvider().getModel();
+		IDocument document = model.getDocument();
+		if (document == null) {
+			return;
+		}
+
 		// Do not handle selection changes
 		pOutline.setNormalizeSelection(false);
 
 		TreeSelection selectedNodes = (TreeSelection) pOutline.getSelection();
 
-		Iterator<?> iterator = selectedNodes.iterator();
-		while (iterator.hasNext()) {
-			Object nodeData = iterator.next();
-
-			// Just to be sure...
-			if (nodeData instanceof TreeData) {
-				handleHierarchyMovement((TreeData) nodeData, pDirection);
-
-				// Update each time to have a valid tree
-				pOutline.update();
-			}
+		// The whole action is undone at once
+		IDocumentUndoManager undoManager = DocumentUndoManagerRegistry
+				.getDocumentUndoManager(document);
+		if (undoManager != null) {
+			undoManager.beginCompoundChange();
 		}
 
-		// Reset selection, with new data (positions...)
-		OutlineUtil.postUpdateSelection(pOutline, selectedNodes);
+		// The outline is updated once, at the end of the action
+		model.beginBatch();
 
-		// Re-handle selection changes
-		pOutline.setNormalizeSelection(true);
-	}
-
-	/**
-	 * Adds an end of section sequence (2 ends of line sequence) at the end of
-	 * the document, if needed.
-	 * 
-	 * @param aDocument
-	 *            Document to be modified
-	 * @return The number of characters appended to the document
-	 */
-	private int setEndOfDocument(final IDocument aDocument) {
-
-		final String endOfLine = TextUtilities
-				.getDefaultLineDelimiter(aDocument);
-		final String endOfSection = endOfLine + endOfLine;
+		// Reverts the movements on error
+		List<UndoEdit> undoEdits = new ArrayList<UndoEdit>();
 
 		try {
+			Iterator<?> iterator = selectedNodes.iterator();
+			while (iterator.hasNext()) {
+				Object nodeData = iterator.next();
+
+				// Just to be sure...
+				if (nodeData instanceof TreeData) {
+					UndoEdit undoEdit = handleHierarchyMovement(
+							(TreeData) nodeData, pDirection);
+
+					if (undoEdit != null) {
+						undoEdits.add(undoEdit);
+
+						// Parse the moved sections to have a valid tree
+						model.reconcile();
+					}
+				}
+			}
 
-			final String endOfDocument = aDocument.get(aDocument.getLength()
-					- endOfSection.length() - 1, endOfSection.length());
+		} catch (MalformedTreeException e) {
+			RestPlugin.logError("Error moving sections", e);
+			rollback(document, undoEdits);
 
-			if (!endOfDocument.equals(endOfSection)) {
-				// Add blank lines, if needed
-				String content = aDocument.get();
-				content += endOfSection;
-				aDocument.set(content);
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error moving sections", e);
+			rollback(document, undoEdits);
 
-				// Update target offset
-				return endOfSection.length();
-			}
+		} finally {
+			model.endBatch();
 
-		} catch (BadLocationException e) {
-			RestPlugin.logError("Error adding last document line", e);
+			if (undoManager != null) {
+				undoManager.endCompoundChange();
+			}
 		}
 
-		return 0;
+		// Reset selection, with new data (positions...)
+		OutlineUtil.postUpdateSelection(pOutline, selectedNodes);
+
+		// Re-handle selection changes
+		pOutline.setNormalizeSelection(true);
 	}
 }
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.outline;
+
+/**
+ * Interface to be implemented by the views of a {@link SectionModel} to be
+ * notified of the sections modifications
+ * 
+ * @author Thomas Calmant
+ */
+public interface ISectionModelListener {
+
+	/**
+	 * Notifies the listener that the sections of the model changed. Deltas
+	 * are given in the order they must be applied : removals first, in
+	 * reverse document order, then additions in document order, then updates.
+	 * 
+	 * @param aModel
+	 *            The modified model
+	 * @param aDeltas
+	 *            The sections modifications, never empty
+	 */
+	void sectionsChanged(SectionModel aModel, SectionDelta[] aDeltas);
+}
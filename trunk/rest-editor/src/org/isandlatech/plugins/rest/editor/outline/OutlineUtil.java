@@ -27,6 +27,12 @@ import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextUtilities;
 import org.eclipse.jface.viewers.TreePath;
 import org.eclipse.jface.viewers.TreeSelection;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.undo.DocumentUndoManagerRegistry;
+import org.eclipse.text.undo.IDocumentUndoManager;
 import org.isandlatech.plugins.rest.RestPlugin;
 import org.isandlatech.plugins.rest.parser.RestLanguage;
 import org.isandlatech.plugins.rest.prefs.IEditorPreferenceConstants;
@@ -38,6 +44,79 @@ import org.isandlatech.plugins.rest.prefs.IEditorPreferenceConstants;
  */
 public final class OutlineUtil {
 
+	/** Separator of the section titles in a section path */
+	public static final String SECTION_PATH_SEPARATOR = " > ";
+
+	/**
+	 * Prepares the replacement of the section title decoration lines. The
+	 * document is not modified.
+	 * 
+	 * @param aSectionNode
+	 *            The section to be modified
+	 * @param aNewMarker
+	 *            The new marker to use
+	 * @return The replacement of the section title block, null on error or if
+	 *         the block already uses the marker
+	 */
+	static ReplaceEdit createSectionMarkerEdit(final TreeData aSectionNode,
+			final SectionDecoration aNewMarker) {
+
+		final IDocument document = aSectionNode.getDocument();
+		if (document == null) {
+			return null;
+		}
+
+		// Find old section block bounds
+		IRegion sectionBlock = getSectionTitleBlock(aSectionNode);
+		if (sectionBlock == null) {
+			return null;
+		}
+
+		// Use document line delimiter
+		final String endOfLine = TextUtilities
+				.getDefaultLineDelimiter(document);
+
+		final String sectionTitle = aSectionNode.getText();
+
+		// Prepare the decoration line
+		char[] decorationArray = new char[sectionTitle.length()];
+		Arrays.fill(decorationArray, aNewMarker.getMarker());
+
+		StringBuilder newSectionBlock = new StringBuilder(sectionTitle.length()
+				+ endOfLine.length());
+
+		// Add upperline, if needed
+		if (aNewMarker.isUpperlined()) {
+			newSectionBlock.append(decorationArray);
+			newSectionBlock.append(endOfLine);
+		}
+
+		// Section title
+		newSectionBlock.append(sectionTitle);
+		newSectionBlock.append(endOfLine);
+
+		// Underline
+		newSectionBlock.append(decorationArray);
+		newSectionBlock.append(endOfLine);
+
+		final String newBlock = newSectionBlock.toString();
+
+		try {
+			// Don't touch blocks that are already normalized
+			if (newBlock.equals(document.get(sectionBlock.getOffset(),
+					sectionBlock.getLength()))) {
+				return null;
+			}
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error reading section markers", e);
+			return null;
+		}
+
+		return new ReplaceEdit(sectionBlock.getOffset(),
+				sectionBlock.getLength(), newBlock);
+	}
+
 	/**
 	 * Retrieves the region corresponding to the given section content with all
 	 * its children
@@ -72,6 +151,10 @@ public final class OutlineUtil {
 		}
 
 		IDocument document = aSectionNode.getDocument();
+		if (document == null) {
+			return 0;
+		}
+
 		TreeData nextNode = aSectionNode.getNext();
 
 		int offset = getCompleteSectionOffset(aSectionNode);
@@ -103,22 +186,33 @@ public final class OutlineUtil {
 			return 0;
 		}
 
-		IDocument document = aSectionNode.getDocument();
-		int offset = aSectionNode.getLineOffset();
+		return Math.max(aSectionNode.getSectionOffset(), 0);
+	}
+
+	/**
+	 * Retrieves the titles of the given section and of its parents, from the
+	 * top-level one, as shown in a breadcrumb
+	 * 
+	 * @param aSectionNode
+	 *            A section node
+	 * @return The path of the section, empty for the root
+	 */
+	public static String getSectionPath(final TreeData aSectionNode) {
 
-		if (document != null && aSectionNode.isUpperlined()) {
-			// Line - 1, 1 based
-			int line = aSectionNode.getLine() - 2;
+		final StringBuilder builder = new StringBuilder();
 
-			try {
-				offset = document.getLineOffset(line);
+		TreeData node = aSectionNode;
+		while (node != null && node.getLevel() > 0) {
 
-			} catch (BadLocationException e) {
-				offset = aSectionNode.getLineOffset();
+			if (builder.length() != 0) {
+				builder.insert(0, SECTION_PATH_SEPARATOR);
 			}
+
+			builder.insert(0, node.getText());
+			node = node.getParent();
 		}
 
-		return Math.max(offset, 0);
+		return builder.toString();
 	}
 
 	/**
@@ -143,21 +237,17 @@ public final class OutlineUtil {
 
 		int blockOffset = getCompleteSectionOffset(aSectionNode);
 
-		// Compute block length
+		// Compute block length, from the title offset : the section line
+		// number is only updated when the outline is
 		int blockLength = 0;
-		int line = aSectionNode.getLine();
 
-		// Upper line
 		try {
-			if (aSectionNode.isUpperlined()) {
-				blockLength += document.getLineLength(line - 2);
-			}
-
-			// Title
-			blockLength += document.getLineLength(line - 1);
-
 			// Under line
-			blockLength += document.getLineLength(line);
+			int line = document.getLineOfOffset(aSectionNode
+					.getLineOffset()) + 1;
+
+			blockLength = document.getLineOffset(line)
+					+ document.getLineLength(line) - blockOffset;
 
 		} catch (BadLocationException e) {
 			RestPlugin.logError("Error retrieving title block", e);
@@ -207,12 +297,8 @@ public final class OutlineUtil {
 		}
 
 		IDocument document = aSectionNode.getDocument();
-
-		// Indicate that we will perform multiple replacements on the document
-		DocumentRewriteSession rewriteSession = null;
-		if (document instanceof IDocumentExtension4) {
-			rewriteSession = ((IDocumentExtension4) document)
-					.startRewriteSession(DocumentRewriteSessionType.SEQUENTIAL);
+		if (document == null) {
+			return;
 		}
 
 		// Convert simple marker into section decorators objects
@@ -223,17 +309,54 @@ public final class OutlineUtil {
 			preferredDecoratorsArray[i++] = new SectionDecoration(marker, false);
 		}
 
-		normalizeSectionsMarker(aSectionNode, preferredDecoratorsArray);
+		// Compute all replacements before modifying the document
+		MultiTextEdit edit = new MultiTextEdit();
+		normalizeSectionsMarker(aSectionNode, preferredDecoratorsArray, edit);
+
+		if (!edit.hasChildren()) {
+			// Nothing to do
+			return;
+		}
 
-		// Stop rewrite session
-		if (rewriteSession != null) {
-			((IDocumentExtension4) document).stopRewriteSession(rewriteSession);
+		// Indicate that we will perform multiple replacements on the document
+		DocumentRewriteSession rewriteSession = null;
+		if (document instanceof IDocumentExtension4) {
+			rewriteSession = ((IDocumentExtension4) document)
+					.startRewriteSession(DocumentRewriteSessionType.UNRESTRICTED);
+		}
+
+		// Undo all replacements at once
+		IDocumentUndoManager undoManager = DocumentUndoManagerRegistry
+				.getDocumentUndoManager(document);
+		if (undoManager != null) {
+			undoManager.beginCompoundChange();
+		}
+
+		try {
+			edit.apply(document, TextEdit.NONE);
+
+		} catch (MalformedTreeException e) {
+			RestPlugin.logError("Error normalizing section markers", e);
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error normalizing section markers", e);
+
+		} finally {
+			if (undoManager != null) {
+				undoManager.endCompoundChange();
+			}
+
+			// Stop rewrite session
+			if (rewriteSession != null) {
+				((IDocumentExtension4) document)
+						.stopRewriteSession(rewriteSession);
+			}
 		}
 	}
 
 	/**
-	 * Rewrites section and subsections titles blocks to use the preferred
-	 * marker for its level.
+	 * Prepares the rewriting of section and subsections titles blocks to use
+	 * the preferred marker for its level.
 	 * 
 	 * It is recommended to have a least 6 preferred markers.
 	 * 
@@ -241,19 +364,14 @@ public final class OutlineUtil {
 	 *            Base node to modify (its children will be modified to)
 	 * @param aMarkers
 	 *            Preferred markers array.
+	 * @param aEdit
+	 *            Edit receiving the title blocks replacements
 	 */
 	private static void normalizeSectionsMarker(final TreeData aSectionNode,
-			final SectionDecoration[] aMarkers) {
+			final SectionDecoration[] aMarkers, final MultiTextEdit aEdit) {
 
 		int sectionLevel = aSectionNode.getLevel();
 
-		// Treat children
-		TreeData[] subSections = aSectionNode.getChildrenArray();
-
-		for (int i = subSections.length - 1; i >= 0; i--) {
-			normalizeSectionsMarker(subSections[i], aMarkers);
-		}
-
 		// Ignore logical nodes (level <= 0)
 		if (sectionLevel > 0) {
 
@@ -265,7 +383,22 @@ public final class OutlineUtil {
 				sectionLevel = aMarkers.length - 1;
 			}
 
-			replaceSectionMarker(aSectionNode, aMarkers[sectionLevel]);
+			ReplaceEdit blockEdit = createSectionMarkerEdit(aSectionNode,
+					aMarkers[sectionLevel]);
+
+			if (blockEdit != null) {
+				try {
+					aEdit.addChild(blockEdit);
+
+				} catch (MalformedTreeException e) {
+					RestPlugin.logError("Overlapping section blocks", e);
+				}
+			}
+		}
+
+		// Treat children, in document order
+		for (TreeData subSection : aSectionNode.getChildrenArray()) {
+			normalizeSectionsMarker(subSection, aMarkers, aEdit);
 		}
 	}
 
@@ -319,43 +452,15 @@ public final class OutlineUtil {
 			return;
 		}
 
-		// Find old section block bounds
-		IRegion sectionBlock = getSectionTitleBlock(aSectionNode);
-		if (sectionBlock == null) {
+		ReplaceEdit edit = createSectionMarkerEdit(aSectionNode, aNewMarker);
+		if (edit == null) {
 			return;
 		}
 
-		// Use document line delimiter
-		final String endOfLine = TextUtilities
-				.getDefaultLineDelimiter(document);
-
-		final String sectionTitle = aSectionNode.getText();
-
-		// Prepare the decoration line
-		char[] decorationArray = new char[sectionTitle.length()];
-		Arrays.fill(decorationArray, aNewMarker.getMarker());
-
-		StringBuilder newSectionBlock = new StringBuilder(sectionTitle.length()
-				+ endOfLine.length());
-
-		// Add upperline, if needed
-		if (aNewMarker.isUpperlined()) {
-			newSectionBlock.append(decorationArray);
-			newSectionBlock.append(endOfLine);
-		}
-
-		// Section title
-		newSectionBlock.append(sectionTitle);
-		newSectionBlock.append(endOfLine);
-
-		// Underline
-		newSectionBlock.append(decorationArray);
-		newSectionBlock.append(endOfLine);
-
 		// Replace section block in document
 		try {
-			document.replace(sectionBlock.getOffset(),
-					sectionBlock.getLength(), newSectionBlock.toString());
+			document.replace(edit.getOffset(), edit.getLength(),
+					edit.getText());
 		} catch (BadLocationException e) {
 			RestPlugin.logError("Error replacing section markers", e);
 		}
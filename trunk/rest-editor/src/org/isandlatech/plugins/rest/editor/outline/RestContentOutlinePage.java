@@ -13,15 +13,19 @@ package org.isandlatech.plugins.rest.editor.outline;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.ui.texteditor.IDocumentProvider;
@@ -35,12 +39,28 @@ import org.isandlatech.plugins.rest.editor.RestEditor;
  */
 public class RestContentOutlinePage extends ContentOutlinePage {
 
+	/** Levels expanded when the tree is filled : the root and the titles */
+	public static final int AUTO_EXPAND_LEVEL = 2;
+
 	/** Outline page content provider */
 	private SectionContentProvider pContentProvider;
 
 	/** Parent document provider */
 	private IDocumentProvider pDocumentProvider;
 
+	/** The selection is being set from the editor caret */
+	private boolean pLinkingSelection;
+
+	/** Applies the sections modifications to the tree */
+	private final ISectionModelListener pModelListener = new ISectionModelListener() {
+
+		@Override
+		public void sectionsChanged(final SectionModel aModel,
+				final SectionDelta[] aDeltas) {
+			applyDeltas(aDeltas);
+		}
+	};
+
 	/** Parent ReST source editor */
 	private RestEditor pParentEditor;
 
@@ -65,6 +85,104 @@ public class RestContentOutlinePage extends ContentOutlinePage {
 		pNormalize = true;
 	}
 
+	/**
+	 * Applies the sections modifications to the tree viewer. Moved nodes keep
+	 * their expansion state, new ones are expanded.
+	 * 
+	 * @param aDeltas
+	 *            The sections modifications
+	 */
+	private void applyDeltas(final SectionDelta[] aDeltas) {
+
+		TreeViewer tree = getTreeViewer();
+		if (tree == null) {
+			return;
+		}
+
+		Control control = tree.getControl();
+		if (control == null || control.isDisposed()) {
+			return;
+		}
+
+		// Nodes expanded before the modification
+		Object[] expandedElements = null;
+
+		// Nodes removed then added again, i.e. moved
+		Set<TreeData> removedNodes = Collections
+				.newSetFromMap(new IdentityHashMap<TreeData, Boolean>());
+		Set<TreeData> movedNodes = Collections
+				.newSetFromMap(new IdentityHashMap<TreeData, Boolean>());
+
+		// Parents whose children changed
+		Set<TreeData> parents = Collections
+				.newSetFromMap(new IdentityHashMap<TreeData, Boolean>());
+
+		control.setRedraw(false);
+		try {
+			for (SectionDelta delta : aDeltas) {
+
+				TreeData element = delta.getElement();
+
+				switch (delta.getKind()) {
+				case REMOVED:
+					if (expandedElements == null) {
+						expandedElements = tree.getExpandedElements();
+					}
+
+					// The item may not have been created : use its index
+					tree.remove(delta.getParent().getTreePath(),
+							delta.getIndex());
+					removedNodes.add(element);
+					parents.add(delta.getParent());
+					break;
+
+				case ADDED:
+					tree.insert(delta.getParent().getTreePath(), element,
+							delta.getIndex());
+					parents.add(delta.getParent());
+
+					if (removedNodes.contains(element)) {
+						movedNodes.add(element);
+					} else {
+						tree.setExpandedState(element.getTreePath(), true);
+					}
+					break;
+
+				case CHANGED:
+					tree.update(element, null);
+					break;
+				}
+			}
+
+			// Update the children count of the items not shown
+			for (TreeData parent : parents) {
+				if (parent.getDocument() != null) {
+					tree.setHasChildren(parent.getTreePath(),
+							parent.hasChildren());
+				}
+			}
+
+			// Expand again the moved nodes and their sub-sections
+			if (expandedElements != null && !movedNodes.isEmpty()) {
+				for (Object expanded : expandedElements) {
+
+					TreeData node = (TreeData) expanded;
+					TreeData ancestor = node;
+					while (ancestor != null && !movedNodes.contains(ancestor)) {
+						ancestor = ancestor.getParent();
+					}
+
+					if (ancestor != null) {
+						tree.setExpandedState(node.getTreePath(), true);
+					}
+				}
+			}
+
+		} finally {
+			control.setRedraw(true);
+		}
+	}
+
 	/**
 	 * Collects all nodes with an ID within aFirst and a aLast (included)
 	 * 
@@ -119,11 +237,14 @@ public class RestContentOutlinePage extends ContentOutlinePage {
 
 		// Prepare the tree view
 		TreeViewer tree = getTreeViewer();
+		tree.setUseHashlookup(true);
 		tree.setContentProvider(pContentProvider);
 		tree.setLabelProvider(new SectionLabelProvider());
 
+		pContentProvider.getModel().addListener(pModelListener);
+
 		tree.setInput(pParentEditor.getEditorInput());
-		tree.expandAll();
+		tree.expandToLevel(AUTO_EXPAND_LEVEL);
 
 		// Get the outline page toolbar
 		IToolBarManager toolbarManager = getSite().getActionBars()
@@ -142,6 +263,17 @@ public class RestContentOutlinePage extends ContentOutlinePage {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.ui.part.Page#dispose()
+	 */
+	@Override
+	public void dispose() {
+		pContentProvider.getModel().removeListener(pModelListener);
+		super.dispose();
+	}
+
 	/**
 	 * @return the contentProvider
 	 */
@@ -158,6 +290,63 @@ public class RestContentOutlinePage extends ContentOutlinePage {
 		return pDocumentProvider;
 	}
 
+	/**
+	 * Uses a virtual tree : only the shown items are created
+	 * 
+	 * @see org.eclipse.ui.views.contentoutline.ContentOutlinePage#getTreeStyle()
+	 */
+	@Override
+	protected int getTreeStyle() {
+		return super.getTreeStyle() | SWT.VIRTUAL;
+	}
+
+	/**
+	 * Selects the section containing the given offset of the edited document.
+	 * The editor caret is not moved.
+	 * 
+	 * @param aOffset
+	 *            An offset in the edited document
+	 * @return The section containing the offset, null if the outline doesn't
+	 *         show the edited document
+	 */
+	public TreeData linkWithEditor(final int aOffset) {
+
+		SectionModel model = pContentProvider.getModel();
+		IDocument document = pDocumentProvider.getDocument(pParentEditor
+				.getEditorInput());
+
+		// The outline doesn't show the sections of a running batch yet
+		if (document == null || model.getDocument() != document
+				|| model.isInBatch()) {
+			return null;
+		}
+
+		TreeData section = model.getSectionAt(aOffset);
+
+		TreeViewer tree = getTreeViewer();
+		if (tree == null || tree.getControl().isDisposed()) {
+			return section;
+		}
+
+		// Keep the current selection if it contains the section
+		ISelection selection = tree.getSelection();
+		if (selection instanceof IStructuredSelection
+				&& ((IStructuredSelection) selection).toList()
+						.contains(section)) {
+			return section;
+		}
+
+		pLinkingSelection = true;
+		try {
+			tree.setSelection(new StructuredSelection(section), true);
+
+		} finally {
+			pLinkingSelection = false;
+		}
+
+		return section;
+	}
+
 	@SuppressWarnings("unchecked")
 	private void normalizeSelection(
 			final IStructuredSelection aStructuredSelection) {
@@ -201,6 +390,15 @@ public class RestContentOutlinePage extends ContentOutlinePage {
 		super.getTreeViewer().refresh();
 	}
 
+	/**
+	 * Updates the outline page view in background : the modified sections are
+	 * parsed by a job, and the tree is updated once it is done. The tree is
+	 * rebuilt immediately if the document changed.
+	 */
+	public void scheduleUpdate() {
+		update(true);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -212,6 +410,11 @@ public class RestContentOutlinePage extends ContentOutlinePage {
 	public void selectionChanged(final SelectionChangedEvent aEvent) {
 		super.selectionChanged(aEvent);
 
+		// The editor is already at the right place
+		if (pLinkingSelection) {
+			return;
+		}
+
 		ISelection selection = getSelection();
 		if (selection.isEmpty()) {
 			pParentEditor.resetHighlightRange();
@@ -241,18 +444,46 @@ public class RestContentOutlinePage extends ContentOutlinePage {
 	}
 
 	/**
-	 * Updates the outline page view
+	 * Updates the outline page view. Only the modified sections are parsed
+	 * again if the document didn't change.
 	 */
 	public void update() {
+		update(false);
+	}
+
+	/**
+	 * Updates the outline page view. Only the modified sections are parsed
+	 * again if the document didn't change.
+	 * 
+	 * @param aInBackground
+	 *            If true, the modified sections are parsed by a job
+	 */
+	private void update(final boolean aInBackground) {
 
 		TreeViewer tree = getTreeViewer();
 
 		if (tree != null) {
 			Control control = tree.getControl();
 			if (control != null && !control.isDisposed()) {
+
+				Object input = pParentEditor.getEditorInput();
+				IDocument document = pDocumentProvider.getDocument(input);
+				SectionModel model = pContentProvider.getModel();
+
+				if (document != null && tree.getInput() == input
+						&& model.getDocument() == document) {
+					// Deltas are applied by the model listener
+					if (aInBackground) {
+						model.reconcileInBackground();
+					} else {
+						model.reconcile();
+					}
+					return;
+				}
+
 				control.setRedraw(false);
-				tree.setInput(pParentEditor.getEditorInput());
-				tree.expandAll();
+				tree.setInput(input);
+				tree.expandToLevel(AUTO_EXPAND_LEVEL);
 				control.setRedraw(true);
 			}
 		}
@@ -11,45 +11,31 @@
 
 package org.isandlatech.plugins.rest.editor.outline;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Stack;
 
-import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.BadPartitioningException;
 import org.eclipse.jface.text.IDocument;
-import org.eclipse.jface.text.IDocumentExtension3;
-import org.eclipse.jface.text.ITypedRegion;
-import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.ILazyTreePathContentProvider;
 import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
-import org.isandlatech.plugins.rest.RestPlugin;
-import org.isandlatech.plugins.rest.editor.rules.DecoratedLinesRule;
-import org.isandlatech.plugins.rest.editor.scanners.RestPartitionScanner;
-import org.isandlatech.plugins.rest.i18n.Messages;
-import org.isandlatech.plugins.rest.parser.RestLanguage;
 
 /**
- * Fills the outline with section titles
+ * Fills the outline with section titles. The content is given lazily : only
+ * the nodes shown by the tree are asked.
  * 
  * @author Thomas Calmant
  */
-public class SectionContentProvider implements ITreePathContentProvider {
+public class SectionContentProvider implements ILazyTreePathContentProvider {
 
-	/** Decoration level list */
-	private final List<SectionDecoration> pDecoratorsLevels = new ArrayList<SectionDecoration>(
-			RestLanguage.SECTION_DECORATIONS.length);
-
-	/** Root path label */
-	private final TreeData pDocumentRoot = new TreeData(
-			Messages.getString("outline.document.root"));
+	/** Sections of the outlined document */
+	private final SectionModel pModel = new SectionModel();
 
 	/** Parent outline page */
 	private final RestContentOutlinePage pParentOutline;
 
+	/** Filled tree viewer */
+	private TreeViewer pViewer;
+
 	/**
 	 * Configures the content provider
 	 * 
@@ -60,23 +46,6 @@ public class SectionContentProvider implements ITreePathContentProvider {
 		pParentOutline = aParent;
 	}
 
-	/**
-	 * Appends the first available section decoration character to the current
-	 * levels decoration list
-	 */
-	private void appendDecorator() {
-
-		for (char marker : RestLanguage.SECTION_DECORATIONS) {
-
-			SectionDecoration decoration = new SectionDecoration(marker, false);
-
-			if (!pDecoratorsLevels.contains(decoration)) {
-				pDecoratorsLevels.add(decoration);
-				return;
-			}
-		}
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -84,23 +53,27 @@ public class SectionContentProvider implements ITreePathContentProvider {
 	 */
 	@Override
 	public void dispose() {
-		pDecoratorsLevels.clear();
-		pDocumentRoot.clearChildren();
+		pModel.setDocument(null);
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Retrieves the child of the last node of the given path
 	 * 
-	 * @see
-	 * org.eclipse.jface.viewers.ITreePathContentProvider#getChildren(org.eclipse
-	 * .jface.viewers.TreePath)
+	 * @param aParentPath
+	 *            Path of the parent node, empty for the tree root
+	 * @param aIndex
+	 *            Index of the child
+	 * @return The child node, null if not found
 	 */
-	@Override
-	public Object[] getChildren(final TreePath aParentPath) {
+	private TreeData getChild(final TreePath aParentPath, final int aIndex) {
+
+		if (aParentPath.getSegmentCount() == 0) {
+			// The document root is the only top-level element
+			return aIndex == 0 ? pModel.getRoot() : null;
+		}
 
 		if (aParentPath.getLastSegment() instanceof TreeData) {
-			TreeData lastSegment = (TreeData) aParentPath.getLastSegment();
-			return lastSegment.getChildrenArray();
+			return ((TreeData) aParentPath.getLastSegment()).getChild(aIndex);
 		}
 
 		return null;
@@ -114,66 +87,15 @@ public class SectionContentProvider implements ITreePathContentProvider {
 	 * @return The section decoration
 	 */
 	protected SectionDecoration getDecorationForLevel(final int aLevel) {
-
-		// Rebase level (root = 1 in data)
-		int level = aLevel - 1;
-
-		if (level >= RestLanguage.SECTION_DECORATIONS.length) {
-			return pDecoratorsLevels.get(pDecoratorsLevels.size() - 1);
-		}
-
-		while (level >= pDecoratorsLevels.size()) {
-			appendDecorator();
-		}
-
-		return pDecoratorsLevels.get(level);
-	}
-
-	/**
-	 * Retrieves the level of the given decorator
-	 * 
-	 * @param aChar
-	 *            The decorator to find
-	 * @param The
-	 *            decorated line also have an upper-line
-	 * @return The level of the decorator
-	 */
-	protected int getDecorationLevel(final char aChar, final boolean aUpperlined) {
-
-		if (!DecoratedLinesRule.isDecorationCharacter(aChar)) {
-			return -1;
-		}
-
-		SectionDecoration decoration = new SectionDecoration(aChar, aUpperlined);
-
-		if (!pDecoratorsLevels.contains(decoration)) {
-			pDecoratorsLevels.add(decoration);
-		}
-
-		// "+ 1" : the title is on level 1, the level 0 corresponds to the
-		// pDocumentRoot member (tree root)
-		return pDecoratorsLevels.indexOf(decoration) + 1;
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * org.eclipse.jface.viewers.ITreePathContentProvider#getElements(java.lang
-	 * .Object)
-	 */
-	@Override
-	public Object[] getElements(final Object aInputElement) {
-		// Called by TreeViewer.setInput. Returns the root element(s).
-		return new Object[] { pDocumentRoot };
+		return pModel.getDecorationForLevel(aLevel);
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see
-	 * org.eclipse.jface.viewers.ITreePathContentProvider#getParents(java.lang
-	 * .Object)
+	 * org.eclipse.jface.viewers.ILazyTreePathContentProvider#getParents(java
+	 * .lang.Object)
 	 */
 	@Override
 	public TreePath[] getParents(final Object aElement) {
@@ -196,29 +118,21 @@ public class SectionContentProvider implements ITreePathContentProvider {
 	}
 
 	/**
-	 * Retrieves the document root
+	 * Retrieves the sections model
 	 * 
-	 * @return The document root
+	 * @return The sections model
 	 */
-	public TreeData getRoot() {
-		return pDocumentRoot;
+	public SectionModel getModel() {
+		return pModel;
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Retrieves the document root
 	 * 
-	 * @see
-	 * org.eclipse.jface.viewers.ITreePathContentProvider#hasChildren(org.eclipse
-	 * .jface.viewers.TreePath)
+	 * @return The document root
 	 */
-	@Override
-	public boolean hasChildren(final TreePath aPath) {
-
-		if (aPath.getLastSegment() instanceof TreeData) {
-			return ((TreeData) aPath.getLastSegment()).hasChildren();
-		}
-
-		return false;
+	public TreeData getRoot() {
+		return pModel.getRoot();
 	}
 
 	/*
@@ -232,6 +146,8 @@ public class SectionContentProvider implements ITreePathContentProvider {
 	public void inputChanged(final Viewer aViewer, final Object aOldInput,
 			final Object aNewInput) {
 
+		pViewer = aViewer instanceof TreeViewer ? (TreeViewer) aViewer : null;
+
 		// Get the doc
 		IDocument document = pParentOutline.getDocumentProvider().getDocument(
 				aNewInput);
@@ -240,164 +156,81 @@ public class SectionContentProvider implements ITreePathContentProvider {
 			return;
 		}
 
-		// Prepare variables
-		ITypedRegion[] allPartitions = null;
-		TreeData currentElement = pDocumentRoot;
-		pDocumentRoot.setDocument(document);
-		pDocumentRoot.clearChildren();
-		TreeData.resetIdIndex();
-
-		pDecoratorsLevels.clear();
-
-		// Retrieve all partitions
-		if (document instanceof IDocumentExtension3) {
-			try {
-				allPartitions = ((IDocumentExtension3) document)
-						.computePartitioning(RestPartitionScanner.PARTITIONING,
-								0, document.getLength(), false);
-
-			} catch (BadLocationException e) {
-				RestPlugin.logError("Error computing block partitions", e);
-				return;
-			} catch (BadPartitioningException e) {
-				RestPlugin.logError("Invalid partition", e);
-				return;
-			}
-		}
-
-		for (ITypedRegion partition : allPartitions) {
-
-			// Only treat section blocks
-			if (partition.getType().equals(RestPartitionScanner.SECTION_BLOCK)) {
+		// Full parse for a new document, else only the modified sections
+		pModel.setDocument(document);
+		pParentOutline.refreshTreeViewer();
+	}
 
-				try {
-					int partitionOffset = partition.getOffset();
-					int sectionBeginLineNumber = document
-							.getLineOfOffset(partitionOffset);
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.viewers.ILazyTreePathContentProvider#updateChildCount
+	 * (org.eclipse.jface.viewers.TreePath, int)
+	 */
+	@Override
+	public void updateChildCount(final TreePath aTreePath,
+			final int aCurrentChildCount) {
 
-					String content = document.get(partitionOffset,
-							partition.getLength());
+		if (pViewer == null) {
+			return;
+		}
 
-					currentElement = storeSection(document, currentElement,
-							content, sectionBeginLineNumber);
+		int childCount = 0;
+		if (aTreePath.getSegmentCount() == 0) {
+			childCount = 1;
 
-				} catch (BadLocationException e) {
-					// Should never happen...
-					RestPlugin.logError("Error reading section", e);
-				}
-			}
+		} else if (aTreePath.getLastSegment() instanceof TreeData) {
+			childCount = ((TreeData) aTreePath.getLastSegment())
+					.getChildCount();
 		}
 
-		pParentOutline.refreshTreeViewer();
+		if (childCount != aCurrentChildCount) {
+			pViewer.setChildCount(aTreePath, childCount);
+		}
 	}
 
-	/**
-	 * Analyzes the section block and stores its title in the outline
-	 * 
-	 * @param aDocument
-	 *            Document currently read
-	 * @param aCurrentElement
-	 *            Current element in the outline hierarchy
-	 * @param aContent
-	 *            Content of the section to add to the outline
-	 * @param aSectionLineNumber
-	 *            Line where the section begins
-	 * @return The "new" current element, added to the outline
+	/*
+	 * (non-Javadoc)
 	 * 
-	 * @throws BadLocationException
-	 *             An error occurred while retrieving the section title location
+	 * @see
+	 * org.eclipse.jface.viewers.ILazyTreePathContentProvider#updateElement(
+	 * org.eclipse.jface.viewers.TreePath, int)
 	 */
-	private TreeData storeSection(final IDocument aDocument,
-			final TreeData aCurrentElement, final String aContent,
-			final int aSectionLineNumber) throws BadLocationException {
-
-		TreeData newElement = aCurrentElement;
-		char decorationChar = 0;
-		boolean upperlined = false;
-		boolean underlined = false;
-		String sectionTitle = null;
-		int sectionLineNumber = aSectionLineNumber;
-
-		BufferedReader strReader = new BufferedReader(
-				new StringReader(aContent));
-
-		String sectionBlockLine = null;
-		try {
-			while ((sectionBlockLine = strReader.readLine()) != null) {
-
-				if (sectionTitle == null) {
-					sectionLineNumber++;
-
-					if (!DecoratedLinesRule.isDecorativeLine(sectionBlockLine)) {
-						sectionTitle = sectionBlockLine;
-					} else {
-						upperlined = true;
-					}
-
-				} else if (sectionTitle != null
-						&& DecoratedLinesRule
-								.isDecorativeLine(sectionBlockLine)) {
-					// Under line found (section is OK)
-					decorationChar = sectionBlockLine.charAt(0);
-					underlined = true;
-					break;
-				}
-			}
-		} catch (IOException e) {
-			// May never happen...
-			RestPlugin.logError("Error section block lines", e);
-			return newElement;
-		}
+	@Override
+	public void updateElement(final TreePath aParentPath, final int aIndex) {
 
-		// We found nothing about a section block there...
-		if (!underlined) {
-			return newElement;
+		if (pViewer == null) {
+			return;
 		}
 
-		// We found something interesting
-		sectionTitle = sectionTitle.trim();
-		int decorationLevel = getDecorationLevel(decorationChar, upperlined);
-
-		// Not a valid decoration marker...
-		if (decorationLevel < 0) {
-			return newElement;
+		final TreeData child = getChild(aParentPath, aIndex);
+		if (child == null) {
+			return;
 		}
 
-		TreeData root = null;
-
-		if (decorationLevel > aCurrentElement.getLevel()) {
-			// Child
-			root = aCurrentElement;
-
-		} else if (decorationChar == aCurrentElement.getLevel()) {
-			// Brother
-			root = aCurrentElement.getParent();
-
-		} else {
+		pViewer.replace(aParentPath, aIndex, child);
+		pViewer.setHasChildren(aParentPath.createChildPath(child),
+				child.hasChildren());
+	}
 
-			// Uncle
-			while (decorationLevel <= newElement.getLevel()) {
-				newElement = newElement.getParent();
-				if (newElement == null) {
-					break;
-				}
-			}
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.viewers.ILazyTreePathContentProvider#updateHasChildren
+	 * (org.eclipse.jface.viewers.TreePath)
+	 */
+	@Override
+	public void updateHasChildren(final TreePath aPath) {
 
-			root = newElement;
+		if (pViewer == null) {
+			return;
 		}
 
-		if (root == null) {
-			root = pDocumentRoot;
+		if (aPath.getLastSegment() instanceof TreeData) {
+			pViewer.setHasChildren(aPath,
+					((TreeData) aPath.getLastSegment()).hasChildren());
 		}
-
-		// Why "-1" ? getLine() begins at 1, getLineOffset() at 0.
-		int lineOffset = aDocument.getLineOffset(sectionLineNumber - 1);
-
-		// Store the document in node data
-		TreeData newNodeData = new TreeData(sectionTitle, sectionLineNumber,
-				lineOffset, upperlined);
-		newNodeData.setDocument(aDocument);
-
-		return root.addChild(newNodeData);
 	}
 }
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.outline;
+
+/**
+ * Describes the modification of a section node in a {@link SectionModel}
+ * 
+ * @author Thomas Calmant
+ */
+public class SectionDelta {
+
+	/**
+	 * Kinds of section modifications
+	 * 
+	 * @author Thomas Calmant
+	 */
+	public enum Kind {
+		/** The node has been added to its parent, with its children */
+		ADDED,
+
+		/** The label of the node changed */
+		CHANGED,
+
+		/** The node has been removed from its parent, with its children */
+		REMOVED,
+	}
+
+	/** The modified node */
+	private final TreeData pElement;
+
+	/** Index of the node in the children of its new or old parent, else -1 */
+	private final int pIndex;
+
+	/** Kind of modification */
+	private final Kind pKind;
+
+	/** New parent of an added node, old parent of a removed one */
+	private final TreeData pParent;
+
+	/**
+	 * Sets up the delta
+	 * 
+	 * @param aKind
+	 *            Kind of modification
+	 * @param aElement
+	 *            The modified node
+	 * @param aParent
+	 *            New parent of an added node, old parent of a removed one
+	 * @param aIndex
+	 *            Index of an added node in the children of its new parent,
+	 *            of a removed one in the children of its old parent, else -1
+	 */
+	public SectionDelta(final Kind aKind, final TreeData aElement,
+			final TreeData aParent, final int aIndex) {
+
+		pKind = aKind;
+		pElement = aElement;
+		pParent = aParent;
+		pIndex = aIndex;
+	}
+
+	/**
+	 * Retrieves the modified node
+	 * 
+	 * @return The modified node
+	 */
+	public TreeData getElement() {
+		return pElement;
+	}
+
+	/**
+	 * Retrieves the index of an added node in the children of its new parent,
+	 * or of a removed node in the children of its old parent
+	 * 
+	 * @return The index of the node, -1 for a changed node
+	 */
+	public int getIndex() {
+		return pIndex;
+	}
+
+	/**
+	 * Retrieves the kind of modification
+	 * 
+	 * @return The kind of modification
+	 */
+	public Kind getKind() {
+		return pKind;
+	}
+
+	/**
+	 * Retrieves the new parent of an added node, or the old parent of a removed
+	 * one
+	 * 
+	 * @return The parent node, null for a changed node
+	 */
+	public TreeData getParent() {
+		return pParent;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return pKind + " " + pElement;
+	}
+}
@@ -0,0 +1,1038 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.outline;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPositionCategoryException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IPositionUpdater;
+import org.eclipse.jface.text.Position;
+import org.isandlatech.plugins.rest.RestPlugin;
+
+/**
+ * Flat index of the sections of a document. Sections are stored in document
+ * order, which is also the pre-order of the hierarchy, one primitive array per
+ * column. Rows are linked to their parent, first child and siblings, and know
+ * where their sub-sections end, so that navigation is done in constant time.
+ * 
+ * {@link TreeData} nodes are only created when asked, and follow the row of
+ * their section when the index is modified.
+ * 
+ * Section blocks are registered as positions of the indexed document, in a
+ * category specific to the index. They are moved, with the other offsets
+ * of the index, by a {@link SectionPositionUpdater} : offsets stay valid
+ * between two parsings of the document.
+ * 
+ * A detached copy of an index can be modified outside the UI thread, then
+ * installed in the original index with
+ * {@link #set(SectionIndex, int, int, int)}.
+ * 
+ * @author Thomas Calmant
+ */
+public class SectionIndex {
+
+	/** Minimal capacity of the columns */
+	private static final int MIN_CAPACITY = 16;
+
+	/** Prefix of the document position categories of the section blocks */
+	public static final String POSITION_CATEGORY_PREFIX = "__rest_sections_";
+
+	/**
+	 * Moves an offset according to a text replacement. An offset in the
+	 * replaced text is moved to the start of the new text if it starts a
+	 * region, else to its end.
+	 * 
+	 * @param aOffset
+	 *            Offset to move
+	 * @param aIsStart
+	 *            The offset is the start of a region
+	 * @param aChangeStart
+	 *            Start of the replaced text
+	 * @param aOldEnd
+	 *            End of the replaced text, before the modification
+	 * @param aNewEnd
+	 *            End of the inserted text
+	 * @return The new offset
+	 */
+	public static int shiftOffset(final int aOffset, final boolean aIsStart,
+			final int aChangeStart, final int aOldEnd, final int aNewEnd) {
+
+		if (aOffset < aChangeStart) {
+			return aOffset;
+		}
+
+		if (aOffset >= aOldEnd) {
+			return aOffset + aNewEnd - aOldEnd;
+		}
+
+		// Offset in the replaced text
+		return aIsStart ? aChangeStart : aNewEnd;
+	}
+
+	/** Section blocks positions */
+	private Position[] pBlocks;
+
+	/** Cached children rows of each section, the root being the last slot */
+	private int[][] pChildren;
+
+	/** Copy of another index, which doesn't modify the nodes it shares */
+	private final boolean pDetached;
+
+	/** Indexed document */
+	private IDocument pDocument;
+
+	/** Rows following the last sub-section of each section */
+	private int[] pEnds;
+
+	/** First child rows, -1 if none */
+	private int[] pFirstChildren;
+
+	/** Levels of the sections in the hierarchy (root = 0) */
+	private int[] pLevels;
+
+	/** Line offsets of the section titles */
+	private int[] pLineOffsets;
+
+	/** Lines of the section titles (1-based) */
+	private int[] pLines;
+
+	/** Decoration markers */
+	private char[] pMarkers;
+
+	/** Next sibling rows, -1 if none */
+	private int[] pNextSiblings;
+
+	/** Nodes of the sections, null until they are asked */
+	private TreeData[] pNodes;
+
+	/** Offsets of the sections, upper line included */
+	private int[] pOffsets;
+
+	/** Parent rows, -1 for top-level sections */
+	private int[] pParents;
+
+	/** Position category of the section blocks, one per index */
+	private final String pPositionCategory = POSITION_CATEGORY_PREFIX
+			+ System.identityHashCode(this);
+
+	/** Updates the offsets of the index */
+	private final IPositionUpdater pPositionUpdater =
+			new SectionPositionUpdater(this);
+
+	/** Previous sibling rows, -1 if none */
+	private int[] pPreviousSiblings;
+
+	/** The root node */
+	private final TreeData pRoot;
+
+	/** Number of sections */
+	private int pSize;
+
+	/** Section titles */
+	private String[] pTitles;
+
+	/** Titles shared by the sections */
+	private final Map<String, String> pTitlesPool = new HashMap<String, String>();
+
+	/** Sections having an upper line */
+	private boolean[] pUpperlined;
+
+	/**
+	 * Prepares an empty index
+	 * 
+	 * @param aRootLabel
+	 *            Label of the root node
+	 */
+	public SectionIndex(final String aRootLabel) {
+
+		pDetached = false;
+		pRoot = new TreeData(this, -1, aRootLabel);
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * Prepares a detached copy of an index
+	 * 
+	 * @param aSource
+	 *            The copied index
+	 */
+	private SectionIndex(final SectionIndex aSource) {
+
+		pDetached = true;
+		pRoot = aSource.pRoot;
+		allocate(Math.max(aSource.pSize, MIN_CAPACITY));
+		copyRows(aSource, 0, 0, aSource.pSize);
+		pSize = aSource.pSize;
+
+		// Source positions are moved by the updater of the source document
+		for (int row = 0; row < pSize; row++) {
+			pBlocks[row] = new Position(pBlocks[row].getOffset(),
+					pBlocks[row].getLength());
+		}
+	}
+
+	/**
+	 * Appends a section to the index. The hierarchy columns are computed by
+	 * {@link #link(int[])}.
+	 * 
+	 * @param aBlockStart
+	 *            Offset of the section block
+	 * @param aBlockEnd
+	 *            End of the section block
+	 * @param aOffset
+	 *            Offset of the section, upper line included
+	 * @param aLine
+	 *            Line of the title (1-based)
+	 * @param aLineOffset
+	 *            Offset of the title line
+	 * @param aTitle
+	 *            Section title
+	 * @param aMarker
+	 *            Decoration marker
+	 * @param aUpperlined
+	 *            The section has an upper line
+	 */
+	public void add(final int aBlockStart, final int aBlockEnd,
+			final int aOffset, final int aLine, final int aLineOffset,
+			final String aTitle, final char aMarker,
+			final boolean aUpperlined) {
+
+		if (pSize == pTitles.length) {
+			grow(pSize + 1);
+		}
+
+		final int row = pSize++;
+		pChildren = null;
+		pBlocks[row] = new Position(aBlockStart, aBlockEnd - aBlockStart);
+		pOffsets[row] = aOffset;
+		pLines[row] = aLine;
+		pLineOffsets[row] = aLineOffset;
+		pTitles[row] = intern(aTitle);
+		pMarkers[row] = aMarker;
+		pUpperlined[row] = aUpperlined;
+		pNodes[row] = null;
+	}
+
+	/**
+	 * Registers a section block position in the indexed document
+	 * 
+	 * @param aPosition
+	 *            A section block position
+	 */
+	private void addPosition(final Position aPosition) {
+
+		if (pDocument == null) {
+			return;
+		}
+
+		try {
+			pDocument.addPosition(pPositionCategory, aPosition);
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Invalid section block position", e);
+
+		} catch (BadPositionCategoryException e) {
+			RestPlugin.logError("Sections position category not found", e);
+		}
+	}
+
+	/**
+	 * Allocates the columns
+	 * 
+	 * @param aCapacity
+	 *            Number of rows to allocate
+	 */
+	private void allocate(final int aCapacity) {
+
+		pBlocks = new Position[aCapacity];
+		pEnds = new int[aCapacity];
+		pFirstChildren = new int[aCapacity];
+		pLevels = new int[aCapacity];
+		pLineOffsets = new int[aCapacity];
+		pLines = new int[aCapacity];
+		pMarkers = new char[aCapacity];
+		pNextSiblings = new int[aCapacity];
+		pNodes = new TreeData[aCapacity];
+		pOffsets = new int[aCapacity];
+		pParents = new int[aCapacity];
+		pPreviousSiblings = new int[aCapacity];
+		pTitles = new String[aCapacity];
+		pUpperlined = new boolean[aCapacity];
+	}
+
+	/**
+	 * Removes all sections. Their nodes are detached.
+	 */
+	public void clear() {
+
+		for (int row = 0; row < pSize; row++) {
+			if (pNodes[row] != null) {
+				pNodes[row].detach();
+			}
+		}
+
+		// Forget all positions at once
+		if (pDocument != null) {
+			try {
+				pDocument.removePositionCategory(pPositionCategory);
+
+			} catch (BadPositionCategoryException e) {
+				RestPlugin.logError("Sections position category not found", e);
+			}
+
+			pDocument.addPositionCategory(pPositionCategory);
+		}
+
+		pSize = 0;
+		pChildren = null;
+		pTitlesPool.clear();
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * Copies rows of the given index
+	 * 
+	 * @param aSource
+	 *            Source index
+	 * @param aSourceRow
+	 *            First source row
+	 * @param aRow
+	 *            First target row
+	 * @param aLength
+	 *            Number of rows to copy
+	 */
+	private void copyRows(final SectionIndex aSource, final int aSourceRow,
+			final int aRow, final int aLength) {
+
+		System.arraycopy(aSource.pBlocks, aSourceRow, pBlocks, aRow, aLength);
+		System.arraycopy(aSource.pEnds, aSourceRow, pEnds, aRow, aLength);
+		System.arraycopy(aSource.pFirstChildren, aSourceRow, pFirstChildren,
+				aRow, aLength);
+		System.arraycopy(aSource.pLevels, aSourceRow, pLevels, aRow, aLength);
+		System.arraycopy(aSource.pLineOffsets, aSourceRow, pLineOffsets, aRow,
+				aLength);
+		System.arraycopy(aSource.pLines, aSourceRow, pLines, aRow, aLength);
+		System.arraycopy(aSource.pMarkers, aSourceRow, pMarkers, aRow, aLength);
+		System.arraycopy(aSource.pNextSiblings, aSourceRow, pNextSiblings,
+				aRow, aLength);
+		System.arraycopy(aSource.pNodes, aSourceRow, pNodes, aRow, aLength);
+		System.arraycopy(aSource.pOffsets, aSourceRow, pOffsets, aRow, aLength);
+		System.arraycopy(aSource.pParents, aSourceRow, pParents, aRow, aLength);
+		System.arraycopy(aSource.pPreviousSiblings, aSourceRow,
+				pPreviousSiblings, aRow, aLength);
+		System.arraycopy(aSource.pTitles, aSourceRow, pTitles, aRow, aLength);
+		System.arraycopy(aSource.pUpperlined, aSourceRow, pUpperlined, aRow,
+				aLength);
+	}
+
+	/**
+	 * Creates a detached copy of the index. The copy has no document and
+	 * shares the nodes of the index, without modifying them : it can be worked
+	 * on outside the UI thread.
+	 * 
+	 * @return A detached copy of the index
+	 */
+	SectionIndex createDetachedCopy() {
+		return new SectionIndex(this);
+	}
+
+	/**
+	 * Retrieves the row of the first section block ending after the given
+	 * offset
+	 * 
+	 * @param aOffset
+	 *            An offset in the document
+	 * @return The row of the first section ending after the offset, the number
+	 *         of sections if there is none
+	 */
+	public int findFirstSection(final int aOffset) {
+
+		int low = 0;
+		int high = pSize;
+
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+
+			if (getBlockEnd(middle) > aOffset) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Retrieves the row of the section containing the given offset, i.e. the
+	 * last section starting before it. The section offsets are kept up to date
+	 * by the position updater, so this is a simple binary search.
+	 * 
+	 * @param aOffset
+	 *            An offset in the document
+	 * @return The row of the section containing the offset, -1 if the offset
+	 *         is before the first section
+	 */
+	public int findSection(final int aOffset) {
+
+		int low = 0;
+		int high = pSize;
+
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+
+			if (pOffsets[middle] > aOffset) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+
+		return low - 1;
+	}
+
+	/**
+	 * Retrieves the end offset of a section block
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The end of the section block (excluded)
+	 */
+	public int getBlockEnd(final int aRow) {
+		return pBlocks[aRow].getOffset() + pBlocks[aRow].getLength();
+	}
+
+	/**
+	 * Retrieves the offset of a section block
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The offset of the section block
+	 */
+	public int getBlockStart(final int aRow) {
+		return pBlocks[aRow].getOffset();
+	}
+
+	/**
+	 * Retrieves the sub-sections of a section. The result is kept until the
+	 * hierarchy is modified, and must not be modified.
+	 * 
+	 * @param aRow
+	 *            A section row, -1 for the root
+	 * @return The rows of the children, in document order
+	 */
+	public int[] getChildren(final int aRow) {
+
+		if (pChildren == null) {
+			pChildren = new int[pSize + 1][];
+		}
+
+		final int slot = aRow < 0 ? pSize : aRow;
+		if (pChildren[slot] != null) {
+			return pChildren[slot];
+		}
+
+		int firstChild;
+		if (aRow < 0) {
+			firstChild = pSize > 0 ? 0 : -1;
+		} else {
+			firstChild = pFirstChildren[aRow];
+		}
+
+		int nbChildren = 0;
+		for (int row = firstChild; row >= 0; row = pNextSiblings[row]) {
+			nbChildren++;
+		}
+
+		final int[] children = new int[nbChildren];
+
+		int i = 0;
+		for (int row = firstChild; row >= 0; row = pNextSiblings[row]) {
+			children[i++] = row;
+		}
+
+		pChildren[slot] = children;
+		return children;
+	}
+
+	/**
+	 * Retrieves the indexed document
+	 * 
+	 * @return The indexed document, can be null
+	 */
+	public IDocument getDocument() {
+		return pDocument;
+	}
+
+	/**
+	 * Retrieves the row following the last sub-section of a section
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The row of the next section which is not a sub-section
+	 */
+	public int getEnd(final int aRow) {
+		return pEnds[aRow];
+	}
+
+	/**
+	 * Retrieves the node of a section, if it has already been created
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The section node, or null
+	 */
+	public TreeData getExistingNode(final int aRow) {
+		return pNodes[aRow];
+	}
+
+	/**
+	 * Retrieves the first sub-section of a section
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The row of the first child, -1 if none
+	 */
+	public int getFirstChild(final int aRow) {
+		return pFirstChildren[aRow];
+	}
+
+	/**
+	 * Retrieves the level of a section in the hierarchy
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The section level, 1 for top-level sections
+	 */
+	public int getLevel(final int aRow) {
+		return pLevels[aRow];
+	}
+
+	/**
+	 * Retrieves the line of a section title
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The title line (1-based)
+	 */
+	public int getLine(final int aRow) {
+		return pLines[aRow];
+	}
+
+	/**
+	 * Retrieves the offset of a section title line
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The offset of the title line
+	 */
+	public int getLineOffset(final int aRow) {
+		return pLineOffsets[aRow];
+	}
+
+	/**
+	 * Retrieves the decoration marker of a section
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The decoration marker
+	 */
+	public char getMarker(final int aRow) {
+		return pMarkers[aRow];
+	}
+
+	/**
+	 * Retrieves the next sibling of a section
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The row of the next sibling, -1 if none
+	 */
+	public int getNextSibling(final int aRow) {
+		return pNextSiblings[aRow];
+	}
+
+	/**
+	 * Retrieves the node of a section, creating it if needed
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The section node
+	 */
+	public TreeData getNode(final int aRow) {
+
+		TreeData node = pNodes[aRow];
+		if (node == null) {
+			node = new TreeData(this, aRow, null);
+			pNodes[aRow] = node;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Retrieves the offset of a section, upper line included
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The section offset
+	 */
+	public int getOffset(final int aRow) {
+		return pOffsets[aRow];
+	}
+
+	/**
+	 * Retrieves the parent of a section
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The row of the parent section, -1 for top-level sections
+	 */
+	public int getParent(final int aRow) {
+		return pParents[aRow];
+	}
+
+	/**
+	 * Retrieves the document position category of the section blocks
+	 * 
+	 * @return The position category of the index
+	 */
+	public String getPositionCategory() {
+		return pPositionCategory;
+	}
+
+	/**
+	 * Retrieves the previous sibling of a section
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The row of the previous sibling, -1 if none
+	 */
+	public int getPreviousSibling(final int aRow) {
+		return pPreviousSiblings[aRow];
+	}
+
+	/**
+	 * Retrieves the root node
+	 * 
+	 * @return The root node
+	 */
+	public TreeData getRoot() {
+		return pRoot;
+	}
+
+	/**
+	 * Retrieves the title of a section
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return The section title
+	 */
+	public String getTitle(final int aRow) {
+		return pTitles[aRow];
+	}
+
+	/**
+	 * Grows the columns to the given capacity, at least
+	 * 
+	 * @param aCapacity
+	 *            Minimum number of rows
+	 */
+	private void grow(final int aCapacity) {
+
+		final int capacity = Math.max(aCapacity, pTitles.length * 3 / 2 + 1);
+
+		pBlocks = Arrays.copyOf(pBlocks, capacity);
+		pEnds = Arrays.copyOf(pEnds, capacity);
+		pFirstChildren = Arrays.copyOf(pFirstChildren, capacity);
+		pLevels = Arrays.copyOf(pLevels, capacity);
+		pLineOffsets = Arrays.copyOf(pLineOffsets, capacity);
+		pLines = Arrays.copyOf(pLines, capacity);
+		pMarkers = Arrays.copyOf(pMarkers, capacity);
+		pNextSiblings = Arrays.copyOf(pNextSiblings, capacity);
+		pNodes = Arrays.copyOf(pNodes, capacity);
+		pOffsets = Arrays.copyOf(pOffsets, capacity);
+		pParents = Arrays.copyOf(pParents, capacity);
+		pPreviousSiblings = Arrays.copyOf(pPreviousSiblings, capacity);
+		pTitles = Arrays.copyOf(pTitles, capacity);
+		pUpperlined = Arrays.copyOf(pUpperlined, capacity);
+	}
+
+	/**
+	 * Retrieves the shared instance of the given title
+	 * 
+	 * @param aTitle
+	 *            A section title
+	 * @return The shared title
+	 */
+	private String intern(final String aTitle) {
+
+		final String title = pTitlesPool.get(aTitle);
+		if (title != null) {
+			return title;
+		}
+
+		pTitlesPool.put(aTitle, aTitle);
+		return aTitle;
+	}
+
+	/**
+	 * Shares the titles of the given rows. The titles of the removed sections
+	 * are forgotten when there are too many of them.
+	 * 
+	 * @param aStart
+	 *            First row
+	 * @param aEnd
+	 *            Row following the last one
+	 */
+	private void internTitles(final int aStart, final int aEnd) {
+
+		for (int row = aStart; row < aEnd; row++) {
+			pTitles[row] = intern(pTitles[row]);
+		}
+
+		// Don't keep the titles of the removed sections forever
+		if (pTitlesPool.size() > 2 * pSize + MIN_CAPACITY) {
+			pTitlesPool.clear();
+			for (int row = 0; row < pSize; row++) {
+				pTitles[row] = intern(pTitles[row]);
+			}
+		}
+	}
+
+	/**
+	 * Tests if a section has an upper line
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @return True if the section title has an upper line
+	 */
+	public boolean isUpperlined(final int aRow) {
+		return pUpperlined[aRow];
+	}
+
+	/**
+	 * Computes the hierarchy columns. A section is a child of the nearest
+	 * previous section having a lower level than its decoration level.
+	 * 
+	 * @param aDecorationLevels
+	 *            Decoration level of each section
+	 */
+	public void link(final int[] aDecorationLevels) {
+
+		pChildren = null;
+
+		// Last child of each row, the root being the last slot
+		final int[] lastChildren = new int[pSize + 1];
+		Arrays.fill(lastChildren, -1);
+
+		int current = -1;
+		for (int row = 0; row < pSize; row++) {
+
+			int parent = current;
+			while (parent >= 0 && aDecorationLevels[row] <= pLevels[parent]) {
+				// Parent's sub-sections end here
+				pEnds[parent] = row;
+				parent = pParents[parent];
+			}
+
+			final int parentSlot = parent < 0 ? pSize : parent;
+			final int previous = lastChildren[parentSlot];
+
+			pParents[row] = parent;
+			pLevels[row] = parent < 0 ? 1 : pLevels[parent] + 1;
+			pFirstChildren[row] = -1;
+			pNextSiblings[row] = -1;
+			pPreviousSiblings[row] = previous;
+
+			if (previous >= 0) {
+				pNextSiblings[previous] = row;
+			} else if (parent >= 0) {
+				pFirstChildren[parent] = row;
+			}
+
+			lastChildren[parentSlot] = row;
+			current = row;
+		}
+
+		// Sections still opened end with the document
+		for (int row = current; row >= 0; row = pParents[row]) {
+			pEnds[row] = pSize;
+		}
+	}
+
+	/**
+	 * Unregisters a section block position from the indexed document
+	 * 
+	 * @param aPosition
+	 *            A section block position
+	 */
+	private void removePosition(final Position aPosition) {
+
+		if (pDocument == null) {
+			return;
+		}
+
+		try {
+			pDocument.removePosition(pPositionCategory, aPosition);
+
+		} catch (BadPositionCategoryException e) {
+			RestPlugin.logError("Sections position category not found", e);
+		}
+	}
+
+	/**
+	 * Replaces rows of the index by the rows of another one. The hierarchy
+	 * columns must be computed again with {@link #link(int[])}.
+	 * 
+	 * Nodes of the replaced rows are detached, unless they are given to a new
+	 * row with {@link #setNode(int, TreeData)}. A detached copy leaves the
+	 * nodes untouched, until it is installed.
+	 * 
+	 * @param aStart
+	 *            First replaced row
+	 * @param aEnd
+	 *            Row following the last replaced one
+	 * @param aRows
+	 *            Index containing the new rows
+	 */
+	public void replace(final int aStart, final int aEnd,
+			final SectionIndex aRows) {
+
+		// Detach the replaced nodes, then attach the kept ones again
+		for (int row = aStart; row < aEnd; row++) {
+
+			if (pNodes[row] != null && !pDetached) {
+				pNodes[row].detach();
+			}
+
+			removePosition(pBlocks[row]);
+		}
+
+		for (int row = 0; row < aRows.pSize; row++) {
+
+			final TreeData node = aRows.pNodes[row];
+			if (node != null && !pDetached) {
+				node.attach(this);
+			}
+		}
+
+		final int newSize = pSize - (aEnd - aStart) + aRows.pSize;
+		if (newSize > pTitles.length) {
+			grow(newSize);
+		}
+
+		// Move the following rows
+		copyRows(this, aEnd, aStart + aRows.pSize, pSize - aEnd);
+		copyRows(aRows, 0, aStart, aRows.pSize);
+
+		for (int row = aStart; row < aStart + aRows.pSize; row++) {
+			addPosition(pBlocks[row]);
+		}
+
+		// Forget the rows which are not used anymore
+		for (int row = newSize; row < pSize; row++) {
+			pBlocks[row] = null;
+			pNodes[row] = null;
+			pTitles[row] = null;
+		}
+
+		pSize = newSize;
+		pChildren = null;
+
+		// Nodes follow their section
+		for (int row = aStart; row < pSize && !pDetached; row++) {
+			if (pNodes[row] != null) {
+				pNodes[row].setRow(row);
+			}
+		}
+
+		internTitles(aStart, aStart + aRows.pSize);
+	}
+
+	/**
+	 * Replaces the content of the index by the one of a detached copy, which
+	 * must not be used afterwards. The copy must only differ from the index by
+	 * the replacement of a range of rows and by its hierarchy columns.
+	 * 
+	 * @param aCopy
+	 *            A detached copy of the index
+	 * @param aStart
+	 *            First replaced row
+	 * @param aEnd
+	 *            Row following the last replaced one, in the index
+	 * @param aNewEnd
+	 *            Row following the last replacement row, in the copy
+	 */
+	void set(final SectionIndex aCopy, final int aStart, final int aEnd,
+			final int aNewEnd) {
+
+		final Set<TreeData> keptNodes = Collections
+				.newSetFromMap(new IdentityHashMap<TreeData, Boolean>());
+		for (int row = aStart; row < aNewEnd; row++) {
+			if (aCopy.pNodes[row] != null) {
+				keptNodes.add(aCopy.pNodes[row]);
+			}
+		}
+
+		for (int row = aStart; row < aEnd; row++) {
+
+			if (pNodes[row] != null && !keptNodes.contains(pNodes[row])) {
+				pNodes[row].detach();
+			}
+
+			removePosition(pBlocks[row]);
+		}
+
+		// Keep the registered positions of the other rows
+		final Position[] blocks = aCopy.pBlocks;
+		System.arraycopy(pBlocks, 0, blocks, 0, aStart);
+		System.arraycopy(pBlocks, aEnd, blocks, aNewEnd, pSize - aEnd);
+
+		// Take the columns of the copy
+		pBlocks = blocks;
+		pEnds = aCopy.pEnds;
+		pFirstChildren = aCopy.pFirstChildren;
+		pLevels = aCopy.pLevels;
+		pLineOffsets = aCopy.pLineOffsets;
+		pLines = aCopy.pLines;
+		pMarkers = aCopy.pMarkers;
+		pNextSiblings = aCopy.pNextSiblings;
+		pNodes = aCopy.pNodes;
+		pOffsets = aCopy.pOffsets;
+		pParents = aCopy.pParents;
+		pPreviousSiblings = aCopy.pPreviousSiblings;
+		pTitles = aCopy.pTitles;
+		pUpperlined = aCopy.pUpperlined;
+		pSize = aCopy.pSize;
+		pChildren = null;
+
+		for (int row = aStart; row < aNewEnd; row++) {
+			addPosition(pBlocks[row]);
+		}
+
+		internTitles(aStart, aNewEnd);
+
+		// Nodes created or moved by the copy
+		for (int row = 0; row < pSize; row++) {
+			if (pNodes[row] != null) {
+				pNodes[row].attach(this);
+				pNodes[row].setRow(row);
+			}
+		}
+	}
+
+	/**
+	 * Sets the indexed document
+	 * 
+	 * @param aDocument
+	 *            The indexed document
+	 */
+	public void setDocument(final IDocument aDocument) {
+
+		if (pDocument != null) {
+			pDocument.removePositionUpdater(pPositionUpdater);
+
+			try {
+				pDocument.removePositionCategory(pPositionCategory);
+
+			} catch (BadPositionCategoryException e) {
+				RestPlugin.logError("Sections position category not found", e);
+			}
+		}
+
+		pDocument = aDocument;
+
+		if (aDocument != null) {
+			aDocument.addPositionCategory(pPositionCategory);
+			aDocument.addPositionUpdater(pPositionUpdater);
+
+			for (int row = 0; row < pSize; row++) {
+				addPosition(pBlocks[row]);
+			}
+		}
+	}
+
+	/**
+	 * Sets the line of a section title
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @param aLine
+	 *            The title line (1-based)
+	 */
+	public void setLine(final int aRow, final int aLine) {
+		pLines[aRow] = aLine;
+	}
+
+	/**
+	 * Gives an existing node to a section
+	 * 
+	 * @param aRow
+	 *            A section row
+	 * @param aNode
+	 *            The node to reuse
+	 */
+	public void setNode(final int aRow, final TreeData aNode) {
+		pNodes[aRow] = aNode;
+	}
+
+	/**
+	 * Moves the offsets of the sections according to a text replacement
+	 * 
+	 * @param aFirstRow
+	 *            First row which can be modified
+	 * @param aChangeStart
+	 *            Start of the replaced text
+	 * @param aOldEnd
+	 *            End of the replaced text, before the modification
+	 * @param aNewEnd
+	 *            End of the inserted text
+	 */
+	public void shiftOffsets(final int aFirstRow, final int aChangeStart,
+			final int aOldEnd, final int aNewEnd) {
+
+		for (int row = aFirstRow; row < pSize; row++) {
+
+			final Position block = pBlocks[row];
+			final int blockStart = shiftOffset(block.getOffset(), true,
+					aChangeStart, aOldEnd, aNewEnd);
+			final int blockEnd = shiftOffset(
+					block.getOffset() + block.getLength(), false, aChangeStart,
+					aOldEnd, aNewEnd);
+
+			block.setOffset(blockStart);
+			block.setLength(blockEnd - blockStart);
+
+			pOffsets[row] = shiftOffset(pOffsets[row], true, aChangeStart,
+					aOldEnd, aNewEnd);
+			pLineOffsets[row] = shiftOffset(pLineOffsets[row], true,
+					aChangeStart, aOldEnd, aNewEnd);
+		}
+	}
+
+	/**
+	 * Retrieves the number of sections
+	 * 
+	 * @return The number of sections
+	 */
+	public int size() {
+		return pSize;
+	}
+}
@@ -0,0 +1,1132 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.outline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentPartitioningChangedEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IDocumentPartitioningListener;
+import org.eclipse.jface.text.IDocumentPartitioningListenerExtension2;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.swt.widgets.Display;
+import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.cache.StructureCache;
+import org.isandlatech.plugins.rest.editor.rules.DecoratedLinesRule;
+import org.isandlatech.plugins.rest.editor.scanners.RestPartitionScanner;
+import org.isandlatech.plugins.rest.i18n.Messages;
+import org.isandlatech.plugins.rest.parser.RestLanguage;
+
+/**
+ * Sections of a ReST document, updated incrementally : document and
+ * partitioning modifications only mark a region as dirty, and
+ * {@link #reconcile()} parses again the section blocks of this region. The
+ * hierarchy is then rebuilt from the parsed sections, reusing the existing
+ * nodes, and its modifications are sent to the listeners as deltas.
+ * 
+ * {@link #reconcileInBackground()} copies the section blocks of the dirty
+ * region and gives them to a {@link SectionParseJob}, with a detached copy of
+ * the index. The job parses them and computes the new hierarchy and its
+ * deltas. It is canceled by any new modification, and the UI thread only
+ * installs its result.
+ * 
+ * @author Thomas Calmant
+ */
+public class SectionModel implements IDocumentListener,
+		IDocumentPartitioningListener, IDocumentPartitioningListenerExtension2 {
+
+	/**
+	 * Stores the parent and the index in its parent of the existing section
+	 * nodes, in document order
+	 * 
+	 * @param aIndex
+	 *            The sections index
+	 * @param aParents
+	 *            Node - parent map
+	 * @param aIndexes
+	 *            Node - index in the parent children map
+	 * @param aNodes
+	 *            The existing nodes, in document order
+	 */
+	static void collectNodes(final SectionIndex aIndex,
+			final Map<TreeData, TreeData> aParents,
+			final Map<TreeData, Integer> aIndexes, final List<TreeData> aNodes) {
+
+		final int[] childIndexes = new int[aIndex.size()];
+
+		for (int row = 0; row < aIndex.size(); row++) {
+
+			final int previous = aIndex.getPreviousSibling(row);
+			childIndexes[row] = previous < 0 ? 0 : childIndexes[previous] + 1;
+
+			final TreeData node = aIndex.getExistingNode(row);
+			if (node != null) {
+				aParents.put(node, getParentNode(aIndex, row));
+				aIndexes.put(node, childIndexes[row]);
+				aNodes.add(node);
+			}
+		}
+	}
+
+	/**
+	 * Computes the modifications of the tree, from the old parents of the
+	 * section nodes. The rows of the nodes are read in the index, which can be
+	 * a detached copy.
+	 * 
+	 * @param aIndex
+	 *            The updated sections index
+	 * @param aOldParents
+	 *            Node - old parent map
+	 * @param aOldIndexes
+	 *            Node - old index in the parent children map
+	 * @param aOldNodes
+	 *            The old nodes, in document order
+	 * @param aChangedNodes
+	 *            Kept nodes whose label changed
+	 * @return The tree modifications
+	 */
+	static SectionDelta[] computeDeltas(final SectionIndex aIndex,
+			final Map<TreeData, TreeData> aOldParents,
+			final Map<TreeData, Integer> aOldIndexes,
+			final List<TreeData> aOldNodes, final Set<TreeData> aChangedNodes) {
+
+		final List<SectionDelta> deltas = new ArrayList<SectionDelta>();
+
+		final int nbRows = aIndex.size();
+		final Map<TreeData, Integer> rows = new IdentityHashMap<TreeData, Integer>();
+		for (int row = 0; row < nbRows; row++) {
+			final TreeData node = aIndex.getExistingNode(row);
+			if (node != null) {
+				rows.put(node, row);
+			}
+		}
+
+		// Nodes removed or moved
+		final Set<TreeData> removedNodes = Collections
+				.newSetFromMap(new IdentityHashMap<TreeData, Boolean>());
+		for (TreeData node : aOldNodes) {
+
+			final Integer row = rows.get(node);
+			if (row == null
+					|| getParentNode(aIndex, row) != aOldParents.get(node)) {
+				removedNodes.add(node);
+			}
+		}
+
+		// Only the top-most removed nodes are notified, from the last one so
+		// that the old indexes stay valid
+		for (int i = aOldNodes.size() - 1; i >= 0; i--) {
+
+			final TreeData node = aOldNodes.get(i);
+			if (!removedNodes.contains(node)) {
+				continue;
+			}
+
+			TreeData parent = aOldParents.get(node);
+			while (parent != null && !removedNodes.contains(parent)) {
+				parent = aOldParents.get(parent);
+			}
+
+			if (parent == null) {
+				deltas.add(new SectionDelta(SectionDelta.Kind.REMOVED, node,
+						aOldParents.get(node), aOldIndexes.get(node)));
+			}
+		}
+
+		// Sections added or moved, in document order
+		final boolean[] addedRows = new boolean[nbRows];
+		final int[] childIndexes = new int[nbRows];
+
+		for (int row = 0; row < nbRows; row++) {
+
+			final int previous = aIndex.getPreviousSibling(row);
+			childIndexes[row] = previous < 0 ? 0 : childIndexes[previous] + 1;
+
+			final TreeData node = aIndex.getExistingNode(row);
+			if (node != null && aOldParents.containsKey(node)
+					&& !removedNodes.contains(node)) {
+				continue;
+			}
+
+			addedRows[row] = true;
+
+			// Same thing for added nodes
+			int parent = aIndex.getParent(row);
+			while (parent >= 0 && !addedRows[parent]) {
+				parent = aIndex.getParent(parent);
+			}
+
+			if (parent < 0) {
+				deltas.add(new SectionDelta(SectionDelta.Kind.ADDED, aIndex
+						.getNode(row), getParentNode(aIndex, row),
+						childIndexes[row]));
+			}
+		}
+
+		// Label modifications of nodes which were not added again
+		for (TreeData node : aChangedNodes) {
+
+			final Integer nodeRow = rows.get(node);
+			if (nodeRow == null) {
+				// Removed section
+				continue;
+			}
+
+			int row = nodeRow;
+			while (row >= 0 && !addedRows[row]) {
+				row = aIndex.getParent(row);
+			}
+
+			if (row < 0) {
+				deltas.add(new SectionDelta(SectionDelta.Kind.CHANGED, node,
+						null, -1));
+			}
+		}
+
+		return deltas.toArray(new SectionDelta[deltas.size()]);
+	}
+
+	/**
+	 * Copies the modified region of the document, grown to the section blocks
+	 * it touches. Neither the document nor the index must be modified
+	 * meanwhile.
+	 * 
+	 * @param aDocument
+	 *            The indexed document
+	 * @param aIndex
+	 *            The sections index
+	 * @param aDirtyStart
+	 *            Start of the modified region
+	 * @param aDirtyEnd
+	 *            End of the modified region
+	 * @return The region to parse again
+	 * @throws BadLocationException
+	 *             Invalid modified region
+	 */
+	static SectionSnapshot createSnapshot(final IDocument aDocument,
+			final SectionIndex aIndex, final int aDirtyStart,
+			final int aDirtyEnd) throws BadLocationException {
+
+		final int documentLength = aDocument.getLength();
+		int start = Math.min(aDirtyStart, documentLength);
+		int end = Math.min(aDirtyEnd, documentLength);
+
+		int firstSection;
+		int lastSection;
+		final List<ITypedRegion> sectionBlocks = new ArrayList<ITypedRegion>();
+
+		// Work on complete lines
+		start = aDocument.getLineOffset(aDocument.getLineOfOffset(start));
+		final int endLine = aDocument.getLineOfOffset(end);
+		end = aDocument.getLineOffset(endLine)
+				+ aDocument.getLineLength(endLine);
+
+		// Grow the region to the old sections and the section block
+		// partitions it touches
+		ITypedRegion[] partitions;
+		boolean grown;
+
+		do {
+			grown = false;
+
+			// Include the blocks emptied by a deletion
+			firstSection = aIndex.findFirstSection(start);
+			while (firstSection > 0
+					&& aIndex.getBlockStart(firstSection - 1) >= start) {
+				firstSection--;
+			}
+
+			for (lastSection = firstSection; lastSection < aIndex
+					.size(); lastSection++) {
+
+				final int blockStart = aIndex.getBlockStart(lastSection);
+				if (blockStart >= end && blockStart < documentLength) {
+					break;
+				}
+
+				if (blockStart < start) {
+					start = blockStart;
+					grown = true;
+				}
+
+				final int blockEnd = aIndex.getBlockEnd(lastSection);
+				if (blockEnd > end) {
+					end = Math.min(blockEnd, documentLength);
+					grown = true;
+				}
+			}
+
+			partitions = TextUtilities.computePartitioning(aDocument,
+					RestPartitionScanner.PARTITIONING, start, end - start,
+					false);
+
+			for (ITypedRegion partition : partitions) {
+
+				if (!RestPartitionScanner.SECTION_BLOCK.equals(partition
+						.getType())) {
+					continue;
+				}
+
+				final ITypedRegion fullPartition = TextUtilities.getPartition(
+						aDocument, RestPartitionScanner.PARTITIONING,
+						partition.getOffset(), false);
+
+				if (fullPartition.getOffset() < start) {
+					start = fullPartition.getOffset();
+					grown = true;
+				}
+
+				final int partitionEnd = fullPartition.getOffset()
+						+ fullPartition.getLength();
+				if (partitionEnd > end) {
+					end = partitionEnd;
+					grown = true;
+				}
+			}
+
+		} while (grown);
+
+		// Copy the section blocks of the region
+		for (ITypedRegion partition : partitions) {
+
+			if (RestPartitionScanner.SECTION_BLOCK.equals(partition.getType())) {
+				sectionBlocks.add(partition);
+			}
+		}
+
+		return new SectionSnapshot(aDocument,
+				sectionBlocks.toArray(new ITypedRegion[sectionBlocks.size()]),
+				firstSection, lastSection);
+	}
+
+	/**
+	 * Retrieves the level of the given decorator, adding it to the levels if
+	 * needed
+	 * 
+	 * @param aLevels
+	 *            Decoration levels, in order of appearance
+	 * @param aChar
+	 *            The decorator to find
+	 * @param aUpperlined
+	 *            The decorated line also have an upper-line
+	 * @return The level of the decorator
+	 */
+	private static int getDecorationLevel(
+			final List<SectionDecoration> aLevels, final char aChar,
+			final boolean aUpperlined) {
+
+		if (!DecoratedLinesRule.isDecorationCharacter(aChar)) {
+			return -1;
+		}
+
+		SectionDecoration decoration = new SectionDecoration(aChar, aUpperlined);
+
+		if (!aLevels.contains(decoration)) {
+			aLevels.add(decoration);
+		}
+
+		// "+ 1" : the title is on level 1, the level 0 corresponds to the
+		// pDocumentRoot member (tree root)
+		return aLevels.indexOf(decoration) + 1;
+	}
+
+	/**
+	 * Retrieves the line of the sections following the given row, which are
+	 * moved by the modifications of the region before them
+	 * 
+	 * @param aDocument
+	 *            The indexed document
+	 * @param aIndex
+	 *            The sections index
+	 * @param aLastSection
+	 *            Index row following the last one covered by the region
+	 * @return The lines of the following sections (1-based)
+	 * @throws BadLocationException
+	 *             Invalid section position
+	 */
+	static int[] getFollowingLines(final IDocument aDocument,
+			final SectionIndex aIndex, final int aLastSection)
+			throws BadLocationException {
+
+		final int[] lines = new int[aIndex.size() - aLastSection];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = aDocument.getLineOfOffset(aIndex
+					.getLineOffset(aLastSection + i)) + 1;
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Retrieves the parent node of a section, as {@link TreeData#getParent()}
+	 * does for the nodes of the index
+	 * 
+	 * @param aIndex
+	 *            The sections index
+	 * @param aRow
+	 *            A section row
+	 * @return The parent node, the root for top-level sections
+	 */
+	private static TreeData getParentNode(final SectionIndex aIndex,
+			final int aRow) {
+
+		final int parent = aIndex.getParent(aRow);
+		if (parent < 0) {
+			return aIndex.getRoot();
+		}
+
+		return aIndex.getNode(parent);
+	}
+
+	/**
+	 * Computes the decoration levels, in order of appearance, and the
+	 * hierarchy of the indexed sections
+	 * 
+	 * @param aIndex
+	 *            The sections index
+	 * @param aLevels
+	 *            Decoration levels list, filled by this method
+	 */
+	static void linkSections(final SectionIndex aIndex,
+			final List<SectionDecoration> aLevels) {
+
+		aLevels.clear();
+
+		final int[] decorationLevels = new int[aIndex.size()];
+		for (int row = 0; row < decorationLevels.length; row++) {
+			decorationLevels[row] = getDecorationLevel(aLevels,
+					aIndex.getMarker(row), aIndex.isUpperlined(row));
+		}
+
+		aIndex.link(decorationLevels);
+	}
+
+	/**
+	 * Gives the node of an old section to the new section parsed at its place
+	 * 
+	 * @param aIndex
+	 *            The sections index
+	 * @param aOldRow
+	 *            Row of the old section
+	 * @param aNewRows
+	 *            The new sections
+	 * @param aNewRow
+	 *            Row of the new section
+	 * @param aChangedNodes
+	 *            Kept nodes whose label changed
+	 */
+	private static void reuseNode(final SectionIndex aIndex,
+			final int aOldRow, final SectionIndex aNewRows, final int aNewRow,
+			final Set<TreeData> aChangedNodes) {
+
+		final TreeData node = aIndex.getExistingNode(aOldRow);
+		if (node == null) {
+			return;
+		}
+
+		if (!aIndex.getTitle(aOldRow).equals(aNewRows.getTitle(aNewRow))
+				|| aIndex.getLine(aOldRow) != aNewRows.getLine(aNewRow)) {
+			aChangedNodes.add(node);
+		}
+
+		aNewRows.setNode(aNewRow, node);
+	}
+
+	/**
+	 * Replaces the sections of the index by the parsed ones, reusing the
+	 * existing nodes, and updates the lines of the following sections. The
+	 * hierarchy must be computed again with
+	 * {@link #linkSections(SectionIndex, List)}.
+	 * 
+	 * @param aIndex
+	 *            The sections index
+	 * @param aSnapshot
+	 *            The parsed region
+	 * @param aNewRows
+	 *            The sections of the region
+	 * @param aFollowingLines
+	 *            The lines of the sections following the region, see
+	 *            {@link #getFollowingLines(IDocument, SectionIndex, int)}
+	 * @return Kept nodes whose label changed
+	 */
+	static Set<TreeData> updateSections(final SectionIndex aIndex,
+			final SectionSnapshot aSnapshot, final SectionIndex aNewRows,
+			final int[] aFollowingLines) {
+
+		final int firstSection = aSnapshot.getFirstSection();
+		final int lastSection = aSnapshot.getLastSection();
+
+		final Set<TreeData> changedNodes = Collections
+				.newSetFromMap(new IdentityHashMap<TreeData, Boolean>());
+
+		// Keep the nodes of the sections which are still there
+		if (lastSection - firstSection == aNewRows.size()) {
+			for (int row = 0; row < aNewRows.size(); row++) {
+				reuseNode(aIndex, firstSection + row, aNewRows, row,
+						changedNodes);
+			}
+
+		} else {
+			int oldRow = firstSection;
+			for (int row = 0; row < aNewRows.size(); row++) {
+
+				final int blockStart = aNewRows.getBlockStart(row);
+				while (oldRow < lastSection
+						&& aIndex.getBlockStart(oldRow) < blockStart) {
+					oldRow++;
+				}
+
+				if (oldRow < lastSection
+						&& aIndex.getBlockStart(oldRow) == blockStart) {
+					reuseNode(aIndex, oldRow++, aNewRows, row, changedNodes);
+				}
+			}
+		}
+
+		aIndex.replace(firstSection, lastSection, aNewRows);
+
+		// Update the line of the following sections
+		final int firstFollowing = firstSection + aNewRows.size();
+		for (int i = 0; i < aFollowingLines.length; i++) {
+
+			final int row = firstFollowing + i;
+			if (aFollowingLines[i] != aIndex.getLine(row)) {
+				aIndex.setLine(row, aFollowingLines[i]);
+
+				final TreeData node = aIndex.getExistingNode(row);
+				if (node != null) {
+					changedNodes.add(node);
+				}
+			}
+		}
+
+		return changedNodes;
+	}
+
+	/** Nodes whose label changed during the current batch */
+	private Set<TreeData> pBatchChangedNodes;
+
+	/** Index of the batch nodes in their parent when the batch began */
+	private Map<TreeData, Integer> pBatchIndexes;
+
+	/** Nodes existing when the batch began, null outside a batch */
+	private List<TreeData> pBatchNodes;
+
+	/** Parent of the batch nodes when the batch began */
+	private Map<TreeData, TreeData> pBatchParents;
+
+	/** Decoration level list */
+	private final List<SectionDecoration> pDecoratorsLevels = new ArrayList<SectionDecoration>(
+			RestLanguage.SECTION_DECORATIONS.length);
+
+	/** End of the region to parse again, -1 if the model is up to date */
+	private int pDirtyEnd = -1;
+
+	/** Start of the region to parse again, -1 if the model is up to date */
+	private int pDirtyStart = -1;
+
+	/** Listened document */
+	private IDocument pDocument;
+
+	/** A document modification is being applied */
+	private boolean pInDocumentChange;
+
+	/** Sections parsing job */
+	private final SectionParseJob pJob = new SectionParseJob(this);
+
+	/** Sections of the document */
+	private final SectionIndex pIndex = new SectionIndex(
+			Messages.getString("outline.document.root"));
+
+	/** Model listeners */
+	private final List<ISectionModelListener> pListeners = new ArrayList<ISectionModelListener>();
+
+	/** Partitioning change received during a document modification */
+	private IRegion pPendingPartitionChange;
+
+	/** Update being computed by the job, null if none */
+	private volatile SectionUpdate pPendingUpdate;
+
+	/**
+	 * Adds a listener to the model
+	 * 
+	 * @param aListener
+	 *            A model listener
+	 */
+	public void addListener(final ISectionModelListener aListener) {
+
+		if (aListener != null && !pListeners.contains(aListener)) {
+			pListeners.add(aListener);
+		}
+	}
+
+	/**
+	 * Appends the first available section decoration character to the current
+	 * levels decoration list
+	 */
+	private void appendDecorator() {
+
+		for (char marker : RestLanguage.SECTION_DECORATIONS) {
+
+			SectionDecoration decoration = new SectionDecoration(marker, false);
+
+			if (!pDecoratorsLevels.contains(decoration)) {
+				pDecoratorsLevels.add(decoration);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the sections of the index by the parsed ones, reusing the
+	 * existing nodes
+	 * 
+	 * @param aSnapshot
+	 *            The parsed region
+	 * @param aNewRows
+	 *            The sections of the region
+	 * @param aFollowingLines
+	 *            The lines of the sections following the region
+	 * @param aNotify
+	 *            If true, the listeners are notified of the outline
+	 *            modifications
+	 */
+	private void applySections(final SectionSnapshot aSnapshot,
+			final SectionIndex aNewRows, final int[] aFollowingLines,
+			final boolean aNotify) {
+
+		pDirtyStart = -1;
+		pDirtyEnd = -1;
+
+		// Store the old hierarchy, if it wasn't stored when the batch began
+		final boolean inBatch = pBatchNodes != null;
+		final Map<TreeData, TreeData> oldParents = new IdentityHashMap<TreeData, TreeData>();
+		final Map<TreeData, Integer> oldIndexes = new IdentityHashMap<TreeData, Integer>();
+		final List<TreeData> oldNodes = new ArrayList<TreeData>();
+		if (aNotify && !inBatch) {
+			collectNodes(pIndex, oldParents, oldIndexes, oldNodes);
+		}
+
+		final Set<TreeData> changedNodes = updateSections(pIndex, aSnapshot,
+				aNewRows, aFollowingLines);
+		linkSections(pIndex, pDecoratorsLevels);
+
+		if (inBatch) {
+			// Notified when the batch ends
+			pBatchChangedNodes.addAll(changedNodes);
+
+		} else if (aNotify) {
+			final SectionDelta[] deltas = computeDeltas(pIndex, oldParents,
+					oldIndexes, oldNodes, changedNodes);
+			if (deltas.length != 0) {
+				fireSectionsChanged(deltas);
+			}
+		}
+	}
+
+	/**
+	 * Starts a batch of document modifications : the listeners are notified of
+	 * all the outline modifications at once, when the batch ends. The model
+	 * can still be reconciled during the batch.
+	 */
+	public void beginBatch() {
+
+		if (pBatchNodes != null || pDocument == null) {
+			return;
+		}
+
+		// Notify the previous modifications
+		reconcile(true);
+
+		pBatchParents = new IdentityHashMap<TreeData, TreeData>();
+		pBatchIndexes = new IdentityHashMap<TreeData, Integer>();
+		pBatchNodes = new ArrayList<TreeData>();
+		pBatchChangedNodes = Collections
+				.newSetFromMap(new IdentityHashMap<TreeData, Boolean>());
+
+		collectNodes(pIndex, pBatchParents, pBatchIndexes, pBatchNodes);
+	}
+
+	/**
+	 * Cancels the background parsing of the sections, if any
+	 */
+	private void cancelParsing() {
+
+		if (pPendingUpdate != null) {
+			pPendingUpdate = null;
+			pJob.cancel();
+		}
+	}
+
+	/**
+	 * Forgets the current batch, if any, without notifying the listeners
+	 */
+	private void clearBatch() {
+
+		pBatchChangedNodes = null;
+		pBatchIndexes = null;
+		pBatchNodes = null;
+		pBatchParents = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org
+	 * .eclipse.jface.text.DocumentEvent)
+	 */
+	@Override
+	public void documentAboutToBeChanged(final DocumentEvent aEvent) {
+		pInDocumentChange = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.
+	 * jface.text.DocumentEvent)
+	 */
+	@Override
+	public void documentChanged(final DocumentEvent aEvent) {
+
+		pInDocumentChange = false;
+
+		// The region being parsed is not valid anymore
+		cancelParsing();
+
+		final int offset = aEvent.getOffset();
+		final int oldEnd = offset + aEvent.getLength();
+		final String text = aEvent.getText();
+		final int newEnd = offset + (text == null ? 0 : text.length());
+
+		// The sections have been moved by their position updater, move the
+		// dirty region the same way
+		if (pDirtyStart >= 0) {
+			pDirtyStart = SectionIndex.shiftOffset(pDirtyStart, true, offset,
+					oldEnd, newEnd);
+			pDirtyEnd = SectionIndex.shiftOffset(pDirtyEnd, false, offset,
+					oldEnd, newEnd);
+		}
+
+		// The partitioning event has been sent before this one
+		if (pPendingPartitionChange != null) {
+			markDirty(pPendingPartitionChange.getOffset(),
+					pPendingPartitionChange.getOffset()
+							+ pPendingPartitionChange.getLength());
+			pPendingPartitionChange = null;
+		}
+
+		markDirty(offset, newEnd);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitioningListenerExtension2#
+	 * documentPartitioningChanged
+	 * (org.eclipse.jface.text.DocumentPartitioningChangedEvent)
+	 */
+	@Override
+	public void documentPartitioningChanged(
+			final DocumentPartitioningChangedEvent aEvent) {
+
+		final IRegion changedRegion = aEvent
+				.getChangedRegion(RestPartitionScanner.PARTITIONING);
+		if (changedRegion == null) {
+			return;
+		}
+
+		if (!pInDocumentChange) {
+			cancelParsing();
+			markDirty(changedRegion.getOffset(), changedRegion.getOffset()
+					+ changedRegion.getLength());
+			return;
+		}
+
+		// Offsets are valid once the document modification is applied
+		if (pPendingPartitionChange == null) {
+			pPendingPartitionChange = changedRegion;
+
+		} else {
+			final int start = Math.min(pPendingPartitionChange.getOffset(),
+					changedRegion.getOffset());
+			final int end = Math.max(pPendingPartitionChange.getOffset()
+					+ pPendingPartitionChange.getLength(),
+					changedRegion.getOffset() + changedRegion.getLength());
+
+			pPendingPartitionChange = new Region(start, end - start);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitioningListener#
+	 * documentPartitioningChanged(org.eclipse.jface.text.IDocument)
+	 */
+	@Override
+	public void documentPartitioningChanged(final IDocument aDocument) {
+		// Not called for extension 2 listeners, parse everything again
+		cancelParsing();
+		markDirty(0, aDocument.getLength());
+	}
+
+	/**
+	 * Ends the current batch of document modifications, and notifies the
+	 * listeners of all the outline modifications since it began
+	 */
+	public void endBatch() {
+
+		if (pBatchNodes == null) {
+			return;
+		}
+
+		// Parse the last modifications
+		reconcile(true);
+
+		final SectionDelta[] deltas = computeDeltas(pIndex, pBatchParents,
+				pBatchIndexes, pBatchNodes, pBatchChangedNodes);
+		clearBatch();
+
+		if (deltas.length != 0) {
+			fireSectionsChanged(deltas);
+		}
+	}
+
+	/**
+	 * Notifies the listeners of the sections modifications
+	 * 
+	 * @param aDeltas
+	 *            The sections modifications
+	 */
+	private void fireSectionsChanged(final SectionDelta[] aDeltas) {
+
+		for (ISectionModelListener listener : pListeners) {
+			try {
+				listener.sectionsChanged(this, aDeltas);
+
+			} catch (Exception ex) {
+				RestPlugin.logError("Error notifying a section model listener",
+						ex);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the decoration associated to the given level
+	 * 
+	 * @param aLevel
+	 *            Section level
+	 * @return The section decoration
+	 */
+	public SectionDecoration getDecorationForLevel(final int aLevel) {
+
+		// Rebase level (root = 1 in data)
+		int level = aLevel - 1;
+
+		if (level >= RestLanguage.SECTION_DECORATIONS.length) {
+			return pDecoratorsLevels.get(pDecoratorsLevels.size() - 1);
+		}
+
+		while (level >= pDecoratorsLevels.size()) {
+			appendDecorator();
+		}
+
+		return pDecoratorsLevels.get(level);
+	}
+
+	/**
+	 * Retrieves the level of the given decorator
+	 * 
+	 * @param aChar
+	 *            The decorator to find
+	 * @param aUpperlined
+	 *            The decorated line also have an upper-line
+	 * @return The level of the decorator
+	 */
+	public int getDecorationLevel(final char aChar, final boolean aUpperlined) {
+		return getDecorationLevel(pDecoratorsLevels, aChar, aUpperlined);
+	}
+
+	/**
+	 * Retrieves the listened document
+	 * 
+	 * @return The listened document, can be null
+	 */
+	public IDocument getDocument() {
+		return pDocument;
+	}
+
+	/**
+	 * Retrieves the index of the sections
+	 * 
+	 * @return The sections index
+	 */
+	public SectionIndex getIndex() {
+		return pIndex;
+	}
+
+	/**
+	 * Retrieves the update to be computed by the sections parsing job
+	 * 
+	 * @return The update to compute, null if none
+	 */
+	SectionUpdate getPendingUpdate() {
+		return pPendingUpdate;
+	}
+
+	/**
+	 * Retrieves the document root
+	 * 
+	 * @return The document root
+	 */
+	public TreeData getRoot() {
+		return pIndex.getRoot();
+	}
+
+	/**
+	 * Retrieves the deepest section containing the given offset. Sections
+	 * which have not been parsed yet are ignored.
+	 * 
+	 * @param aOffset
+	 *            An offset in the document
+	 * @return The section containing the offset, the root if none
+	 */
+	public TreeData getSectionAt(final int aOffset) {
+
+		final int row = pIndex.findSection(aOffset);
+		if (row < 0) {
+			return pIndex.getRoot();
+		}
+
+		return pIndex.getNode(row);
+	}
+
+	/**
+	 * Tests if a batch of document modifications is running
+	 * 
+	 * @return True if the listeners will be notified when the batch ends
+	 */
+	public boolean isInBatch() {
+		return pBatchNodes != null;
+	}
+
+	/**
+	 * Adds the given region to the region to parse again
+	 * 
+	 * @param aStart
+	 *            Region start offset
+	 * @param aEnd
+	 *            Region end offset
+	 */
+	private void markDirty(final int aStart, final int aEnd) {
+
+		if (pDirtyStart < 0) {
+			pDirtyStart = aStart;
+			pDirtyEnd = aEnd;
+
+		} else {
+			pDirtyStart = Math.min(pDirtyStart, aStart);
+			pDirtyEnd = Math.max(pDirtyEnd, aEnd);
+		}
+	}
+
+	/**
+	 * Parses again the modified section blocks and notifies the listeners of
+	 * the outline modifications
+	 */
+	public void reconcile() {
+		reconcile(true);
+	}
+
+	/**
+	 * Parses again the modified section blocks
+	 * 
+	 * @param aNotify
+	 *            If true, the listeners are notified of the outline
+	 *            modifications
+	 */
+	private void reconcile(final boolean aNotify) {
+
+		// The region will be parsed now
+		cancelParsing();
+
+		if (pDocument == null || pDirtyStart < 0) {
+			return;
+		}
+
+		final SectionSnapshot snapshot;
+		final int[] followingLines;
+		try {
+			snapshot = createSnapshot(pDocument, pIndex, pDirtyStart,
+					pDirtyEnd);
+			followingLines = getFollowingLines(pDocument, pIndex,
+					snapshot.getLastSection());
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error computing block partitions", e);
+			pDirtyStart = -1;
+			pDirtyEnd = -1;
+			return;
+		}
+
+		final SectionIndex newRows = snapshot.parse(null);
+		if (newRows != null) {
+			applySections(snapshot, newRows, followingLines, aNotify);
+		}
+	}
+
+	/**
+	 * Parses again the modified section blocks and computes the outline
+	 * modifications in a background job. The section blocks are copied in the
+	 * UI thread, from the partitions of the document. The listeners are
+	 * notified in the UI thread, if the document has not been modified during
+	 * the parsing. Sections are parsed immediately if this method is not
+	 * called from the UI thread.
+	 */
+	public void reconcileInBackground() {
+
+		final Display display = Display.getCurrent();
+		if (display == null) {
+			reconcile(true);
+			return;
+		}
+
+		if (pDocument == null || pDirtyStart < 0 || pPendingUpdate != null) {
+			// Up to date, or already being updated
+			return;
+		}
+
+		final SectionSnapshot snapshot;
+		final int[] followingLines;
+		try {
+			snapshot = createSnapshot(pDocument, pIndex, pDirtyStart,
+					pDirtyEnd);
+			followingLines = getFollowingLines(pDocument, pIndex,
+					snapshot.getLastSection());
+
+		} catch (BadLocationException e) {
+			RestPlugin.logError("Error computing block partitions", e);
+			pDirtyStart = -1;
+			pDirtyEnd = -1;
+			return;
+		}
+
+		pPendingUpdate = new SectionUpdate(pIndex, snapshot, followingLines);
+		pJob.parse(display);
+	}
+
+	/**
+	 * Removes a listener from the model
+	 * 
+	 * @param aListener
+	 *            A model listener
+	 */
+	public void removeListener(final ISectionModelListener aListener) {
+		pListeners.remove(aListener);
+	}
+
+	/**
+	 * Installs the index computed by the background job and notifies its
+	 * deltas, in the UI thread. The update is ignored if the document has been
+	 * modified during the parsing.
+	 * 
+	 * @param aUpdate
+	 *            The computed update
+	 */
+	void sectionsUpdated(final SectionUpdate aUpdate) {
+
+		if (aUpdate != pPendingUpdate) {
+			// Outdated or already applied update
+			return;
+		}
+
+		pPendingUpdate = null;
+		pDirtyStart = -1;
+		pDirtyEnd = -1;
+
+		final SectionDelta[] deltas = aUpdate.getDeltas();
+		aUpdate.apply(pIndex);
+		pDecoratorsLevels.clear();
+		pDecoratorsLevels.addAll(aUpdate.getDecorationLevels());
+
+		if (deltas.length != 0) {
+			fireSectionsChanged(deltas);
+		}
+	}
+
+	/**
+	 * Sets the document to listen to and parses all of its sections. The
+	 * sections of an unchanged file are read from its structure cache.
+	 * Listeners are not notified.
+	 * 
+	 * @param aDocument
+	 *            The document to work on, can be null
+	 */
+	public void setDocument(final IDocument aDocument) {
+
+		if (pDocument != aDocument) {
+
+			if (pDocument != null) {
+				pDocument.removeDocumentListener(this);
+				pDocument.removeDocumentPartitioningListener(this);
+			}
+
+			cancelParsing();
+			clearBatch();
+			pDocument = aDocument;
+			pIndex.clear();
+			pIndex.setDocument(aDocument);
+			pDecoratorsLevels.clear();
+			pPendingPartitionChange = null;
+			pInDocumentChange = false;
+
+			if (aDocument == null) {
+				pDirtyStart = -1;
+				pDirtyEnd = -1;
+				return;
+			}
+
+			aDocument.addDocumentListener(this);
+			aDocument.addDocumentPartitioningListener(this);
+
+			final StructureCache cache = StructureCache
+					.getDocumentStructure(aDocument);
+			if (cache != null) {
+				pIndex.replace(0, 0, cache.createSections());
+				linkSections(pIndex, pDecoratorsLevels);
+				pDirtyStart = -1;
+				pDirtyEnd = -1;
+
+			} else {
+				markDirty(0, aDocument.getLength());
+			}
+		}
+
+		reconcile(false);
+	}
+}
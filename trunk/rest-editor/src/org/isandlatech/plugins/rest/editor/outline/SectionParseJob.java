@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.outline;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+import org.isandlatech.plugins.rest.i18n.Messages;
+
+/**
+ * Computes the pending update of a {@link SectionModel} outside the UI thread :
+ * parsing, hierarchy and deltas. The update is given back to the model in the
+ * UI thread, which ignores it if the document has been modified in the mean
+ * time.
+ * 
+ * @author Thomas Calmant
+ */
+public class SectionParseJob extends Job {
+
+	/** Display running the UI thread */
+	private volatile Display pDisplay;
+
+	/** Parsed model */
+	private final SectionModel pModel;
+
+	/**
+	 * Sets up the job
+	 * 
+	 * @param aModel
+	 *            The parsed model
+	 */
+	public SectionParseJob(final SectionModel aModel) {
+		super(Messages.getString("outline.job.name"));
+		pModel = aModel;
+
+		setSystem(true);
+		setPriority(DECORATE);
+	}
+
+	/**
+	 * Cancels the current parsing, if any, and schedules a new one
+	 * 
+	 * @param aDisplay
+	 *            Display of the UI thread, receiving the computed update
+	 */
+	public void parse(final Display aDisplay) {
+
+		pDisplay = aDisplay;
+
+		// A running job will be run again once canceled
+		cancel();
+		schedule();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.
+	 * IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(final IProgressMonitor aMonitor) {
+
+		final SectionUpdate update = pModel.getPendingUpdate();
+		if (update == null) {
+			return Status.OK_STATUS;
+		}
+
+		if (!update.compute(aMonitor) || aMonitor.isCanceled()) {
+			return Status.CANCEL_STATUS;
+		}
+
+		final Display display = pDisplay;
+		if (display == null || display.isDisposed()) {
+			return Status.CANCEL_STATUS;
+		}
+
+		display.asyncExec(new Runnable() {
+
+			@Override
+			public void run() {
+				pModel.sectionsUpdated(update);
+			}
+		});
+
+		return Status.OK_STATUS;
+	}
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.outline;
+
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IPositionUpdater;
+
+/**
+ * Moves the section blocks positions and the other offsets of a
+ * {@link SectionIndex} according to the document modifications. Sections
+ * starting in a replaced text start with the new text, and those ending in it
+ * end with the new text.
+ * 
+ * @author Thomas Calmant
+ */
+public class SectionPositionUpdater implements IPositionUpdater {
+
+	/** Updated index */
+	private final SectionIndex pIndex;
+
+	/**
+	 * Sets up the position updater
+	 * 
+	 * @param aIndex
+	 *            The index to update
+	 */
+	public SectionPositionUpdater(final SectionIndex aIndex) {
+		pIndex = aIndex;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IPositionUpdater#update(org.eclipse.jface.text
+	 * .DocumentEvent)
+	 */
+	@Override
+	public void update(final DocumentEvent aEvent) {
+
+		final int offset = aEvent.getOffset();
+		final int oldEnd = offset + aEvent.getLength();
+		final String text = aEvent.getText();
+		final int newEnd = offset + (text == null ? 0 : text.length());
+
+		// Sections ending before the modification don't move
+		pIndex.shiftOffsets(pIndex.findFirstSection(offset), offset, oldEnd,
+				newEnd);
+	}
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.outline;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITypedRegion;
+import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.rules.DecoratedLinesRule;
+
+/**
+ * Immutable copy of the section block partitions of a document region to
+ * parse again, with the location of their lines. It can be parsed in another
+ * thread, while the document is modified.
+ * 
+ * @author Thomas Calmant
+ */
+public class SectionSnapshot {
+
+	/** Content of the section blocks */
+	private final String[] pContents;
+
+	/** First index row covered by the region */
+	private final int pFirstSection;
+
+	/** Index row following the last one covered by the region */
+	private final int pLastSection;
+
+	/** Offsets of the lines of each section block */
+	private final int[][] pLineOffsets;
+
+	/** First line of each section block (0-based) */
+	private final int[] pLines;
+
+	/** Section block partitions of the region */
+	private final ITypedRegion[] pPartitions;
+
+	/**
+	 * Copies the section blocks of a document region. The document must not
+	 * be modified meanwhile.
+	 * 
+	 * @param aDocument
+	 *            The parsed document
+	 * @param aPartitions
+	 *            Complete section block partitions of the region
+	 * @param aFirstSection
+	 *            First index row covered by the region
+	 * @param aLastSection
+	 *            Index row following the last one covered by the region
+	 * @throws BadLocationException
+	 *             Invalid section block partition
+	 */
+	public SectionSnapshot(final IDocument aDocument,
+			final ITypedRegion[] aPartitions, final int aFirstSection,
+			final int aLastSection) throws BadLocationException {
+
+		pPartitions = aPartitions;
+		pFirstSection = aFirstSection;
+		pLastSection = aLastSection;
+
+		pContents = new String[aPartitions.length];
+		pLines = new int[aPartitions.length];
+		pLineOffsets = new int[aPartitions.length][];
+
+		for (int i = 0; i < aPartitions.length; i++) {
+
+			final int offset = aPartitions[i].getOffset();
+			final int length = aPartitions[i].getLength();
+
+			pContents[i] = aDocument.get(offset, length);
+
+			// Lines are those of the document, not those of the copy
+			final int firstLine = aDocument.getLineOfOffset(offset);
+			final int lastLine = aDocument.getLineOfOffset(offset + length);
+
+			pLines[i] = firstLine;
+			pLineOffsets[i] = new int[lastLine - firstLine + 1];
+			for (int line = firstLine; line <= lastLine; line++) {
+				pLineOffsets[i][line - firstLine] = aDocument
+						.getLineOffset(line);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the first index row covered by the region
+	 * 
+	 * @return The first replaced row
+	 */
+	public int getFirstSection() {
+		return pFirstSection;
+	}
+
+	/**
+	 * Retrieves the index row following the last one covered by the region
+	 * 
+	 * @return The row following the last replaced one
+	 */
+	public int getLastSection() {
+		return pLastSection;
+	}
+
+	/**
+	 * Parses the section blocks of the region
+	 * 
+	 * @param aMonitor
+	 *            Progress monitor, can be null
+	 * @return The sections of the region, null if the parsing was canceled
+	 */
+	public SectionIndex parse(final IProgressMonitor aMonitor) {
+
+		final SectionIndex rows = new SectionIndex(null);
+
+		for (int i = 0; i < pPartitions.length; i++) {
+
+			if (aMonitor != null && aMonitor.isCanceled()) {
+				return null;
+			}
+
+			parseSection(i, rows);
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Analyzes the given section block partition and appends it to the given
+	 * rows
+	 * 
+	 * @param aBlock
+	 *            Index of the section block partition
+	 * @param aRows
+	 *            Index receiving the section
+	 */
+	private void parseSection(final int aBlock, final SectionIndex aRows) {
+
+		char decorationChar = 0;
+		boolean upperlined = false;
+		boolean underlined = false;
+		String sectionTitle = null;
+
+		// Line of the title in the block
+		int titleLine = -1;
+
+		BufferedReader strReader = new BufferedReader(new StringReader(
+				pContents[aBlock]));
+
+		String sectionBlockLine = null;
+		try {
+			while ((sectionBlockLine = strReader.readLine()) != null) {
+
+				if (sectionTitle == null) {
+					titleLine++;
+
+					if (!DecoratedLinesRule.isDecorativeLine(sectionBlockLine)) {
+						sectionTitle = sectionBlockLine;
+					} else {
+						upperlined = true;
+					}
+
+				} else if (!sectionBlockLine.isEmpty()
+						&& DecoratedLinesRule.isDecorativeLine(sectionBlockLine)) {
+					// Under line found (section is OK)
+					decorationChar = sectionBlockLine.charAt(0);
+					underlined = true;
+					break;
+				}
+			}
+		} catch (IOException e) {
+			// May never happen...
+			RestPlugin.logError("Error section block lines", e);
+			return;
+		}
+
+		// We found nothing about a section block there...
+		if (!underlined
+				|| !DecoratedLinesRule.isDecorationCharacter(decorationChar)) {
+			return;
+		}
+
+		final int[] lineOffsets = pLineOffsets[aBlock];
+		if (titleLine >= lineOffsets.length) {
+			// The document doesn't see the same lines
+			return;
+		}
+
+		final int lineOffset = lineOffsets[titleLine];
+
+		// The section starts on its upper line, if any
+		int sectionOffset = lineOffset;
+		if (upperlined && titleLine > 0) {
+			sectionOffset = lineOffsets[titleLine - 1];
+		}
+
+		// "+ 1" : section lines begin at 1
+		final ITypedRegion partition = pPartitions[aBlock];
+		aRows.add(partition.getOffset(),
+				partition.getOffset() + partition.getLength(), sectionOffset,
+				pLines[aBlock] + titleLine + 1, lineOffset,
+				sectionTitle.trim(), decorationChar, upperlined);
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.outline;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Modification of a {@link SectionModel}, computed by the
+ * {@link SectionParseJob} from a detached copy of the model index and from the
+ * section blocks copied in the UI thread. The model only installs the
+ * resulting index and notifies the deltas, in the UI thread.
+ * 
+ * @author Thomas Calmant
+ */
+public class SectionUpdate {
+
+	/** Decoration levels of the updated index */
+	private final List<SectionDecoration> pDecorationLevels = new ArrayList<SectionDecoration>();
+
+	/** Modifications of the tree, null until computed */
+	private SectionDelta[] pDeltas;
+
+	/** Lines of the sections following the parsed region */
+	private final int[] pFollowingLines;
+
+	/** Detached copy of the model index, updated by the job */
+	private final SectionIndex pIndex;
+
+	/** Number of rows replacing the parsed region */
+	private int pNbNewRows;
+
+	/** The region to parse again */
+	private final SectionSnapshot pSnapshot;
+
+	/**
+	 * Prepares the update, in the UI thread
+	 * 
+	 * @param aIndex
+	 *            The model index, copied
+	 * @param aSnapshot
+	 *            The region to parse again
+	 * @param aFollowingLines
+	 *            Lines of the sections following the region
+	 */
+	public SectionUpdate(final SectionIndex aIndex,
+			final SectionSnapshot aSnapshot, final int[] aFollowingLines) {
+
+		pIndex = aIndex.createDetachedCopy();
+		pSnapshot = aSnapshot;
+		pFollowingLines = aFollowingLines;
+	}
+
+	/**
+	 * Installs the updated index in the model index, in the UI thread
+	 * 
+	 * @param aIndex
+	 *            The model index, not modified since the update was prepared
+	 */
+	public void apply(final SectionIndex aIndex) {
+
+		final int firstSection = pSnapshot.getFirstSection();
+		aIndex.set(pIndex, firstSection, pSnapshot.getLastSection(),
+				firstSection + pNbNewRows);
+	}
+
+	/**
+	 * Parses the copied region, then computes the new index, its hierarchy and
+	 * the deltas. Must be called outside the UI thread.
+	 * 
+	 * @param aMonitor
+	 *            Progress monitor, can be null
+	 * @return False if the update has been canceled
+	 */
+	public boolean compute(final IProgressMonitor aMonitor) {
+
+		final SectionIndex newRows = pSnapshot.parse(aMonitor);
+		if (newRows == null) {
+			return false;
+		}
+
+		final Map<TreeData, TreeData> oldParents = new IdentityHashMap<TreeData, TreeData>();
+		final Map<TreeData, Integer> oldIndexes = new IdentityHashMap<TreeData, Integer>();
+		final List<TreeData> oldNodes = new ArrayList<TreeData>();
+		SectionModel.collectNodes(pIndex, oldParents, oldIndexes, oldNodes);
+
+		final Set<TreeData> changedNodes = SectionModel.updateSections(pIndex,
+				pSnapshot, newRows, pFollowingLines);
+		SectionModel.linkSections(pIndex, pDecorationLevels);
+
+		pDeltas = SectionModel.computeDeltas(pIndex, oldParents, oldIndexes,
+				oldNodes, changedNodes);
+		pNbNewRows = newRows.size();
+		return true;
+	}
+
+	/**
+	 * Retrieves the decoration levels of the updated index
+	 * 
+	 * @return The decoration levels
+	 */
+	public List<SectionDecoration> getDecorationLevels() {
+		return pDecorationLevels;
+	}
+
+	/**
+	 * Retrieves the modifications of the tree
+	 * 
+	 * @return The tree modifications, null if the update failed
+	 */
+	public SectionDelta[] getDeltas() {
+		return pDeltas;
+	}
+}
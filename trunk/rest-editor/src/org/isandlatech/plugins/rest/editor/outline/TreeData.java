@@ -11,264 +11,169 @@
 
 package org.isandlatech.plugins.rest.editor.outline;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.viewers.TreePath;
 
 /**
- * Represents a section node in the document hierarchy
+ * Represents a section node in the document hierarchy. The node only refers
+ * to a row of a {@link SectionIndex}, which stores the section data.
  * 
  * @author Thomas Calmant
  */
 public class TreeData implements Comparable<TreeData> {
 
-	/** Next value to be used as node ID */
-	private static int sNextId = 0;
-
-	/**
-	 * Creates an array of TreeData objects from a list of labels
-	 * 
-	 * @param aParent
-	 *            Parent of the elements (can be null for roots)
-	 * @param aLabels
-	 *            Labels of the given elements
-	 * @return An array of TreeData objects. Never null.
-	 */
-	public static TreeData[] createElements(final TreeData aParent,
-			final String... aLabels) {
-		TreeData[] resultArray = new TreeData[aLabels.length];
-
-		if (aLabels != null) {
-			int i = 0;
-			for (String label : aLabels) {
-				resultArray[i++] = new TreeData(aParent, label);
-			}
-		}
-
-		return resultArray;
-	}
-
-	/**
-	 * Reset the next ID value to 0
-	 */
-	public static void resetIdIndex() {
-		sNextId = 0;
-	}
-
-	/** Element children */
-	private List<TreeData> pChildren;
-
-	/** Element document */
-	private IDocument pDocument;
+	/** Index containing the section, null if the section has been removed */
+	private SectionIndex pIndex;
 
-	/** Element level */
-	private int pLevel;
+	/** Section row in the index, -1 for the root node */
+	private int pRow;
 
-	/** Element line */
-	private int pLine;
-
-	/** Element line offset */
-	private int pLineOffset;
-
-	/** Node ID */
-	private int pNodeID;
-
-	/** Element parent */
-	private TreeData pParent;
-
-	/** Element label */
+	/** Root label, or title of a removed section */
 	private String pText;
 
-	/** Does the element have an upper line decoration ? */
-	private boolean pUpperlined;
-
 	/**
 	 * Configures the tree element
 	 * 
+	 * @param aIndex
+	 *            Index containing the section
+	 * @param aRow
+	 *            Section row in the index, -1 for the root node
 	 * @param aText
-	 *            Element label
+	 *            Label of the root node
 	 */
-	public TreeData(final String aText) {
-		this(null, aText);
+	TreeData(final SectionIndex aIndex, final int aRow, final String aText) {
+		pIndex = aIndex;
+		pRow = aRow;
+		pText = aText;
 	}
 
 	/**
-	 * Configures the tree element
+	 * Attaches the node to the index containing its section
 	 * 
-	 * @param aText
-	 *            Element label
-	 * @param aLine
-	 *            Element extra data : line in the source document
-	 * @param aLineOffset
-	 *            Element extra data : line offset in the source document
-	 * @param aUpperline
-	 *            Element extra data : is there a line upon the element ?
+	 * @param aIndex
+	 *            The section index
 	 */
-	public TreeData(final String aText, final int aLine, final int aLineOffset,
-			final boolean aUpperline) {
-		this(null, aText, aLine, aLineOffset, aUpperline);
+	void attach(final SectionIndex aIndex) {
+		pIndex = aIndex;
 	}
 
 	/**
-	 * Configures the tree element
+	 * Compares the given node to the current one. Comparison is only based on
+	 * nodes ID.
 	 * 
-	 * @param aParent
-	 *            Element parent
-	 * @param aText
-	 *            Element label
+	 * @see Comparable#compareTo(Object)
 	 */
-	public TreeData(final TreeData aParent, final String aText) {
-		this(aParent, aText, -1, 0, false);
-	}
+	@Override
+	public int compareTo(final TreeData aOther) {
 
-	/**
-	 * Configures the tree element
-	 * 
-	 * @param aParent
-	 *            Element parent
-	 * @param aText
-	 *            Element label
-	 * @param aLine
-	 *            Element extra data : line in the source document
-	 * @param aLineOffset
-	 *            Element extra data : line offset in the source document
-	 * @param aUpperline
-	 *            Element extra data : is there a line upon the element ?
-	 */
-	public TreeData(final TreeData aParent, final String aText,
-			final int aLine, final int aLineOffset, final boolean aUpperline) {
-		pParent = aParent;
-		pChildren = new ArrayList<TreeData>();
-		pText = String.valueOf(aText);
-
-		if (aParent != null) {
-			aParent.addChild(this);
-		} else {
-			pLevel = 0;
+		if (aOther == null || aOther.pRow < pRow) {
+			return 1;
 		}
 
-		pLine = aLine;
-		pLineOffset = aLineOffset;
-		pUpperlined = aUpperline;
-
-		pNodeID = -1;
-	}
-
-	/**
-	 * Adds a child to the element
-	 * 
-	 * @param aChild
-	 *            A new child
-	 */
-	public TreeData addChild(final TreeData aChild) {
-
-		if (aChild == null) {
-			return null;
+		if (aOther.pRow > pRow) {
+			return -1;
 		}
 
-		pChildren.add(aChild);
-		aChild.pParent = this;
-		aChild.pLevel = pLevel + 1;
-
-		aChild.pNodeID = sNextId++;
-
-		return aChild;
+		return 0;
 	}
 
 	/**
-	 * Suppress all children, recursively
+	 * Detaches the node from its index, when its section has been removed
 	 */
-	public void clearChildren() {
+	void detach() {
 
-		for (TreeData child : pChildren) {
-			child.clearChildren();
-			child.pParent = null;
+		if (pIndex != null && pRow >= 0) {
+			pText = pIndex.getTitle(pRow);
 		}
 
-		pChildren.clear();
+		pIndex = null;
 	}
 
 	/**
-	 * Compares the given node to the current one. Comparison is only based on
-	 * nodes ID.
+	 * Tries to find the given node element in the current one. If the given
+	 * node has been removed, the section with the same title and the nearest
+	 * position is returned.
 	 * 
-	 * @see Comparable#compareTo(Object)
+	 * @param aNode
+	 *            Node to look for
+	 * @return The found node, null if not present
 	 */
-	@Override
-	public int compareTo(final TreeData aOther) {
+	public TreeData find(final TreeData aNode) {
 
-		if (aOther == null || aOther.pNodeID < pNodeID) {
-			return 1;
+		// Save some loops
+		if (aNode == null) {
+			return null;
 		}
 
-		if (aOther.pNodeID > pNodeID) {
-			return -1;
+		if (aNode == this) {
+			return this;
 		}
 
-		return 0;
-	}
-
-	/**
-	 * Tests if the given object is equal to the current one, based on type,
-	 * text and parent equality.
-	 * 
-	 * @see Object#equals(Object)
-	 */
-	@Override
-	public boolean equals(final Object aObj) {
-
-		if (!(aObj instanceof TreeData)) {
-			return false;
+		final SectionIndex index = pIndex;
+		if (index == null) {
+			return null;
 		}
 
-		TreeData other = (TreeData) aObj;
+		final int first = pRow + 1;
+		final int end = pRow < 0 ? index.size() : index.getEnd(pRow);
 
-		if (!pText.equals(other.pText)) {
-			return false;
+		if (aNode.pIndex == index) {
+			// Still in the tree
+			return aNode.pRow >= first && aNode.pRow < end ? aNode : null;
 		}
 
-		if (pParent == null) {
-			return other.pParent == null;
+		final String title = aNode.getText();
+		int found = -1;
+
+		for (int row = first; row < end; row++) {
+			if (title.equals(index.getTitle(row))
+					&& (found < 0 || Math.abs(row - aNode.pRow) < Math
+							.abs(found - aNode.pRow))) {
+				found = row;
+			}
 		}
 
-		// other.pParent is null if clearChildren() was called before
-		if (other.pParent != null && !pParent.equals(other.pParent)) {
-			return false;
+		if (found < 0) {
+			return null;
 		}
 
-		return true;
+		return index.getNode(found);
 	}
 
 	/**
-	 * Tries to find the given node element (based on the
-	 * {@link #equals(Object)} method)
+	 * Retrieves the child at the given index
 	 * 
-	 * @param aNode
-	 *            Node to look for
-	 * @return The found node, null if not present
+	 * @param aIndex
+	 *            Index of the child
+	 * @return The child node, null if the index is invalid
 	 */
-	public TreeData find(final TreeData aNode) {
+	public TreeData getChild(final int aIndex) {
 
-		// Save some loops
-		if (aNode == null) {
+		final SectionIndex index = pIndex;
+		if (index == null || aIndex < 0) {
 			return null;
 		}
 
-		if (this.equals(aNode)) {
-			return this;
+		final int[] children = index.getChildren(pRow);
+		if (aIndex >= children.length) {
+			return null;
 		}
 
-		for (TreeData child : pChildren) {
+		return index.getNode(children[aIndex]);
+	}
 
-			TreeData result = child.find(aNode);
-			if (result != null) {
-				return result;
-			}
+	/**
+	 * Retrieves the number of children of the element
+	 * 
+	 * @return The number of children
+	 */
+	public int getChildCount() {
+
+		if (pIndex == null) {
+			return 0;
 		}
 
-		return null;
+		return pIndex.getChildren(pRow).length;
 	}
 
 	/**
@@ -277,8 +182,19 @@ public class TreeData implements Comparable<TreeData> {
 	 * @return An array containing all children
 	 */
 	public TreeData[] getChildrenArray() {
-		TreeData[] childrenArray = new TreeData[pChildren.size()];
-		pChildren.toArray(childrenArray);
+
+		final SectionIndex index = pIndex;
+		if (index == null) {
+			return new TreeData[0];
+		}
+
+		final int[] children = index.getChildren(pRow);
+		final TreeData[] childrenArray = new TreeData[children.length];
+
+		for (int i = 0; i < children.length; i++) {
+			childrenArray[i] = index.getNode(children[i]);
+		}
+
 		return childrenArray;
 	}
 
@@ -288,113 +204,159 @@ public class TreeData implements Comparable<TreeData> {
 	 * @return the document
 	 */
 	public IDocument getDocument() {
-		return pDocument;
+
+		if (pIndex == null) {
+			return null;
+		}
+
+		return pIndex.getDocument();
 	}
 
 	/**
-	 * Retrieves the node ID
+	 * Retrieves the node ID, i.e. its position in the document
 	 * 
-	 * @return the node ID
+	 * @return the node ID, -1 for the root node
 	 */
 	public int getId() {
-		return pNodeID;
+		return pRow;
 	}
 
 	/**
 	 * Retrieves the element level
 	 * 
-	 * @return The element level
+	 * @return the element level
 	 */
 	public int getLevel() {
-		return pLevel;
+
+		if (pIndex == null || pRow < 0) {
+			return 0;
+		}
+
+		return pIndex.getLevel(pRow);
 	}
 
 	/**
-	 * Retrieves the line associated to the element, the 1-based line number of
-	 * the title line (or the 0-based line number of the section underline)
+	 * Retrieves the element line
 	 * 
-	 * @return The line associated to the element
+	 * @return the element line, -1 if unknown
 	 */
 	public int getLine() {
-		return pLine;
+
+		if (pIndex == null || pRow < 0) {
+			return -1;
+		}
+
+		return pIndex.getLine(pRow);
 	}
 
 	/**
-	 * Retrieves the offset of the beginning of the title line associated to the
-	 * element
+	 * Retrieves the element line offset
 	 * 
-	 * @return The line offset associated to the element
+	 * @return the element line offset
 	 */
 	public int getLineOffset() {
-		return pLineOffset;
+
+		if (pIndex == null || pRow < 0) {
+			return 0;
+		}
+
+		return pIndex.getLineOffset(pRow);
 	}
 
 	/**
-	 * Gets the following tree node at the same or upper level
+	 * Retrieves the next node which is not a child of this one
 	 * 
-	 * @return The following node, null if none
+	 * @return The next node at the same or a lower level, null if none
 	 */
 	public TreeData getNext() {
 
 		// No parent, no brother
-		if (pParent == null || pLevel < 0) {
+		if (pIndex == null || pRow < 0) {
 			return null;
 		}
 
-		List<TreeData> brotherHood = pParent.pChildren;
-
-		// Find this node index
-		int thisIndex = brotherHood.indexOf(this);
-
-		if (thisIndex == -1 || thisIndex == brotherHood.size() - 1) {
-			// This node is the last one
-			return pParent.getNext();
+		final int next = pIndex.getEnd(pRow);
+		if (next >= pIndex.size()) {
+			return null;
 		}
 
-		return brotherHood.get(thisIndex + 1);
+		return pIndex.getNode(next);
 	}
 
 	/**
-	 * Retrieves the element parent.
+	 * Retrieves the parent node
 	 * 
-	 * @return The element parent. Null if the element is a root
+	 * @return The parent node, null for the root node
 	 */
 	public TreeData getParent() {
-		return pParent;
+
+		if (pIndex == null || pRow < 0) {
+			return null;
+		}
+
+		final int parent = pIndex.getParent(pRow);
+		if (parent < 0) {
+			return pIndex.getRoot();
+		}
+
+		return pIndex.getNode(parent);
 	}
 
 	/**
-	 * Gets the preceding tree node at the same or upper level
+	 * Retrieves the previous brother of the current node
 	 * 
-	 * @return The preceding node, null if none
+	 * @return The previous brother, null if none
 	 */
 	public TreeData getPrevious() {
 
 		// No parent, no brother
-		if (pParent == null || pLevel < 0) {
+		if (pIndex == null || pRow < 0) {
+			return null;
+		}
+
+		final int previous = pIndex.getPreviousSibling(pRow);
+		if (previous < 0) {
 			return null;
 		}
 
-		List<TreeData> brotherHood = pParent.pChildren;
+		return pIndex.getNode(previous);
+	}
+
+	/**
+	 * Retrieves the section row in its index
+	 * 
+	 * @return The section row, -1 for the root node
+	 */
+	int getRow() {
+		return pRow;
+	}
 
-		// Find this node index
-		int thisIndex = brotherHood.indexOf(this);
+	/**
+	 * Retrieves the offset of the section, upper line included
+	 * 
+	 * @return The section offset
+	 */
+	public int getSectionOffset() {
 
-		if (thisIndex <= 0) {
-			// This node is the first one
-			return pParent.getNext();
+		if (pIndex == null || pRow < 0) {
+			return 0;
 		}
 
-		return brotherHood.get(thisIndex - 1);
+		return pIndex.getOffset(pRow);
 	}
 
 	/**
-	 * Retrieves the element label
+	 * Retrieves the element text
 	 * 
-	 * @return The element label
+	 * @return the element text
 	 */
 	public String getText() {
-		return pText;
+
+		if (pIndex == null || pRow < 0) {
+			return pText;
+		}
+
+		return pIndex.getTitle(pRow);
 	}
 
 	/**
@@ -404,13 +366,14 @@ public class TreeData implements Comparable<TreeData> {
 	 */
 	public TreePath getTreePath() {
 
-		Object[] segments = new Object[pLevel + 1];
+		final int level = getLevel();
+		final Object[] segments = new Object[level + 1];
 		TreeData current = this;
-		int i = pLevel;
+		int i = level;
 
 		while (current != null) {
 			segments[i--] = current;
-			current = current.pParent;
+			current = current.getParent();
 		}
 
 		return new TreePath(segments);
@@ -422,21 +385,16 @@ public class TreeData implements Comparable<TreeData> {
 	 * @return True if the element has children
 	 */
 	public boolean hasChildren() {
-		return !pChildren.isEmpty();
-	}
 
-	/**
-	 * TreeData hash code, based on title, line and parent.
-	 */
-	@Override
-	public int hashCode() {
+		if (pIndex == null) {
+			return false;
+		}
 
-		StringBuilder builder = new StringBuilder();
-		builder.append(pText);
-		builder.append(pLine);
-		builder.append(pParent);
+		if (pRow < 0) {
+			return pIndex.size() > 0;
+		}
 
-		return builder.toString().hashCode();
+		return pIndex.getFirstChild(pRow) >= 0;
 	}
 
 	/**
@@ -445,58 +403,37 @@ public class TreeData implements Comparable<TreeData> {
 	 * @return if the element has an upper line decoration
 	 */
 	public boolean isUpperlined() {
-		return pUpperlined;
-	}
 
-	/**
-	 * Removes a child from the element
-	 * 
-	 * @param aChild
-	 *            The child to be removed
-	 */
-	public void removeChild(final TreeData aChild) {
-
-		if (aChild == null) {
-			return;
+		if (pIndex == null || pRow < 0) {
+			return false;
 		}
 
-		pChildren.remove(aChild);
-		aChild.pParent = null;
-		aChild.pLevel = 0;
+		return pIndex.isUpperlined(pRow);
 	}
 
 	/**
-	 * @param aDocument
-	 *            the document to set
-	 */
-	public void setDocument(final IDocument aDocument) {
-		pDocument = aDocument;
-	}
-
-	/**
-	 * Sets the element parent.
+	 * Sets the row of the section in its index
 	 * 
-	 * @param parent
-	 *            The element parent. Null to make a root
+	 * @param aRow
+	 *            The section row
 	 */
-	public void setParent(final TreeData parent) {
-		pParent = parent;
+	void setRow(final int aRow) {
+		pRow = aRow;
 	}
 
-	/** Sets the element label */
-	public void setText(final String text) {
-		pText = String.valueOf(text);
-	}
-
-	/**
-	 * @return A simple description of the node that can be used as a label
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
 	 */
 	@Override
 	public String toString() {
-		if (pLine != -1) {
-			return pText + " (" + pLine + ")";
+
+		final int line = getLine();
+		if (line != -1) {
+			return getText() + " (" + line + ")";
 		}
 
-		return pText;
+		return getText();
 	}
 }
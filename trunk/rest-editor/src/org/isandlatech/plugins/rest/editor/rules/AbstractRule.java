@@ -48,15 +48,41 @@ public abstract class AbstractRule implements IPredicateRule {
 		pSuccessToken = aSuccessToken;
 	}
 
+	/**
+	 * Tests if the rule may match a text beginning with the given character.
+	 * Scanners use it to avoid evaluating rules which can't match at their
+	 * current position. The default implementation always returns true.
+	 * 
+	 * @param aChar
+	 *            First character of the text
+	 * @param aLineStart
+	 *            True if the character may be the first one of its line
+	 * @return False if the rule can't match
+	 */
+	public boolean canStartWith(final int aChar, final boolean aLineStart) {
+		return true;
+	}
+
 	@Override
 	public IToken evaluate(final ICharacterScanner aScanner) {
 
-		MarkedCharacterScanner markedScanner = new MarkedCharacterScanner(
-				aScanner);
+		final IMarkedCharacterScanner markedScanner;
+		if (aScanner instanceof IMarkedCharacterScanner) {
+			// ReST scanners : no allocation needed
+			markedScanner = (IMarkedCharacterScanner) aScanner;
+
+		} else {
+			// Foreign scanner : use a wrapper
+			markedScanner = new MarkedCharacterScanner(aScanner);
+		}
+
+		markedScanner.mark();
 		IToken result = evaluate(markedScanner);
 
 		if (result.isUndefined()) {
 			markedScanner.reset();
+		} else {
+			markedScanner.unmark();
 		}
 
 		return result;
@@ -84,7 +110,7 @@ public abstract class AbstractRule implements IPredicateRule {
 	 *            A character scanner
 	 * @return The evaluated token, or an undefined one
 	 */
-	public abstract IToken evaluate(final MarkedCharacterScanner aScanner);
+	public abstract IToken evaluate(final IMarkedCharacterScanner aScanner);
 
 	@Override
 	public IToken getSuccessToken() {
@@ -47,8 +47,25 @@ public class ContiguousRules extends AbstractRule {
 		pSecondRule = aSecondRule;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.isandlatech.plugins.rest.editor.rules.AbstractRule#canStartWith(int,
+	 * boolean)
+	 */
+	@Override
+	public boolean canStartWith(final int aChar, final boolean aLineStart) {
+
+		if (pFirstRule instanceof AbstractRule) {
+			return ((AbstractRule) pFirstRule).canStartWith(aChar, aLineStart);
+		}
+
+		return true;
+	}
+
 	@Override
-	public IToken evaluate(final MarkedCharacterScanner aScanner) {
+	public IToken evaluate(final IMarkedCharacterScanner aScanner) {
 
 		// Evaluate first rule
 		IToken result = pFirstRule.evaluate(aScanner);
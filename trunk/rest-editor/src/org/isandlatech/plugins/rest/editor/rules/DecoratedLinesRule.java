@@ -84,7 +84,7 @@ public class DecoratedLinesRule extends AbstractRule {
 	}
 
 	@Override
-	public IToken evaluate(final MarkedCharacterScanner aScanner) {
+	public IToken evaluate(final IMarkedCharacterScanner aScanner) {
 
 		// Useless rule if not at the beginning of a line
 		if (aScanner.getColumn() != 0) {
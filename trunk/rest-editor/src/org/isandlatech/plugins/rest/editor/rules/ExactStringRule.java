@@ -82,8 +82,39 @@ public class ExactStringRule extends AbstractRule {
 		this(aPattern, -1, false, aSuccessToken);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.isandlatech.plugins.rest.editor.rules.AbstractRule#canStartWith(int,
+	 * boolean)
+	 */
+	@Override
+	public boolean canStartWith(final int aChar, final boolean aLineStart) {
+
+		if (pPatternCharArray == null) {
+			return false;
+		}
+
+		if (pPatternCharArray.length == 0) {
+			return true;
+		}
+
+		// Trimmed white spaces may contain a line break
+		if (pTrimLeft && Character.isWhitespace(aChar)) {
+			return true;
+		}
+
+		// The string must begin the line
+		if (pMaxColumn == 0 && !aLineStart) {
+			return false;
+		}
+
+		return pPatternCharArray[0] == aChar;
+	}
+
 	@Override
-	public IToken evaluate(final MarkedCharacterScanner aScanner) {
+	public IToken evaluate(final IMarkedCharacterScanner aScanner) {
 
 		if (pPatternCharArray == null) {
 			return Token.UNDEFINED;
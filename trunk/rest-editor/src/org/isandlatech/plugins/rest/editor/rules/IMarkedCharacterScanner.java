@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.rules;
+
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.rules.ICharacterScanner;
+
+/**
+ * Character scanner giving a direct access to its position and able to return
+ * to previously marked positions. Marks are stacked, so that rules can be
+ * nested.
+ * 
+ * {@link #getColumn()} returns -1 when the scanner reached the end of the
+ * document.
+ * 
+ * @author Thomas Calmant
+ */
+public interface IMarkedCharacterScanner extends ICharacterScanner {
+
+	/**
+	 * Retrieves the scanned document
+	 * 
+	 * @return The scanned document, null if unknown
+	 */
+	IDocument getDocument();
+
+	/**
+	 * Retrieves the current offset of the scanner in the document
+	 * 
+	 * @return The current scanner offset, -1 if unknown
+	 */
+	int getOffset();
+
+	/**
+	 * Pushes the current scanner position on the marks stack
+	 */
+	void mark();
+
+	/**
+	 * Pops the last mark and returns to its position
+	 */
+	void reset();
+
+	/**
+	 * Skips the current line
+	 * 
+	 * @return true if the line was empty, else false
+	 */
+	boolean skipLine();
+
+	/**
+	 * Pops the last mark without moving the scanner
+	 */
+	void unmark();
+
+	/**
+	 * Unread all characters until the current column is 0
+	 */
+	void unreadLine();
+}
@@ -11,9 +11,6 @@
 
 package org.isandlatech.plugins.rest.editor.rules;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.eclipse.jface.text.rules.ICharacterScanner;
 import org.eclipse.jface.text.rules.IToken;
 import org.eclipse.jface.text.rules.Token;
@@ -25,6 +22,9 @@ import org.eclipse.jface.text.rules.Token;
  */
 public class LinePrefixRule extends AbstractRule {
 
+	/** Bit mask selecting all prefixes (bit i for prefix i) */
+	private final long pAllPrefixesMask;
+
 	/** Does the block begin right after the block prefix or the next line ? */
 	private final boolean pBeginLineAfterBlockPrefix;
 
@@ -72,6 +72,17 @@ public class LinePrefixRule extends AbstractRule {
 		pMaxPrefixLength = 0;
 		pFailOnEOF = aFailOnEOF;
 
+		if (aPrefixes.length > Long.SIZE) {
+			throw new IllegalArgumentException("Too many line prefixes : "
+					+ aPrefixes.length);
+		}
+
+		if (aPrefixes.length == Long.SIZE) {
+			pAllPrefixesMask = -1L;
+		} else {
+			pAllPrefixesMask = (1L << aPrefixes.length) - 1;
+		}
+
 		pPrefixes = new char[aPrefixes.length][];
 		int i = 0;
 		for (String prefix : aPrefixes) {
@@ -96,7 +107,7 @@ public class LinePrefixRule extends AbstractRule {
 	}
 
 	@Override
-	public IToken evaluate(final MarkedCharacterScanner aScanner) {
+	public IToken evaluate(final IMarkedCharacterScanner aScanner) {
 		int readChar = 0;
 
 		// Test block begin
@@ -149,11 +160,12 @@ public class LinePrefixRule extends AbstractRule {
 		boolean validPrefixFound = false;
 		boolean impureLine = false;
 		int caughtLines = 0;
+		final int maxLines = ScanBudget.PREFIXED_BLOCK.getMaxLines();
+		final int lookahead = ScanBudget.PREFIXED_BLOCK.getLookaheadLines();
+		boolean budgetMarked = false;
 
-		List<char[]> selectedPrefixes = new ArrayList<char[]>(pPrefixes.length);
-		for (char[] prefix : pPrefixes) {
-			selectedPrefixes.add(prefix);
-		}
+		// Still possible prefixes, as a bit mask (avoids allocations)
+		long selectedPrefixes = pAllPrefixesMask;
 
 		do {
 			readChar = aScanner.read();
@@ -163,6 +175,12 @@ public class LinePrefixRule extends AbstractRule {
 					caughtLines++;
 				}
 
+				if (budgetMarked) {
+					// Unterminated block : stop at the budget
+					aScanner.reset();
+					return getSuccessToken();
+				}
+
 				break;
 			}
 
@@ -181,10 +199,18 @@ public class LinePrefixRule extends AbstractRule {
 				impureLine = false;
 				caughtLines++;
 
-				selectedPrefixes.clear();
-				for (char[] prefix : pPrefixes) {
-					selectedPrefixes.add(prefix);
+				if (caughtLines == maxLines) {
+					// Used if the block is not terminated before EOF
+					aScanner.mark();
+					budgetMarked = true;
+
+				} else if (caughtLines - maxLines == lookahead) {
+					// Unterminated block : stop at the budget
+					aScanner.reset();
+					return getSuccessToken();
 				}
+
+				selectedPrefixes = pAllPrefixesMask;
 			} else {
 
 				if (validPrefixFound) {
@@ -203,15 +229,21 @@ public class LinePrefixRule extends AbstractRule {
 
 				// Test for prefixes
 				if (column < pMaxPrefixLength && column >= 0) {
-					for (int i = 0; i < selectedPrefixes.size(); i++) {
-						char[] prefix = selectedPrefixes.get(i);
+					for (int i = 0; i < pPrefixes.length; i++) {
+
+						final long prefixBit = 1L << i;
+						if ((selectedPrefixes & prefixBit) == 0) {
+							// Already rejected
+							continue;
+						}
+
+						char[] prefix = pPrefixes[i];
 
 						if (column < prefix.length
 								&& prefix[column] != readChar) {
 
 							// Remove invalid prefixes
-							selectedPrefixes.remove(prefix);
-							i--;
+							selectedPrefixes &= ~prefixBit;
 
 						} else if (column == prefix.length - 1) {
 							// We have a winner
@@ -221,7 +253,7 @@ public class LinePrefixRule extends AbstractRule {
 					}
 				}
 
-				if (impureLine && selectedPrefixes.size() == 0) {
+				if (impureLine && selectedPrefixes == 0) {
 					aScanner.unreadLine();
 					break;
 				}
@@ -229,6 +261,10 @@ public class LinePrefixRule extends AbstractRule {
 
 		} while (true);
 
+		if (budgetMarked) {
+			aScanner.unmark();
+		}
+
 		if (caughtLines > 0) {
 			return getSuccessToken();
 		} else {
@@ -11,26 +11,19 @@
 
 package org.isandlatech.plugins.rest.editor.rules;
 
-import java.lang.reflect.Field;
-
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.rules.ICharacterScanner;
-import org.eclipse.jface.text.rules.RuleBasedScanner;
-import org.isandlatech.plugins.rest.RestPlugin;
 
 /**
  * Eclipse character scanner extension, allowing to return to its original
- * position
+ * position.
+ * 
+ * Only used when a rule is evaluated by a scanner which doesn't implement
+ * {@link IMarkedCharacterScanner} : the ReST scanners implement it directly.
  * 
  * @author Thomas Calmant
  */
-public class MarkedCharacterScanner implements ICharacterScanner {
-
-	/** {@link RuleBasedScanner}.fDocument field */
-	private static Field sDocumentField;
-
-	/** {@link RuleBasedScanner}.fOffset field */
-	private static Field sOffsetField;
+public class MarkedCharacterScanner implements IMarkedCharacterScanner {
 
 	/**
 	 * Test if the given character can considered as an end of line character
@@ -58,13 +51,52 @@ public class MarkedCharacterScanner implements ICharacterScanner {
 				|| (aCodePoint == '\n' && aCodePoint2 == '\r');
 	}
 
-	/** The scanner start offset */
-	private int pBaseOffset;
+	/**
+	 * Skips the current line of the given scanner
+	 * 
+	 * @param aScanner
+	 *            A character scanner
+	 * @return true if the line was empty, else false
+	 */
+	public static boolean skipLine(final ICharacterScanner aScanner) {
+		int readChar;
+		boolean emptyLine = true;
+
+		do {
+			readChar = aScanner.read();
+
+			if (readChar != EOF && !Character.isWhitespace(readChar)) {
+				emptyLine = false;
+			}
+
+		} while (!isAnEOL(readChar) && readChar != EOF);
+
+		if (isAnEOL(readChar)) {
+			int readChar2 = aScanner.read();
+			if (!isTwoCharEOL(readChar, readChar2)) {
+				aScanner.unread();
+			}
+		}
+
+		return emptyLine;
+	}
+
+	/**
+	 * Unread all characters of the given scanner until its current column is 0
+	 * 
+	 * @param aScanner
+	 *            A character scanner
+	 */
+	public static void unreadLine(final ICharacterScanner aScanner) {
+		while (aScanner.getColumn() != 0) {
+			aScanner.unread();
+		}
+	}
 
-	/** The scanned document */
-	private IDocument pDocument;
+	/** Marked positions, relative to the creation position */
+	private final ScannerMarkStack pMarks;
 
-	/** Character count */
+	/** Character count, relative to the creation position */
 	private int pReadCharacters;
 
 	/** Real character scanner */
@@ -79,160 +111,90 @@ public class MarkedCharacterScanner implements ICharacterScanner {
 	public MarkedCharacterScanner(final ICharacterScanner aRealScanner) {
 		pRealScanner = aRealScanner;
 		pReadCharacters = 0;
-
-		readScannerInfo();
-	}
-
-	/**
-	 * Retrieves the scanner base offset, -1 on error
-	 * 
-	 * @return
-	 */
-	public int getBaseOffset() {
-		return pBaseOffset;
+		pMarks = new ScannerMarkStack();
 	}
 
 	@Override
 	public int getColumn() {
 
-		if (pBaseOffset != -1 && pDocument != null
-				&& pBaseOffset + pReadCharacters >= pDocument.getLength()) {
+		// Peek the next character to detect the end of document
+		int nextChar = pRealScanner.read();
+		pRealScanner.unread();
+
+		if (nextChar == EOF) {
 			return -1;
 		}
 
 		return pRealScanner.getColumn();
 	}
 
+	/**
+	 * The real scanner document is unknown
+	 * 
+	 * @return Always null
+	 */
 	@Override
-	public char[][] getLegalLineDelimiters() {
-		return pRealScanner.getLegalLineDelimiters();
+	public IDocument getDocument() {
+		return null;
 	}
 
 	@Override
-	public int read() {
-		int readChar = pRealScanner.read();
-
-		if (readChar != EOF) {
-			pReadCharacters++;
-		}
-
-		return readChar;
+	public char[][] getLegalLineDelimiters() {
+		return pRealScanner.getLegalLineDelimiters();
 	}
 
 	/**
-	 * Reads the real scanner fields values and stores them
+	 * The real scanner offset is unknown
+	 * 
+	 * @return Always -1
 	 */
-	private void readScannerInfo() {
-
-		if (!(pRealScanner instanceof RuleBasedScanner)) {
-			pBaseOffset = -1;
-			return;
-		}
-
-		// Get the document field
-		if (sDocumentField == null) {
-			sDocumentField = retrieveHiddenField(RuleBasedScanner.class,
-					"fDocument");
-		}
-
-		// Get the offset field
-		if (sOffsetField == null) {
-			sOffsetField = retrieveHiddenField(RuleBasedScanner.class,
-					"fOffset");
-		}
-
-		// Store their value
-		try {
-			pDocument = (IDocument) sDocumentField.get(pRealScanner);
-
-		} catch (Exception ex) {
-			RestPlugin.logError("Error reading scanner private fields", ex);
-			pDocument = null;
-		}
+	@Override
+	public int getOffset() {
+		return -1;
+	}
 
-		try {
-			pBaseOffset = (Integer) sOffsetField.get(pRealScanner);
+	@Override
+	public void mark() {
+		pMarks.push(pReadCharacters);
+	}
 
-		} catch (Exception ex) {
-			RestPlugin.logError("Error reading scanner private fields", ex);
-			pBaseOffset = -1;
-		}
+	@Override
+	public int read() {
+		pReadCharacters++;
+		return pRealScanner.read();
 	}
 
 	/**
-	 * Reset the character scanner to its original position
+	 * Reset the character scanner to its last marked position
 	 */
+	@Override
 	public void reset() {
 
-		if (pReadCharacters > 0) {
-			// Some characters have been read
-			while (pReadCharacters-- > 0) {
-				pRealScanner.unread();
-			}
-
-		} else {
-			// The scanner points before its original position
-
-			while (pReadCharacters++ < 0) {
-				pRealScanner.read();
-			}
+		// No mark : return to the original position
+		int markedPosition = 0;
+		if (!pMarks.isEmpty()) {
+			markedPosition = pMarks.pop();
 		}
-	}
-
-	/**
-	 * Retrieves the given class field by reflection and sets it accessible.
-	 * Returns null on error.
-	 * 
-	 * @param aClass
-	 *            Class containing the field
-	 * @param aFieldName
-	 *            The field name
-	 * @return The field (accessible), null on error
-	 */
-	private Field retrieveHiddenField(final Class<?> aClass,
-			final String aFieldName) {
-
-		try {
-			Field field = aClass.getDeclaredField(aFieldName);
-			field.setAccessible(true);
-
-			return field;
 
-		} catch (SecurityException ex) {
-			RestPlugin.logError("Error accessing scanner private fields", ex);
-		} catch (NoSuchFieldException ex) {
-			RestPlugin.logError("Error accessing scanner private fields", ex);
+		// Some characters have been read
+		while (pReadCharacters > markedPosition) {
+			unread();
 		}
 
-		return null;
+		// The scanner points before the marked position
+		while (pReadCharacters < markedPosition) {
+			read();
+		}
 	}
 
-	/**
-	 * Skips the current line
-	 * 
-	 * @return true if the line was empty, else false
-	 */
+	@Override
 	public boolean skipLine() {
-		int readChar;
-		boolean emptyLine = true;
-
-		do {
-			readChar = read();
-
-			if (readChar != EOF && !Character.isWhitespace(readChar)) {
-				emptyLine = false;
-			}
-
-		} while (!isAnEOL(readChar) && readChar != EOF);
-
-		if (isAnEOL(readChar)) {
-			int readChar2 = read();
-			if (!isTwoCharEOL(readChar, readChar2)) {
-				unread();
-			}
-		}
+		return skipLine(this);
+	}
 
-		return emptyLine;
+	@Override
+	public void unmark() {
+		pMarks.pop();
 	}
 
 	@Override
@@ -241,12 +203,8 @@ public class MarkedCharacterScanner implements ICharacterScanner {
 		pRealScanner.unread();
 	}
 
-	/**
-	 * Unread all characters until the current column is 0
-	 */
+	@Override
 	public void unreadLine() {
-		while (getColumn() != 0) {
-			unread();
-		}
+		unreadLine(this);
 	}
 }
@@ -11,6 +11,10 @@
 
 package org.isandlatech.plugins.rest.editor.rules;
 
+import java.util.Arrays;
+
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.rules.ICharacterScanner;
 import org.eclipse.jface.text.rules.IToken;
 import org.eclipse.jface.text.rules.Token;
@@ -19,13 +23,124 @@ import org.isandlatech.plugins.rest.parser.RestLanguage;
 /**
  * Searches for surrounded strings (tags, ...)
  * 
+ * In single line mode, the rule remembers the states of its last failed end
+ * marker searches on a line : a search reaching an offset in a state which
+ * already led to a failure stops immediately. A line with many unmatched
+ * markers is therefore scanned in linear time instead of a quadratic one.
+ * As the scanners using it, this rule is not thread-safe.
+ * 
  * @author Thomas Calmant
  */
 public class MarkupRule extends AbstractRule {
 
+	/** Class of the characters which can't be an escape nor a white space */
+	private static final int CHAR_CLASS_OTHER = 0;
+
+	/** Class of the white space characters */
+	private static final int CHAR_CLASS_SPACE = 1;
+
+	/** Class of the escape character */
+	private static final int CHAR_CLASS_ESCAPE = 2;
+
+	/** Number of character classes */
+	private static final int NB_CHAR_CLASSES = 3;
+
+	/**
+	 * Maximum end marker length to remember failed searches (search states
+	 * are stored as bits of an integer)
+	 */
+	private static final int MAX_MEMORIZED_END_LENGTH = Integer.SIZE
+			/ NB_CHAR_CLASSES;
+
+	/**
+	 * Retrieves the class of the given character, as seen by the end marker
+	 * search
+	 * 
+	 * @param aChar
+	 *            A character
+	 * @return The character class
+	 */
+	private static int getCharClass(final int aChar) {
+
+		if (aChar == RestLanguage.ESCAPE_CHARACTER) {
+			return CHAR_CLASS_ESCAPE;
+		}
+
+		if (Character.isWhitespace(aChar)) {
+			return CHAR_CLASS_SPACE;
+		}
+
+		return CHAR_CLASS_OTHER;
+	}
+
+	/**
+	 * Retrieves the modification stamp of the given document
+	 * 
+	 * @param aDocument
+	 *            A document
+	 * @return The document modification stamp, or
+	 *         {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP}
+	 */
+	private static long getModificationStamp(final IDocument aDocument) {
+
+		if (aDocument instanceof IDocumentExtension4) {
+			return ((IDocumentExtension4) aDocument).getModificationStamp();
+		}
+
+		return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+
+	/**
+	 * Retrieves the character repeated in the whole given marker
+	 * 
+	 * @param aMarker
+	 *            A markup marker
+	 * @return The repeated character, -1 if the marker contains different
+	 *         characters
+	 */
+	private static int getRepeatedChar(final String aMarker) {
+
+		if (aMarker == null || aMarker.isEmpty()) {
+			return -1;
+		}
+
+		final char firstChar = aMarker.charAt(0);
+		for (int i = 1; i < aMarker.length(); i++) {
+			if (aMarker.charAt(i) != firstChar) {
+				return -1;
+			}
+		}
+
+		return firstChar;
+	}
+
 	/** Marker end string */
 	private final String pEnd;
 
+	/**
+	 * Character repeated in the whole end marker, -1 if the end marker is
+	 * made of different characters
+	 */
+	private final int pEndRepeatedChar;
+
+	/** Remember the failed searches */
+	private final boolean pMemoEnabled;
+
+	/** Document of the remembered failed searches */
+	private IDocument pMemoDocument;
+
+	/** End (exclusive) of the remembered offsets */
+	private int pMemoEnd;
+
+	/** Modification stamp of the document of the remembered searches */
+	private long pMemoStamp;
+
+	/** First remembered offset */
+	private int pMemoStart;
+
+	/** Search states which led to a failure, by offset (bit field) */
+	private int[] pMemoStates = new int[0];
+
 	/** False if first character mustn't be a white space */
 	private final boolean pNoSpace;
 
@@ -35,6 +150,9 @@ public class MarkupRule extends AbstractRule {
 	/** Marker start string */
 	private final String pStart;
 
+	/** States of the current search, by offset */
+	private int[] pVisitedStates = new int[0];
+
 	/**
 	 * Configures the rule
 	 * 
@@ -102,12 +220,27 @@ public class MarkupRule extends AbstractRule {
 
 		pStart = aMarkupStart;
 		pEnd = aMarkupEnd;
+		pEndRepeatedChar = getRepeatedChar(aMarkupEnd);
 		pNoSpace = aNoBoundSpace;
 		pSingleLine = aSingleLine;
+		pMemoEnabled = aSingleLine && !aMarkupEnd.isEmpty()
+				&& aMarkupEnd.length() <= MAX_MEMORIZED_END_LENGTH;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.isandlatech.plugins.rest.editor.rules.AbstractRule#canStartWith(int,
+	 * boolean)
+	 */
 	@Override
-	public IToken evaluate(final MarkedCharacterScanner aScanner) {
+	public boolean canStartWith(final int aChar, final boolean aLineStart) {
+		return pStart.isEmpty() || pStart.charAt(0) == aChar;
+	}
+
+	@Override
+	public IToken evaluate(final IMarkedCharacterScanner aScanner) {
 
 		int readChar;
 
@@ -143,11 +276,46 @@ public class MarkupRule extends AbstractRule {
 		}
 
 		// Test markup ending
+		final IDocument document = aScanner.getDocument();
+		final int searchStart = aScanner.getOffset();
+		final boolean memoValid = isMemoValid(document, searchStart);
+
 		int currentMarkupPos = 0;
-		String currentEnd = "";
+		int nbVisited = 0;
 
 		int lastReadChar = 0;
-		while ((readChar = aScanner.read()) != ICharacterScanner.EOF) {
+		while (true) {
+
+			if (pMemoEnabled) {
+				final int state = 1 << (currentMarkupPos * NB_CHAR_CLASSES
+						+ getCharClass(lastReadChar));
+
+				// This state already led to a failure
+				final int offset = searchStart + nbVisited;
+				if (memoValid && offset < pMemoEnd
+						&& (pMemoStates[offset - pMemoStart] & state) != 0) {
+					storeFailure(document, searchStart, nbVisited, memoValid);
+					return Token.UNDEFINED;
+				}
+
+				if (nbVisited == pVisitedStates.length) {
+					pVisitedStates = Arrays.copyOf(pVisitedStates,
+							Math.max(64, nbVisited * 2));
+				}
+				pVisitedStates[nbVisited++] = state;
+			}
+
+			readChar = aScanner.read();
+			if (readChar == ICharacterScanner.EOF) {
+
+				// Only the document end is a definitive failure
+				if (pMemoEnabled && document != null
+						&& searchStart + nbVisited > document.getLength()) {
+					storeFailure(document, searchStart, nbVisited, memoValid);
+				}
+
+				return Token.UNDEFINED;
+			}
 
 			// EOL in single line mode -> stop
 			if (pSingleLine && MarkedCharacterScanner.isAnEOL(readChar)) {
@@ -155,31 +323,34 @@ public class MarkupRule extends AbstractRule {
 				if (!MarkedCharacterScanner.isTwoCharEOL(readChar, readChar2)) {
 					aScanner.unread();
 				}
+
+				if (pMemoEnabled) {
+					storeFailure(document, searchStart, nbVisited, memoValid);
+				}
 				return Token.UNDEFINED;
 			}
 
 			// Escaped character -> restart pEnd search
 			if (lastReadChar == RestLanguage.ESCAPE_CHARACTER) {
 				currentMarkupPos = 0;
-				currentEnd = "";
 				continue;
 			}
 
 			if (pEnd.charAt(currentMarkupPos) == readChar
 					&& !(pNoSpace && Character.isWhitespace(lastReadChar))) {
 
-				currentEnd += (char) readChar;
 				currentMarkupPos++;
 
-				if (currentEnd.endsWith(pEnd)) {
-					do {
+				if (currentMarkupPos == pEnd.length()) {
+					// Consume the end marker repetitions ("***" for "*")
+					if (pEndRepeatedChar != -1) {
+						do {
+							readChar = aScanner.read();
+						} while (readChar == pEndRepeatedChar);
+
+					} else {
 						readChar = aScanner.read();
-						if (readChar != ICharacterScanner.EOF) {
-							currentEnd += (char) readChar;
-						} else {
-							break;
-						}
-					} while (currentEnd.endsWith(pEnd));
+					}
 
 					if (readChar != ICharacterScanner.EOF) {
 						aScanner.unread();
@@ -190,12 +361,70 @@ public class MarkupRule extends AbstractRule {
 
 			} else {
 				currentMarkupPos = 0;
-				currentEnd = "";
 			}
 
 			lastReadChar = readChar;
 		}
+	}
 
-		return Token.UNDEFINED;
+	/**
+	 * Tests if the remembered failures can be used for a search beginning at
+	 * the given offset
+	 * 
+	 * @param aDocument
+	 *            The scanned document
+	 * @param aOffset
+	 *            Offset of the end marker search
+	 * @return True if the remembered failures are valid for the search
+	 */
+	private boolean isMemoValid(final IDocument aDocument, final int aOffset) {
+
+		return pMemoEnabled && aDocument != null
+				&& aDocument == pMemoDocument && aOffset >= pMemoStart
+				&& aOffset < pMemoEnd
+				&& pMemoStamp == getModificationStamp(aDocument);
+	}
+
+	/**
+	 * Remembers the states of a failed search
+	 * 
+	 * @param aDocument
+	 *            The scanned document
+	 * @param aSearchStart
+	 *            Offset of the end marker search
+	 * @param aNbVisited
+	 *            Number of states visited by the search
+	 * @param aMemoValid
+	 *            True if the remembered failures were valid for the search
+	 */
+	private void storeFailure(final IDocument aDocument,
+			final int aSearchStart, final int aNbVisited,
+			final boolean aMemoValid) {
+
+		if (!aMemoValid) {
+			final long stamp = getModificationStamp(aDocument);
+			if (stamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP) {
+				// Can't tell when the document will be modified
+				return;
+			}
+
+			// Forget the previous line
+			pMemoDocument = aDocument;
+			pMemoStamp = stamp;
+			pMemoStart = aSearchStart;
+			pMemoEnd = aSearchStart + aNbVisited;
+
+			if (pMemoStates.length < aNbVisited) {
+				pMemoStates = new int[Math.max(aNbVisited,
+						pMemoStates.length * 2)];
+			} else {
+				Arrays.fill(pMemoStates, 0, aNbVisited, 0);
+			}
+		}
+
+		final int shift = aSearchStart - pMemoStart;
+		for (int i = 0; i < aNbVisited; i++) {
+			pMemoStates[shift + i] |= pVisitedStates[i];
+		}
 	}
 }
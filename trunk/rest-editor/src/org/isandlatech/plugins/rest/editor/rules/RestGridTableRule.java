@@ -34,7 +34,7 @@ public class RestGridTableRule extends AbstractRule implements RestLanguage {
 	}
 
 	@Override
-	public IToken evaluate(final MarkedCharacterScanner aScanner) {
+	public IToken evaluate(final IMarkedCharacterScanner aScanner) {
 
 		// Useless rule if not at the beginning of a line
 		if (aScanner.getColumn() != 0) {
@@ -52,6 +52,10 @@ public class RestGridTableRule extends AbstractRule implements RestLanguage {
 		}
 
 		// Internal lines validation
+		final int maxRows = ScanBudget.GRID_TABLE.getMaxLines();
+		final int lookahead = ScanBudget.GRID_TABLE.getLookaheadLines();
+		int nbRows = 0;
+		boolean budgetMarked = false;
 		int readChar;
 
 		while ((readChar = aScanner.read()) != ICharacterScanner.EOF) {
@@ -61,19 +65,44 @@ public class RestGridTableRule extends AbstractRule implements RestLanguage {
 				continue;
 			}
 
+			if (nbRows - maxRows == lookahead) {
+				// Unterminated table : stop at the budget
+				aScanner.reset();
+				return getSuccessToken();
+			}
+
 			// OK if it is a grid marker
 			if (readChar == GRID_TABLE_ROW_MARKER
 					|| readChar == GRID_TABLE_MARKER) {
+				if (nbRows == maxRows) {
+					// Used if the table is not terminated before EOF
+					aScanner.unread();
+					aScanner.mark();
+					aScanner.read();
+					budgetMarked = true;
+				}
+
 				// Grid text row => skip line
 				aScanner.skipLine();
+				nbRows++;
 
 			} else {
 				// End of table
 				aScanner.unread();
-				break;
+
+				if (budgetMarked) {
+					aScanner.unmark();
+				}
+
+				return getSuccessToken();
 			}
 		}
 
+		if (budgetMarked) {
+			// Unterminated table : stop at the budget
+			aScanner.reset();
+		}
+
 		return getSuccessToken();
 	}
 
@@ -86,7 +115,7 @@ public class RestGridTableRule extends AbstractRule implements RestLanguage {
 	 * @return True if the last line was valid. Else false and the scanner is
 	 *         stopped at the faulty character.
 	 */
-	private boolean validateBorderLine(final MarkedCharacterScanner aScanner) {
+	private boolean validateBorderLine(final IMarkedCharacterScanner aScanner) {
 
 		int readChar;
 		boolean onePass = false;
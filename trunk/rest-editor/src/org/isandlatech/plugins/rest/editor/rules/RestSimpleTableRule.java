@@ -53,7 +53,7 @@ public class RestSimpleTableRule extends AbstractRule implements RestLanguage {
 	 *         data.
 	 */
 	protected ELineType analyzeNextLine(
-			final MarkedCharacterScanner aMarkedScanner) {
+			final IMarkedCharacterScanner aMarkedScanner) {
 
 		int readChar;
 		boolean emptyLine = true;
@@ -92,7 +92,7 @@ public class RestSimpleTableRule extends AbstractRule implements RestLanguage {
 	}
 
 	@Override
-	public IToken evaluate(final MarkedCharacterScanner aScanner) {
+	public IToken evaluate(final IMarkedCharacterScanner aScanner) {
 
 		// Useless rule if not at the beginning of a line
 		if (aScanner.getColumn() != 0) {
@@ -113,13 +113,39 @@ public class RestSimpleTableRule extends AbstractRule implements RestLanguage {
 
 		// We're in the table until the next blank line following a marker row
 		// or the end of the file
+		final int maxLines = ScanBudget.SIMPLE_TABLE.getMaxLines();
+		final int lookahead = ScanBudget.SIMPLE_TABLE.getLookaheadLines();
+		int nbLines = 1;
+		boolean budgetMarked = false;
+
 		ELineType oldLineType;
 		do {
+			if (nbLines == maxLines && lineType != ELineType.EOF) {
+				// Used if the table is not terminated before EOF
+				aScanner.mark();
+				budgetMarked = true;
+
+			} else if (nbLines - maxLines == lookahead) {
+				// Unterminated table : stop at the budget
+				aScanner.reset();
+				return getSuccessToken();
+			}
+
 			oldLineType = lineType;
 			lineType = analyzeNextLine(aScanner);
+			nbLines++;
 		} while (!(lineType == ELineType.EMPTY && oldLineType == ELineType.MARKER)
 				&& lineType != ELineType.EOF);
 
+		if (budgetMarked) {
+			if (lineType == ELineType.EOF) {
+				// Unterminated table : stop at the budget
+				aScanner.reset();
+			} else {
+				aScanner.unmark();
+			}
+		}
+
 		return getSuccessToken();
 	}
 }
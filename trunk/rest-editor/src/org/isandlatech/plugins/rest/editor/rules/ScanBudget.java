@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.rules;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maximum number of lines a block rule can consume when the block is not
+ * terminated. When a block goes beyond its budget, the rule still reads a
+ * limited number of lookahead lines to find its terminator. If the terminator
+ * is not found, neither in the lookahead lines nor before the end of the
+ * document, the block is ended after the budget lines and the following lines
+ * are scanned as if they were out of the block : an unterminated block can't
+ * swallow the rest of a large document, nor make its rule read it.
+ * 
+ * @author Thomas Calmant
+ */
+public enum ScanBudget {
+
+	/** Rows of a grid table, after its first border line */
+	GRID_TABLE(1000, 1000),
+
+	/** Lines of a literal or source block, after its prefix line */
+	PREFIXED_BLOCK(1000, 1000),
+
+	/** Lines of a simple table, after its first marker row */
+	SIMPLE_TABLE(1000, 1000);
+
+	/** Number of blocks ended by the budget */
+	private final AtomicLong pExceededCount = new AtomicLong();
+
+	/** Number of lines read after the budget to find the block terminator */
+	private final int pLookaheadLines;
+
+	/** Maximum number of lines */
+	private volatile int pMaxLines;
+
+	/**
+	 * Sets up the budget
+	 * 
+	 * @param aMaxLines
+	 *            Default maximum number of lines
+	 * @param aLookaheadLines
+	 *            Number of lines read after the budget, at least 1
+	 */
+	private ScanBudget(final int aMaxLines, final int aLookaheadLines) {
+		pMaxLines = aMaxLines;
+		pLookaheadLines = aLookaheadLines;
+	}
+
+	/**
+	 * Notes that a block has been ended by the budget. Called by the document
+	 * partitioner, once per newly truncated block.
+	 */
+	public void exceeded() {
+		pExceededCount.incrementAndGet();
+	}
+
+	/**
+	 * Retrieves the number of blocks ended by the budget since the last reset
+	 * 
+	 * @return The number of truncated blocks
+	 */
+	public long getExceededCount() {
+		return pExceededCount.get();
+	}
+
+	/**
+	 * Retrieves the number of lines read after the budget to find the
+	 * terminator of a block. A block not terminated in those lines is ended at
+	 * the budget.
+	 * 
+	 * @return The number of lookahead lines
+	 */
+	public int getLookaheadLines() {
+		return pLookaheadLines;
+	}
+
+	/**
+	 * Retrieves the maximum number of lines a block can consume
+	 * 
+	 * @return The maximum number of lines
+	 */
+	public int getMaxLines() {
+		return pMaxLines;
+	}
+
+	/**
+	 * Resets the number of blocks ended by the budget
+	 */
+	public void resetExceededCount() {
+		pExceededCount.set(0);
+	}
+
+	/**
+	 * Sets the maximum number of lines a block can consume. The documents
+	 * must be partitioned again to apply the new budget.
+	 * 
+	 * @param aMaxLines
+	 *            The maximum number of lines, 0 or less for no limit
+	 */
+	public void setMaxLines(final int aMaxLines) {
+
+		if (aMaxLines <= 0) {
+			pMaxLines = Integer.MAX_VALUE;
+		} else {
+			pMaxLines = aMaxLines;
+		}
+	}
+}
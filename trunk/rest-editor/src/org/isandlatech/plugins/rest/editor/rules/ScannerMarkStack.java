@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.rules;
+
+import java.util.Arrays;
+
+/**
+ * Reusable stack of scanner offsets, used by {@link IMarkedCharacterScanner}
+ * implementations. Only grows, never allocates once the deepest rule nesting
+ * has been reached.
+ * 
+ * @author Thomas Calmant
+ */
+public final class ScannerMarkStack {
+
+	/** Initial stack capacity */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** Number of stored marks */
+	private int pDepth;
+
+	/** Marked offsets */
+	private int[] pOffsets;
+
+	/**
+	 * Prepares an empty stack
+	 */
+	public ScannerMarkStack() {
+		pOffsets = new int[INITIAL_CAPACITY];
+		pDepth = 0;
+	}
+
+	/**
+	 * Forgets all marks
+	 */
+	public void clear() {
+		pDepth = 0;
+	}
+
+	/**
+	 * Tests if the stack is empty
+	 * 
+	 * @return True if no mark is stored
+	 */
+	public boolean isEmpty() {
+		return pDepth == 0;
+	}
+
+	/**
+	 * Pops the last marked offset
+	 * 
+	 * @return The last marked offset, -1 if the stack is empty (use
+	 *         {@link #isEmpty()} if -1 can be a valid mark)
+	 */
+	public int pop() {
+
+		if (pDepth == 0) {
+			return -1;
+		}
+
+		return pOffsets[--pDepth];
+	}
+
+	/**
+	 * Pushes the given offset on the stack
+	 * 
+	 * @param aOffset
+	 *            Offset to be marked
+	 */
+	public void push(final int aOffset) {
+
+		if (pDepth == pOffsets.length) {
+			pOffsets = Arrays.copyOf(pOffsets, pOffsets.length * 2);
+		}
+
+		pOffsets[pDepth++] = aOffset;
+	}
+}
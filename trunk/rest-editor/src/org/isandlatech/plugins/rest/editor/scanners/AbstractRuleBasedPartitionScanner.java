@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.scanners;
+
+import java.util.List;
+
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.rules.IPredicateRule;
+import org.eclipse.jface.text.rules.RuleBasedPartitionScanner;
+import org.isandlatech.plugins.rest.editor.rules.IMarkedCharacterScanner;
+import org.isandlatech.plugins.rest.editor.rules.MarkedCharacterScanner;
+import org.isandlatech.plugins.rest.editor.rules.ScannerMarkStack;
+
+/**
+ * Utility class to ease partition scanner definition.
+ * 
+ * Gives a direct access to the scanner state to the rules, avoiding
+ * allocations and reflection during evaluation.
+ * 
+ * @author Thomas Calmant
+ */
+public abstract class AbstractRuleBasedPartitionScanner extends
+		RuleBasedPartitionScanner implements IMarkedCharacterScanner {
+
+	/** Marked positions */
+	private final ScannerMarkStack pMarks = new ScannerMarkStack();
+
+	/**
+	 * Returns -1 if the end of the document has been reached
+	 * 
+	 * @see org.eclipse.jface.text.rules.RuleBasedScanner#getColumn()
+	 */
+	@Override
+	public int getColumn() {
+
+		if (fDocument != null && fOffset >= fDocument.getLength()) {
+			return -1;
+		}
+
+		return super.getColumn();
+	}
+
+	@Override
+	public IDocument getDocument() {
+		return fDocument;
+	}
+
+	@Override
+	public int getOffset() {
+		return fOffset;
+	}
+
+	@Override
+	public void mark() {
+		pMarks.push(fOffset);
+	}
+
+	/**
+	 * Sets the scanner to its last marked position. The read buffer is
+	 * automatically updated on the next read.
+	 * 
+	 * @see org.isandlatech.plugins.rest.editor.rules.IMarkedCharacterScanner#reset()
+	 */
+	@Override
+	public void reset() {
+
+		if (!pMarks.isEmpty()) {
+			fOffset = pMarks.pop();
+			fColumn = UNDEFINED;
+		}
+	}
+
+	@Override
+	public void setPartialRange(final IDocument aDocument, final int aOffset,
+			final int aLength, final String aContentType,
+			final int aPartitionOffset) {
+
+		// Forget marks of a previous (aborted) scan
+		pMarks.clear();
+		super.setPartialRange(aDocument, aOffset, aLength, aContentType,
+				aPartitionOffset);
+	}
+
+	/**
+	 * Configures the scanner with the given sequence of predicate rules.
+	 * 
+	 * @param aRules
+	 *            the sequence of rules controlling this scanner
+	 * @see RuleBasedPartitionScanner#setPredicateRules(IPredicateRule[])
+	 */
+	public void setPredicateRules(final List<IPredicateRule> aRules) {
+		IPredicateRule[] result = new IPredicateRule[aRules.size()];
+		aRules.toArray(result);
+		setPredicateRules(result);
+	}
+
+	@Override
+	public boolean skipLine() {
+		return MarkedCharacterScanner.skipLine(this);
+	}
+
+	@Override
+	public void unmark() {
+		pMarks.pop();
+	}
+
+	@Override
+	public void unreadLine() {
+		MarkedCharacterScanner.unreadLine(this);
+	}
+}
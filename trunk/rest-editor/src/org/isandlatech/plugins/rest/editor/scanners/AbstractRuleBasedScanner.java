@@ -11,18 +11,105 @@
 
 package org.isandlatech.plugins.rest.editor.scanners;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.rules.IRule;
+import org.eclipse.jface.text.rules.IToken;
 import org.eclipse.jface.text.rules.RuleBasedScanner;
+import org.eclipse.jface.text.rules.Token;
 import org.isandlatech.plugins.rest.editor.providers.RuleProvider;
+import org.isandlatech.plugins.rest.editor.rules.AbstractRule;
+import org.isandlatech.plugins.rest.editor.rules.IMarkedCharacterScanner;
+import org.isandlatech.plugins.rest.editor.rules.MarkedCharacterScanner;
+import org.isandlatech.plugins.rest.editor.rules.ScannerMarkStack;
 
 /**
  * Utility class to ease scanner definition.
  * 
+ * Gives a direct access to the scanner state to the rules, avoiding
+ * allocations and reflection during evaluation.
+ * 
+ * Rules are indexed by the first character they can match : only the rules
+ * which can match the current character are evaluated, and the characters
+ * where no rule can match are returned as a single default token.
+ * 
  * @author Thomas Calmant
  */
-public abstract class AbstractRuleBasedScanner extends RuleBasedScanner {
+public abstract class AbstractRuleBasedScanner extends RuleBasedScanner
+		implements IMarkedCharacterScanner {
+
+	/** Number of characters indexed by the rule dispatch tables */
+	private static final int DISPATCH_TABLE_SIZE = 128;
+
+	/** An empty rules array */
+	private static final IRule[] NO_RULES = new IRule[0];
+
+	/**
+	 * Tests if the given rule may match a text beginning with the given
+	 * character
+	 * 
+	 * @param aRule
+	 *            A scanner rule
+	 * @param aChar
+	 *            First character of the text
+	 * @param aLineStart
+	 *            True if the character may be the first one of its line
+	 * @return False if the rule can't match
+	 */
+	private static boolean canStartWith(final IRule aRule, final int aChar,
+			final boolean aLineStart) {
+
+		if (aRule instanceof AbstractRule) {
+			return ((AbstractRule) aRule).canStartWith(aChar, aLineStart);
+		}
+
+		// Unknown rule : it may always match
+		return true;
+	}
+
+	/**
+	 * Retrieves the rules which may match a text beginning with the given
+	 * character, keeping their order
+	 * 
+	 * @param aRules
+	 *            Scanner rules
+	 * @param aChar
+	 *            First character of the text
+	 * @param aLineStart
+	 *            True if the character may be the first one of its line
+	 * @return The candidate rules
+	 */
+	private static IRule[] filterRules(final IRule[] aRules, final int aChar,
+			final boolean aLineStart) {
+
+		final List<IRule> rules = new ArrayList<IRule>(aRules.length);
+		for (IRule rule : aRules) {
+			if (canStartWith(rule, aChar, aLineStart)) {
+				rules.add(rule);
+			}
+		}
+
+		if (rules.isEmpty()) {
+			return NO_RULES;
+		}
+
+		return rules.toArray(new IRule[rules.size()]);
+	}
+
+	/** Rules which may match inside a line, by first character */
+	private IRule[][] pInlineRules;
+
+	/** Rules which may match at a line start, by first character */
+	private IRule[][] pLineStartRules;
+
+	/** Marked positions */
+	private final ScannerMarkStack pMarks = new ScannerMarkStack();
+
+	/** Offset following the furthest character read in the current range */
+	private int pReadEnd;
 
 	/** The rule provider */
 	private RuleProvider pRuleProvider;
@@ -39,6 +126,53 @@ public abstract class AbstractRuleBasedScanner extends RuleBasedScanner {
 		generateRules();
 	}
 
+	/**
+	 * Stops dispatching the rules on the current character : all of them are
+	 * evaluated at every character, as by {@link RuleBasedScanner}, until the
+	 * rules are set again. Used to benchmark the dispatch tables.
+	 */
+	void disableRulesDispatch() {
+		pInlineRules = null;
+		pLineStartRules = null;
+	}
+
+	/**
+	 * Evaluates the rules which may match a text beginning with the given
+	 * character, in their priority order
+	 * 
+	 * @param aChar
+	 *            The current character
+	 * @param aLineStart
+	 *            True if the character may be the first one of its line
+	 * @return The token of the first matching rule, or an undefined token
+	 */
+	private IToken evaluateRules(final int aChar, final boolean aLineStart) {
+
+		if (aChar < DISPATCH_TABLE_SIZE) {
+			final IRule[] rules = aLineStart ? pLineStartRules[aChar]
+					: pInlineRules[aChar];
+
+			for (IRule rule : rules) {
+				final IToken token = rule.evaluate(this);
+				if (!token.isUndefined()) {
+					return token;
+				}
+			}
+
+		} else {
+			for (IRule rule : fRules) {
+				if (canStartWith(rule, aChar, aLineStart)) {
+					final IToken token = rule.evaluate(this);
+					if (!token.isUndefined()) {
+						return token;
+					}
+				}
+			}
+		}
+
+		return Token.UNDEFINED;
+	}
+
 	/**
 	 * Generates the rules corresponding to the scanner. Don't forget to use
 	 * {@link #setRules(List)} or {@link #setRules(IRule[])} at the end.
@@ -47,6 +181,94 @@ public abstract class AbstractRuleBasedScanner extends RuleBasedScanner {
 	 */
 	protected abstract void generateRules();
 
+	/**
+	 * Returns -1 if the end of the document has been reached
+	 * 
+	 * @see org.eclipse.jface.text.rules.RuleBasedScanner#getColumn()
+	 */
+	@Override
+	public int getColumn() {
+
+		if (fDocument != null && fOffset >= fDocument.getLength()) {
+			return -1;
+		}
+
+		return super.getColumn();
+	}
+
+	@Override
+	public IDocument getDocument() {
+		return fDocument;
+	}
+
+	@Override
+	public int getOffset() {
+		return fOffset;
+	}
+
+	/**
+	 * Tests if a rule may match a text beginning with the given character
+	 * 
+	 * @param aChar
+	 *            A character
+	 * @param aLineStart
+	 *            True if the character may be the first one of its line
+	 * @return True if a rule may match
+	 */
+	private boolean hasCandidateRule(final int aChar,
+			final boolean aLineStart) {
+
+		if (aChar < DISPATCH_TABLE_SIZE) {
+			final IRule[] rules = aLineStart ? pLineStartRules[aChar]
+					: pInlineRules[aChar];
+
+			return rules.length != 0;
+		}
+
+		for (IRule rule : fRules) {
+			if (canStartWith(rule, aChar, aLineStart)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Tests if the given offset may be a line start, i.e. if it follows a line
+	 * delimiter character
+	 * 
+	 * @param aOffset
+	 *            An offset in the document
+	 * @return True if the offset may be a line start
+	 */
+	private boolean isLineStart(final int aOffset) {
+
+		if (aOffset == 0) {
+			return true;
+		}
+
+		try {
+			final char previousChar = fDocument.getChar(aOffset - 1);
+			return previousChar == '\n' || previousChar == '\r';
+
+		} catch (BadLocationException ex) {
+			// Considering a line start only costs some rules evaluations
+			return true;
+		}
+	}
+
+	/**
+	 * Retrieves the offset following the furthest character read, rules look
+	 * ahead included, since the range was set. It is after the end of the
+	 * range if the scanner tried to read beyond it.
+	 * 
+	 * @return The offset following the furthest read character
+	 */
+	public int getReadEnd() {
+		return pReadEnd;
+	}
+
 	/**
 	 * Retrieves the associated rule provider
 	 * 
@@ -56,6 +278,115 @@ public abstract class AbstractRuleBasedScanner extends RuleBasedScanner {
 		return pRuleProvider;
 	}
 
+	@Override
+	public void mark() {
+		pMarks.push(fOffset);
+	}
+
+	/**
+	 * Only evaluates the rules which may match the current character, and
+	 * returns the characters where no rule can match as a single default
+	 * token.
+	 * 
+	 * @see org.eclipse.jface.text.rules.RuleBasedScanner#nextToken()
+	 */
+	@Override
+	public IToken nextToken() {
+
+		if (pInlineRules == null) {
+			// No rule
+			return super.nextToken();
+		}
+
+		fTokenOffset = fOffset;
+		fColumn = UNDEFINED;
+
+		int readChar = read();
+		if (readChar == EOF) {
+			return Token.EOF;
+		}
+
+		unread();
+		final IToken token = evaluateRules(readChar, isLineStart(fTokenOffset));
+		if (!token.isUndefined()) {
+			return token;
+		}
+
+		// Default content, until a rule may match
+		int previousChar = read();
+		while ((readChar = read()) != EOF) {
+
+			if (hasCandidateRule(readChar, previousChar == '\n'
+					|| previousChar == '\r')) {
+				break;
+			}
+
+			previousChar = readChar;
+		}
+
+		unread();
+		return fDefaultReturnToken;
+	}
+
+	/**
+	 * Keeps track of the furthest read character
+	 * 
+	 * @see org.eclipse.jface.text.rules.RuleBasedScanner#read()
+	 */
+	@Override
+	public int read() {
+
+		final int readChar = super.read();
+		if (fOffset > pReadEnd) {
+			pReadEnd = fOffset;
+		}
+
+		return readChar;
+	}
+
+	@Override
+	public void reset() {
+
+		if (!pMarks.isEmpty()) {
+			fOffset = pMarks.pop();
+			fColumn = UNDEFINED;
+		}
+	}
+
+	@Override
+	public void setRange(final IDocument aDocument, final int aOffset,
+			final int aLength) {
+
+		// Forget marks of a previous (aborted) scan
+		pMarks.clear();
+		pReadEnd = aOffset;
+		super.setRange(aDocument, aOffset, aLength);
+	}
+
+	/**
+	 * Sets the rules and indexes them by the first character they can match
+	 * 
+	 * @see org.eclipse.jface.text.rules.RuleBasedScanner#setRules(IRule[])
+	 */
+	@Override
+	public void setRules(final IRule[] aRules) {
+		super.setRules(aRules);
+
+		if (fRules == null) {
+			pInlineRules = null;
+			pLineStartRules = null;
+			return;
+		}
+
+		pInlineRules = new IRule[DISPATCH_TABLE_SIZE][];
+		pLineStartRules = new IRule[DISPATCH_TABLE_SIZE][];
+
+		for (int character = 0; character < DISPATCH_TABLE_SIZE; character++) {
+			pInlineRules[character] = filterRules(fRules, character, false);
+			pLineStartRules[character] = filterRules(fRules, character, true);
+		}
+	}
+
 	/**
 	 * Sets the rule provider
 	 * 
@@ -78,4 +409,19 @@ public abstract class AbstractRuleBasedScanner extends RuleBasedScanner {
 		aRules.toArray(result);
 		setRules(result);
 	}
+
+	@Override
+	public boolean skipLine() {
+		return MarkedCharacterScanner.skipLine(this);
+	}
+
+	@Override
+	public void unmark() {
+		pMarks.pop();
+	}
+
+	@Override
+	public void unreadLine() {
+		MarkedCharacterScanner.unreadLine(this);
+	}
 }
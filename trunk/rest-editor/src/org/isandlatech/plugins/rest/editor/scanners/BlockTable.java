@@ -0,0 +1,385 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.scanners;
+
+import java.util.Arrays;
+
+/**
+ * Sorted blocks of a partitioned document. As in {@link LineClassTable}, the
+ * blocks are stored in arrays with a gap, kept at the last modified block :
+ * the offsets of the blocks after the gap are relative to a common shift.
+ * 
+ * @author Thomas Calmant
+ */
+class BlockTable {
+
+	/** Initial capacity of the block arrays */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Number of blocks */
+	private int pCount;
+
+	/** Blocks end offsets, relative to {@link #pShift} after the gap */
+	private int[] pEnds;
+
+	/** Index of the first block after the gap, before the gap */
+	private int pGapStart;
+
+	/** Number of blocks ended by their scan budget */
+	private int pNbTruncated;
+
+	/**
+	 * End of the text read to find the blocks : the block end, or the end of
+	 * its lookahead window if it has been ended by its scan budget. Relative
+	 * to {@link #pShift} after the gap.
+	 */
+	private int[] pScanEnds;
+
+	/** Shift of the offsets of the blocks after the gap */
+	private int pShift;
+
+	/** Blocks offsets, relative to {@link #pShift} after the gap */
+	private int[] pStarts;
+
+	/** Blocks partition types */
+	private String[] pTypes;
+
+	/**
+	 * Prepares an empty table
+	 */
+	BlockTable() {
+		pStarts = new int[INITIAL_CAPACITY];
+		pEnds = new int[INITIAL_CAPACITY];
+		pTypes = new String[INITIAL_CAPACITY];
+		pScanEnds = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Removes all the blocks
+	 */
+	void clear() {
+		pCount = 0;
+		pGapStart = 0;
+		pShift = 0;
+		pNbTruncated = 0;
+		Arrays.fill(pTypes, null);
+	}
+
+	/**
+	 * Ensures the table can store the given number of blocks. The gap stays
+	 * at the same block index.
+	 * 
+	 * @param aCapacity
+	 *            Needed capacity
+	 */
+	private void ensureCapacity(final int aCapacity) {
+
+		final int capacity = pStarts.length;
+		if (aCapacity <= capacity) {
+			return;
+		}
+
+		final int newCapacity = Math.max(aCapacity, capacity * 2);
+		final int nbAfterGap = pCount - pGapStart;
+
+		final int[] starts = new int[newCapacity];
+		final int[] ends = new int[newCapacity];
+		final String[] types = new String[newCapacity];
+		final int[] scanEnds = new int[newCapacity];
+
+		System.arraycopy(pStarts, 0, starts, 0, pGapStart);
+		System.arraycopy(pEnds, 0, ends, 0, pGapStart);
+		System.arraycopy(pTypes, 0, types, 0, pGapStart);
+		System.arraycopy(pScanEnds, 0, scanEnds, 0, pGapStart);
+
+		System.arraycopy(pStarts, capacity - nbAfterGap, starts, newCapacity
+				- nbAfterGap, nbAfterGap);
+		System.arraycopy(pEnds, capacity - nbAfterGap, ends, newCapacity
+				- nbAfterGap, nbAfterGap);
+		System.arraycopy(pTypes, capacity - nbAfterGap, types, newCapacity
+				- nbAfterGap, nbAfterGap);
+		System.arraycopy(pScanEnds, capacity - nbAfterGap, scanEnds,
+				newCapacity - nbAfterGap, nbAfterGap);
+
+		pStarts = starts;
+		pEnds = ends;
+		pTypes = types;
+		pScanEnds = scanEnds;
+	}
+
+	/**
+	 * Retrieves the index of the first block ending after the given offset
+	 * 
+	 * @param aOffset
+	 *            An offset in the document
+	 * @return The index of the first block ending after the offset
+	 */
+	int findFirstEndingAfter(final int aOffset) {
+
+		int low = 0;
+		int high = pCount;
+
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+
+			if (getEnd(mid) > aOffset) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Retrieves the index of the first block beginning at or after the given
+	 * offset
+	 * 
+	 * @param aOffset
+	 *            An offset in the document
+	 * @return The index of the first block beginning at or after the offset
+	 */
+	int findFirstStartingAt(final int aOffset) {
+
+		int low = 0;
+		int high = pCount;
+
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+
+			if (getStart(mid) >= aOffset) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Retrieves the index of the first block ended by its scan budget, which
+	 * depends on the given region : the region touches the block or the text
+	 * read after it to look for its terminator.
+	 * 
+	 * @param aOffset
+	 *            Region offset
+	 * @param aEnd
+	 *            Region end offset
+	 * @return The index of the first truncated block depending on the region,
+	 *         the number of blocks if none
+	 */
+	int findFirstTruncated(final int aOffset, final int aEnd) {
+
+		int nbTested = 0;
+		for (int i = 0; i < pCount && nbTested < pNbTruncated; i++) {
+
+			if (getStart(i) > aEnd) {
+				break;
+			}
+
+			if (isTruncated(i)) {
+				if (aOffset <= getScanEnd(i)) {
+					return i;
+				}
+
+				nbTested++;
+			}
+		}
+
+		return pCount;
+	}
+
+	/**
+	 * Retrieves the number of blocks
+	 * 
+	 * @return The number of blocks
+	 */
+	int getCount() {
+		return pCount;
+	}
+
+	/**
+	 * Retrieves the end offset of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block end offset
+	 */
+	int getEnd(final int aIndex) {
+
+		if (aIndex < pGapStart) {
+			return pEnds[aIndex];
+		}
+
+		return pEnds[aIndex + pStarts.length - pCount] + pShift;
+	}
+
+	/**
+	 * Retrieves the end of the text read to find the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block end, or the end of its lookahead window if it has
+	 *         been ended by its scan budget
+	 */
+	int getScanEnd(final int aIndex) {
+
+		if (aIndex < pGapStart) {
+			return pScanEnds[aIndex];
+		}
+
+		return pScanEnds[aIndex + pStarts.length - pCount] + pShift;
+	}
+
+	/**
+	 * Retrieves the offset of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block offset
+	 */
+	int getStart(final int aIndex) {
+
+		if (aIndex < pGapStart) {
+			return pStarts[aIndex];
+		}
+
+		return pStarts[aIndex + pStarts.length - pCount] + pShift;
+	}
+
+	/**
+	 * Retrieves the partition type of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block partition type
+	 */
+	String getType(final int aIndex) {
+
+		if (aIndex < pGapStart) {
+			return pTypes[aIndex];
+		}
+
+		return pTypes[aIndex + pStarts.length - pCount];
+	}
+
+	/**
+	 * Tests if the given block has been ended by its scan budget
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return True if the block has been truncated
+	 */
+	boolean isTruncated(final int aIndex) {
+		return getScanEnd(aIndex) > getEnd(aIndex);
+	}
+
+	/**
+	 * Moves the gap before the given block
+	 * 
+	 * @param aIndex
+	 *            Index of the first block to be after the gap
+	 */
+	private void moveGap(final int aIndex) {
+
+		final int gapLength = pStarts.length - pCount;
+
+		if (aIndex < pGapStart) {
+			// Blocks go after the gap : their offsets become relative
+			final int nbMoved = pGapStart - aIndex;
+			final int to = aIndex + gapLength;
+			System.arraycopy(pStarts, aIndex, pStarts, to, nbMoved);
+			System.arraycopy(pEnds, aIndex, pEnds, to, nbMoved);
+			System.arraycopy(pTypes, aIndex, pTypes, to, nbMoved);
+			System.arraycopy(pScanEnds, aIndex, pScanEnds, to, nbMoved);
+
+			for (int i = to; i < to + nbMoved; i++) {
+				pStarts[i] -= pShift;
+				pEnds[i] -= pShift;
+				pScanEnds[i] -= pShift;
+			}
+
+		} else if (aIndex > pGapStart) {
+			// Blocks go before the gap : their offsets become absolute
+			final int nbMoved = aIndex - pGapStart;
+			final int from = pGapStart + gapLength;
+			System.arraycopy(pStarts, from, pStarts, pGapStart, nbMoved);
+			System.arraycopy(pEnds, from, pEnds, pGapStart, nbMoved);
+			System.arraycopy(pTypes, from, pTypes, pGapStart, nbMoved);
+			System.arraycopy(pScanEnds, from, pScanEnds, pGapStart, nbMoved);
+
+			for (int i = pGapStart; i < aIndex; i++) {
+				pStarts[i] += pShift;
+				pEnds[i] += pShift;
+				pScanEnds[i] += pShift;
+			}
+		}
+
+		pGapStart = aIndex;
+	}
+
+	/**
+	 * Replaces the given blocks by new ones, and moves the following blocks
+	 * 
+	 * @param aFirstBlock
+	 *            Index of the first replaced block
+	 * @param aEndBlock
+	 *            Index of the first kept block
+	 * @param aStarts
+	 *            Offsets of the new blocks
+	 * @param aEnds
+	 *            End offsets of the new blocks
+	 * @param aTypes
+	 *            Partition types of the new blocks
+	 * @param aScanEnds
+	 *            End of the text read to find the new blocks
+	 * @param aNbBlocks
+	 *            Number of new blocks
+	 * @param aDelta
+	 *            Shift of the blocks following the replaced ones
+	 */
+	void replace(final int aFirstBlock, final int aEndBlock,
+			final int[] aStarts, final int[] aEnds, final String[] aTypes,
+			final int[] aScanEnds, final int aNbBlocks, final int aDelta) {
+
+		moveGap(aEndBlock);
+		pShift += aDelta;
+
+		// Remove the old blocks, then insert the new ones before the gap
+		for (int i = aFirstBlock; i < aEndBlock; i++) {
+			if (pScanEnds[i] > pEnds[i]) {
+				pNbTruncated--;
+			}
+		}
+
+		Arrays.fill(pTypes, aFirstBlock, aEndBlock, null);
+		pGapStart = aFirstBlock;
+		pCount -= aEndBlock - aFirstBlock;
+		ensureCapacity(pCount + aNbBlocks);
+
+		System.arraycopy(aStarts, 0, pStarts, aFirstBlock, aNbBlocks);
+		System.arraycopy(aEnds, 0, pEnds, aFirstBlock, aNbBlocks);
+		System.arraycopy(aTypes, 0, pTypes, aFirstBlock, aNbBlocks);
+		System.arraycopy(aScanEnds, 0, pScanEnds, aFirstBlock, aNbBlocks);
+
+		for (int i = 0; i < aNbBlocks; i++) {
+			if (aScanEnds[i] > aEnds[i]) {
+				pNbTruncated++;
+			}
+		}
+
+		pGapStart += aNbBlocks;
+		pCount += aNbBlocks;
+	}
+}
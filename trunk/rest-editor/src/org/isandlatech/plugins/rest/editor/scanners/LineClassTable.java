@@ -0,0 +1,841 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.scanners;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.isandlatech.plugins.rest.editor.rules.DecoratedLinesRule;
+import org.isandlatech.plugins.rest.parser.RestLanguage;
+
+/**
+ * Stores the classes of a sequence of document lines : each line is read
+ * exactly once, and described by a set of flags used by the line-based
+ * partitioning engine ({@link RestLinePartitionScanner}).
+ * 
+ * The flags reproduce the behavior of the partition rules
+ * (LinePrefixRule, RestGridTableRule, DecoratedLinesRule and
+ * RestSimpleTableRule) for documents using "\n" and/or "\r\n" line
+ * delimiters.
+ * 
+ * Lines are stored in arrays with a gap, kept at the last modified line :
+ * the offsets of the lines after the gap are relative to a common shift,
+ * so a modification only moves the lines between the previous modification
+ * and the current one.
+ * 
+ * @author Thomas Calmant
+ */
+public class LineClassTable {
+
+	/** The line is terminated by "\n" */
+	public static final int DELIMITER_LF = 1;
+
+	/** The line is terminated by "\r\n" */
+	public static final int DELIMITER_CRLF = 1 << 1;
+
+	/** The line only contains white spaces */
+	public static final int BLANK = 1 << 2;
+
+	/** The line begins with ".. " or only contains ".." and white spaces */
+	public static final int EXPLICIT_MARKUP = 1 << 3;
+
+	/** The line is a grid table border (only '+', '-' and '=') */
+	public static final int GRID_BORDER = 1 << 4;
+
+	/** The line begins with a grid table marker ('+' or '|') */
+	public static final int GRID_ROW = 1 << 5;
+
+	/** The line begins with a section decoration character */
+	public static final int DECORATION = 1 << 6;
+
+	/** The line only contains its first (decoration) character */
+	public static final int DECORATION_ONLY = 1 << 7;
+
+	/** The line contains something after its first character */
+	public static final int TITLE = 1 << 8;
+
+	/** The line is a simple table marker row ("===  ===") */
+	public static final int SIMPLE_TABLE_MARKER = 1 << 9;
+
+	/** Position of the literal block prefix verdict in the line flags */
+	public static final int LITERAL_VERDICT_SHIFT = 10;
+
+	/** Position of the source block prefix verdict in the line flags */
+	public static final int SOURCE_VERDICT_SHIFT = 12;
+
+	/** Mask of a prefix verdict, once shifted */
+	public static final int VERDICT_MASK = 3;
+
+	/** Prefixed block verdict : the line is in the block */
+	public static final int VERDICT_CONTINUE = 0;
+
+	/** Prefixed block verdict : the line is the last one of the block */
+	public static final int VERDICT_LAST = 1;
+
+	/** Prefixed block verdict : the block ends before the line */
+	public static final int VERDICT_OUTSIDE = 2;
+
+	/** Prefixed block verdict : the block ends with the document */
+	public static final int VERDICT_EOF = 3;
+
+	/** Position of the first line character in the line flags */
+	public static final int FIRST_CHAR_SHIFT = 16;
+
+	/** Initial table capacity */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Literal blocks lines prefixes */
+	private static final char[][] LITERAL_PREFIXES = toCharArrays(
+			RestLanguage.LITERAL_BLOCK_PREFIXES);
+
+	/** Source blocks lines prefixes */
+	private static final char[][] SOURCE_PREFIXES = toCharArrays(
+			RestLanguage.SOURCE_BLOCK_PREFIXES);
+
+	/**
+	 * Computes the block verdict of a line, reproducing the lines test of the
+	 * LinePrefixRule. The line characters are its content, followed by its
+	 * delimiter.
+	 * 
+	 * @param aDocument
+	 *            Document containing the line
+	 * @param aStart
+	 *            Offset of the line
+	 * @param aLength
+	 *            Length of the line content
+	 * @param aDelimiterLength
+	 *            Length of the line delimiter (0, 1 or 2)
+	 * @param aEndsDocument
+	 *            The last line character is the last document character
+	 * @param aFirstNonSpace
+	 *            Index of the first non white space character in the line
+	 *            content, -1 if none
+	 * @param aPrefixes
+	 *            Allowed line prefixes
+	 * @return The line verdict
+	 * @throws BadLocationException
+	 *             Invalid line description
+	 */
+	private static int computeVerdict(final IDocument aDocument,
+			final int aStart, final int aLength, final int aDelimiterLength,
+			final boolean aEndsDocument, final int aFirstNonSpace,
+			final char[][] aPrefixes) throws BadLocationException {
+
+		// Verdict if nothing stops the block in the line
+		final int lineEndVerdict;
+		if (aDelimiterLength > 0 && !aEndsDocument) {
+			lineEndVerdict = VERDICT_CONTINUE;
+		} else {
+			lineEndVerdict = VERDICT_EOF;
+		}
+
+		final int nbChars = aLength + aDelimiterLength;
+		final int lastIndex = nbChars - 1;
+		boolean impure = false;
+		long selected = (1L << aPrefixes.length) - 1;
+
+		for (int i = 0; i < nbChars; i++) {
+
+			final boolean documentEnd = aEndsDocument && i == lastIndex;
+
+			if (i == lastIndex && aDelimiterLength > 0 && !documentEnd) {
+				// '\n' read : no valid prefix found in the line
+				if (impure) {
+					return VERDICT_LAST;
+				}
+
+				return VERDICT_CONTINUE;
+			}
+
+			final char character;
+			if (i < aLength) {
+				character = aDocument.getChar(aStart + i);
+			} else if (i == aLength && aDelimiterLength == 2) {
+				character = '\r';
+			} else {
+				character = '\n';
+			}
+
+			if (!Character.isWhitespace(character)) {
+				impure = true;
+			}
+
+			// The column of the last document character is unknown
+			if (!documentEnd) {
+				for (int j = 0; j < aPrefixes.length; j++) {
+
+					final long prefixBit = 1L << j;
+					if ((selected & prefixBit) == 0) {
+						continue;
+					}
+
+					final char[] prefix = aPrefixes[j];
+					if (i < prefix.length && prefix[i] != character) {
+						selected &= ~prefixBit;
+
+					} else if (i == prefix.length - 1) {
+						// Valid prefix : the rest of the line is ignored
+						return lineEndVerdict;
+					}
+				}
+			}
+
+			if (selected == 0) {
+				if (impure || aFirstNonSpace > i) {
+					// No prefix, some text : out of the block
+					return VERDICT_OUTSIDE;
+				}
+
+				// Blank line
+				return lineEndVerdict;
+			}
+		}
+
+		return VERDICT_EOF;
+	}
+
+	/**
+	 * Tests if the given character is a grid table border character
+	 * 
+	 * @param aChar
+	 *            The character to be tested
+	 * @return True if the character can be used in a grid border line
+	 */
+	private static boolean isGridBorderCharacter(final char aChar) {
+
+		for (char allowedChar : RestLanguage.GRID_TABLE_BORDERS_CHARACTERS) {
+			if (allowedChar == aChar) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Converts the given strings into character arrays
+	 * 
+	 * @param aStrings
+	 *            Strings to convert
+	 * @return The character arrays
+	 */
+	private static char[][] toCharArrays(final String[] aStrings) {
+
+		char[][] result = new char[aStrings.length][];
+		for (int i = 0; i < aStrings.length; i++) {
+			result[i] = aStrings[i].toCharArray();
+		}
+
+		return result;
+	}
+
+	/** Number of stored lines */
+	private int pCount;
+
+	/** Line flags */
+	private int[] pFlags;
+
+	/** Index of the first line after the gap, before the gap */
+	private int pGapStart;
+
+	/** Line indentation (leading spaces and tabulations) */
+	private int[] pIndents;
+
+	/** Line content lengths (without delimiter) */
+	private int[] pLengths;
+
+	/** Column of the source block marker ("::") of each line, or -1 */
+	private int[] pSourceColumns;
+
+	/** Shift of the offsets of the lines after the gap */
+	private int pShift;
+
+	/** Line offsets, relative to {@link #pShift} after the gap */
+	private int[] pStarts;
+
+	/**
+	 * Prepares an empty table
+	 */
+	public LineClassTable() {
+		pStarts = new int[INITIAL_CAPACITY];
+		pLengths = new int[INITIAL_CAPACITY];
+		pFlags = new int[INITIAL_CAPACITY];
+		pIndents = new int[INITIAL_CAPACITY];
+		pSourceColumns = new int[INITIAL_CAPACITY];
+		pCount = 0;
+		pGapStart = 0;
+	}
+
+	/**
+	 * Reads the given document line and appends its class to the table
+	 * 
+	 * @param aDocument
+	 *            The document to read
+	 * @param aLine
+	 *            The document line to classify
+	 * @throws BadLocationException
+	 *             Invalid document line
+	 */
+	public void append(final IDocument aDocument, final int aLine)
+			throws BadLocationException {
+
+		moveGap(pCount);
+		ensureCapacity(pCount + 1);
+		pCount++;
+		pGapStart++;
+		classify(aDocument, aLine, pCount - 1);
+	}
+
+	/**
+	 * Reads the given document line and stores its class at the given index
+	 * 
+	 * @param aDocument
+	 *            The document to read
+	 * @param aLine
+	 *            The document line to classify
+	 * @param aIndex
+	 *            Index of the line in the table
+	 * @throws BadLocationException
+	 *             Invalid document line
+	 */
+	private void classify(final IDocument aDocument, final int aLine,
+			final int aIndex) throws BadLocationException {
+
+		final int start = aDocument.getLineOffset(aLine);
+		final int length = aDocument.getLineLength(aLine);
+		final String delimiter = aDocument.getLineDelimiter(aLine);
+
+		int flags = 0;
+		int delimiterLength = 0;
+		if (delimiter != null) {
+			delimiterLength = delimiter.length();
+
+			if (delimiterLength == 2) {
+				flags |= DELIMITER_CRLF;
+			} else {
+				flags |= DELIMITER_LF;
+			}
+		}
+
+		final int contentLength = length - delimiterLength;
+		final boolean endsDocument = length > 0
+				&& start + length == aDocument.getLength();
+
+		// Read the line content
+		int indent = 0;
+		int firstNonSpace = -1;
+		int lastNonSpace = -1;
+		boolean indentDone = false;
+		boolean afterFirstNonSpace = false;
+		boolean uniform = true;
+		boolean gridBorder = true;
+		boolean simpleTableMarker = true;
+		char firstChar = 0;
+		char previousChar = 0;
+		char lastNonSpaceChar = 0;
+		char beforeLastNonSpaceChar = 0;
+
+		for (int i = 0; i < contentLength; i++) {
+
+			final char character = aDocument.getChar(start + i);
+			final boolean space = Character.isWhitespace(character);
+
+			if (i == 0) {
+				firstChar = character;
+
+			} else {
+				if (character != firstChar) {
+					uniform = false;
+				}
+
+				if (!isGridBorderCharacter(character)) {
+					gridBorder = false;
+				}
+
+				if (!space && character != RestLanguage.SIMPLE_TABLE_MARKER) {
+					simpleTableMarker = false;
+				}
+
+				if (!space) {
+					afterFirstNonSpace = true;
+				}
+			}
+
+			if (!indentDone) {
+				if (character == ' ' || character == '\t') {
+					indent++;
+				} else {
+					indentDone = true;
+				}
+			}
+
+			if (!space) {
+				if (firstNonSpace == -1) {
+					firstNonSpace = i;
+				}
+
+				lastNonSpace = i;
+				beforeLastNonSpaceChar = previousChar;
+				lastNonSpaceChar = character;
+			}
+
+			previousChar = character;
+		}
+
+		if (firstNonSpace == -1) {
+			flags |= BLANK;
+		}
+
+		if (contentLength > 0) {
+			flags |= firstChar << FIRST_CHAR_SHIFT;
+
+			// Grid table rows
+			if (firstChar == RestLanguage.GRID_TABLE_MARKER
+					|| firstChar == RestLanguage.GRID_TABLE_ROW_MARKER) {
+				flags |= GRID_ROW;
+			}
+
+			// Grid table border : the "\r" of "\r\n" is an invalid character
+			if (firstChar == RestLanguage.GRID_TABLE_MARKER
+					&& contentLength > 1 && gridBorder
+					&& delimiterLength != 2) {
+				flags |= GRID_BORDER;
+			}
+
+			// Section decorations
+			if (DecoratedLinesRule.isDecorationCharacter(firstChar)) {
+				flags |= DECORATION;
+
+				if (uniform) {
+					flags |= DECORATION_ONLY;
+				}
+			}
+
+			if (afterFirstNonSpace) {
+				flags |= TITLE;
+			}
+
+			// Simple table marker row
+			if (firstChar == RestLanguage.SIMPLE_TABLE_MARKER
+					&& simpleTableMarker) {
+				flags |= SIMPLE_TABLE_MARKER;
+			}
+		}
+
+		// Explicit markup : ".. " or ".." followed by white spaces
+		if (contentLength >= 2 && firstChar == '.'
+				&& aDocument.getChar(start + 1) == '.') {
+
+			if ((contentLength >= 3 && aDocument.getChar(start + 2) == ' ')
+					|| lastNonSpace == 1) {
+				flags |= EXPLICIT_MARKUP;
+			}
+		}
+
+		// Source block marker : "::" followed by white spaces
+		int sourceColumn = -1;
+		if (lastNonSpace >= 1 && lastNonSpaceChar == ':'
+				&& beforeLastNonSpaceChar == ':') {
+			sourceColumn = lastNonSpace - 1;
+		}
+
+		// Prefixed blocks verdicts
+		flags |= computeVerdict(aDocument, start, contentLength,
+				delimiterLength, endsDocument, firstNonSpace,
+				LITERAL_PREFIXES) << LITERAL_VERDICT_SHIFT;
+
+		flags |= computeVerdict(aDocument, start, contentLength,
+				delimiterLength, endsDocument, firstNonSpace,
+				SOURCE_PREFIXES) << SOURCE_VERDICT_SHIFT;
+
+		final int position = toPosition(aIndex);
+		if (aIndex < pGapStart) {
+			pStarts[position] = start;
+		} else {
+			pStarts[position] = start - pShift;
+		}
+
+		pLengths[position] = contentLength;
+		pFlags[position] = flags;
+		pIndents[position] = indent;
+		pSourceColumns[position] = sourceColumn;
+	}
+
+	/**
+	 * Classifies the given document lines, stored at the index of their line
+	 * number. The table must have been sized with {@link #setCount(int)}.
+	 * Distinct ranges of lines can be classified concurrently.
+	 * 
+	 * @param aDocument
+	 *            The document to read
+	 * @param aFirstLine
+	 *            First line to classify
+	 * @param aEndLine
+	 *            Line following the last one to classify
+	 * @throws BadLocationException
+	 *             Invalid document line
+	 */
+	public void classifyLines(final IDocument aDocument, final int aFirstLine,
+			final int aEndLine) throws BadLocationException {
+
+		for (int line = aFirstLine; line < aEndLine; line++) {
+			classify(aDocument, line, line);
+		}
+	}
+
+	/**
+	 * Removes all lines from the table
+	 */
+	public void clear() {
+		pCount = 0;
+		pGapStart = 0;
+		pShift = 0;
+	}
+
+	/**
+	 * Ensures the table can store the given number of lines. The gap stays
+	 * at the same line index.
+	 * 
+	 * @param aCapacity
+	 *            Needed capacity
+	 */
+	private void ensureCapacity(final int aCapacity) {
+
+		if (aCapacity <= pStarts.length) {
+			return;
+		}
+
+		final int newCapacity = Math.max(aCapacity, pStarts.length * 2);
+		pStarts = grow(pStarts, newCapacity);
+		pLengths = grow(pLengths, newCapacity);
+		pFlags = grow(pFlags, newCapacity);
+		pIndents = grow(pIndents, newCapacity);
+		pSourceColumns = grow(pSourceColumns, newCapacity);
+	}
+
+	/**
+	 * Retrieves the number of lines in the table
+	 * 
+	 * @return The number of lines
+	 */
+	public int getCount() {
+		return pCount;
+	}
+
+	/**
+	 * Retrieves the first character of the given line
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The first character of the line, 0 for empty lines
+	 */
+	public char getFirstChar(final int aIndex) {
+		return (char) (pFlags[toPosition(aIndex)] >>> FIRST_CHAR_SHIFT);
+	}
+
+	/**
+	 * Retrieves the flags of the given line
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The line flags
+	 */
+	public int getFlags(final int aIndex) {
+		return pFlags[toPosition(aIndex)];
+	}
+
+	/**
+	 * Retrieves the indentation of the given line
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The number of leading spaces and tabulations
+	 */
+	public int getIndent(final int aIndex) {
+		return pIndents[toPosition(aIndex)];
+	}
+
+	/**
+	 * Retrieves the length of the content of the given line, without its
+	 * delimiter
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The line content length
+	 */
+	public int getLength(final int aIndex) {
+		return pLengths[toPosition(aIndex)];
+	}
+
+	/**
+	 * Retrieves the literal block verdict of the given line
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The literal block verdict
+	 */
+	public int getLiteralVerdict(final int aIndex) {
+		return (getFlags(aIndex) >> LITERAL_VERDICT_SHIFT) & VERDICT_MASK;
+	}
+
+	/**
+	 * Retrieves the offset of the line following the given one
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The offset following the line delimiter
+	 */
+	public int getNextStart(final int aIndex) {
+
+		final int position = toPosition(aIndex);
+		final int flags = pFlags[position];
+		int delimiterLength = 0;
+		if ((flags & DELIMITER_LF) != 0) {
+			delimiterLength = 1;
+		} else if ((flags & DELIMITER_CRLF) != 0) {
+			delimiterLength = 2;
+		}
+
+		return getStart(aIndex) + pLengths[position] + delimiterLength;
+	}
+
+	/**
+	 * Retrieves the column of the source block marker of the given line
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The column of the "::" marker, -1 if none
+	 */
+	public int getSourceColumn(final int aIndex) {
+		return pSourceColumns[toPosition(aIndex)];
+	}
+
+	/**
+	 * Retrieves the source block verdict of the given line
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The source block verdict
+	 */
+	public int getSourceVerdict(final int aIndex) {
+		return (getFlags(aIndex) >> SOURCE_VERDICT_SHIFT) & VERDICT_MASK;
+	}
+
+	/**
+	 * Retrieves the offset of the given line
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The line offset
+	 */
+	public int getStart(final int aIndex) {
+
+		if (aIndex < pGapStart) {
+			return pStarts[aIndex];
+		}
+
+		return pStarts[aIndex + pStarts.length - pCount] + pShift;
+	}
+
+	/**
+	 * Copies the given array in a bigger one, keeping the gap at the same
+	 * line index
+	 * 
+	 * @param aArray
+	 *            A line array
+	 * @param aNewCapacity
+	 *            The new capacity
+	 * @return The new array
+	 */
+	private int[] grow(final int[] aArray, final int aNewCapacity) {
+
+		final int nbAfterGap = pCount - pGapStart;
+		final int[] result = new int[aNewCapacity];
+
+		System.arraycopy(aArray, 0, result, 0, pGapStart);
+		System.arraycopy(aArray, aArray.length - nbAfterGap, result,
+				aNewCapacity - nbAfterGap, nbAfterGap);
+
+		return result;
+	}
+
+	/**
+	 * Tests if the given line has all the given flags
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @param aFlags
+	 *            Flags to test
+	 * @return True if all flags are set
+	 */
+	public boolean is(final int aIndex, final int aFlags) {
+		return (pFlags[toPosition(aIndex)] & aFlags) == aFlags;
+	}
+
+	/**
+	 * Moves the gap before the given line
+	 * 
+	 * @param aIndex
+	 *            Index of the first line to be after the gap
+	 */
+	private void moveGap(final int aIndex) {
+
+		final int gapLength = pStarts.length - pCount;
+
+		if (aIndex < pGapStart) {
+			// Lines go after the gap : their offsets become relative
+			final int nbMoved = pGapStart - aIndex;
+			moveLines(aIndex, aIndex + gapLength, nbMoved);
+
+			for (int i = aIndex + gapLength; i < pGapStart + gapLength; i++) {
+				pStarts[i] -= pShift;
+			}
+
+		} else if (aIndex > pGapStart) {
+			// Lines go before the gap : their offsets become absolute
+			final int nbMoved = aIndex - pGapStart;
+			moveLines(pGapStart + gapLength, pGapStart, nbMoved);
+
+			for (int i = pGapStart; i < aIndex; i++) {
+				pStarts[i] += pShift;
+			}
+		}
+
+		pGapStart = aIndex;
+	}
+
+	/**
+	 * Moves lines in the arrays
+	 * 
+	 * @param aFrom
+	 *            Array position of the first moved line
+	 * @param aTo
+	 *            New array position of the first moved line
+	 * @param aNbLines
+	 *            Number of moved lines
+	 */
+	private void moveLines(final int aFrom, final int aTo, final int aNbLines) {
+
+		System.arraycopy(pStarts, aFrom, pStarts, aTo, aNbLines);
+		System.arraycopy(pLengths, aFrom, pLengths, aTo, aNbLines);
+		System.arraycopy(pFlags, aFrom, pFlags, aTo, aNbLines);
+		System.arraycopy(pIndents, aFrom, pIndents, aTo, aNbLines);
+		System.arraycopy(pSourceColumns, aFrom, pSourceColumns, aTo, aNbLines);
+	}
+
+	/**
+	 * Removes the given number of lines from the beginning of the table
+	 * 
+	 * @param aNbLines
+	 *            Number of lines to remove
+	 */
+	public void removeFirst(final int aNbLines) {
+
+		final int nbLines = Math.min(aNbLines, pCount);
+		final int remaining = pCount - nbLines;
+
+		moveGap(pCount);
+		moveLines(nbLines, 0, remaining);
+
+		pCount = remaining;
+		pGapStart = remaining;
+	}
+
+	/**
+	 * Updates the table after a document modification : replaces the modified
+	 * lines classes and moves the following lines. The table index of a line
+	 * must be its document line number.
+	 * 
+	 * The gap is moved after the modified lines, so the following lines are
+	 * moved by updating the shift of the lines after the gap.
+	 * 
+	 * @param aDocument
+	 *            The modified document
+	 * @param aFirstLine
+	 *            First modified line
+	 * @param aNbOldLines
+	 *            Number of lines replaced by the modification
+	 * @param aNbNewLines
+	 *            Number of lines inserted by the modification
+	 * @param aDelta
+	 *            Length modification of the document
+	 * @throws BadLocationException
+	 *             Error reading the modified lines
+	 */
+	public void replaceLines(final IDocument aDocument, final int aFirstLine,
+			final int aNbOldLines, final int aNbNewLines, final int aDelta)
+			throws BadLocationException {
+
+		moveGap(aFirstLine + aNbOldLines);
+		pShift += aDelta;
+
+		// Remove the old lines, then insert the new ones before the gap
+		pGapStart = aFirstLine;
+		pCount -= aNbOldLines;
+		ensureCapacity(pCount + aNbNewLines);
+
+		pGapStart += aNbNewLines;
+		pCount += aNbNewLines;
+
+		for (int i = aFirstLine; i < pGapStart; i++) {
+			classify(aDocument, i, i);
+		}
+	}
+
+	/**
+	 * Replaces the lines of this table by the ones of the given table, which
+	 * must not be used anymore
+	 * 
+	 * @param aTable
+	 *            The table to take the lines from
+	 */
+	public void set(final LineClassTable aTable) {
+		pStarts = aTable.pStarts;
+		pLengths = aTable.pLengths;
+		pFlags = aTable.pFlags;
+		pIndents = aTable.pIndents;
+		pSourceColumns = aTable.pSourceColumns;
+		pCount = aTable.pCount;
+		pGapStart = aTable.pGapStart;
+		pShift = aTable.pShift;
+	}
+
+	/**
+	 * Sets the number of lines in the table. The classes of the added lines
+	 * are undefined until they are classified by
+	 * {@link #classifyLines(IDocument, int, int)}.
+	 * 
+	 * @param aCount
+	 *            The new number of lines
+	 */
+	public void setCount(final int aCount) {
+		moveGap(pCount);
+		ensureCapacity(aCount);
+		pCount = aCount;
+		pGapStart = aCount;
+	}
+
+	/**
+	 * Converts a line index into its position in the arrays
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The array position of the line
+	 */
+	private int toPosition(final int aIndex) {
+
+		if (aIndex < pGapStart) {
+			return aIndex;
+		}
+
+		return aIndex + pStarts.length - pCount;
+	}
+}
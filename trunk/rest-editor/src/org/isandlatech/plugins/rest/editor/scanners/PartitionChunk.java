@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.scanners;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import org.eclipse.jface.text.IDocument;
+
+/**
+ * Blocks of a range of lines, computed by a dedicated scanner : the chunks of
+ * a large document can be scanned in parallel. The last block of a chunk may
+ * overlap the next chunk.
+ * 
+ * @author Thomas Calmant
+ */
+class PartitionChunk implements Callable<PartitionChunk> {
+
+	/** Initial capacity of the block arrays */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Number of blocks */
+	private int pBlockCount;
+
+	/** Blocks end offsets */
+	private int[] pBlockEnds;
+
+	/** Blocks offsets */
+	private int[] pBlockStarts;
+
+	/** End of the text read to find the blocks */
+	private int[] pBlockScanEnds;
+
+	/** Blocks partition types */
+	private String[] pBlockTypes;
+
+	/** The scanned document */
+	private final IDocument pDocument;
+
+	/** Line following the last line of the chunk */
+	private final int pEndLine;
+
+	/** Offset where the scan stopped */
+	private int pEndOffset;
+
+	/** First line of the chunk */
+	private final int pFirstLine;
+
+	/** Classes of all the document lines */
+	private final LineClassTable pLines;
+
+	/**
+	 * Prepares the chunk
+	 * 
+	 * @param aDocument
+	 *            The scanned document
+	 * @param aLines
+	 *            Classes of all the document lines
+	 * @param aFirstLine
+	 *            First line of the chunk
+	 * @param aEndLine
+	 *            Line following the last line of the chunk
+	 */
+	PartitionChunk(final IDocument aDocument, final LineClassTable aLines,
+			final int aFirstLine, final int aEndLine) {
+
+		pDocument = aDocument;
+		pLines = aLines;
+		pFirstLine = aFirstLine;
+		pEndLine = aEndLine;
+
+		pBlockStarts = new int[INITIAL_CAPACITY];
+		pBlockEnds = new int[INITIAL_CAPACITY];
+		pBlockTypes = new String[INITIAL_CAPACITY];
+		pBlockScanEnds = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Stores a block found by the scan
+	 * 
+	 * @param aStart
+	 *            Block offset
+	 * @param aEnd
+	 *            Block end offset
+	 * @param aType
+	 *            Block partition type
+	 * @param aScanEnd
+	 *            End of the text read after the block if it has been ended by
+	 *            its scan budget, else -1
+	 */
+	private void addBlock(final int aStart, final int aEnd,
+			final String aType, final int aScanEnd) {
+
+		if (pBlockCount == pBlockStarts.length) {
+			final int newCapacity = pBlockStarts.length * 2;
+			pBlockStarts = Arrays.copyOf(pBlockStarts, newCapacity);
+			pBlockEnds = Arrays.copyOf(pBlockEnds, newCapacity);
+			pBlockTypes = Arrays.copyOf(pBlockTypes, newCapacity);
+			pBlockScanEnds = Arrays.copyOf(pBlockScanEnds, newCapacity);
+		}
+
+		pBlockStarts[pBlockCount] = aStart;
+		pBlockEnds[pBlockCount] = aEnd;
+		pBlockTypes[pBlockCount] = aType;
+		pBlockScanEnds[pBlockCount] = Math.max(aEnd, aScanEnd);
+		pBlockCount++;
+	}
+
+	/**
+	 * Scans the lines of the chunk. Can be called by any thread, as long as the
+	 * document and the line table are not modified.
+	 * 
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public PartitionChunk call() throws Exception {
+
+		final RestLinePartitionScanner scanner = new RestLinePartitionScanner(
+				pLines);
+		scanner.setDocument(pDocument);
+
+		final int nbLines = pLines.getCount();
+		final int endOffset = pEndLine < nbLines ? pLines.getStart(pEndLine)
+				: pDocument.getLength();
+
+		int offset = pLines.getStart(pFirstLine);
+		int line = pFirstLine;
+
+		while (offset < endOffset) {
+
+			final int end = scanner.matchBlock(line, offset);
+			if (end >= 0) {
+				addBlock(scanner.getMatchOffset(), end, scanner.getMatchType(),
+						scanner.getMatchScanEnd());
+
+				offset = end;
+				while (line + 1 < nbLines && pLines.getStart(line + 1) <= offset) {
+					line++;
+				}
+
+			} else {
+				// Default content until the end of the line
+				offset = pLines.getNextStart(line);
+				line++;
+			}
+		}
+
+		pEndOffset = offset;
+		return this;
+	}
+
+	/**
+	 * Retrieves the end of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block end offset
+	 */
+	public int getBlockEnd(final int aIndex) {
+		return pBlockEnds[aIndex];
+	}
+
+	/**
+	 * Retrieves the end of the text read to find the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block end, or the end of its lookahead window if it has
+	 *         been ended by its scan budget
+	 */
+	public int getBlockScanEnd(final int aIndex) {
+		return pBlockScanEnds[aIndex];
+	}
+
+	/**
+	 * Retrieves the offset of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block offset
+	 */
+	public int getBlockStart(final int aIndex) {
+		return pBlockStarts[aIndex];
+	}
+
+	/**
+	 * Retrieves the partition type of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block partition type
+	 */
+	public String getBlockType(final int aIndex) {
+		return pBlockTypes[aIndex];
+	}
+
+	/**
+	 * Retrieves the number of blocks found in the chunk
+	 * 
+	 * @return The number of blocks
+	 */
+	public int getCount() {
+		return pBlockCount;
+	}
+
+	/**
+	 * Retrieves the offset where the scan stopped, which can be after the
+	 * chunk if its last block overlaps the next one
+	 * 
+	 * @return The end of the scanned text
+	 */
+	public int getEndOffset() {
+		return pEndOffset;
+	}
+
+	/**
+	 * Retrieves the index of the first block beginning at or after the given
+	 * offset, if the offset is a block boundary of the chunk. A scan of the
+	 * whole document reaching this offset at a line start will find the same
+	 * blocks as the chunk from there.
+	 * 
+	 * @param aOffset
+	 *            A line start offset
+	 * @return The index of the first block after the offset, -1 if the offset
+	 *         is not a block boundary of the chunk
+	 */
+	public int getResyncBlock(final int aOffset) {
+
+		if (aOffset < pLines.getStart(pFirstLine) || aOffset >= pEndOffset) {
+			// Out of the chunk
+			return -1;
+		}
+
+		// First block ending after the offset
+		int low = 0;
+		int high = pBlockCount;
+
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+
+			if (pBlockEnds[mid] > aOffset) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+
+		if (low < pBlockCount && pBlockStarts[low] < aOffset) {
+			// Inside a block
+			return -1;
+		}
+
+		return low;
+	}
+}
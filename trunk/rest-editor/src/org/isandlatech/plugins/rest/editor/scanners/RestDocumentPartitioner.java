@@ -0,0 +1,1286 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.scanners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentRewriteSession;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.jface.text.IDocumentPartitionerExtension;
+import org.eclipse.jface.text.IDocumentPartitionerExtension2;
+import org.eclipse.jface.text.IDocumentPartitionerExtension3;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TypedRegion;
+import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.cache.StructureCache;
+
+/**
+ * ReST document partitioner. Keeps the classes of all the document lines
+ * (see {@link LineClassTable}) : on modification, only the modified lines are
+ * classified again, and the partitions are computed again only in the window
+ * of blocks surrounding the modification.
+ * 
+ * The window begins at a block boundary a few lines before the modification,
+ * and ends at the first line start after the modification which was a block
+ * boundary in the previous partitioning : from there, the partitions can't
+ * have changed.
+ * 
+ * The initial partitioning of large documents is computed in parallel : the
+ * document is split in chunks beginning at safe restart points, scanned by
+ * independent scanners, then the blocks overlapping a chunk boundary are
+ * computed again.
+ * 
+ * The partitions of an unchanged file can also be restored from its
+ * {@link StructureCache} : the content is verified and its lines are
+ * classified outside the UI thread, while the file is loaded.
+ * 
+ * @author Thomas Calmant
+ */
+public class RestDocumentPartitioner implements IDocumentPartitioner,
+		IDocumentPartitionerExtension, IDocumentPartitionerExtension2,
+		IDocumentPartitionerExtension3 {
+
+	/** Initial capacity of the block arrays */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Number of lines scanned again before a modification : the line before
+	 * the modification is classified again, and a block rule reads up to two
+	 * lines after its first one
+	 */
+	private static final int LOOKBEHIND_LINES = 3;
+
+	/** Minimal length of a chunk scanned in parallel, in characters */
+	private static final int MIN_CHUNK_LENGTH = 256 * 1024;
+
+	/** Number of chunks per processor, to balance the threads load */
+	private static final int NB_CHUNKS_PER_PROCESSOR = 4;
+
+	/**
+	 * Waits for the end of the given tasks
+	 * 
+	 * @param aFutures
+	 *            Submitted tasks
+	 * @return The tasks results
+	 * @throws BadLocationException
+	 *             A task failed reading the document
+	 * @throws InterruptedException
+	 *             The current thread has been interrupted
+	 */
+	private static <T> List<T> getResults(final List<Future<T>> aFutures)
+			throws BadLocationException, InterruptedException {
+
+		final List<T> results = new ArrayList<T>(aFutures.size());
+
+		try {
+			for (Future<T> future : aFutures) {
+				results.add(future.get());
+			}
+
+		} catch (ExecutionException ex) {
+			final Throwable cause = ex.getCause();
+			if (cause instanceof BadLocationException) {
+				throw (BadLocationException) cause;
+			}
+
+			throw new IllegalStateException("Error computing the partitions",
+					cause);
+
+		} finally {
+			// Don't let the tasks work after a failure
+			for (Future<T> future : aFutures) {
+				future.cancel(true);
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Tests if the given position overlaps the given range (same behavior as
+	 * {@link org.eclipse.jface.text.Position#overlapsWith(int, int)})
+	 * 
+	 * @param aStart
+	 *            Position offset
+	 * @param aLength
+	 *            Position length
+	 * @param aOffset
+	 *            Range offset
+	 * @param aRangeLength
+	 *            Range length
+	 * @return True if the position overlaps the range
+	 */
+	private static boolean overlaps(final int aStart, final int aLength,
+			final int aOffset, final int aRangeLength) {
+
+		final int end = aOffset + aRangeLength;
+		final int thisEnd = aStart + aLength;
+
+		if (aRangeLength > 0) {
+			if (aLength > 0) {
+				return aStart < end && aOffset < thisEnd;
+			}
+
+			return aOffset <= aStart && aStart < end;
+		}
+
+		if (aLength > 0) {
+			return aStart <= aOffset && aOffset < thisEnd;
+		}
+
+		return aStart == aOffset;
+	}
+
+	/** Active rewrite session */
+	private DocumentRewriteSession pActiveRewriteSession;
+
+	/** Blocks of the document */
+	private final BlockTable pBlocks;
+
+	/** Partitioned document */
+	private IDocument pDocument;
+
+	/** First line modified by the current event */
+	private int pEventFirstLine;
+
+	/** Last line modified by the current event, before the modification */
+	private int pEventLastLine;
+
+	/** Partitions are up to date */
+	private boolean pInitialized;
+
+	/** Classes of all the document lines */
+	private final LineClassTable pLines;
+
+	/** Number of blocks found by the last scan */
+	private int pNewBlockCount;
+
+	/** Ends of the blocks found by the last scan */
+	private int[] pNewBlockEnds;
+
+	/** End of the text read to find the blocks of the last scan */
+	private int[] pNewBlockScanEnds;
+
+	/** Offsets of the blocks found by the last scan */
+	private int[] pNewBlockStarts;
+
+	/** Types of the blocks found by the last scan */
+	private String[] pNewBlockTypes;
+
+	/** Index of the first kept block, after the last scan */
+	private int pResyncBlock;
+
+	/** Verification of the structure cache against the loaded content */
+	private Future<StructureRestoration> pRestoration;
+
+	/** The block state machine */
+	private final RestLinePartitionScanner pScanner;
+
+	/** Structure read from the cache, used by the first partitioning */
+	private StructureCache pStructureCache;
+
+	/**
+	 * Prepares the partitioner
+	 */
+	public RestDocumentPartitioner() {
+		pLines = new LineClassTable();
+		pScanner = new RestLinePartitionScanner(pLines);
+
+		pBlocks = new BlockTable();
+
+		pNewBlockStarts = new int[INITIAL_CAPACITY];
+		pNewBlockEnds = new int[INITIAL_CAPACITY];
+		pNewBlockTypes = new String[INITIAL_CAPACITY];
+		pNewBlockScanEnds = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds the given default content region to the list, if it is in the
+	 * computed range
+	 * 
+	 * @param aRegions
+	 *            Computed partitions
+	 * @param aGapOffset
+	 *            Default content offset
+	 * @param aGapLength
+	 *            Default content length
+	 * @param aOffset
+	 *            Computed range offset
+	 * @param aLength
+	 *            Computed range length
+	 * @param aIncludeZeroLengthPartitions
+	 *            Include empty partitions
+	 */
+	private void addGap(final List<ITypedRegion> aRegions,
+			final int aGapOffset, final int aGapLength, final int aOffset,
+			final int aLength, final boolean aIncludeZeroLengthPartitions) {
+
+		final int endOffset = aOffset + aLength;
+		final int gapEnd = aGapOffset + aGapLength;
+
+		final boolean touches = aGapOffset <= endOffset && aOffset <= gapEnd;
+		if ((aIncludeZeroLengthPartitions && touches)
+				|| (aGapLength > 0 && overlaps(aGapOffset, aGapLength,
+						aOffset, aLength))) {
+
+			final int start = Math.max(aOffset, aGapOffset);
+			final int end = Math.min(endOffset, gapEnd);
+			aRegions.add(new TypedRegion(start, end - start,
+					IDocument.DEFAULT_CONTENT_TYPE));
+		}
+	}
+
+	/**
+	 * Stores a block found by the current scan
+	 * 
+	 * @param aStart
+	 *            Block offset
+	 * @param aEnd
+	 *            Block end offset
+	 * @param aType
+	 *            Block partition type
+	 * @param aScanEnd
+	 *            End of the text read after the block if it has been ended by
+	 *            its scan budget, else -1
+	 */
+	private void addNewBlock(final int aStart, final int aEnd,
+			final String aType, final int aScanEnd) {
+
+		if (pNewBlockCount == pNewBlockStarts.length) {
+			final int newCapacity = pNewBlockStarts.length * 2;
+			pNewBlockStarts = Arrays.copyOf(pNewBlockStarts, newCapacity);
+			pNewBlockEnds = Arrays.copyOf(pNewBlockEnds, newCapacity);
+			pNewBlockTypes = Arrays.copyOf(pNewBlockTypes, newCapacity);
+			pNewBlockScanEnds = Arrays.copyOf(pNewBlockScanEnds, newCapacity);
+		}
+
+		pNewBlockStarts[pNewBlockCount] = aStart;
+		pNewBlockEnds[pNewBlockCount] = aEnd;
+		pNewBlockTypes[pNewBlockCount] = aType;
+		pNewBlockScanEnds[pNewBlockCount] = Math.max(aEnd, aScanEnd);
+		pNewBlockCount++;
+	}
+
+	/**
+	 * Computes the partitions if needed
+	 */
+	private void checkInitialization() {
+
+		if (!pInitialized) {
+			initialize();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.IDocumentPartitioner#computePartitioning(int,
+	 * int)
+	 */
+	@Override
+	public ITypedRegion[] computePartitioning(final int aOffset,
+			final int aLength) {
+		return computePartitioning(aOffset, aLength, false);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitionerExtension2#computePartitioning
+	 * (int, int, boolean)
+	 */
+	@Override
+	public ITypedRegion[] computePartitioning(final int aOffset,
+			final int aLength, final boolean aIncludeZeroLengthPartitions) {
+
+		checkInitialization();
+
+		final List<ITypedRegion> regions = new ArrayList<ITypedRegion>();
+		final int endOffset = aOffset + aLength;
+
+		int previousEnd = -1;
+		final int nbBlocks = pBlocks.getCount();
+		for (int i = pBlocks.findFirstEndingAfter(aOffset); i < nbBlocks
+				&& pBlocks.getStart(i) < endOffset; i++) {
+
+			final int blockStart = pBlocks.getStart(i);
+			final int blockEnd = pBlocks.getEnd(i);
+
+			// Default content before the block
+			final int gapOffset = previousEnd < 0 ? 0 : previousEnd;
+			final int gapLength = blockStart - gapOffset;
+			addGap(regions, gapOffset, gapLength, aOffset, aLength,
+					aIncludeZeroLengthPartitions);
+
+			if (overlaps(blockStart, blockEnd - blockStart, aOffset, aLength)) {
+
+				final int start = Math.max(aOffset, blockStart);
+				final int end = Math.min(endOffset, blockEnd);
+				regions.add(new TypedRegion(start, end - start, pBlocks
+						.getType(i)));
+			}
+
+			previousEnd = blockEnd;
+		}
+
+		// Default content after the last block
+		if (previousEnd >= 0) {
+			addGap(regions, previousEnd, pDocument.getLength() - previousEnd,
+					aOffset, aLength, aIncludeZeroLengthPartitions);
+		}
+
+		if (regions.isEmpty()) {
+			regions.add(new TypedRegion(aOffset, aLength,
+					IDocument.DEFAULT_CONTENT_TYPE));
+		}
+
+		return regions.toArray(new ITypedRegion[regions.size()]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitioner#connect(org.eclipse.jface
+	 * .text.IDocument)
+	 */
+	@Override
+	public void connect(final IDocument aDocument) {
+		connect(aDocument, false);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitionerExtension3#connect(org.eclipse
+	 * .jface.text.IDocument, boolean)
+	 */
+	@Override
+	public void connect(final IDocument aDocument,
+			final boolean aDelayInitialization) {
+
+		pDocument = aDocument;
+		pInitialized = false;
+
+		if (!aDelayInitialization) {
+			initialize();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.IDocumentPartitioner#disconnect()
+	 */
+	@Override
+	public void disconnect() {
+
+		pDocument = null;
+		pInitialized = false;
+		pStructureCache = null;
+
+		if (pRestoration != null) {
+			pRestoration.cancel(true);
+			pRestoration = null;
+		}
+
+		pLines.clear();
+		pBlocks.clear();
+		Arrays.fill(pNewBlockTypes, null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitioner#documentAboutToBeChanged(
+	 * org.eclipse.jface.text.DocumentEvent)
+	 */
+	@Override
+	public void documentAboutToBeChanged(final DocumentEvent aEvent) {
+
+		if (!pInitialized || pActiveRewriteSession != null) {
+			return;
+		}
+
+		try {
+			pEventFirstLine = pDocument.getLineOfOffset(aEvent.getOffset());
+			pEventLastLine = pDocument.getLineOfOffset(aEvent.getOffset()
+					+ aEvent.getLength());
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error preparing document partitioning", ex);
+			pInitialized = false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitioner#documentChanged(org.eclipse
+	 * .jface.text.DocumentEvent)
+	 */
+	@Override
+	public boolean documentChanged(final DocumentEvent aEvent) {
+		return documentChanged2(aEvent) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitionerExtension#documentChanged2
+	 * (org.eclipse.jface.text.DocumentEvent)
+	 */
+	@Override
+	public IRegion documentChanged2(final DocumentEvent aEvent) {
+
+		if (!pInitialized) {
+			if (pStructureCache != null) {
+				// The file content is being loaded
+				prepareRestoration(aEvent);
+			}
+
+			return null;
+		}
+
+		if (pActiveRewriteSession != null) {
+			// Partitions will be computed at the end of the session
+			pInitialized = false;
+			return null;
+		}
+
+		final String text = aEvent.getText();
+		final int textLength = text == null ? 0 : text.length();
+		final int delta = textLength - aEvent.getLength();
+
+		try {
+			// Classify the modified lines. The line before the modification
+			// may have been the last one of the document.
+			final int newLastLine = pDocument.getLineOfOffset(aEvent
+					.getOffset() + textLength);
+			final int firstLine = Math.max(0, pEventFirstLine - 1);
+
+			pLines.replaceLines(pDocument, firstLine, pEventLastLine
+					- firstLine + 1, newLastLine - firstLine + 1, delta);
+			pScanner.setDocument(pDocument);
+
+			// Restart out of a block, far enough from the modification
+			int restart = pLines.getStart(Math.max(0, pEventFirstLine
+					- LOOKBEHIND_LINES));
+
+			// A block ended by its scan budget also depends on the text read
+			// after it to look for its terminator
+			final int firstBlock = Math.min(
+					pBlocks.findFirstEndingAfter(restart),
+					pBlocks.findFirstTruncated(aEvent.getOffset(),
+							aEvent.getOffset() + aEvent.getLength()));
+
+			if (firstBlock < pBlocks.getCount()
+					&& pBlocks.getStart(firstBlock) < restart) {
+				restart = pLines.getStart(pDocument.getLineOfOffset(pBlocks
+						.getStart(firstBlock)));
+			}
+
+			// Compute the partitions until the old ones are valid again
+			final int end = scanBlocks(restart, newLastLine, delta, firstBlock);
+
+			final boolean changed = replaceBlocks(firstBlock, pResyncBlock,
+					aEvent.getOffset(), aEvent.getOffset() + aEvent.getLength(),
+					delta);
+
+			if (!changed) {
+				return null;
+			}
+
+			return new Region(restart, end - restart);
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error during document partitioning", ex);
+			pInitialized = false;
+			return new Region(0, pDocument.getLength());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitionerExtension3#getActiveRewriteSession
+	 * ()
+	 */
+	@Override
+	public DocumentRewriteSession getActiveRewriteSession() {
+		return pActiveRewriteSession;
+	}
+
+	/**
+	 * Retrieves the region of the given block
+	 * 
+	 * @param aIndex
+	 *            Block index
+	 * @return The block region
+	 */
+	private ITypedRegion getBlockRegion(final int aIndex) {
+		final int start = pBlocks.getStart(aIndex);
+		return new TypedRegion(start, pBlocks.getEnd(aIndex) - start,
+				pBlocks.getType(aIndex));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.IDocumentPartitioner#getContentType(int)
+	 */
+	@Override
+	public String getContentType(final int aOffset) {
+		return getPartition(aOffset).getType();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitionerExtension2#getContentType(int,
+	 * boolean)
+	 */
+	@Override
+	public String getContentType(final int aOffset,
+			final boolean aPreferOpenPartitions) {
+		return getPartition(aOffset, aPreferOpenPartitions).getType();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.IDocumentPartitioner#getLegalContentTypes()
+	 */
+	@Override
+	public String[] getLegalContentTypes() {
+		return RestPartitionScanner.PARTITION_TYPES.clone();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.IDocumentPartitionerExtension2#
+	 * getManagingPositionCategories()
+	 */
+	@Override
+	public String[] getManagingPositionCategories() {
+		// Partitions are not stored as document positions
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.IDocumentPartitioner#getPartition(int)
+	 */
+	@Override
+	public ITypedRegion getPartition(final int aOffset) {
+
+		checkInitialization();
+
+		if (pBlocks.getCount() == 0) {
+			return new TypedRegion(0, pDocument.getLength(),
+					IDocument.DEFAULT_CONTENT_TYPE);
+		}
+
+		final int index = pBlocks.findFirstStartingAt(aOffset);
+		final int gapEnd;
+
+		if (index < pBlocks.getCount()) {
+			if (pBlocks.getStart(index) == aOffset) {
+				return getBlockRegion(index);
+			}
+
+			if (index == 0) {
+				return new TypedRegion(0, pBlocks.getStart(0),
+						IDocument.DEFAULT_CONTENT_TYPE);
+			}
+
+			gapEnd = pBlocks.getStart(index);
+
+		} else {
+			gapEnd = pDocument.getLength();
+		}
+
+		final int previous = index - 1;
+		final int previousEnd = pBlocks.getEnd(previous);
+		if (pBlocks.getStart(previous) <= aOffset && aOffset < previousEnd) {
+			return getBlockRegion(previous);
+		}
+
+		return new TypedRegion(previousEnd, gapEnd - previousEnd,
+				IDocument.DEFAULT_CONTENT_TYPE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitionerExtension2#getPartition(int,
+	 * boolean)
+	 */
+	@Override
+	public ITypedRegion getPartition(final int aOffset,
+			final boolean aPreferOpenPartitions) {
+
+		ITypedRegion region = getPartition(aOffset);
+
+		if (aPreferOpenPartitions && region.getOffset() == aOffset
+				&& !IDocument.DEFAULT_CONTENT_TYPE.equals(region.getType())) {
+
+			if (aOffset > 0) {
+				region = getPartition(aOffset - 1);
+				if (IDocument.DEFAULT_CONTENT_TYPE.equals(region.getType())) {
+					return region;
+				}
+			}
+
+			return new TypedRegion(aOffset, 0, IDocument.DEFAULT_CONTENT_TYPE);
+		}
+
+		return region;
+	}
+
+	/**
+	 * Retrieves the verification of the given structure against the document
+	 * content, prepared when the content was loaded. The verification is done
+	 * now if it has not been prepared.
+	 * 
+	 * @param aCache
+	 *            Structure read from the cache
+	 * @return The verification result, null if it has been interrupted
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private StructureRestoration getRestoration(final StructureCache aCache)
+			throws BadLocationException {
+
+		final Future<StructureRestoration> restoration = pRestoration;
+		pRestoration = null;
+
+		if (restoration == null) {
+			return new StructureRestoration(aCache, pDocument.get()).call();
+		}
+
+		try {
+			return getResults(Collections.singletonList(restoration)).get(0);
+
+		} catch (InterruptedException ex) {
+			// Let the caller handle the interruption
+			Thread.currentThread().interrupt();
+			return null;
+
+		} catch (CancellationException ex) {
+			// The plug-in has stopped
+			return null;
+		}
+	}
+
+	/**
+	 * Retrieves the end of the text read to find the block beginning at the
+	 * given offset
+	 * 
+	 * @param aOffset
+	 *            Offset of a partition block
+	 * @return The block end, or the end of the text read after it if it has
+	 *         been ended by its scan budget. -1 if no block begins at the
+	 *         given offset.
+	 */
+	public int getScanEnd(final int aOffset) {
+
+		checkInitialization();
+
+		final int index = pBlocks.findFirstStartingAt(aOffset);
+		if (index < pBlocks.getCount() && pBlocks.getStart(index) == aOffset) {
+			return pBlocks.getScanEnd(index);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Classifies all the document lines and computes the partitions
+	 */
+	private void initialize() {
+
+		pLines.clear();
+		pBlocks.clear();
+
+		try {
+			if (pStructureCache != null) {
+				if (pDocument.getLength() == 0) {
+					// The document content is not loaded yet
+					return;
+				}
+
+				final StructureCache cache = pStructureCache;
+				pStructureCache = null;
+
+				if (restoreBlocks(cache)) {
+					pInitialized = true;
+					return;
+				}
+			}
+
+			final int nbLines = pDocument.getNumberOfLines();
+			final int nbProcessors = Runtime.getRuntime().availableProcessors();
+
+			int nbChunks = 0;
+			if (nbProcessors > 1) {
+				nbChunks = Math.min(nbProcessors * NB_CHUNKS_PER_PROCESSOR,
+						pDocument.getLength() / MIN_CHUNK_LENGTH);
+			}
+
+			if (nbChunks < 2 || !initializeParallel(nbLines, nbChunks)) {
+				pLines.clear();
+				for (int line = 0; line < nbLines; line++) {
+					pLines.append(pDocument, line);
+				}
+
+				pScanner.setDocument(pDocument);
+				scanBlocks(0, Integer.MAX_VALUE, 0, 0);
+			}
+
+			replaceBlocks(0, 0, 0, 0, 0);
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error during document partitioning", ex);
+			pLines.clear();
+			pBlocks.clear();
+		}
+
+		pInitialized = true;
+	}
+
+	/**
+	 * Classifies the document lines and computes the blocks in parallel. The
+	 * blocks are stored in the "new blocks" arrays.
+	 * 
+	 * @param aNbLines
+	 *            Number of lines in the document
+	 * @param aNbChunks
+	 *            Number of chunks to scan in parallel
+	 * @return False if the computation has been interrupted or can't be
+	 *         done in parallel
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private boolean initializeParallel(final int aNbLines, final int aNbChunks)
+			throws BadLocationException {
+
+		final RestPlugin plugin = RestPlugin.getDefault();
+		final ExecutorService executor = plugin != null ? plugin.getExecutor()
+				: null;
+		if (executor == null) {
+			return false;
+		}
+
+		final IDocument document = pDocument;
+
+		try {
+			// Classify the lines
+			pLines.setCount(aNbLines);
+
+			final List<Future<Object>> classifications = new ArrayList<Future<Object>>(
+					aNbChunks);
+
+			for (int i = 0; i < aNbChunks; i++) {
+				final int firstLine = (int) ((long) aNbLines * i / aNbChunks);
+				final int endLine = (int) ((long) aNbLines * (i + 1)
+						/ aNbChunks);
+
+				classifications.add(executor.submit(new Callable<Object>() {
+
+					@Override
+					public Object call() throws BadLocationException {
+						pLines.classifyLines(document, firstLine, endLine);
+						return null;
+					}
+				}));
+			}
+
+			getResults(classifications);
+
+			// Scan the chunks
+			final List<Future<PartitionChunk>> scans = new ArrayList<Future<PartitionChunk>>(
+					aNbChunks);
+
+			int firstLine = 0;
+			for (int i = 1; i <= aNbChunks; i++) {
+
+				final int endLine;
+				if (i == aNbChunks) {
+					endLine = aNbLines;
+				} else {
+					endLine = findRestartLine(
+							(int) ((long) aNbLines * i / aNbChunks),
+							(int) ((long) aNbLines * (i + 1) / aNbChunks));
+				}
+
+				if (endLine > firstLine) {
+					scans.add(executor.submit(new PartitionChunk(document,
+							pLines, firstLine, endLine)));
+
+					firstLine = endLine;
+				}
+			}
+
+			stitchChunks(getResults(scans));
+			return true;
+
+		} catch (InterruptedException ex) {
+			// Let the caller handle the interruption
+			Thread.currentThread().interrupt();
+			return false;
+
+		} catch (RejectedExecutionException ex) {
+			// The plug-in is stopping
+			return false;
+
+		} catch (CancellationException ex) {
+			// The plug-in has stopped
+			return false;
+		}
+	}
+
+	/**
+	 * Looks for a safe restart point for a parallel scan : a non-indented line
+	 * following a blank line. Such a line begins a new block in most cases.
+	 * 
+	 * @param aFirstLine
+	 *            First candidate line
+	 * @param aEndLine
+	 *            Line following the last candidate
+	 * @return The first safe restart line, or aEndLine
+	 */
+	private int findRestartLine(final int aFirstLine, final int aEndLine) {
+
+		for (int line = Math.max(1, aFirstLine); line < aEndLine; line++) {
+
+			if (pLines.is(line - 1, LineClassTable.BLANK)
+					&& !pLines.is(line, LineClassTable.BLANK)
+					&& pLines.getIndent(line) == 0) {
+				return line;
+			}
+		}
+
+		return aEndLine;
+	}
+
+	/**
+	 * Verifies the structure read from the cache against the document content
+	 * and classifies its lines, outside the UI thread. Called when the file
+	 * content is loaded, before the first partitioning.
+	 * 
+	 * @param aEvent
+	 *            The document modification
+	 */
+	private void prepareRestoration(final DocumentEvent aEvent) {
+
+		if (pRestoration != null) {
+			pRestoration.cancel(true);
+			pRestoration = null;
+		}
+
+		final RestPlugin plugin = RestPlugin.getDefault();
+		final ExecutorService executor = plugin != null ? plugin.getExecutor()
+				: null;
+		if (executor == null) {
+			// Verified by the first partitioning
+			return;
+		}
+
+		// The content is usually loaded at once : the event text is a copy
+		final String text = aEvent.getText();
+		final String content;
+		if (aEvent.getOffset() == 0 && text != null
+				&& text.length() == pDocument.getLength()) {
+			content = text;
+		} else {
+			content = pDocument.get();
+		}
+
+		try {
+			pRestoration = executor.submit(new StructureRestoration(
+					pStructureCache, content));
+
+		} catch (RejectedExecutionException ex) {
+			// The plug-in is stopping : verified by the first partitioning
+		}
+	}
+
+	/**
+	 * Replaces the given blocks by the ones found by the last scan, and moves
+	 * the following blocks
+	 * 
+	 * @param aFirstBlock
+	 *            Index of the first replaced block
+	 * @param aEndBlock
+	 *            Index of the first kept block
+	 * @param aEventOffset
+	 *            Offset of the modification
+	 * @param aEventEnd
+	 *            End of the replaced text, before the modification
+	 * @param aDelta
+	 *            Length modification of the document
+	 * @return True if the partitioning changed
+	 */
+	private boolean replaceBlocks(final int aFirstBlock, final int aEndBlock,
+			final int aEventOffset, final int aEventEnd, final int aDelta) {
+
+		final int nbOldBlocks = aEndBlock - aFirstBlock;
+
+		// Count the blocks newly ended by their scan budget
+		for (int i = 0; i < pNewBlockCount; i++) {
+
+			if (pNewBlockScanEnds[i] > pNewBlockEnds[i]
+					&& !wasTruncated(aFirstBlock, aEndBlock,
+							pNewBlockStarts[i], aEventOffset, aEventEnd,
+							aDelta)) {
+				RestLinePartitionScanner.getScanBudget(pNewBlockTypes[i])
+						.exceeded();
+			}
+		}
+
+		// Compare the new blocks with the old ones
+		boolean changed = nbOldBlocks != pNewBlockCount;
+		for (int i = 0; !changed && i < pNewBlockCount; i++) {
+
+			final int old = aFirstBlock + i;
+			changed = !pNewBlockTypes[i].equals(pBlocks.getType(old))
+					|| pNewBlockStarts[i] != shiftOffset(pBlocks.getStart(old),
+							aEventOffset, aEventEnd, aDelta)
+					|| pNewBlockEnds[i] != shiftOffset(pBlocks.getEnd(old),
+							aEventOffset, aEventEnd, aDelta);
+		}
+
+		pBlocks.replace(aFirstBlock, aEndBlock, pNewBlockStarts,
+				pNewBlockEnds, pNewBlockTypes, pNewBlockScanEnds,
+				pNewBlockCount, aDelta);
+		return changed;
+	}
+
+	/**
+	 * Restores the blocks of the given structure and the classes of the lines,
+	 * if it describes the document content
+	 * 
+	 * @param aCache
+	 *            Structure read from the cache
+	 * @return False if the structure doesn't match the document
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private boolean restoreBlocks(final StructureCache aCache)
+			throws BadLocationException {
+
+		final StructureRestoration restoration = getRestoration(aCache);
+		if (restoration == null || restoration.getLines() == null) {
+			return false;
+		}
+
+		pLines.set(restoration.getLines());
+
+		// Check the blocks against the document
+		final List<String> legalTypes = Arrays.asList(getLegalContentTypes());
+		final int documentLength = pDocument.getLength();
+		int previousEnd = 0;
+
+		pNewBlockCount = 0;
+		for (int i = 0; i < aCache.getBlockCount(); i++) {
+
+			final int start = aCache.getBlockStart(i);
+			final int end = aCache.getBlockEnd(i);
+			final int scanEnd = aCache.getBlockScanEnd(i);
+			final String type = aCache.getBlockType(i);
+
+			if (start < previousEnd || end <= start
+					|| scanEnd > documentLength
+					|| !legalTypes.contains(type)) {
+				pLines.clear();
+				return false;
+			}
+
+			addNewBlock(start, end, type, scanEnd);
+			previousEnd = end;
+		}
+
+		// The restored blocks have been counted when they were scanned
+		pBlocks.replace(0, 0, pNewBlockStarts, pNewBlockEnds, pNewBlockTypes,
+				pNewBlockScanEnds, pNewBlockCount, 0);
+		aCache.restored(pDocument, restoration.getContent());
+		return true;
+	}
+
+	/**
+	 * Computes the blocks from the given offset, until the previous
+	 * partitioning is valid again. The found blocks are stored in the "new
+	 * blocks" arrays, and the index of the first still valid block is stored
+	 * in {@link #pResyncBlock}.
+	 * 
+	 * @param aOffset
+	 *            Scan start offset, at a block boundary
+	 * @param aLastModifiedLine
+	 *            Last modified line : the old partitioning can't be used
+	 *            before its end
+	 * @param aDelta
+	 *            Length modification of the document
+	 * @param aFirstOldBlock
+	 *            Index of the first old block ending after the scan start
+	 * @return The offset where the scan stopped
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private int scanBlocks(final int aOffset, final int aLastModifiedLine,
+			final int aDelta, final int aFirstOldBlock)
+			throws BadLocationException {
+
+		final int documentLength = pDocument.getLength();
+		final int nbLines = pLines.getCount();
+		final int nbOldBlocks = pBlocks.getCount();
+
+		pNewBlockCount = 0;
+
+		int offset = aOffset;
+		int line = pDocument.getLineOfOffset(aOffset);
+		int oldBlock = aFirstOldBlock;
+
+		while (offset < documentLength) {
+
+			if (line > aLastModifiedLine && offset == pLines.getStart(line)) {
+				// Out of the modification : stop if the old partitioning had a
+				// block boundary here
+				final int oldOffset = offset - aDelta;
+				while (oldBlock < nbOldBlocks
+						&& pBlocks.getEnd(oldBlock) <= oldOffset) {
+					oldBlock++;
+				}
+
+				if (oldBlock == nbOldBlocks
+						|| pBlocks.getStart(oldBlock) >= oldOffset) {
+					pResyncBlock = oldBlock;
+					return offset;
+				}
+			}
+
+			final int end = pScanner.matchBlock(line, offset);
+			if (end >= 0) {
+				addNewBlock(pScanner.getMatchOffset(), end,
+						pScanner.getMatchType(), pScanner.getMatchScanEnd());
+
+				offset = end;
+				while (line + 1 < nbLines && pLines.getStart(line + 1) <= offset) {
+					line++;
+				}
+
+			} else {
+				// Default content until the end of the line
+				offset = pLines.getNextStart(line);
+				line++;
+			}
+		}
+
+		pResyncBlock = nbOldBlocks;
+		return documentLength;
+	}
+
+	/**
+	 * Computes the position of an old block boundary after the modification
+	 * 
+	 * @param aOffset
+	 *            Offset before the modification
+	 * @param aEventOffset
+	 *            Offset of the modification
+	 * @param aEventEnd
+	 *            End of the replaced text, before the modification
+	 * @param aDelta
+	 *            Length modification of the document
+	 * @return The offset after the modification, -1 if it was in the replaced
+	 *         text
+	 */
+	private int shiftOffset(final int aOffset, final int aEventOffset,
+			final int aEventEnd, final int aDelta) {
+
+		if (aOffset <= aEventOffset) {
+			return aOffset;
+		}
+
+		if (aOffset >= aEventEnd) {
+			return aOffset + aDelta;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Sets the structure read from the cache of the partitioned file. It is
+	 * used instead of a scan by the first partitioning, if it matches the
+	 * document content. The partitioner must then be connected with a delayed
+	 * initialization.
+	 * 
+	 * @param aCache
+	 *            Structure read from the cache, can be null
+	 */
+	public void setStructureCache(final StructureCache aCache) {
+		pStructureCache = aCache;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitionerExtension3#startRewriteSession
+	 * (org.eclipse.jface.text.DocumentRewriteSession)
+	 */
+	@Override
+	public void startRewriteSession(final DocumentRewriteSession aSession) {
+
+		if (pActiveRewriteSession != null) {
+			throw new IllegalStateException(
+					"A rewrite session is already active");
+		}
+
+		pActiveRewriteSession = aSession;
+	}
+
+	/**
+	 * Stores the blocks of the scanned chunks in the "new blocks" arrays. The
+	 * text following a block overlapping the next chunk is scanned again, until
+	 * it reaches a block boundary of that chunk.
+	 * 
+	 * @param aChunks
+	 *            The scanned chunks, in document order
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private void stitchChunks(final List<PartitionChunk> aChunks)
+			throws BadLocationException {
+
+		final int nbLines = pLines.getCount();
+		pScanner.setDocument(pDocument);
+		pNewBlockCount = 0;
+
+		int offset = 0;
+		int line = 0;
+
+		for (PartitionChunk chunk : aChunks) {
+
+			final int chunkEnd = chunk.getEndOffset();
+			while (offset < chunkEnd) {
+
+				if (offset == pLines.getStart(line)) {
+					final int resyncBlock = chunk.getResyncBlock(offset);
+					if (resyncBlock >= 0) {
+						// Same blocks as the chunk from here
+						for (int i = resyncBlock; i < chunk.getCount(); i++) {
+							addNewBlock(chunk.getBlockStart(i),
+									chunk.getBlockEnd(i),
+									chunk.getBlockType(i),
+									chunk.getBlockScanEnd(i));
+						}
+
+						offset = chunkEnd;
+					}
+				}
+
+				if (offset < chunkEnd) {
+					final int end = pScanner.matchBlock(line, offset);
+					if (end >= 0) {
+						addNewBlock(pScanner.getMatchOffset(), end,
+								pScanner.getMatchType(),
+								pScanner.getMatchScanEnd());
+						offset = end;
+
+					} else {
+						// Default content until the end of the line
+						offset = pLines.getNextStart(line);
+					}
+				}
+
+				while (line + 1 < nbLines && pLines.getStart(line + 1) <= offset) {
+					line++;
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.IDocumentPartitionerExtension3#stopRewriteSession
+	 * (org.eclipse.jface.text.DocumentRewriteSession)
+	 */
+	@Override
+	public void stopRewriteSession(final DocumentRewriteSession aSession) {
+
+		if (pActiveRewriteSession == aSession) {
+			// Partitions will be computed on the next request
+			pActiveRewriteSession = null;
+			pInitialized = false;
+		}
+	}
+
+	/**
+	 * Tests if one of the replaced blocks, beginning at the given offset, had
+	 * already been ended by its scan budget
+	 * 
+	 * @param aFirstBlock
+	 *            Index of the first replaced block
+	 * @param aEndBlock
+	 *            Index of the first kept block
+	 * @param aStart
+	 *            Offset of the new block, after the modification
+	 * @param aEventOffset
+	 *            Offset of the modification
+	 * @param aEventEnd
+	 *            End of the replaced text, before the modification
+	 * @param aDelta
+	 *            Length modification of the document
+	 * @return True if the old block had been truncated too
+	 */
+	private boolean wasTruncated(final int aFirstBlock, final int aEndBlock,
+			final int aStart, final int aEventOffset, final int aEventEnd,
+			final int aDelta) {
+
+		for (int i = aFirstBlock; i < aEndBlock; i++) {
+
+			if (pBlocks.isTruncated(i)
+					&& shiftOffset(pBlocks.getStart(i), aEventOffset,
+							aEventEnd, aDelta) == aStart) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
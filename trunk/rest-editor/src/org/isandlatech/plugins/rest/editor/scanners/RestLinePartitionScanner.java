@@ -0,0 +1,881 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.scanners;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.rules.IPartitionTokenScanner;
+import org.eclipse.jface.text.rules.IToken;
+import org.eclipse.jface.text.rules.Token;
+import org.isandlatech.plugins.rest.RestPlugin;
+import org.isandlatech.plugins.rest.editor.rules.ScanBudget;
+
+/**
+ * Line-based partition scanner : each document line is classified once (see
+ * {@link LineClassTable}), then the partitions are computed by a small state
+ * machine working on the line classes.
+ * 
+ * Returns the same partitions as the rule-based {@link RestPartitionScanner},
+ * for documents using "\n" and/or "\r\n" line delimiters.
+ * 
+ * @author Thomas Calmant
+ */
+public class RestLinePartitionScanner implements IPartitionTokenScanner {
+
+	/** Number of lines scanned again before a modified default partition */
+	private static final int LOOKBEHIND_LINES = 2;
+
+	/** Number of already scanned lines kept in the line table */
+	private static final int MAX_PASSED_LINES = 1024;
+
+	/** Simple table line type : blank line */
+	private static final int SIMPLE_TABLE_EMPTY = 0;
+
+	/** Simple table line type : end of document */
+	private static final int SIMPLE_TABLE_EOF = 1;
+
+	/** Simple table line type : marker row */
+	private static final int SIMPLE_TABLE_MARKER = 2;
+
+	/** Simple table line type : any other line */
+	private static final int SIMPLE_TABLE_TEXT = 3;
+
+	/**
+	 * Retrieves the scan budget limiting the blocks of the given partition type
+	 * 
+	 * @param aType
+	 *            A partition type
+	 * @return The budget of the partition type, null if its blocks are not
+	 *         limited
+	 */
+	static ScanBudget getScanBudget(final String aType) {
+
+		if (RestPartitionScanner.GRID_TABLE_BLOCK.equals(aType)) {
+			return ScanBudget.GRID_TABLE;
+		}
+
+		if (RestPartitionScanner.SIMPLE_TABLE_BLOCK.equals(aType)) {
+			return ScanBudget.SIMPLE_TABLE;
+		}
+
+		if (RestPartitionScanner.LITERAL_BLOCK.equals(aType)
+				|| RestPartitionScanner.SOURCE_BLOCK.equals(aType)) {
+			return ScanBudget.PREFIXED_BLOCK;
+		}
+
+		return null;
+	}
+
+	/** The line table describes the whole document */
+	private final boolean pCompleteTable;
+
+	/** Default content token */
+	private final IToken pDefaultToken = new Token(null);
+
+	/** Scanned document */
+	private IDocument pDocument;
+
+	/** Length of the scanned document */
+	private int pDocumentLength;
+
+	/** Document line corresponding to the first line of the table */
+	private int pFirstLine;
+
+	/** Grid table token */
+	private final IToken pGridTableToken = new Token(
+			RestPartitionScanner.GRID_TABLE_BLOCK);
+
+	/** Table index of the line containing the current offset */
+	private int pLineIndex;
+
+	/** Classes of the lines being scanned */
+	private final LineClassTable pLines;
+
+	/** Literal block token */
+	private final IToken pLiteralToken = new Token(
+			RestPartitionScanner.LITERAL_BLOCK);
+
+	/** Token of the last matched block */
+	private IToken pMatchedToken;
+
+	/** Offset of the last matched block */
+	private int pMatchOffset;
+
+	/** End of the text read to truncate the last matched block, or -1 */
+	private int pMatchScanEnd;
+
+	/** Number of lines in the document */
+	private int pNbLines;
+
+	/** Current scanner offset */
+	private int pOffset;
+
+	/** End offset of the block found after some default content */
+	private int pPendingEnd;
+
+	/** Token of the block found after some default content */
+	private IToken pPendingToken;
+
+	/** End of the scanned range */
+	private int pRangeEnd;
+
+	/** Section token */
+	private final IToken pSectionToken = new Token(
+			RestPartitionScanner.SECTION_BLOCK);
+
+	/** Simple table token */
+	private final IToken pSimpleTableToken = new Token(
+			RestPartitionScanner.SIMPLE_TABLE_BLOCK);
+
+	/** Source block token */
+	private final IToken pSourceToken = new Token(
+			RestPartitionScanner.SOURCE_BLOCK);
+
+	/** Length of the last returned token */
+	private int pTokenLength;
+
+	/** Offset of the last returned token */
+	private int pTokenOffset;
+
+	/**
+	 * Prepares a scanner classifying the lines it reads
+	 */
+	public RestLinePartitionScanner() {
+		this(new LineClassTable(), false);
+	}
+
+	/**
+	 * Prepares a scanner working on the given line classes, which must describe
+	 * all the lines of the scanned document. The table is maintained by the
+	 * caller.
+	 * 
+	 * @param aLines
+	 *            Classes of all the document lines
+	 */
+	public RestLinePartitionScanner(final LineClassTable aLines) {
+		this(aLines, true);
+	}
+
+	/**
+	 * Sets up the scanner
+	 * 
+	 * @param aLines
+	 *            The line table to use
+	 * @param aCompleteTable
+	 *            The table describes the whole document
+	 */
+	private RestLinePartitionScanner(final LineClassTable aLines,
+			final boolean aCompleteTable) {
+		pLines = aLines;
+		pCompleteTable = aCompleteTable;
+	}
+
+	/**
+	 * Computes the end of a block reaching the end of the document without
+	 * being terminated
+	 * 
+	 * @param aBudgetEnd
+	 *            End of the block at its budget, -1 if not reached
+	 * @return The end of the block
+	 */
+	private int budgetEnd(final int aBudgetEnd) {
+
+		if (aBudgetEnd < 0) {
+			return pDocumentLength;
+		}
+
+		return truncate(aBudgetEnd, pDocumentLength);
+	}
+
+	/**
+	 * Tests if the given line is followed by an empty "\r\n" line, while being
+	 * ended by a "\n" : the rules reading the line consume the "\n\r" sequence
+	 * as a single line delimiter.
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return True if the first character of the next line is consumed
+	 * @throws BadLocationException
+	 *             Error reading the next line
+	 */
+	private boolean consumesNextLineStart(final int aIndex)
+			throws BadLocationException {
+
+		return pLines.is(aIndex, LineClassTable.DELIMITER_LF)
+				&& ensureLine(aIndex + 1)
+				&& pLines.is(aIndex + 1, LineClassTable.DELIMITER_CRLF)
+				&& pLines.getLength(aIndex + 1) == 0;
+	}
+
+	/**
+	 * Classifies the document lines until the given table index
+	 * 
+	 * @param aIndex
+	 *            A line table index
+	 * @return True if the line exists, false if it is after the end of the
+	 *         document
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private boolean ensureLine(final int aIndex) throws BadLocationException {
+
+		while (pLines.getCount() <= aIndex) {
+
+			final int line = pFirstLine + pLines.getCount();
+			if (line >= pNbLines) {
+				return false;
+			}
+
+			pLines.append(pDocument, line);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes the already scanned lines from the table
+	 */
+	private void forgetPassedLines() {
+
+		if (!pCompleteTable && pLineIndex > MAX_PASSED_LINES) {
+			pLines.removeFirst(pLineIndex);
+			pFirstLine += pLineIndex;
+			pLineIndex = 0;
+		}
+	}
+
+	/**
+	 * Retrieves the offset of the last block found by
+	 * {@link #matchBlock(int, int)}
+	 * 
+	 * @return The offset of the last matched block
+	 */
+	public int getMatchOffset() {
+		return pMatchOffset;
+	}
+
+	/**
+	 * Retrieves the end of the text read to find the last block returned by
+	 * {@link #matchBlock(int, int)}, if that block has been ended by its scan
+	 * budget. The block then depends on the text following it, up to that
+	 * offset.
+	 * 
+	 * @return The end of the text read after the truncated block, -1 if the
+	 *         block has not been truncated
+	 */
+	public int getMatchScanEnd() {
+		return pMatchScanEnd;
+	}
+
+	/**
+	 * Retrieves the partition type of the last block found by
+	 * {@link #matchBlock(int, int)}
+	 * 
+	 * @return The type of the last matched block
+	 */
+	public String getMatchType() {
+		return (String) pMatchedToken.getData();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.rules.ITokenScanner#getTokenLength()
+	 */
+	@Override
+	public int getTokenLength() {
+		return pTokenLength;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.rules.ITokenScanner#getTokenOffset()
+	 */
+	@Override
+	public int getTokenOffset() {
+		return pTokenOffset;
+	}
+
+	/**
+	 * Tests if the given line is ended by a delimiter
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return True if the line is not the last one of the document
+	 */
+	private boolean hasDelimiter(final int aIndex) {
+		return (pLines.getFlags(aIndex) & (LineClassTable.DELIMITER_LF
+				| LineClassTable.DELIMITER_CRLF)) != 0;
+	}
+
+
+	/**
+	 * Looks for a block beginning in the given line, at or after the given
+	 * offset. The offset must be the beginning of the line or the end of the
+	 * previous block.
+	 * 
+	 * @param aIndex
+	 *            Line table index
+	 * @param aOffset
+	 *            Scan offset in the line
+	 * @return The end of the block, -1 if the end of the line is default
+	 *         content
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 * @see #getMatchOffset()
+	 * @see #getMatchType()
+	 * @see #getMatchScanEnd()
+	 */
+	public int matchBlock(final int aIndex, final int aOffset)
+			throws BadLocationException {
+
+		final int lineStart = pLines.getStart(aIndex);
+		pMatchScanEnd = -1;
+
+		if (aOffset == lineStart) {
+			final int end = matchLineStartBlock(aIndex);
+			if (end >= 0) {
+				pMatchOffset = aOffset;
+				return end;
+			}
+		}
+
+		// Source block prefix in the line
+		final int sourceColumn = pLines.getSourceColumn(aIndex);
+		if (sourceColumn > 0 && lineStart + sourceColumn >= aOffset) {
+
+			final int end = matchPrefixedBlock(aIndex, false);
+			if (end >= 0) {
+				pMatchOffset = lineStart + sourceColumn;
+				pMatchedToken = pSourceToken;
+				return end;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Grid table : a border line, followed by lines beginning with a grid
+	 * marker (see RestGridTableRule)
+	 * 
+	 * @param aIndex
+	 *            Index of the border line
+	 * @return The end of the table
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private int matchGridTable(final int aIndex) throws BadLocationException {
+
+		if (!hasDelimiter(aIndex)) {
+			return pDocumentLength;
+		}
+
+		final int maxRows = ScanBudget.GRID_TABLE.getMaxLines();
+		final int lookahead = ScanBudget.GRID_TABLE.getLookaheadLines();
+		int budgetEnd = -1;
+		int index = aIndex + 1;
+		while (ensureLine(index)) {
+
+			if (index - aIndex - maxRows > lookahead) {
+				// Unterminated table : stop at the budget
+				return truncate(budgetEnd, pLines.getStart(index));
+			}
+
+			if (!pLines.is(index, LineClassTable.GRID_ROW)) {
+				// The empty last line doesn't terminate the table
+				final int start = pLines.getStart(index);
+				if (start < pDocumentLength) {
+					return start;
+				}
+				break;
+			}
+
+			if (index - aIndex == maxRows + 1) {
+				// Used if the table is not terminated before EOF
+				budgetEnd = pLines.getStart(index);
+			}
+
+			if (!hasDelimiter(index)) {
+				break;
+			}
+
+			if (consumesNextLineStart(index)) {
+				return pLines.getStart(index + 1) + 1;
+			}
+
+			index++;
+		}
+
+		return budgetEnd(budgetEnd);
+	}
+
+	/**
+	 * Tests the block rules at the beginning of the given line, in the
+	 * RestPartitionScanner order
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The end of the block, -1 if no block begins with this line
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private int matchLineStartBlock(final int aIndex)
+			throws BadLocationException {
+
+		int end;
+
+		// Comments / literal blocks
+		if (pLines.is(aIndex, LineClassTable.EXPLICIT_MARKUP)) {
+			end = matchPrefixedBlock(aIndex, true);
+			if (end >= 0) {
+				pMatchedToken = pLiteralToken;
+				return end;
+			}
+		}
+
+		// Source blocks
+		if (pLines.getSourceColumn(aIndex) == 0) {
+			end = matchPrefixedBlock(aIndex, false);
+			if (end >= 0) {
+				pMatchedToken = pSourceToken;
+				return end;
+			}
+		}
+
+		// Grid tables
+		if (pLines.is(aIndex, LineClassTable.GRID_BORDER)) {
+			pMatchedToken = pGridTableToken;
+			return matchGridTable(aIndex);
+		}
+
+		// Sections
+		end = matchSection(aIndex);
+		if (end >= 0) {
+			pMatchedToken = pSectionToken;
+			return end;
+		}
+
+		// Simple tables
+		end = matchSimpleTable(aIndex);
+		if (end >= 0) {
+			pMatchedToken = pSimpleTableToken;
+			return end;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Prefixed block : the lines following the block prefix line, until the
+	 * first non-blank line without a valid prefix (see LinePrefixRule)
+	 * 
+	 * @param aIndex
+	 *            Index of the line containing the block prefix
+	 * @param aLiteral
+	 *            Use the literal block prefixes, else the source block ones
+	 * @return The end of the block, -1 if no line is in the block
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private int matchPrefixedBlock(final int aIndex, final boolean aLiteral)
+			throws BadLocationException {
+
+		if (!hasDelimiter(aIndex)) {
+			return pDocumentLength;
+		}
+
+		final int maxLines = ScanBudget.PREFIXED_BLOCK.getMaxLines();
+		final int lookahead = ScanBudget.PREFIXED_BLOCK.getLookaheadLines();
+		int budgetEnd = -1;
+		int caughtLines = 0;
+		int index = aIndex + 1;
+		while (ensureLine(index)) {
+
+			final int verdict;
+			if (aLiteral) {
+				verdict = pLines.getLiteralVerdict(index);
+			} else {
+				verdict = pLines.getSourceVerdict(index);
+			}
+
+			switch (verdict) {
+			case LineClassTable.VERDICT_CONTINUE:
+				caughtLines++;
+				if (caughtLines == maxLines) {
+					// Used if the block is not terminated before EOF
+					budgetEnd = pLines.getNextStart(index);
+
+				} else if (caughtLines - maxLines == lookahead) {
+					// Unterminated block : stop at the budget
+					return truncate(budgetEnd, pLines.getNextStart(index));
+				}
+
+				index++;
+				break;
+
+			case LineClassTable.VERDICT_LAST:
+				if (caughtLines == 0) {
+					return -1;
+				}
+				return pLines.getNextStart(index);
+
+			case LineClassTable.VERDICT_OUTSIDE:
+				if (caughtLines == 0) {
+					return -1;
+				}
+				return pLines.getStart(index);
+
+			default:
+				return budgetEnd(budgetEnd);
+			}
+		}
+
+		return budgetEnd(budgetEnd);
+	}
+
+	/**
+	 * Section : a title line with an underline, and an optional upper line
+	 * (see DecoratedLinesRule)
+	 * 
+	 * @param aIndex
+	 *            Index of the first line of the section
+	 * @return The end of the section, -1 if no section begins with this line
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private int matchSection(final int aIndex) throws BadLocationException {
+
+		// The first line must not be empty nor end the document
+		final int length = pLines.getLength(aIndex);
+		if (length == 0 || !hasDelimiter(aIndex)) {
+			return -1;
+		}
+
+		final int underline;
+		final char decorator;
+
+		if (pLines.is(aIndex, LineClassTable.DECORATION
+				| LineClassTable.DECORATION_ONLY)) {
+			// Upper line, followed by a title
+			if (consumesNextLineStart(aIndex) || !ensureLine(aIndex + 1)
+					|| pLines.is(aIndex + 1, LineClassTable.BLANK)
+					|| !hasDelimiter(aIndex + 1)) {
+				return -1;
+			}
+
+			underline = aIndex + 2;
+			decorator = pLines.getFirstChar(aIndex);
+
+		} else {
+			// Title line
+			if (!pLines.is(aIndex, LineClassTable.DECORATION)
+					&& !pLines.is(aIndex, LineClassTable.TITLE)) {
+				return -1;
+			}
+
+			underline = aIndex + 1;
+			if (!ensureLine(underline)) {
+				return -1;
+			}
+
+			decorator = pLines.getFirstChar(underline);
+		}
+
+		// Under line
+		if (!ensureLine(underline)
+				|| !pLines.is(underline, LineClassTable.DECORATION
+						| LineClassTable.DECORATION_ONLY)
+				|| pLines.getFirstChar(underline) != decorator
+				|| pLines.getLength(underline) < 2) {
+			return -1;
+		}
+
+		if (!hasDelimiter(underline)) {
+			return pDocumentLength;
+		}
+
+		if (consumesNextLineStart(underline)) {
+			return pLines.getStart(underline + 1) + 1;
+		}
+
+		return pLines.getNextStart(underline);
+	}
+
+	/**
+	 * Simple table : a marker row, followed by a non-blank line, until a blank
+	 * line following a marker row (see RestSimpleTableRule)
+	 * 
+	 * @param aIndex
+	 *            Index of the first marker row
+	 * @return The end of the table, -1 if no table begins with this line
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private int matchSimpleTable(final int aIndex) throws BadLocationException {
+
+		if (simpleTableLineType(aIndex) != SIMPLE_TABLE_MARKER) {
+			return -1;
+		}
+
+		int index = aIndex + 1;
+		int lineType = simpleTableLineType(index);
+		if (lineType == SIMPLE_TABLE_EMPTY) {
+			return -1;
+		}
+
+		final int maxLines = ScanBudget.SIMPLE_TABLE.getMaxLines();
+		final int lookahead = ScanBudget.SIMPLE_TABLE.getLookaheadLines();
+		int budgetEnd = -1;
+		while (lineType != SIMPLE_TABLE_EOF) {
+
+			if (index - aIndex == maxLines) {
+				// Used if the table is not terminated before EOF
+				budgetEnd = pLines.getNextStart(index);
+
+			} else if (index - aIndex - maxLines == lookahead) {
+				// Unterminated table : stop at the budget
+				return truncate(budgetEnd, pLines.getNextStart(index));
+			}
+
+			final int previousLineType = lineType;
+			index++;
+			lineType = simpleTableLineType(index);
+
+			if (lineType == SIMPLE_TABLE_EMPTY
+					&& previousLineType == SIMPLE_TABLE_MARKER) {
+				return pLines.getNextStart(index);
+			}
+		}
+
+		return budgetEnd(budgetEnd);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jface.text.rules.ITokenScanner#nextToken()
+	 */
+	@Override
+	public IToken nextToken() {
+
+		// Block found after some default content
+		if (pPendingToken != null) {
+			final IToken token = pPendingToken;
+			pPendingToken = null;
+			return setToken(token, pOffset, pPendingEnd);
+		}
+
+		if (pOffset >= pRangeEnd) {
+			pTokenOffset = pRangeEnd;
+			pTokenLength = 0;
+			return Token.EOF;
+		}
+
+		forgetPassedLines();
+
+		final int defaultStart = pOffset;
+
+		try {
+			while (pOffset < pRangeEnd && ensureLine(pLineIndex)) {
+
+				final int blockEnd = matchBlock(pLineIndex, pOffset);
+				if (blockEnd >= 0) {
+					final int blockStart = pMatchOffset;
+					if (blockStart == defaultStart) {
+						return setToken(pMatchedToken, blockStart, blockEnd);
+					}
+
+					// Return the default content first
+					pPendingToken = pMatchedToken;
+					pPendingEnd = blockEnd;
+					return setToken(pDefaultToken, defaultStart, blockStart);
+				}
+
+				// Default content until the end of the line
+				pOffset = pLines.getNextStart(pLineIndex);
+				pLineIndex++;
+			}
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error during document partitioning", ex);
+			pPendingToken = null;
+		}
+
+		return setToken(pDefaultToken, defaultStart, pRangeEnd);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.rules.IPartitionTokenScanner#setPartialRange(org
+	 * .eclipse.jface.text.IDocument, int, int, java.lang.String, int)
+	 */
+	@Override
+	public void setPartialRange(final IDocument aDocument, final int aOffset,
+			final int aLength, final String aContentType,
+			final int aPartitionOffset) {
+
+		int start = aOffset;
+
+		if (IDocument.DEFAULT_CONTENT_TYPE.equals(aContentType)) {
+			// A block may now begin in the previous lines
+			try {
+				final int line = Math.max(0, aDocument.getLineOfOffset(aOffset)
+						- LOOKBEHIND_LINES);
+
+				start = Math.max(aDocument.getLineOffset(line),
+						aPartitionOffset);
+				start = Math.min(start, aOffset);
+
+			} catch (BadLocationException ex) {
+				RestPlugin.logError("Error during document partitioning", ex);
+			}
+
+		} else if (aContentType != null && aPartitionOffset >= 0
+				&& aPartitionOffset < aOffset) {
+			// Scan the modified block from its beginning
+			start = aPartitionOffset;
+		}
+
+		setRange(aDocument, start, aOffset + aLength - start);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.jface.text.rules.ITokenScanner#setRange(org.eclipse.jface
+	 * .text.IDocument, int, int)
+	 */
+	@Override
+	public void setRange(final IDocument aDocument, final int aOffset,
+			final int aLength) {
+
+		setDocument(aDocument);
+
+		pOffset = aOffset;
+		pRangeEnd = aOffset + aLength;
+		pTokenOffset = aOffset;
+		pTokenLength = 0;
+		pPendingToken = null;
+
+		try {
+			if (pCompleteTable) {
+				pFirstLine = 0;
+				pLineIndex = aDocument.getLineOfOffset(aOffset);
+
+			} else {
+				pLines.clear();
+				pFirstLine = aDocument.getLineOfOffset(aOffset);
+				pLineIndex = 0;
+			}
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error during document partitioning", ex);
+			pFirstLine = pNbLines;
+			pOffset = pRangeEnd;
+		}
+	}
+
+	/**
+	 * Sets the document to scan. Must be called before
+	 * {@link #matchBlock(int, int)} each time the document has been modified.
+	 * 
+	 * @param aDocument
+	 *            The scanned document
+	 */
+	public void setDocument(final IDocument aDocument) {
+		pDocument = aDocument;
+		pDocumentLength = aDocument.getLength();
+		pNbLines = aDocument.getNumberOfLines();
+	}
+
+	/**
+	 * Sets the current token and moves the scanner to its end
+	 * 
+	 * @param aToken
+	 *            The token to return
+	 * @param aStart
+	 *            Token start offset
+	 * @param aEnd
+	 *            Token end offset
+	 * @return The given token
+	 */
+	private IToken setToken(final IToken aToken, final int aStart,
+			final int aEnd) {
+
+		final int end = Math.min(aEnd, pRangeEnd);
+
+		pTokenOffset = aStart;
+		pTokenLength = end - aStart;
+		pOffset = end;
+
+		// Update the current line
+		try {
+			while (ensureLine(pLineIndex + 1)
+					&& pLines.getStart(pLineIndex + 1) <= pOffset) {
+				pLineIndex++;
+			}
+
+		} catch (BadLocationException ex) {
+			RestPlugin.logError("Error during document partitioning", ex);
+			pOffset = pRangeEnd;
+		}
+
+		return aToken;
+	}
+
+	/**
+	 * Computes the simple table type of the given line (see
+	 * RestSimpleTableRule)
+	 * 
+	 * @param aIndex
+	 *            Line index
+	 * @return The simple table line type
+	 * @throws BadLocationException
+	 *             Error reading the document
+	 */
+	private int simpleTableLineType(final int aIndex)
+			throws BadLocationException {
+
+		if (!ensureLine(aIndex) || !hasDelimiter(aIndex)) {
+			return SIMPLE_TABLE_EOF;
+		}
+
+		if (pLines.is(aIndex, LineClassTable.BLANK)) {
+			return SIMPLE_TABLE_EMPTY;
+		}
+
+		if (pLines.is(aIndex, LineClassTable.SIMPLE_TABLE_MARKER)) {
+			return SIMPLE_TABLE_MARKER;
+		}
+
+		return SIMPLE_TABLE_TEXT;
+	}
+
+	/**
+	 * Ends the current block at its budget
+	 * 
+	 * @param aBudgetEnd
+	 *            End of the block at its budget
+	 * @param aScanEnd
+	 *            End of the text read to look for the block terminator
+	 * @return The end of the block
+	 */
+	private int truncate(final int aBudgetEnd, final int aScanEnd) {
+		pMatchScanEnd = aScanEnd;
+		return aBudgetEnd;
+	}
+}
@@ -16,9 +16,7 @@ import java.util.List;
 
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.rules.IPredicateRule;
-import org.eclipse.jface.text.rules.IRule;
 import org.eclipse.jface.text.rules.IToken;
-import org.eclipse.jface.text.rules.RuleBasedPartitionScanner;
 import org.eclipse.jface.text.rules.Token;
 import org.isandlatech.plugins.rest.editor.rules.DecoratedLinesRule;
 import org.isandlatech.plugins.rest.editor.rules.LinePrefixRule;
@@ -31,7 +29,7 @@ import org.isandlatech.plugins.rest.parser.RestLanguage;
  * 
  * @author Thomas Calmant
  */
-public class RestPartitionScanner extends RuleBasedPartitionScanner {
+public class RestPartitionScanner extends AbstractRuleBasedPartitionScanner {
 
 	/** ReST grid tables */
 	public static final String GRID_TABLE_BLOCK = "__section_grid_table";
@@ -74,7 +72,7 @@ public class RestPartitionScanner extends RuleBasedPartitionScanner {
 		IToken simpleTableToken = new Token(SIMPLE_TABLE_BLOCK);
 
 		// Create the rules to identify tokens
-		List<IRule> rules = new ArrayList<IRule>();
+		List<IPredicateRule> rules = new ArrayList<IPredicateRule>();
 
 		// Comments / literal blocks
 		rules.add(new LinePrefixRule(".. ", false, 0,
@@ -97,10 +95,7 @@ public class RestPartitionScanner extends RuleBasedPartitionScanner {
 		rules.add(new RestSimpleTableRule(simpleTableToken));
 
 		// Pass the rules to the partitioner
-		IPredicateRule[] result = new IPredicateRule[rules.size()];
-		rules.toArray(result);
-
-		setPredicateRules(result);
+		setPredicateRules(rules);
 	}
 
 }
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2011 isandlaTech, Thomas Calmant
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Thomas Calmant (isandlaTech) - initial API and implementation
+ *******************************************************************************/
+
+package org.isandlatech.plugins.rest.editor.scanners;
+
+import java.util.concurrent.Callable;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.isandlatech.plugins.rest.editor.cache.StructureCache;
+
+/**
+ * Verifies a structure read from the cache against the content loaded in a
+ * document, and classifies the lines of that content. It is computed outside
+ * the UI thread while the document is being opened, so that the first
+ * partitioning only has to install its result.
+ * 
+ * @author Thomas Calmant
+ */
+class StructureRestoration implements Callable<StructureRestoration> {
+
+	/** Structure read from the cache */
+	private final StructureCache pCache;
+
+	/** The loaded document content */
+	private final String pContent;
+
+	/** Classes of the content lines, null if the structure doesn't match */
+	private LineClassTable pLines;
+
+	/**
+	 * Prepares the verification
+	 * 
+	 * @param aCache
+	 *            Structure read from the cache
+	 * @param aContent
+	 *            The loaded document content
+	 */
+	StructureRestoration(final StructureCache aCache, final String aContent) {
+		pCache = aCache;
+		pContent = aContent;
+	}
+
+	/**
+	 * Hashes the content, then classifies its lines if it matches the cached
+	 * structure. Can be called by any thread.
+	 * 
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public StructureRestoration call() throws BadLocationException {
+
+		if (!pCache.matches(pContent)) {
+			return this;
+		}
+
+		// Lines are computed on a copy of the content
+		final IDocument copy = new Document(pContent);
+		final int nbLines = copy.getNumberOfLines();
+
+		final LineClassTable lines = new LineClassTable();
+		lines.setCount(nbLines);
+		lines.classifyLines(copy, 0, nbLines);
+
+		pLines = lines;
+		return this;
+	}
+
+	/**
+	 * Retrieves the verified content
+	 * 
+	 * @return The loaded document content
+	 */
+	public String getContent() {
+		return pContent;
+	}
+
+	/**
+	 * Retrieves the classes of the content lines
+	 * 
+	 * @return The classes of the lines, null if the content doesn't match the
+	 *         cached structure
+	 */
+	public LineClassTable getLines() {
+		return pLines;
+	}
+}
@@ -23,9 +23,15 @@ import org.isandlatech.plugins.rest.editor.linewrap.LineWrapUtil.LineWrapMode;
  */
 public class EditorPreferenceInitializer extends AbstractPreferenceInitializer {
 
+	/** Default large file mode threshold (5 M characters) */
+	public static final int DEFAULT_LARGE_FILE_THRESHOLD = 5 * 1024 * 1024;
+
 	/** Default line wrap length */
 	public static final int DEFAULT_LINE_LENGTH = 80;
 
+	/** Default maximum number of lines of an unterminated block */
+	public static final int DEFAULT_SCAN_BUDGET = 1000;
+
 	/** Default tab length */
 	public static final int DEFAULT_TAB_LENGTH = 3;
 
@@ -59,5 +65,20 @@ public class EditorPreferenceInitializer extends AbstractPreferenceInitializer {
 				LineWrapMode.NONE.toString());
 		store.setDefault(IEditorPreferenceConstants.EDITOR_LINEWRAP_LENGTH,
 				DEFAULT_LINE_LENGTH);
+
+		// Large files (0 : disabled)
+		store.setDefault(IEditorPreferenceConstants.EDITOR_LARGE_FILE_THRESHOLD,
+				DEFAULT_LARGE_FILE_THRESHOLD);
+
+		// Scan budgets (0 : no limit)
+		store.setDefault(
+				IEditorPreferenceConstants.EDITOR_SCAN_BUDGET_PREFIXED_BLOCK,
+				DEFAULT_SCAN_BUDGET);
+		store.setDefault(
+				IEditorPreferenceConstants.EDITOR_SCAN_BUDGET_GRID_TABLE,
+				DEFAULT_SCAN_BUDGET);
+		store.setDefault(
+				IEditorPreferenceConstants.EDITOR_SCAN_BUDGET_SIMPLE_TABLE,
+				DEFAULT_SCAN_BUDGET);
 	}
 }
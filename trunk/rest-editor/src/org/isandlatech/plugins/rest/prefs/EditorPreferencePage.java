@@ -33,6 +33,7 @@ import org.eclipse.ui.texteditor.spelling.SpellingService;
 import org.isandlatech.plugins.rest.RestPlugin;
 import org.isandlatech.plugins.rest.editor.linewrap.LineWrapUtil;
 import org.isandlatech.plugins.rest.editor.providers.IThemeConstants;
+import org.isandlatech.plugins.rest.editor.rules.ScanBudget;
 import org.isandlatech.plugins.rest.i18n.Messages;
 import org.osgi.service.prefs.BackingStoreException;
 
@@ -47,6 +48,9 @@ public class EditorPreferencePage extends FieldEditorPreferencePage implements
 	/** Formatting on file save activation */
 	private BooleanFieldEditor pFormatOnSave;
 
+	/** Document length triggering the large file mode */
+	private IntegerFieldEditor pLargeFileThreshold;
+
 	/** Maximum line length before wrapping */
 	private IntegerFieldEditor pLineWrapLength;
 
@@ -56,6 +60,15 @@ public class EditorPreferencePage extends FieldEditorPreferencePage implements
 	/** Reset section markers on save */
 	private BooleanFieldEditor pResetMarkersOnsave;
 
+	/** Maximum number of rows of an unterminated grid table */
+	private IntegerFieldEditor pScanBudgetGridTable;
+
+	/** Maximum number of lines of an unterminated literal or source block */
+	private IntegerFieldEditor pScanBudgetPrefixedBlock;
+
+	/** Maximum number of lines of an unterminated simple table */
+	private IntegerFieldEditor pScanBudgetSimpleTable;
+
 	/** Preferred section markers */
 	private StringFieldEditor pSectionMarkers;
 
@@ -137,6 +150,36 @@ public class EditorPreferencePage extends FieldEditorPreferencePage implements
 				Messages.getString("preferences.wrap.length"), parent);
 		addField(pLineWrapLength);
 
+		/* Large files */
+		pLargeFileThreshold = new IntegerFieldEditor(
+				IEditorPreferenceConstants.EDITOR_LARGE_FILE_THRESHOLD,
+				Messages.getString("preferences.largefile.threshold"), parent);
+		pLargeFileThreshold.setValidRange(0, Integer.MAX_VALUE);
+		addField(pLargeFileThreshold);
+
+		/* Scan budgets */
+		pScanBudgetPrefixedBlock = new IntegerFieldEditor(
+				IEditorPreferenceConstants.EDITOR_SCAN_BUDGET_PREFIXED_BLOCK,
+				Messages.getString("preferences.scanbudget.prefixed"), parent);
+		pScanBudgetPrefixedBlock.setValidRange(0, Integer.MAX_VALUE);
+		addField(pScanBudgetPrefixedBlock);
+
+		pScanBudgetGridTable = new IntegerFieldEditor(
+				IEditorPreferenceConstants.EDITOR_SCAN_BUDGET_GRID_TABLE,
+				Messages.getString("preferences.scanbudget.grid"), parent);
+		pScanBudgetGridTable.setValidRange(0, Integer.MAX_VALUE);
+		addField(pScanBudgetGridTable);
+
+		pScanBudgetSimpleTable = new IntegerFieldEditor(
+				IEditorPreferenceConstants.EDITOR_SCAN_BUDGET_SIMPLE_TABLE,
+				Messages.getString("preferences.scanbudget.simple"), parent);
+		pScanBudgetSimpleTable.setValidRange(0, Integer.MAX_VALUE);
+		addField(pScanBudgetSimpleTable);
+
+		if (isInDebugMode()) {
+			createScanBudgetCounters(parent);
+		}
+
 		/* Separator */
 		new Label(parent, SWT.SEPARATOR | SWT.HORIZONTAL);
 
@@ -171,6 +214,44 @@ public class EditorPreferencePage extends FieldEditorPreferencePage implements
 		});
 	}
 
+	/**
+	 * Shows the number of blocks ended by their scan budget, with a button to
+	 * reset the counters (debug mode only)
+	 * 
+	 * @param aParent
+	 *            The fields parent
+	 */
+	private void createScanBudgetCounters(final Composite aParent) {
+
+		new Label(aParent, SWT.NONE).setText(Messages
+				.getString("preferences.scanbudget.exceeded"));
+
+		final Label countersLabel = new Label(aParent, SWT.NONE);
+		countersLabel.setText(getScanBudgetCounters());
+
+		Button btn = new Button(aParent, SWT.PUSH);
+		btn.setText(Messages.getString("preferences.scanbudget.reset"));
+
+		btn.addSelectionListener(new SelectionListener() {
+
+			@Override
+			public void widgetDefaultSelected(final SelectionEvent aEvent) {
+				// Do nothing
+			}
+
+			@Override
+			public void widgetSelected(final SelectionEvent aEvent) {
+
+				for (ScanBudget budget : ScanBudget.values()) {
+					budget.resetExceededCount();
+				}
+
+				countersLabel.setText(getScanBudgetCounters());
+				countersLabel.getParent().layout();
+			}
+		});
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -181,6 +262,27 @@ public class EditorPreferencePage extends FieldEditorPreferencePage implements
 		return RestPlugin.getDefault().getPreferenceStore();
 	}
 
+	/**
+	 * Prepares the description of the scan budgets counters
+	 * 
+	 * @return The number of blocks ended by each budget
+	 */
+	private String getScanBudgetCounters() {
+
+		final StringBuilder builder = new StringBuilder();
+		for (ScanBudget budget : ScanBudget.values()) {
+
+			if (builder.length() != 0) {
+				builder.append(", ");
+			}
+
+			builder.append(budget.name()).append(" : ")
+					.append(budget.getExceededCount());
+		}
+
+		return builder.toString();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -21,6 +21,9 @@ public interface IEditorPreferenceConstants {
 	/** ReST Editor debug mode system property */
 	String DEBUG_MODE = "resteditor.debug";
 
+	/** Document length (in characters) triggering the large file mode */
+	String EDITOR_LARGE_FILE_THRESHOLD = "editor.largefile.threshold";
+
 	/** Maximum line length when a line wrapper is turned on */
 	String EDITOR_LINEWRAP_LENGTH = "editor.linewrap.length";
 
@@ -36,6 +39,15 @@ public interface IEditorPreferenceConstants {
 	/** Trim lines on save */
 	String EDITOR_SAVE_TRIM = "editor.save.trim";
 
+	/** Maximum number of rows of an unterminated grid table */
+	String EDITOR_SCAN_BUDGET_GRID_TABLE = "editor.scanbudget.gridtable";
+
+	/** Maximum number of lines of an unterminated literal or source block */
+	String EDITOR_SCAN_BUDGET_PREFIXED_BLOCK = "editor.scanbudget.prefixedblock";
+
+	/** Maximum number of lines of an unterminated simple table */
+	String EDITOR_SCAN_BUDGET_SIMPLE_TABLE = "editor.scanbudget.simpletable";
+
 	/** Preferred section marker order */
 	String EDITOR_SECTION_MARKERS = "editor.section.markers";
 